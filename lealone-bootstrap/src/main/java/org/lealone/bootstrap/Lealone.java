@@ -24,10 +24,12 @@ import org.lealone.cluster.config.DatabaseDescriptor;
 import org.lealone.cluster.config.TransportServerOptions;
 import org.lealone.cluster.config.TransportServerOptions.TcpServerOptions;
 import org.lealone.cluster.exceptions.ConfigurationException;
+import org.lealone.cluster.metrics.ThreadPoolMetrics;
 import org.lealone.cluster.router.P2PRouter;
 import org.lealone.cluster.service.StorageService;
 import org.lealone.cluster.utils.Utils;
 import org.lealone.cluster.utils.WrappedRunnable;
+import org.lealone.command.router.CommandParallel;
 import org.lealone.command.router.LocalRouter;
 import org.lealone.command.router.Router;
 import org.lealone.command.router.TransactionalRouter;
@@ -107,8 +109,11 @@ public class Lealone {
 
     private static void initRouter() {
         Router r = LocalRouter.getInstance();
-        if (config.isClusterMode())
+        if (config.isClusterMode()) {
             r = P2PRouter.getInstance();
+            new ThreadPoolMetrics(CommandParallel.getThreadPoolExecutor(), "internal",
+                    CommandParallel.class.getSimpleName());
+        }
         Session.setRouter(new TransactionalRouter(r));
     }
 
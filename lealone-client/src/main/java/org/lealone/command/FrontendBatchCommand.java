@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 
 import org.lealone.api.ParameterInterface;
+import org.lealone.engine.Constants;
 import org.lealone.engine.FrontendSession;
 import org.lealone.message.DbException;
 import org.lealone.result.ResultInterface;
@@ -36,6 +37,7 @@ public class FrontendBatchCommand implements CommandInterface {
     private ArrayList<Value[]> batchParameters; //对应JdbcPreparedStatement.executeBatch()
     private int id = -1;
     private int[] result;
+    private DbException error;
 
     public FrontendBatchCommand(FrontendSession session, Transfer transfer, ArrayList<String> batchCommands) {
         this.session = session;
@@ -91,6 +93,7 @@ public class FrontendBatchCommand implements CommandInterface {
 
                 for (int j = 0; j < size; j++)
                     result[j] = transfer.readInt();
+                readError();
             } else {
                 session.traceOperation("COMMAND_EXECUTE_BATCH_UPDATE_PREPAREDSTATEMENT", id);
                 transfer.writeInt(FrontendSession.COMMAND_EXECUTE_BATCH_UPDATE_PREPAREDSTATEMENT).writeInt(id);
@@ -109,6 +112,7 @@ public class FrontendBatchCommand implements CommandInterface {
 
                 for (int j = 0; j < size; j++)
                     result[j] = transfer.readInt();
+                readError();
             }
         } catch (IOException e) {
             session.handleException(e);
@@ -117,6 +121,16 @@ public class FrontendBatchCommand implements CommandInterface {
         return 0;
     }
 
+    private void readError() throws IOException {
+        if (session.getClientVersion() >= Constants.TCP_PROTOCOL_VERSION_2 && transfer.readBoolean()) {
+            try {
+                session.parseError(transfer);
+            } catch (DbException e) {
+                error = e;
+            }
+        }
+    }
+
     @Override
     public void close() {
         if (session == null || session.isClosed()) {
@@ -150,4 +164,14 @@ public class FrontendBatchCommand implements CommandInterface {
     public int[] getResult() {
         return result;
     }
+
+    /**
+     * Get the error of the first entry that failed. The update count of each
+     * entry that failed is Statement.EXECUTE_FAILED.
+     *
+     * @return the error, or null if all entries succeeded
+     */
+    public DbException getError() {
+        return error;
+    }
 }
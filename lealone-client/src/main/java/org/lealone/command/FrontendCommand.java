@@ -9,9 +9,11 @@ package org.lealone.command;
 import java.io.IOException;
 import java.sql.ResultSetMetaData;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.lealone.api.ErrorCode;
 import org.lealone.api.ParameterInterface;
+import org.lealone.engine.AsyncResult;
 import org.lealone.engine.FrontendSession;
 import org.lealone.engine.SysProperties;
 import org.lealone.message.DbException;
@@ -135,44 +137,127 @@ public class FrontendCommand implements CommandInterface {
             ResultRemote result = null;
             prepareIfRequired();
             try {
-                boolean isDistributedQuery = session.getTransaction() != null
-                        && !session.getTransaction().isAutoCommit();
-                if (isDistributedQuery) {
-                    session.traceOperation("COMMAND_EXECUTE_DISTRIBUTED_QUERY", id);
-                    transfer.writeInt(FrontendSession.COMMAND_EXECUTE_DISTRIBUTED_QUERY).writeInt(id)
-                            .writeInt(objectId).writeInt(maxRows);
-                } else {
-                    session.traceOperation("COMMAND_EXECUTE_QUERY", id);
-                    transfer.writeInt(FrontendSession.COMMAND_EXECUTE_QUERY) //
-                            .writeInt(id).writeInt(objectId).writeInt(maxRows);
-                }
-                int fetch;
-                if (scrollable) {
-                    fetch = Integer.MAX_VALUE;
-                } else {
-                    fetch = fetchSize;
-                }
-                transfer.writeInt(fetch);
-                sendParameters(transfer);
+                int fetch = scrollable ? Integer.MAX_VALUE : fetchSize;
+                boolean isDistributedQuery = sendQuery(objectId, maxRows, fetch);
                 session.done(transfer);
+                result = readResult(isDistributedQuery, objectId, fetch);
+            } catch (IOException e) {
+                session.handleException(e);
+                throw DbException.convertIOException(e, sql);
+            } catch (Exception e) {
+                throw DbException.convert(e);
+            }
+            session.readSessionState();
+            return result;
+        }
+    }
 
-                if (isDistributedQuery)
-                    session.getTransaction().addLocalTransactionNames(transfer.readString());
+    private boolean sendQuery(int objectId, int maxRows, int fetch) throws IOException {
+        boolean isDistributedQuery = session.getTransaction() != null && !session.getTransaction().isAutoCommit();
+        if (isDistributedQuery) {
+            session.traceOperation("COMMAND_EXECUTE_DISTRIBUTED_QUERY", id);
+            transfer.writeInt(FrontendSession.COMMAND_EXECUTE_DISTRIBUTED_QUERY).writeInt(id).writeInt(objectId)
+                    .writeInt(maxRows);
+        } else {
+            session.traceOperation("COMMAND_EXECUTE_QUERY", id);
+            transfer.writeInt(FrontendSession.COMMAND_EXECUTE_QUERY) //
+                    .writeInt(id).writeInt(objectId).writeInt(maxRows);
+        }
+        transfer.writeInt(fetch);
+        sendParameters(transfer);
+        return isDistributedQuery;
+    }
 
-                int columnCount = transfer.readInt();
-                int rowCount = transfer.readInt();
+    private ResultRemote readResult(boolean isDistributedQuery, int objectId, int fetch) throws IOException {
+        if (isDistributedQuery)
+            session.getTransaction().addLocalTransactionNames(transfer.readString());
+
+        int columnCount = transfer.readInt();
+        int rowCount = transfer.readInt();
 
-                if (rowCount < 0)
-                    result = new ResultRemoteCursor(session, transfer, objectId, columnCount, fetch);
-                else
-                    result = new ResultRemoteInMemory(session, transfer, objectId, columnCount, rowCount, fetch);
+        if (rowCount < 0)
+            return new ResultRemoteCursor(session, transfer, objectId, columnCount, fetch);
+        else
+            return new ResultRemoteInMemory(session, transfer, objectId, columnCount, rowCount, fetch);
+    }
+
+    /**
+     * Send the query without waiting for the result, so that the same session
+     * can be used for other requests in the meantime.
+     *
+     * @param maxRows the maximum number of rows to return
+     * @param scrollable if the result set must be scrollable
+     * @return the future result
+     */
+    public AsyncResult<ResultInterface> executeQueryAsync(final int maxRows, boolean scrollable) {
+        checkParameters();
+        synchronized (session) {
+            final int objectId = session.getNextId();
+            final int fetch = scrollable ? Integer.MAX_VALUE : fetchSize;
+            prepareIfRequired();
+            AsyncResult<ResultInterface> result = null;
+            try {
+                result = session.sendAsync(new AsyncResult<ResultInterface>(session) {
+                    private boolean isDistributedQuery;
+
+                    @Override
+                    protected void write() throws IOException {
+                        isDistributedQuery = sendQuery(objectId, maxRows, fetch);
+                    }
+
+                    @Override
+                    protected ResultInterface read(Transfer transfer) throws IOException {
+                        return readResult(isDistributedQuery, objectId, fetch);
+                    }
+                });
+            } catch (IOException e) {
+                session.handleException(e);
+                throw DbException.convertIOException(e, sql);
+            }
+            return result;
+        }
+    }
 
+    /**
+     * Send the query as one part of a shuffle join without waiting for the
+     * result. The node repartitions the rows of both tables among the given
+     * nodes on the join key and joins the rows it receives.
+     *
+     * @param shuffleId the id of the shuffle join, the same on all nodes
+     * @param nodes the host addresses of the nodes that take part
+     * @param maxRows the maximum number of rows to return
+     * @return the future result
+     */
+    public AsyncResult<ResultInterface> executeShuffleQueryAsync(final String shuffleId, final String[] nodes,
+            final int maxRows) {
+        checkParameters();
+        synchronized (session) {
+            final int objectId = session.getNextId();
+            prepareIfRequired();
+            AsyncResult<ResultInterface> result = null;
+            try {
+                result = session.sendAsync(new AsyncResult<ResultInterface>(session) {
+                    @Override
+                    protected void write() throws IOException {
+                        session.traceOperation("COMMAND_EXECUTE_SHUFFLE_QUERY", id);
+                        transfer.writeInt(FrontendSession.COMMAND_EXECUTE_SHUFFLE_QUERY).writeInt(id)
+                                .writeInt(objectId).writeInt(maxRows).writeInt(fetchSize);
+                        transfer.writeString(shuffleId).writeInt(nodes.length);
+                        for (String node : nodes) {
+                            transfer.writeString(node);
+                        }
+                        sendParameters(transfer);
+                    }
+
+                    @Override
+                    protected ResultInterface read(Transfer transfer) throws IOException {
+                        return readResult(false, objectId, fetchSize);
+                    }
+                });
             } catch (IOException e) {
                 session.handleException(e);
-            } catch (Exception e) {
-                e.printStackTrace();
+                throw DbException.convertIOException(e, sql);
             }
-            session.readSessionState();
             return result;
         }
     }
@@ -185,24 +270,9 @@ public class FrontendCommand implements CommandInterface {
             //boolean autoCommit = false;
             prepareIfRequired();
             try {
-                boolean isDistributedUpdate = session.getTransaction() != null
-                        && !session.getTransaction().isAutoCommit();
-                if (isDistributedUpdate) {
-                    session.traceOperation("COMMAND_EXECUTE_DISTRIBUTED_UPDATE", id);
-                    transfer.writeInt(FrontendSession.COMMAND_EXECUTE_DISTRIBUTED_UPDATE).writeInt(id);
-                } else {
-                    session.traceOperation("COMMAND_EXECUTE_UPDATE", id);
-                    transfer.writeInt(FrontendSession.COMMAND_EXECUTE_UPDATE).writeInt(id);
-                }
-                sendParameters(transfer);
+                boolean isDistributedUpdate = sendUpdate(null);
                 session.done(transfer);
-
-                if (isDistributedUpdate)
-                    session.getTransaction().addLocalTransactionNames(transfer.readString());
-
-                updateCount = transfer.readInt();
-                transfer.readBoolean();
-                //autoCommit = transfer.readBoolean();
+                updateCount = readUpdateCount(isDistributedUpdate);
             } catch (IOException e) {
                 session.handleException(e);
             } catch (Exception e) {
@@ -214,6 +284,107 @@ public class FrontendCommand implements CommandInterface {
         }
     }
 
+    /**
+     * Execute this INSERT or MERGE statement with the given rows instead of
+     * its parameters. The rows are sent as values, so that the server does
+     * not have to parse them.
+     *
+     * @param rows the values of each row, in the order of the parameters
+     * @return the update count
+     */
+    public int executeUpdate(List<Value[]> rows) {
+        synchronized (session) {
+            int updateCount = 0;
+            prepareIfRequired();
+            try {
+                boolean isDistributedUpdate = sendUpdate(rows);
+                session.done(transfer);
+                updateCount = readUpdateCount(isDistributedUpdate);
+            } catch (IOException e) {
+                session.handleException(e);
+            }
+            session.readSessionState();
+            return updateCount;
+        }
+    }
+
+    /**
+     * Send the update without waiting for the update count, so that the same
+     * session can be used for other requests in the meantime.
+     *
+     * @param rows the values of each row of an INSERT or MERGE statement, or
+     *            null to use the parameters
+     * @return the future update count
+     */
+    public AsyncResult<Integer> executeUpdateAsync(final List<Value[]> rows) {
+        if (rows == null) {
+            checkParameters();
+        }
+        synchronized (session) {
+            prepareIfRequired();
+            AsyncResult<Integer> result = null;
+            try {
+                result = session.sendAsync(new AsyncResult<Integer>(session) {
+                    private boolean isDistributedUpdate;
+
+                    @Override
+                    protected void write() throws IOException {
+                        isDistributedUpdate = sendUpdate(rows);
+                    }
+
+                    @Override
+                    protected Integer read(Transfer transfer) throws IOException {
+                        return readUpdateCount(isDistributedUpdate);
+                    }
+                });
+            } catch (IOException e) {
+                session.handleException(e);
+                throw DbException.convertIOException(e, sql);
+            }
+            return result;
+        }
+    }
+
+    private boolean sendUpdate(List<Value[]> rows) throws IOException {
+        boolean isDistributedUpdate = session.getTransaction() != null && !session.getTransaction().isAutoCommit();
+        if (rows == null) {
+            if (isDistributedUpdate) {
+                session.traceOperation("COMMAND_EXECUTE_DISTRIBUTED_UPDATE", id);
+                transfer.writeInt(FrontendSession.COMMAND_EXECUTE_DISTRIBUTED_UPDATE).writeInt(id);
+            } else {
+                session.traceOperation("COMMAND_EXECUTE_UPDATE", id);
+                transfer.writeInt(FrontendSession.COMMAND_EXECUTE_UPDATE).writeInt(id);
+            }
+            sendParameters(transfer);
+        } else {
+            if (isDistributedUpdate) {
+                session.traceOperation("COMMAND_EXECUTE_DISTRIBUTED_UPDATE_ROWS", id);
+                transfer.writeInt(FrontendSession.COMMAND_EXECUTE_DISTRIBUTED_UPDATE_ROWS).writeInt(id);
+            } else {
+                session.traceOperation("COMMAND_EXECUTE_UPDATE_ROWS", id);
+                transfer.writeInt(FrontendSession.COMMAND_EXECUTE_UPDATE_ROWS).writeInt(id);
+            }
+            int columnCount = parameters.size();
+            transfer.writeInt(rows.size()).writeInt(columnCount);
+            for (Value[] row : rows) {
+                for (int i = 0; i < columnCount; i++) {
+                    transfer.writeValue(row[i]);
+                }
+            }
+        }
+        return isDistributedUpdate;
+    }
+
+    private int readUpdateCount(boolean isDistributedUpdate) throws IOException {
+        if (isDistributedUpdate)
+            session.getTransaction().addLocalTransactionNames(transfer.readString());
+
+        int updateCount = transfer.readInt();
+        transfer.readBoolean();
+        //autoCommit = transfer.readBoolean();
+        return updateCount;
+    }
+
     private void checkParameters() {
         for (ParameterInterface p : parameters) {
             p.checkSet();
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.engine;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.lealone.message.DbException;
+import org.lealone.value.Transfer;
+
+/**
+ * The result of a request that was sent to the server without waiting for
+ * the response. The responses arrive in the order of the requests, and they
+ * are read by the first thread that waits for one of them.
+ *
+ * @param <T> the type of the result
+ */
+public abstract class AsyncResult<T> implements Future<T> {
+    private static final long POLL_MILLIS = 10;
+
+    private final FrontendSession session;
+    private int requestId;
+    private boolean done;
+    private T result;
+    private DbException error;
+
+    protected AsyncResult(FrontendSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Write the request.
+     */
+    protected abstract void write() throws IOException;
+
+    /**
+     * Read the response after the status.
+     *
+     * @param transfer the transfer object
+     * @return the result
+     */
+    protected abstract T read(Transfer transfer) throws IOException;
+
+    int getRequestId() {
+        return requestId;
+    }
+
+    void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    void setResult(T result) {
+        this.result = result;
+        done = true;
+    }
+
+    void setError(DbException error) {
+        this.error = error;
+        done = true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        synchronized (session) {
+            return done;
+        }
+    }
+
+    @Override
+    public T get() throws ExecutionException {
+        synchronized (session) {
+            while (!done) {
+                session.readAsyncResponse();
+            }
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+
+    /**
+     * Wait at most the given time for the response. The response is only read
+     * once it started to arrive, so that a timeout does not leave a partly
+     * read response behind. While waiting, the session can be used by other
+     * threads.
+     */
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (session) {
+            while (!done) {
+                if (session.isAsyncResponseAvailable()) {
+                    session.readAsyncResponse();
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                session.wait(Math.max(1, Math.min(POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(remaining))));
+            }
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+}
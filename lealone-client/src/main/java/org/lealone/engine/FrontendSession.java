@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.net.Socket;
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.Random;
 
 import org.lealone.api.ErrorCode;
@@ -58,6 +59,17 @@ public class FrontendSession extends SessionWithState implements DataHandler, Tr
     public static final int SESSION_SET_AUTOCOMMIT = 15;
     public static final int SESSION_UNDO_LOG_POS = 16;
     public static final int LOB_READ = 17;
+    public static final int COMMAND_EXECUTE_UPDATE_ROWS = 18;
+    /**
+     * Followed by a request id and a request, the response of the request
+     * starts with the request id.
+     */
+    public static final int ASYNC_REQUEST = 19;
+    /**
+     * Followed by the same fields as COMMAND_EXECUTE_QUERY, then the shuffle
+     * id and the nodes of a shuffle join, and then the parameters.
+     */
+    public static final int COMMAND_EXECUTE_SHUFFLE_QUERY = 20;
 
     public static final int COMMAND_EXECUTE_DISTRIBUTED_QUERY = 100;
     public static final int COMMAND_EXECUTE_DISTRIBUTED_UPDATE = 101;
@@ -69,6 +81,8 @@ public class FrontendSession extends SessionWithState implements DataHandler, Tr
 
     public static final int COMMAND_EXECUTE_TRANSACTION_VALIDATE = 106;
 
+    public static final int COMMAND_EXECUTE_DISTRIBUTED_UPDATE_ROWS = 107;
+
     public static final int COMMAND_EXECUTE_BATCH_UPDATE_STATEMENT = 120;
     public static final int COMMAND_EXECUTE_BATCH_UPDATE_PREPAREDSTATEMENT = 121;
 
@@ -99,6 +113,11 @@ public class FrontendSession extends SessionWithState implements DataHandler, Tr
     //private DatabaseEventListener eventListener;
     private LobStorage lobStorage;
     private Transaction transaction;
+    // the requests that wait for their response, in the order they were sent
+    private final LinkedList<AsyncResult<?>> asyncResults = new LinkedList<AsyncResult<?>>();
+    private int nextRequestId;
+    private final SmallLRUCache<String, FrontendCommand> cachedCommands = SmallLRUCache
+            .newInstance(SysProperties.SERVER_CACHED_OBJECTS);
 
     public FrontendSession(ConnectionInfo ci) {
         this.connectionInfo = ci;
@@ -110,7 +129,7 @@ public class FrontendSession extends SessionWithState implements DataHandler, Tr
         trans.setSSL(ci.isSSL());
         trans.init();
         trans.writeInt(Constants.TCP_PROTOCOL_VERSION_1);
-        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_1);
+        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_2);
         trans.writeString(db);
         trans.writeString(ci.getURL());
         trans.writeString(ci.getUserName());
@@ -179,6 +198,15 @@ public class FrontendSession extends SessionWithState implements DataHandler, Tr
         }
     }
 
+    /**
+     * Get the protocol version that was agreed on with the server.
+     *
+     * @return the protocol version
+     */
+    public int getClientVersion() {
+        return clientVersion;
+    }
+
     @Override
     public boolean isAutoCommit() {
         return autoCommit;
@@ -329,6 +357,24 @@ public class FrontendSession extends SessionWithState implements DataHandler, Tr
         return new FrontendCommand(this, transfer, sql, fetchSize);
     }
 
+    /**
+     * Get the command that was prepared before for the given SQL statement, or
+     * prepare a new one. The parameters of the command must not be used,
+     * because it is shared.
+     *
+     * @param sql the SQL statement
+     * @return the command
+     */
+    public synchronized FrontendCommand getCachedCommand(String sql) {
+        checkClosed();
+        FrontendCommand command = cachedCommands.get(sql);
+        if (command == null) {
+            command = new FrontendCommand(this, transfer, sql, SysProperties.SERVER_RESULT_SET_FETCH_SIZE);
+            cachedCommands.put(sql, command);
+        }
+        return command;
+    }
+
     //TODO
     /**
      * Automatically re-connect if necessary and if configured to do so.
@@ -447,12 +493,20 @@ public class FrontendSession extends SessionWithState implements DataHandler, Tr
      */
     public void done(Transfer transfer) throws IOException {
         //正常来讲不会出现这种情况，如果出现了，说明存在bug，找出为什么transfer的输入流没正常读完的原因
-        if (transfer.available() > 0) {
+        if (asyncResults.isEmpty() && transfer.available() > 0) {
             throw DbException.throwInternalError("before transfer flush, the available bytes was "
                     + transfer.available());
         }
 
         transfer.flush();
+        // the responses of the requests that were sent before come first
+        while (!asyncResults.isEmpty()) {
+            readAsyncResponse();
+        }
+        readStatus(transfer);
+    }
+
+    private void readStatus(Transfer transfer) throws IOException {
         int status = transfer.readInt();
         if (status == STATUS_ERROR) {
             parseError(transfer);
@@ -467,6 +521,75 @@ public class FrontendSession extends SessionWithState implements DataHandler, Tr
         }
     }
 
+    /**
+     * Send a request without waiting for its response. The response is read
+     * when the result is needed, or before the response of a later request.
+     *
+     * @param result the result that writes the request
+     * @return the result
+     */
+    public synchronized <T> AsyncResult<T> sendAsync(AsyncResult<T> result) throws IOException {
+        checkClosed();
+        int requestId = nextRequestId++;
+        result.setRequestId(requestId);
+        transfer.writeInt(ASYNC_REQUEST).writeInt(requestId);
+        result.write();
+        asyncResults.add(result);
+        transfer.flush();
+        return result;
+    }
+
+    public synchronized boolean hasAsyncResults() {
+        return !asyncResults.isEmpty();
+    }
+
+    /**
+     * Check whether the response of the oldest request that waits for its
+     * response started to arrive.
+     *
+     * @return true if it can be read without waiting for the server
+     */
+    synchronized boolean isAsyncResponseAvailable() {
+        try {
+            return transfer.available() > 0;
+        } catch (IOException e) {
+            // reading the response reports the error
+            return true;
+        }
+    }
+
+    /**
+     * Read the response of the oldest request that waits for its response.
+     */
+    synchronized void readAsyncResponse() {
+        AsyncResult<?> result = asyncResults.removeFirst();
+        try {
+            int requestId = transfer.readInt();
+            if (requestId != result.getRequestId()) {
+                throw DbException.get(ErrorCode.CONNECTION_BROKEN_1, "unexpected request id " + requestId);
+            }
+            try {
+                readStatus(transfer);
+                setAsyncResult(result, transfer);
+            } catch (DbException e) {
+                result.setError(e);
+            }
+        } catch (Exception e) {
+            // the stream is broken, none of the other responses can be read
+            DbException error = DbException.convert(e);
+            result.setError(error);
+            for (AsyncResult<?> r : asyncResults) {
+                r.setError(error);
+            }
+            asyncResults.clear();
+            handleException(e);
+        }
+    }
+
+    private static <T> void setAsyncResult(AsyncResult<T> result, Transfer transfer) throws IOException {
+        result.setResult(result.read(transfer));
+    }
+
     public void parseError(Transfer transfer) throws IOException {
         String sqlstate = transfer.readString();
         String message = transfer.readString();
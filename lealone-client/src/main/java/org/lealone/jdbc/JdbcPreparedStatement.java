@@ -1103,7 +1103,11 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
                             batchParameters);
                     c.executeUpdate();
                     int[] result = c.getResult();
+                    DbException error = c.getError();
                     c.close();
+                    if (error != null) {
+                        throw new JdbcBatchUpdateException(logAndConvert(error), result);
+                    }
                     return result;
                 } else {
                     int size = batchParameters.size();
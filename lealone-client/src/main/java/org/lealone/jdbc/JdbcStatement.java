@@ -623,7 +623,11 @@ public class JdbcStatement extends TraceObject implements Statement {
                     FrontendBatchCommand c = ((FrontendSession) session).getFrontendBatchCommand(batchCommands);
                     c.executeUpdate();
                     int[] result = c.getResult();
+                    DbException error = c.getError();
                     c.close();
+                    if (error != null) {
+                        throw new JdbcBatchUpdateException(logAndConvert(error), result);
+                    }
                     return result;
                 } else {
                     int size = batchCommands.size();
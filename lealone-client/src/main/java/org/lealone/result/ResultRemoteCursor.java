@@ -65,7 +65,7 @@ public class ResultRemoteCursor extends ResultRemote {
                     boolean row = transfer.readBoolean();
                     if (!row) {
                         isEnd = true;
-                        if (transfer.available() > 0) {
+                        if (!session.hasAsyncResults() && transfer.available() > 0) {
                             fetchRowsThrowException();
                         }
                         break;
@@ -55,7 +55,7 @@ public class ResultRemoteInMemory extends ResultRemote {
                 for (int r = 0; r < fetch; r++) {
                     boolean row = transfer.readBoolean();
                     if (!row) {
-                        if (transfer.available() > 0) {
+                        if (!session.hasAsyncResults() && transfer.available() > 0) {
                             fetchRowsThrowException();
                         }
                         break;
@@ -20,6 +20,7 @@ package org.lealone.cluster.concurrent;
 import java.util.concurrent.*;
 
 import org.lealone.cluster.utils.JVMStabilityInspector;
+import org.lealone.util.NamedThreadFactory;
 
 /**
  * Like DebuggableThreadPoolExecutor, DebuggableScheduledThreadPoolExecutor always
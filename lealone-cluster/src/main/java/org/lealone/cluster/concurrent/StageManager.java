@@ -22,6 +22,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.lealone.cluster.utils.Utils;
+import org.lealone.util.NamedThreadFactory;
 
 /**
  * This class manages executor services for Messages recieved: each Message requests
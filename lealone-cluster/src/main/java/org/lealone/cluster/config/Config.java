@@ -61,6 +61,8 @@ public class Config {
     public Integer dynamic_snitch_update_interval_in_ms = 100;
     public Integer dynamic_snitch_reset_interval_in_ms = 600000;
     public Double dynamic_snitch_badness_threshold = 0.1;
+    // also send a single-key query to the next replica when the first one is slower than its p99 latency
+    public Boolean speculative_read_retry = true;
 
     public ServerEncryptionOptions server_encryption_options = new ServerEncryptionOptions();
     public ClientEncryptionOptions client_encryption_options = new ClientEncryptionOptions();
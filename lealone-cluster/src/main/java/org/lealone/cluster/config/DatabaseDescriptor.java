@@ -436,6 +436,14 @@ public class DatabaseDescriptor {
         conf.dynamic_snitch_badness_threshold = dynamicBadnessThreshold;
     }
 
+    public static boolean isSpeculativeReadRetry() {
+        return conf.speculative_read_retry;
+    }
+
+    public static void setSpeculativeReadRetry(Boolean speculativeReadRetry) {
+        conf.speculative_read_retry = speculativeReadRetry;
+    }
+
     public static ServerEncryptionOptions getServerEncryptionOptions() {
         return conf.server_encryption_options;
     }
@@ -212,6 +212,21 @@ public class DynamicEndpointSnitch extends AbstractEndpointSnitch implements ILa
         sample.update(latency);
     }
 
+    /**
+     * Get the latency that the given fraction of the recent latencies of the
+     * host did not exceed.
+     *
+     * @param host the host
+     * @param quantile the fraction, for example 0.99
+     * @return the latency in milliseconds, or -1 if the host has no latencies
+     */
+    public double getLatency(InetAddress host, double quantile) {
+        ExponentiallyDecayingSample sample = samples.get(host);
+        if (sample == null || sample.size() == 0)
+            return -1;
+        return sample.getSnapshot().getValue(quantile);
+    }
+
     private void updateScores() // this is expensive
     {
         if (!StorageService.instance.isInitialized())
@@ -60,6 +60,7 @@ import org.lealone.cluster.io.IVersionedSerializer;
 import org.lealone.cluster.locator.ILatencySubscriber;
 import org.lealone.cluster.metrics.ConnectionMetrics;
 import org.lealone.cluster.metrics.DroppedMessageMetrics;
+import org.lealone.cluster.router.ShuffleRows;
 import org.lealone.cluster.security.SSLFactory;
 import org.lealone.cluster.utils.ExpiringMap;
 import org.lealone.cluster.utils.FileUtils;
@@ -85,7 +86,7 @@ public final class MessagingService implements MessagingServiceMBean {
         INTERNAL_RESPONSE, // responses to internal calls
         ECHO,
         // remember to add new verbs at the end, since we serialize by ordinal
-        UNUSED_1,
+        SHUFFLE_ROWS, // rows of a shuffle join
         UNUSED_2,
         UNUSED_3;
     }
@@ -130,7 +131,8 @@ public final class MessagingService implements MessagingServiceMBean {
             put(Verb.GOSSIP_SHUTDOWN, Stage.GOSSIP);
             put(Verb.ECHO, Stage.GOSSIP);
 
-            put(Verb.UNUSED_1, Stage.INTERNAL_RESPONSE);
+            put(Verb.SHUFFLE_ROWS, Stage.REQUEST_RESPONSE);
+
             put(Verb.UNUSED_2, Stage.INTERNAL_RESPONSE);
             put(Verb.UNUSED_3, Stage.INTERNAL_RESPONSE);
         }
@@ -154,6 +156,7 @@ public final class MessagingService implements MessagingServiceMBean {
             put(Verb.GOSSIP_DIGEST_ACK2, GossipDigestAck2.serializer);
             put(Verb.GOSSIP_DIGEST_SYN, GossipDigestSyn.serializer);
             put(Verb.ECHO, EchoMessage.serializer);
+            put(Verb.SHUFFLE_ROWS, ShuffleRows.serializer);
         }
     };
 
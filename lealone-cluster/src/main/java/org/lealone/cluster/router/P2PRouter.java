@@ -19,17 +19,19 @@ package org.lealone.cluster.router;
 
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.lealone.cluster.config.DatabaseDescriptor;
 import org.lealone.cluster.dht.Token;
 import org.lealone.cluster.gms.FailureDetector;
 import org.lealone.cluster.gms.Gossiper;
+import org.lealone.cluster.locator.TokenMetaData;
 import org.lealone.cluster.service.StorageService;
 import org.lealone.cluster.utils.Utils;
 import org.lealone.command.CommandInterface;
@@ -49,19 +51,29 @@ import org.lealone.command.router.MergedResult;
 import org.lealone.command.router.Router;
 import org.lealone.command.router.SerializedResult;
 import org.lealone.command.router.SortedResult;
+import org.lealone.dbobject.index.IndexCondition;
+import org.lealone.dbobject.table.Column;
 import org.lealone.dbobject.table.TableFilter;
+import org.lealone.engine.FrontendSession;
+import org.lealone.engine.Session;
+import org.lealone.expression.Comparison;
 import org.lealone.message.DbException;
 import org.lealone.result.ResultInterface;
 import org.lealone.result.Row;
 import org.lealone.result.SearchRow;
 import org.lealone.util.New;
 import org.lealone.value.Value;
+import org.lealone.value.ValueByte;
+import org.lealone.value.ValueInt;
+import org.lealone.value.ValueLong;
+import org.lealone.value.ValueNull;
+import org.lealone.value.ValueShort;
 import org.lealone.value.ValueUuid;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 
 public class P2PRouter implements Router {
-    private static final Random random = new Random(System.currentTimeMillis());
     private static final P2PRouter INSTANCE = new P2PRouter();
 
     public static P2PRouter getInstance() {
@@ -77,15 +89,14 @@ public class P2PRouter implements Router {
             return defineCommand.updateLocal();
 
         Set<InetAddress> liveMembers = Gossiper.instance.getLiveMembers();
-        List<Callable<Integer>> commands = New.arrayList(liveMembers.size());
+        List<Future<Integer>> futures = New.arrayList(liveMembers.size());
 
         liveMembers.remove(Utils.getBroadcastAddress());
-        commands.add(defineCommand);
         try {
             for (InetAddress endpoint : liveMembers) {
-                commands.add(createUpdateCallable(endpoint, defineCommand));
+                futures.add(executeUpdateAsync(endpoint, defineCommand, defineCommand.getSQL()));
             }
-            return CommandParallel.executeUpdateCallable(commands);
+            return CommandParallel.executeUpdate(defineCommand, futures);
         } catch (Exception e) {
             throw DbException.convert(e);
         }
@@ -163,18 +174,19 @@ public class P2PRouter implements Router {
             }
         }
 
-        List<Callable<Integer>> commands = New.arrayList();
+        List<Future<Integer>> futures = New.arrayList();
         int updateCount = 0;
         try {
-            createInsertOrMergeCallable(iom, commands, localDataCenterRows);
-            createInsertOrMergeCallable(iom, commands, remoteDataCenterRows);
+            executeInsertOrMergeAsync(iom, futures, localDataCenterRows);
+            executeInsertOrMergeAsync(iom, futures, remoteDataCenterRows);
 
+            Callable<Integer> localUpdate = null;
             if (localRows != null) {
                 iom.setRows(localRows);
-                commands.add(iom);
+                localUpdate = iom;
             }
 
-            updateCount = CommandParallel.executeUpdateCallable(commands);
+            updateCount = CommandParallel.executeUpdate(localUpdate, futures);
         } catch (Exception e) {
             throw DbException.convert(e);
         }
@@ -182,13 +194,50 @@ public class P2PRouter implements Router {
         return updateCount;
     }
 
-    private static void createInsertOrMergeCallable(InsertOrMerge iom, //
-            List<Callable<Integer>> commands, Map<InetAddress, List<Row>> rows) throws Exception {
+    private static void executeInsertOrMergeAsync(InsertOrMerge iom, //
+            List<Future<Integer>> futures, Map<InetAddress, List<Row>> rows) throws Exception {
         if (rows != null) {
             for (Map.Entry<InetAddress, List<Row>> e : rows.entrySet()) {
-                commands.add(createUpdateCallable(e.getKey(), (Prepared) iom, iom.getPlanSQL(e.getValue())));
+                List<Value[]> rowValues = getRowValues(iom, e.getValue());
+                if (rowValues == null) {
+                    futures.add(executeUpdateAsync(e.getKey(), (Prepared) iom, iom.getPlanSQL(e.getValue())));
+                } else {
+                    futures.add(executeUpdateRowsAsync(e.getKey(), iom, rowValues));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the values of the inserted columns of each row, or null if the rows
+     * can not be sent as values and the SQL statement has to be sent instead.
+     */
+    private static List<Value[]> getRowValues(InsertOrMerge iom, List<Row> rows) {
+        Column[] columns = iom.getColumns();
+        if (columns.length == 0)
+            return null;
+        List<Value[]> rowValues = New.arrayList(rows.size());
+        for (Row row : rows) {
+            Value[] values = new Value[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                Value v = row.getValue(columns[i].getColumnId());
+                //DEFAULT只能通过SQL传递
+                if (v == null)
+                    return null;
+                values[i] = v;
             }
+            rowValues.add(values);
         }
+        return rowValues;
+    }
+
+    private static Future<Integer> executeUpdateRowsAsync(InetAddress endpoint, InsertOrMerge iom,
+            List<Value[]> rowValues) throws Exception {
+        Session session = ((Prepared) iom).getSession();
+        FrontendSession fs = FrontendSessionPool.getFrontendSession(session, session.getURL(endpoint));
+        //各节点只需解析一次，之后只传递行的值
+        FrontendCommand c = fs.getCachedCommand(iom.getTemplateSQL());
+        return c.executeUpdateAsync(rowValues);
     }
 
     @Override
@@ -211,32 +260,33 @@ public class P2PRouter implements Router {
     private int executeUpdateOrDelete(TableFilter tableFilter, Prepared p) {
         List<InetAddress> targetEndpoints = getTargetEndpointsIfEqual(tableFilter);
         if (targetEndpoints != null) {
-            List<Callable<Integer>> commands = New.arrayList(targetEndpoints.size());
-
+            List<Future<Integer>> futures = New.arrayList(targetEndpoints.size());
+            Callable<Integer> localUpdate = null;
             try {
                 for (InetAddress endpoint : targetEndpoints) {
                     if (endpoint.equals(Utils.getBroadcastAddress())) {
-                        commands.add((Callable<Integer>) p);
+                        localUpdate = (Callable<Integer>) p;
                     } else {
-                        commands.add(createUpdateCallable(endpoint, p));
+                        futures.add(executeUpdateAsync(endpoint, p, p.getSQL()));
                     }
                 }
-                return CommandParallel.executeUpdateCallable(commands);
+                return CommandParallel.executeUpdate(localUpdate, futures);
             } catch (Exception e) {
                 throw DbException.convert(e);
             }
         } else {
-            Set<InetAddress> liveMembers = Gossiper.instance.getLiveMembers();
-            List<Callable<Integer>> commands = New.arrayList(liveMembers.size());
+            Set<InetAddress> liveMembers = getLiveOwners(tableFilter);
+            List<Future<Integer>> futures = New.arrayList(liveMembers.size());
+            Callable<Integer> localUpdate = null;
             try {
                 for (InetAddress endpoint : liveMembers) {
                     if (endpoint.equals(Utils.getBroadcastAddress())) {
-                        commands.add((Callable<Integer>) p);
+                        localUpdate = (Callable<Integer>) p;
                     } else {
-                        commands.add(createUpdateCallable(endpoint, p, p.getSQL()));
+                        futures.add(executeUpdateAsync(endpoint, p, p.getSQL()));
                     }
                 }
-                return CommandParallel.executeUpdateCallable(commands);
+                return CommandParallel.executeUpdate(localUpdate, futures);
             } catch (Exception e) {
                 throw DbException.convert(e);
             }
@@ -245,68 +295,62 @@ public class P2PRouter implements Router {
 
     @Override
     public ResultInterface executeSelect(Select select, int maxRows, boolean scrollable) {
+        Session session = select.getSession();
+        if (session.getShuffleId() != null) {
+            //本节点只执行shuffle join的一部分
+            String shuffleId = session.getShuffleId();
+            String[] nodes = session.getShuffleNodes();
+            session.setShuffle(null, null);
+            return ShuffleJoin.executePart(session, select.getSQL(), select.getParameters(), maxRows, shuffleId,
+                    nodes);
+        }
         if (select.isLocal())
             return select.queryLocal(maxRows);
 
+        //两个表的行不在相同的节点上时，先按连接键重新分区再在各节点上连接
+        ShuffleJoin shuffleJoin = ShuffleJoin.get(select);
+        if (shuffleJoin != null) {
+            try {
+                return shuffleJoin.execute(maxRows);
+            } catch (Exception e) {
+                throw DbException.convert(e);
+            }
+        }
+
         List<InetAddress> targetEndpoints = getTargetEndpointsIfEqual(select.getTopTableFilter());
         if (targetEndpoints != null) {
             boolean isLocal = targetEndpoints.contains(Utils.getBroadcastAddress());
             if (isLocal)
                 return select.call();
 
-            int size = targetEndpoints.size();
-            InetAddress endpoint;
-            if (size == 1)
-                endpoint = targetEndpoints.get(0);
-            else
-                endpoint = targetEndpoints.get(random.nextInt(size));
-
-            try {
-                return createFrontendCommand(endpoint, select).executeQuery(maxRows, scrollable);
-            } catch (Exception e) {
-                throw DbException.convert(e);
-            }
+            List<InetAddress> replicas = ReplicaSelect.sortByProximity(targetEndpoints);
+            return new ReplicaSelect(select, maxRows, scrollable).execute(replicas);
         } else {
             //TODO 处理有多副本的情况
-            Set<InetAddress> liveMembers = Gossiper.instance.getLiveMembers();
+            Set<InetAddress> liveMembers = getLiveOwners(select.getTopTableFilter());
 
             try {
                 if (!select.isGroupQuery() && select.getSortOrder() == null) {
                     List<CommandInterface> commands = New.arrayList(liveMembers.size());
 
                     //在本地节点执行
-                    liveMembers.remove(Utils.getBroadcastAddress());
                     String sql = getSelectPlanSQL(select);
-                    Prepared p = select.getSession().prepare(sql, true);
-                    p.setLocal(true);
-                    p.setFetchSize(select.getFetchSize());
-                    commands.add(new CommandWrapper(p));
+                    if (liveMembers.remove(Utils.getBroadcastAddress())) {
+                        Prepared p = select.getSession().prepare(sql, true);
+                        p.setLocal(true);
+                        p.setFetchSize(select.getFetchSize());
+                        commands.add(new CommandWrapper(p));
+                    }
 
                     for (InetAddress endpoint : liveMembers) {
                         commands.add(createFrontendCommand(endpoint, select, sql));
                     }
 
                     return new SerializedResult(commands, maxRows, scrollable, select);
+                } else if (!select.isGroupQuery()) {
+                    return createSortedResult(select, liveMembers, maxRows);
                 } else {
-                    List<Callable<ResultInterface>> commands = New.arrayList(liveMembers.size());
-                    for (InetAddress endpoint : liveMembers) {
-                        if (endpoint.equals(Utils.getBroadcastAddress())) {
-                            commands.add(select);
-                        } else {
-                            commands.add(createSelectCallable(endpoint, select, maxRows, scrollable));
-                        }
-                    }
-
-                    List<ResultInterface> results = CommandParallel.executeSelectCallable(commands);
-
-                    if (!select.isGroupQuery() && select.getSortOrder() != null)
-                        return new SortedResult(maxRows, select.getSession(), select, results);
-
-                    String newSQL = select.getPlanSQL(true);
-                    Select newSelect = (Select) select.getSession().prepare(newSQL, true);
-                    newSelect.setLocal(true);
-
-                    return new MergedResult(results, newSelect, select);
+                    return createMergedResult(select, liveMembers);
                 }
 
             } catch (Exception e) {
@@ -315,6 +359,22 @@ public class P2PRouter implements Router {
         }
     }
 
+    private static ResultInterface createMergedResult(Select select, Set<InetAddress> liveMembers) throws Exception {
+        //各节点只返回每个分组的部分聚合值，合并语句随select一起缓存
+        String sql = select.getPartSQL();
+        List<Future<ResultInterface>> futures = New.arrayList(liveMembers.size());
+        boolean isLocal = liveMembers.remove(Utils.getBroadcastAddress());
+        for (InetAddress endpoint : liveMembers) {
+            futures.add(createFrontendCommand(endpoint, select, sql).executeQueryAsync(0, false));
+        }
+        if (isLocal) {
+            List<Callable<ResultInterface>> commands = New.arrayList(1);
+            commands.add(select.getPartSelect());
+            futures.addAll(0, CommandParallel.submitSelectCallable(commands));
+        }
+        return select.sortAndLimit(new MergedResult(futures, select));
+    }
+
     private static String getSelectPlanSQL(Select select) {
         if (select.isGroupQuery() || select.getLimit() != null)
             return select.getPlanSQL(true);
@@ -322,18 +382,39 @@ public class P2PRouter implements Router {
             return select.getSQL();
     }
 
-    private static Callable<ResultInterface> createSelectCallable(InetAddress endpoint, Select select,
-            final int maxRows, final boolean scrollable) throws Exception {
-        final FrontendCommand c = createFrontendCommand(endpoint, select, getSelectPlanSQL(select));
-
-        Callable<ResultInterface> call = new Callable<ResultInterface>() {
-            @Override
-            public ResultInterface call() throws Exception {
-                return c.executeQuery(maxRows, scrollable);
-            }
-        };
-
-        return call;
+    private static ResultInterface createSortedResult(Select select, Set<InetAddress> liveMembers, int maxRows)
+            throws Exception {
+        Session session = select.getSession();
+        //每个节点最多只需返回LIMIT + OFFSET行，第一批也只取这么多行
+        int nodeLimit = SortedResult.getNodeLimit(maxRows, session, select);
+        int fetchSize = select.getFetchSize();
+        if (nodeLimit >= 0)
+            fetchSize = Math.max(1, Math.min(fetchSize, nodeLimit));
+        final int nodeMaxRows = Math.max(0, nodeLimit);
+
+        //OFFSET由SortedResult处理，所以各节点不能带OFFSET
+        String sql = select.getPlanSQL(true);
+        List<Future<ResultInterface>> futures = New.arrayList(liveMembers.size());
+        //其他节点的查询直接发出去，只有本地节点的查询才需要线程池
+        if (liveMembers.remove(Utils.getBroadcastAddress())) {
+            Prepared p = session.prepare(sql, true);
+            p.setLocal(true);
+            final CommandInterface c = new CommandWrapper(p);
+            List<Callable<ResultInterface>> commands = New.arrayList(1);
+            commands.add(new Callable<ResultInterface>() {
+                @Override
+                public ResultInterface call() throws Exception {
+                    return c.executeQuery(nodeMaxRows, false);
+                }
+            });
+            futures.addAll(CommandParallel.submitSelectCallable(commands));
+        }
+        for (InetAddress endpoint : liveMembers) {
+            FrontendCommand c = FrontendSessionPool.getFrontendCommand(session, select, session.getURL(endpoint), sql,
+                    fetchSize);
+            futures.add(c.executeQueryAsync(nodeMaxRows, false));
+        }
+        return new SortedResult(maxRows, session, select, futures);
     }
 
     private static Value getPartitionKey(SearchRow row) {
@@ -363,25 +444,136 @@ public class P2PRouter implements Router {
         return null;
     }
 
-    private static Callable<Integer> createUpdateCallable(InetAddress endpoint, Prepared p) throws Exception {
-        return createUpdateCallable(endpoint, p, p.getSQL());
+    /**
+     * Get the live nodes that may have rows selected by the given table
+     * filter. If the index conditions of the filter restrict the row key to
+     * an IN list, or to a range when the partitioner preserves the order of
+     * the keys, these are only the replicas of the keys or of the token
+     * ranges. Otherwise these are all live nodes. The set is never empty.
+     *
+     * @param tableFilter the table filter
+     * @return the nodes
+     */
+    private static Set<InetAddress> getLiveOwners(TableFilter tableFilter) {
+        return getLiveOwners(tableFilter, Gossiper.instance.getLiveMembers());
     }
 
-    private static Callable<Integer> createUpdateCallable(InetAddress endpoint, Prepared p, String sql)
-            throws Exception {
-        final FrontendCommand c = createFrontendCommand(endpoint, p, sql);
-        Callable<Integer> call = new Callable<Integer>() {
-            @Override
-            public Integer call() throws Exception {
-                return c.executeUpdate();
+    @VisibleForTesting
+    static Set<InetAddress> getLiveOwners(TableFilter tableFilter, Set<InetAddress> liveMembers) {
+        Set<InetAddress> owners = getTargetEndpointsIfInList(tableFilter);
+        if (owners == null) {
+            owners = getTargetEndpointsIfRange(tableFilter);
+        }
+        if (owners != null) {
+            liveMembers.retainAll(owners);
+            if (liveMembers.isEmpty()) {
+                // no live node has the rows, let the local node return the empty result
+                liveMembers.add(Utils.getBroadcastAddress());
             }
-        };
+        }
+        return liveMembers;
+    }
+
+    @VisibleForTesting
+    static Set<InetAddress> getTargetEndpointsIfInList(TableFilter tableFilter) {
+        for (IndexCondition cond : tableFilter.getIndexConditions()) {
+            if (cond.getCompareType() == Comparison.IN_LIST && cond.getColumn().isRowKeyColumn()) {
+                String keyspaceName = tableFilter.getTable().getSchema().getName();
+                Set<InetAddress> endpoints = New.hashSet();
+                for (Value v : cond.getCurrentValueList(tableFilter.getSession())) {
+                    if (v != ValueNull.INSTANCE) {
+                        addEndpoints(endpoints, keyspaceName, getToken(v));
+                    }
+                }
+                return endpoints;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the replicas of the token ranges between the start and the end row
+     * key, for partitioners that preserve the order. Only non-negative
+     * integer keys are supported, because their big-endian bytes (see
+     * Value.getBytesNoCopy) have the same order as the numbers.
+     */
+    @VisibleForTesting
+    static Set<InetAddress> getTargetEndpointsIfRange(TableFilter tableFilter) {
+        if (!StorageService.getPartitioner().preservesOrder()) {
+            return null;
+        }
+        Value start = getPartitionKey(tableFilter.getStartSearchRow());
+        Value end = getPartitionKey(tableFilter.getEndSearchRow());
+        if (!isOrderPreserving(start)) {
+            return null;
+        }
+        if (end == null) {
+            end = getMaxValue(start.getType());
+        } else if (!isOrderPreserving(end) || end.getType() != start.getType()) {
+            return null;
+        }
+        ArrayList<Token> ring = StorageService.instance.getTokenMetaData().sortedTokens();
+        if (ring.isEmpty()) {
+            return null;
+        }
+        // the range that ends with ring token i contains the tokens after
+        // token i - 1, the range of the first token also contains the tokens
+        // after the last one
+        Token startToken = getToken(start), endToken = getToken(end);
+        Token last = ring.get(ring.size() - 1);
+        int first = TokenMetaData.firstTokenIndex(ring, startToken, false);
+        int stop = TokenMetaData.firstTokenIndex(ring, endToken, false);
+        if (endToken.compareTo(last) > 0 && startToken.compareTo(last) <= 0) {
+            // the first range is reached after the last one
+            stop = ring.size();
+        }
+        String keyspaceName = tableFilter.getTable().getSchema().getName();
+        Set<InetAddress> endpoints = New.hashSet();
+        for (int i = first; i <= stop; i++) {
+            addEndpoints(endpoints, keyspaceName, ring.get(i % ring.size()));
+        }
+        return endpoints;
+    }
+
+    private static boolean isOrderPreserving(Value v) {
+        if (v == null) {
+            return false;
+        }
+        switch (v.getType()) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            return v.getLong() >= 0;
+        default:
+            return false;
+        }
+    }
+
+    private static Value getMaxValue(int type) {
+        switch (type) {
+        case Value.BYTE:
+            return ValueByte.get(Byte.MAX_VALUE);
+        case Value.SHORT:
+            return ValueShort.get(Short.MAX_VALUE);
+        case Value.INT:
+            return ValueInt.get(Integer.MAX_VALUE);
+        default:
+            return ValueLong.get(Long.MAX_VALUE);
+        }
+    }
+
+    private static Token getToken(Value partitionKey) {
+        return StorageService.getPartitioner().getToken(ByteBuffer.wrap(partitionKey.getBytesNoCopy()));
+    }
 
-        return call;
+    private static void addEndpoints(Set<InetAddress> endpoints, String keyspaceName, Token tk) {
+        endpoints.addAll(StorageService.instance.getNaturalEndpoints(keyspaceName, tk));
+        endpoints.addAll(StorageService.instance.getTokenMetaData().pendingEndpointsFor(tk, keyspaceName));
     }
 
-    private static FrontendCommand createFrontendCommand(InetAddress endpoint, Prepared p) throws Exception {
-        return FrontendSessionPool.getFrontendCommand(p.getSession(), p, p.getSession().getURL(endpoint), p.getSQL());
+    private static Future<Integer> executeUpdateAsync(InetAddress endpoint, Prepared p, String sql) throws Exception {
+        return createFrontendCommand(endpoint, p, sql).executeUpdateAsync(null);
     }
 
     private static FrontendCommand createFrontendCommand(InetAddress endpoint, Prepared p, String sql) throws Exception {
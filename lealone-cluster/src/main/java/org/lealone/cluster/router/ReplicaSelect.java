@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.cluster.router;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.lealone.api.ErrorCode;
+import org.lealone.cluster.config.DatabaseDescriptor;
+import org.lealone.cluster.gms.FailureDetector;
+import org.lealone.cluster.locator.DynamicEndpointSnitch;
+import org.lealone.cluster.locator.IEndpointSnitch;
+import org.lealone.cluster.net.MessagingService;
+import org.lealone.cluster.utils.Utils;
+import org.lealone.command.FrontendCommand;
+import org.lealone.command.dml.Select;
+import org.lealone.command.router.CommandParallel;
+import org.lealone.command.router.FrontendSessionPool;
+import org.lealone.engine.FrontendSession;
+import org.lealone.engine.Session;
+import org.lealone.message.DbException;
+import org.lealone.result.ResultInterface;
+import org.lealone.util.New;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Runs a query whose rows all belong to one row key on one of the replicas of
+ * the key. The replica that the snitch puts first is asked first. If it does
+ * not answer within its p99 latency, the next replica is asked too and the
+ * result that arrives first is used. A replica that fails counts as a miss,
+ * and the next replica is asked, until none is left.
+ */
+class ReplicaSelect {
+    private static final double RETRY_QUANTILE = 0.99;
+
+    private final Select select;
+    private final int maxRows;
+    private final boolean scrollable;
+    private final LinkedBlockingQueue<Task> doneTasks = new LinkedBlockingQueue<>();
+    private Task winner;
+
+    ReplicaSelect(Select select, int maxRows, boolean scrollable) {
+        this.select = select;
+        this.maxRows = maxRows;
+        this.scrollable = scrollable;
+    }
+
+    /**
+     * Sort the replicas by proximity, the live ones first.
+     *
+     * @param replicas the replicas
+     * @return the sorted replicas
+     */
+    static List<InetAddress> sortByProximity(List<InetAddress> replicas) {
+        List<InetAddress> live = New.arrayList(replicas.size());
+        List<InetAddress> dead = New.arrayList(replicas.size());
+        for (InetAddress endpoint : replicas) {
+            if (FailureDetector.instance.isAlive(endpoint))
+                live.add(endpoint);
+            else
+                dead.add(endpoint);
+        }
+        IEndpointSnitch snitch = DatabaseDescriptor.getEndpointSnitch();
+        snitch.sortByProximity(Utils.getBroadcastAddress(), live);
+        live.addAll(dead);
+        return live;
+    }
+
+    /**
+     * Run the query on the first replica, on the second one if the first one
+     * is slow, and on the next ones if they fail.
+     *
+     * @param replicas the replicas, sorted by proximity
+     * @return the result
+     * @throws DbException the error of the last replica if all of them failed
+     */
+    ResultInterface execute(List<InetAddress> replicas) {
+        int speculative = Math.min(2, replicas.size());
+        int started = 0;
+        int running = 0;
+        long retryDelay = getRetryDelay(replicas.get(0));
+        DbException error = null;
+        try {
+            start(replicas.get(started++));
+            running++;
+            while (running > 0) {
+                Task task;
+                if (started < speculative && retryDelay > 0)
+                    task = doneTasks.poll(retryDelay, TimeUnit.MILLISECONDS);
+                else
+                    task = doneTasks.take();
+
+                if (task == null) {
+                    start(replicas.get(started++));
+                    running++;
+                    continue;
+                }
+                running--;
+                if (task == winner)
+                    return task.get();
+
+                DbException e = task.getError();
+                if (e == null) {
+                    // a faster replica answered, its task is still to come
+                    continue;
+                }
+                // a miss, ask the next replica
+                error = e;
+                if (started < replicas.size()) {
+                    start(replicas.get(started++));
+                    running++;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw DbException.convert(e.getCause());
+        } catch (Exception e) {
+            throw DbException.convert(e);
+        }
+        throw error;
+    }
+
+    private void start(InetAddress endpoint) throws Exception {
+        Task task = new Task(endpoint, createQuery(endpoint));
+        // a thread of the pool does not wait for the other threads of the pool
+        if (CommandParallel.isPoolThread() || !CommandParallel.execute(task)) {
+            task.run();
+        }
+    }
+
+    /**
+     * Create the query that runs on the given replica.
+     *
+     * @param endpoint the replica
+     * @return the query
+     */
+    @VisibleForTesting
+    Callable<ResultInterface> createQuery(final InetAddress endpoint) throws Exception {
+        Session session = select.getSession();
+        // the sessions of the nodes are only looked up and added by the caller
+        final FrontendSession fs = FrontendSessionPool.getFrontendSession(session, session.getURL(endpoint));
+        return new Callable<ResultInterface>() {
+            @Override
+            public ResultInterface call() throws Exception {
+                long start = System.currentTimeMillis();
+                FrontendCommand c = FrontendSessionPool.getFrontendCommand(fs, select.getSQL(),
+                        select.getParameters(), select.getFetchSize());
+                ResultInterface result = c.executeQuery(maxRows, scrollable);
+                MessagingService.instance().addLatency(endpoint, System.currentTimeMillis() - start);
+                return result;
+            }
+        };
+    }
+
+    private static long getRetryDelay(InetAddress endpoint) {
+        if (!DatabaseDescriptor.isSpeculativeReadRetry())
+            return -1;
+        IEndpointSnitch snitch = DatabaseDescriptor.getEndpointSnitch();
+        if (!(snitch instanceof DynamicEndpointSnitch))
+            return -1;
+        return (long) Math.ceil(((DynamicEndpointSnitch) snitch).getLatency(endpoint, RETRY_QUANTILE));
+    }
+
+    private synchronized boolean setWinner(Task task) {
+        if (winner != null)
+            return false;
+        winner = task;
+        return true;
+    }
+
+    private class Task extends FutureTask<ResultInterface> {
+        private final InetAddress endpoint;
+
+        Task(InetAddress endpoint, Callable<ResultInterface> callable) {
+            super(callable);
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * Get the reason why this task did not win.
+         *
+         * @return the error, or null if a faster replica answered
+         */
+        DbException getError() {
+            try {
+                if (get() != null)
+                    return null;
+            } catch (ExecutionException e) {
+                return DbException.convert(e.getCause());
+            } catch (Exception e) {
+                return DbException.convert(e);
+            }
+            return DbException.get(ErrorCode.CONNECTION_BROKEN_1, endpoint.getHostAddress());
+        }
+
+        @Override
+        protected void done() {
+            ResultInterface result = null;
+            try {
+                result = get();
+            } catch (Exception e) {
+                // failed, the caller decides whether to ask another replica
+            }
+            if (result != null && !setWinner(this)) {
+                // a faster replica already answered
+                result.close();
+            }
+            doneTasks.add(this);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.cluster.router;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.lealone.api.ErrorCode;
+import org.lealone.cluster.concurrent.ScheduledExecutors;
+import org.lealone.cluster.config.DatabaseDescriptor;
+import org.lealone.message.DbException;
+import org.lealone.util.New;
+import org.lealone.value.Value;
+
+/**
+ * The rows a node received for its partition of a shuffle join. The rows of
+ * both tables are buffered until all nodes have sent their last batch.
+ */
+class ShuffleBuffer {
+    private static final ConcurrentHashMap<String, ShuffleBuffer> buffers = new ConcurrentHashMap<>();
+
+    static {
+        // the buffers of failed joins are removed even if no other join starts
+        Runnable removeExpired = new Runnable() {
+            @Override
+            public void run() {
+                removeExpired();
+            }
+        };
+        long interval = DatabaseDescriptor.getRpcTimeout();
+        ScheduledExecutors.scheduledTasks.scheduleWithFixedDelay(removeExpired, interval, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private final ArrayList<ArrayList<Value[]>> sides = New.arrayList(2);
+    /**
+     * The number of batches received from each node for each side, followed
+     * by the number of batches the node sent, or -1 if not known yet.
+     */
+    private final HashMap<InetAddress, int[]> batches = New.hashMap();
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    private ShuffleBuffer() {
+        sides.add(new ArrayList<Value[]>());
+        sides.add(new ArrayList<Value[]>());
+    }
+
+    /**
+     * Get the buffer of the given shuffle join. The rows of other nodes may
+     * arrive before the local part of the join starts, so the buffer is
+     * created by whichever comes first.
+     *
+     * @param shuffleId the id of the shuffle join
+     * @return the buffer
+     */
+    static ShuffleBuffer get(String shuffleId) {
+        ShuffleBuffer buffer = buffers.get(shuffleId);
+        if (buffer == null) {
+            buffer = new ShuffleBuffer();
+            ShuffleBuffer old = buffers.putIfAbsent(shuffleId, buffer);
+            if (old != null)
+                buffer = old;
+        }
+        return buffer;
+    }
+
+    static void remove(String shuffleId) {
+        buffers.remove(shuffleId);
+    }
+
+    /**
+     * Remove the buffers of joins that failed, and of rows that arrived after
+     * the join gave up waiting for them.
+     */
+    private static void removeExpired() {
+        long expired = System.currentTimeMillis() - 2 * DatabaseDescriptor.getRpcTimeout();
+        for (Iterator<Map.Entry<String, ShuffleBuffer>> it = buffers.entrySet().iterator(); it.hasNext();) {
+            if (it.next().getValue().lastAccess < expired)
+                it.remove();
+        }
+    }
+
+    synchronized void add(InetAddress from, ShuffleRows shuffleRows) {
+        sides.get(shuffleRows.side).addAll(shuffleRows.rows);
+        int[] count = batches.get(from);
+        if (count == null) {
+            count = new int[] { 0, 0, -1, -1 };
+            batches.put(from, count);
+        }
+        count[shuffleRows.side]++;
+        if (shuffleRows.batchCount >= 0)
+            count[2 + shuffleRows.side] = shuffleRows.batchCount;
+        lastAccess = System.currentTimeMillis();
+        notifyAll();
+    }
+
+    /**
+     * Wait until all nodes have sent all rows of both tables. The timeout
+     * starts again whenever a batch arrives, so a large join does not time
+     * out as long as the rows keep coming.
+     *
+     * @param shuffleId the id of the shuffle join
+     * @param nodeCount the number of nodes that send rows
+     * @param timeout the timeout in milliseconds
+     */
+    synchronized void await(String shuffleId, int nodeCount, long timeout) {
+        while (!isComplete(nodeCount)) {
+            long wait = lastAccess + timeout - System.currentTimeMillis();
+            if (wait <= 0)
+                throw DbException.get(ErrorCode.CONNECTION_BROKEN_1, "shuffle join " + shuffleId + " timed out");
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                throw DbException.convert(e);
+            }
+        }
+    }
+
+    private boolean isComplete(int nodeCount) {
+        if (batches.size() < nodeCount)
+            return false;
+        for (int[] count : batches.values()) {
+            if (count[0] != count[2] || count[1] != count[3])
+                return false;
+        }
+        return true;
+    }
+
+    ArrayList<Value[]> getRows(int side) {
+        return sides.get(side);
+    }
+}
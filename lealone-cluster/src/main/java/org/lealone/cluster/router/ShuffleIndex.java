@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.cluster.router;
+
+import java.util.ArrayList;
+
+import org.lealone.dbobject.index.Cursor;
+import org.lealone.dbobject.index.IndexBase;
+import org.lealone.dbobject.index.IndexType;
+import org.lealone.dbobject.table.IndexColumn;
+import org.lealone.dbobject.table.Table;
+import org.lealone.dbobject.table.TableFilter;
+import org.lealone.engine.Session;
+import org.lealone.message.DbException;
+import org.lealone.result.Row;
+import org.lealone.result.SearchRow;
+import org.lealone.result.SortOrder;
+import org.lealone.value.Value;
+
+/**
+ * An index over the rows of a table that a node received for its partition
+ * of a shuffle join. The rows can only be scanned in full.
+ */
+class ShuffleIndex extends IndexBase {
+    private final ArrayList<Value[]> rows;
+
+    ShuffleIndex(ArrayList<Value[]> rows, Table table) {
+        super();
+        this.rows = rows;
+        initIndexBase(table, -1, table.getName() + "_SHUFFLE", new IndexColumn[0], IndexType.createScan(false));
+    }
+
+    @Override
+    public Cursor find(TableFilter filter, SearchRow first, SearchRow last) {
+        return new ShuffleCursor(rows);
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        return new ShuffleCursor(rows);
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.throwInternalError();
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.throwInternalError();
+    }
+
+    @Override
+    public void close(Session session) {
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
+        return rows.size();
+    }
+
+    @Override
+    public void remove(Session session) {
+    }
+
+    @Override
+    public void truncate(Session session) {
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        return null;
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return rows.size();
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return rows.size();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+    @Override
+    public void checkRename() {
+    }
+
+    private static class ShuffleCursor implements Cursor {
+        private final ArrayList<Value[]> rows;
+        private int index = -1;
+
+        ShuffleCursor(ArrayList<Value[]> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Row get() {
+            return new Row(rows.get(index), -1);
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return get();
+        }
+
+        @Override
+        public boolean next() {
+            return ++index < rows.size();
+        }
+
+        @Override
+        public boolean previous() {
+            return false;
+        }
+    }
+}
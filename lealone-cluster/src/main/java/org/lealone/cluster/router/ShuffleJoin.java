@@ -0,0 +1,552 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.cluster.router;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.lealone.cluster.config.DatabaseDescriptor;
+import org.lealone.cluster.db.Keyspace;
+import org.lealone.cluster.dht.Token;
+import org.lealone.cluster.gms.Gossiper;
+import org.lealone.cluster.net.MessageOut;
+import org.lealone.cluster.net.MessagingService;
+import org.lealone.cluster.service.StorageService;
+import org.lealone.cluster.utils.Utils;
+import org.lealone.command.FrontendCommand;
+import org.lealone.command.Parser;
+import org.lealone.command.Prepared;
+import org.lealone.command.dml.Select;
+import org.lealone.command.router.FrontendSessionPool;
+import org.lealone.command.router.MergedResult;
+import org.lealone.command.router.SerializedResult;
+import org.lealone.command.router.SortedResult;
+import org.lealone.dbobject.index.Index;
+import org.lealone.dbobject.table.Column;
+import org.lealone.dbobject.table.Table;
+import org.lealone.dbobject.table.TableFilter;
+import org.lealone.engine.FrontendSession;
+import org.lealone.engine.Session;
+import org.lealone.expression.Comparison;
+import org.lealone.expression.ConditionAndOr;
+import org.lealone.expression.Expression;
+import org.lealone.expression.ExpressionColumn;
+import org.lealone.expression.ExpressionVisitor;
+import org.lealone.expression.Parameter;
+import org.lealone.message.DbException;
+import org.lealone.result.DelegatedResult;
+import org.lealone.result.ResultInterface;
+import org.lealone.util.New;
+import org.lealone.util.StatementBuilder;
+import org.lealone.value.CompareMode;
+import org.lealone.value.DataType;
+import org.lealone.value.Value;
+import org.lealone.value.ValueNull;
+
+/**
+ * A join of two tables whose rows are spread over all nodes. Each node scans
+ * its rows of both tables, partitions them by the hash of the join key and
+ * sends each partition to the node that owns it. Then each node joins the
+ * rows of its partition, and the coordinator merges the results of the
+ * nodes. If the tables are replicated, a row is only sent by the first of its
+ * replicas that takes part, so that it is joined once.
+ */
+class ShuffleJoin {
+    private static final int BATCH_ROWS = 1000;
+
+    private final Select select;
+    /**
+     * The table filters, ordered by alias, so that the side of a table is the
+     * same on all nodes even if they choose another join order.
+     */
+    private final TableFilter[] filters;
+    private final Column[] keys;
+    private final int keyType;
+
+    private ShuffleJoin(Select select, TableFilter[] filters, Column[] keys) {
+        this.select = select;
+        this.filters = filters;
+        this.keys = keys;
+        this.keyType = Value.getHigherOrder(keys[0].getType(), keys[1].getType());
+    }
+
+    /**
+     * Check if the given query is an inner join of two tables on an equality
+     * of columns whose rows need to be repartitioned to be joined.
+     *
+     * @param select the query
+     * @return the shuffle join, or null if it can not be used
+     */
+    static ShuffleJoin get(Select select) {
+        Session session = select.getSession();
+        if (select.isLocal() || select.isDistinct() || !session.isAutoCommit()) {
+            return null;
+        }
+        ShuffleJoin join = create(select);
+        if (join == null) {
+            return null;
+        }
+        Column k0 = join.keys[0], k1 = join.keys[1];
+        if (k0.isRowKeyColumn() && k1.isRowKeyColumn() && k0.getType() == k1.getType()
+                && k0.getTable().getSchema() == k1.getTable().getSchema()) {
+            // the rows with the same key are already on the same nodes
+            return null;
+        }
+        for (TableFilter f : join.filters) {
+            Table table = f.getTable();
+            if (getReplicationFactor(table) > 1 && getRowKeyColumnId(table) < 0) {
+                // the replicas of a row can not be told apart
+                return null;
+            }
+        }
+        return join;
+    }
+
+    private static int getReplicationFactor(Table table) {
+        return Keyspace.open(table.getSchema().getName()).getReplicationStrategy().getReplicationFactor();
+    }
+
+    private static int getRowKeyColumnId(Table table) {
+        for (Column c : table.getColumns()) {
+            if (c.isRowKeyColumn()) {
+                return c.getColumnId();
+            }
+        }
+        return -1;
+    }
+
+    private static ShuffleJoin create(Select select) {
+        TableFilter top = select.getTopTableFilter();
+        TableFilter join = top.getJoin();
+        if (join == null || join.getJoin() != null || top.getNestedJoin() != null || join.getNestedJoin() != null
+                || top.isJoinOuter() || join.isJoinOuter()) {
+            return null;
+        }
+        if (!isShuffleTable(top.getTable()) || !isShuffleTable(join.getTable())
+                || !CompareMode.OFF.equals(select.getSession().getDatabase().getCompareMode().getName())) {
+            return null;
+        }
+        TableFilter[] filters = { top, join };
+        if (top.getTableAlias().compareTo(join.getTableAlias()) > 0) {
+            filters = new TableFilter[] { join, top };
+        }
+        for (Expression e : getConjuncts(select)) {
+            if (!(e instanceof Comparison) || ((Comparison) e).getCompareType() != Comparison.EQUAL) {
+                continue;
+            }
+            Expression left = ((Comparison) e).getExpression(true);
+            Expression right = ((Comparison) e).getExpression(false);
+            if (!(left instanceof ExpressionColumn) || !(right instanceof ExpressionColumn)) {
+                continue;
+            }
+            ExpressionColumn c0 = (ExpressionColumn) left, c1 = (ExpressionColumn) right;
+            if (c0.getTableFilter() == filters[1] && c1.getTableFilter() == filters[0]) {
+                c0 = (ExpressionColumn) right;
+                c1 = (ExpressionColumn) left;
+            }
+            if (c0.getTableFilter() == filters[0] && c1.getTableFilter() == filters[1]
+                    && isKeyType(c0.getColumn().getType(), c1.getColumn().getType())) {
+                return new ShuffleJoin(select, filters, new Column[] { c0.getColumn(), c1.getColumn() });
+            }
+        }
+        return null;
+    }
+
+    private static boolean isShuffleTable(Table table) {
+        if (!Table.TABLE.equals(table.getTableType())) {
+            return false;
+        }
+        for (Column c : table.getColumns()) {
+            if (DataType.isLargeObject(c.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if equal keys of the given types have the same hash code once
+     * they are converted to the same type.
+     */
+    private static boolean isKeyType(int t1, int t2) {
+        if (isIntegerType(t1) && isIntegerType(t2)) {
+            return true;
+        }
+        if (t1 != t2) {
+            return false;
+        }
+        switch (t1) {
+        case Value.STRING:
+        case Value.STRING_IGNORECASE:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIMESTAMP:
+        case Value.UUID:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isIntegerType(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static ArrayList<Expression> getConjuncts(Select select) {
+        ArrayList<Expression> conjuncts = New.arrayList();
+        addConjuncts(select.getCondition(), conjuncts);
+        for (TableFilter f = select.getTopTableFilter(); f != null; f = f.getJoin()) {
+            addConjuncts(f.getJoinCondition(), conjuncts);
+        }
+        return conjuncts;
+    }
+
+    private static void addConjuncts(Expression e, ArrayList<Expression> conjuncts) {
+        if (e == null) {
+            return;
+        }
+        if (e instanceof ConditionAndOr && ((ConditionAndOr) e).getAndOrType() == ConditionAndOr.AND) {
+            addConjuncts(((ConditionAndOr) e).getExpression(true), conjuncts);
+            addConjuncts(((ConditionAndOr) e).getExpression(false), conjuncts);
+        } else {
+            conjuncts.add(e);
+        }
+    }
+
+    /**
+     * Run the join on all live nodes and merge their results.
+     *
+     * @param maxRows the maximum number of rows to return
+     * @return the result
+     */
+    ResultInterface execute(int maxRows) throws Exception {
+        final Session session = select.getSession();
+        final String shuffleId = UUID.randomUUID().toString();
+        List<InetAddress> members = New.arrayList(Gossiper.instance.getLiveMembers());
+        final String[] nodes = new String[members.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = members.get(i).getHostAddress();
+        }
+        //分组查询由各节点算出部分聚合值，其他查询各节点最多只需返回LIMIT + OFFSET行
+        boolean isGroupQuery = select.isGroupQuery();
+        final String sql = isGroupQuery ? select.getPartSQL() : select.getPlanSQL(true);
+        final int nodeMaxRows = isGroupQuery ? 0 : Math.max(0, SortedResult.getNodeLimit(maxRows, session, select));
+
+        List<Future<ResultInterface>> futures = New.arrayList(nodes.length);
+        boolean isLocal = false;
+        for (InetAddress endpoint : members) {
+            if (endpoint.equals(Utils.getBroadcastAddress())) {
+                isLocal = true;
+                continue;
+            }
+            // the part of the node waits for the rows of the other nodes, so it
+            // gets a connection of its own; on the connection of this session
+            // it would hold up the other requests of the session meanwhile
+            FrontendSession fs = FrontendSessionPool.getFrontendSession(session.getOriginalProperties(),
+                    session.getURL(endpoint));
+            try {
+                FrontendCommand c = FrontendSessionPool.getFrontendCommand(fs, sql, select.getParameters(),
+                        select.getFetchSize());
+                futures.add(new PartFuture(c.executeShuffleQueryAsync(shuffleId, nodes, nodeMaxRows), fs));
+            } catch (RuntimeException e) {
+                fs.close();
+                throw e;
+            }
+        }
+        if (isLocal) {
+            // the local part waits for the rows of the other nodes, so it runs
+            // in the caller's thread instead of blocking a thread of the pool
+            FutureTask<ResultInterface> local = new FutureTask<>(new Callable<ResultInterface>() {
+                @Override
+                public ResultInterface call() throws Exception {
+                    return executePart(session, sql, select.getParameters(), nodeMaxRows, shuffleId, nodes);
+                }
+            });
+            local.run();
+            futures.add(0, local);
+        }
+
+        if (isGroupQuery)
+            return select.sortAndLimit(new MergedResult(futures, select));
+        else if (select.getSortOrder() != null)
+            return new SortedResult(maxRows, session, select, futures);
+        else
+            return select.sortAndLimit(new SerializedResult(futures, select));
+    }
+
+    /**
+     * Run the part of a shuffle join of the local node: send the rows of both
+     * tables to the nodes that join them, wait for the rows of the local
+     * partition, and join them.
+     *
+     * @param session the session
+     * @param sql the query
+     * @param parameters the parameters of the query
+     * @param maxRows the maximum number of rows to return
+     * @param shuffleId the id of the shuffle join
+     * @param nodes the host addresses of the nodes that take part
+     * @return the joined rows of the local partition
+     */
+    static ResultInterface executePart(Session session, String sql, List<Parameter> parameters, int maxRows,
+            String shuffleId, String[] nodes) {
+        ShuffleBuffer buffer = ShuffleBuffer.get(shuffleId);
+        try {
+            Select part = (Select) prepare(session, sql, parameters);
+            ShuffleJoin join = create(part);
+            if (join == null) {
+                throw DbException.throwInternalError(sql);
+            }
+            InetAddress[] addresses = new InetAddress[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                addresses[i] = InetAddress.getByName(nodes[i]);
+            }
+            ArrayList<Expression> conjuncts = getConjuncts(part);
+            for (int side = 0; side < 2; side++) {
+                join.shuffle(shuffleId, side, addresses, conjuncts, buffer);
+            }
+            buffer.await(shuffleId, nodes.length, DatabaseDescriptor.getRpcTimeout());
+
+            Index[] indexes = new Index[2];
+            for (int side = 0; side < 2; side++) {
+                indexes[side] = new ShuffleIndex(buffer.getRows(side), join.filters[side].getTable());
+            }
+            part.setScanIndexes(join.filters, indexes);
+            return part.queryLocal(maxRows);
+        } catch (Exception e) {
+            throw DbException.convert(e);
+        } finally {
+            ShuffleBuffer.remove(shuffleId);
+        }
+    }
+
+    private static Prepared prepare(Session session, String sql, List<Parameter> parameters) {
+        Prepared p = session.prepare(sql, true);
+        p.setLocal(true);
+        ArrayList<Parameter> params = p.getParameters();
+        if (parameters != null && params != null) {
+            for (int i = 0, size = Math.min(parameters.size(), params.size()); i < size; i++) {
+                params.get(i).setValue(parameters.get(i).getParamValue());
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Read the local rows of one table and send them to the nodes that own
+     * the hash of their join key. Rows with a NULL key never match, so they
+     * are not sent. If the table is replicated, only the rows this node is the
+     * first replica of are sent.
+     */
+    private void shuffle(String shuffleId, int side, InetAddress[] nodes, ArrayList<Expression> conjuncts,
+            ShuffleBuffer buffer) {
+        Session session = select.getSession();
+        Table table = filters[side].getTable();
+        int rowKeyIndex = getReplicationFactor(table) > 1 ? getRowKeyColumnId(table) : -1;
+        String keyspaceName = table.getSchema().getName();
+        HashSet<InetAddress> members = new HashSet<>(Arrays.asList(nodes));
+        Prepared scan = prepare(session, getScanSQL(side, conjuncts), select.getParameters());
+        ResultInterface result = scan.query(0);
+        int keyIndex = keys[side].getColumnId();
+        int[] batchCounts = new int[nodes.length];
+        ArrayList<ArrayList<Value[]>> batches = New.arrayList(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            batches.add(new ArrayList<Value[]>());
+        }
+        try {
+            while (result.next()) {
+                Value[] row = result.currentRow();
+                Value key = row[keyIndex];
+                if (key == ValueNull.INSTANCE) {
+                    continue;
+                }
+                if (rowKeyIndex >= 0 && !isFirstReplica(keyspaceName, row[rowKeyIndex], members)) {
+                    continue;
+                }
+                int i = (key.convertTo(keyType).hashCode() & Integer.MAX_VALUE) % nodes.length;
+                ArrayList<Value[]> batch = batches.get(i);
+                batch.add(row);
+                if (batch.size() >= BATCH_ROWS) {
+                    batchCounts[i]++;
+                    send(new ShuffleRows(shuffleId, side, -1, batch), nodes[i], buffer);
+                    batches.set(i, new ArrayList<Value[]>());
+                }
+            }
+        } finally {
+            result.close();
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            send(new ShuffleRows(shuffleId, side, ++batchCounts[i], batches.get(i)), nodes[i], buffer);
+        }
+    }
+
+    /**
+     * Check if the local node is the first replica of the given row key among
+     * the nodes that take part in the join.
+     */
+    private static boolean isFirstReplica(String keyspaceName, Value rowKey, HashSet<InetAddress> nodes) {
+        Token tk = StorageService.getPartitioner().getToken(ByteBuffer.wrap(rowKey.getBytesNoCopy()));
+        for (InetAddress endpoint : StorageService.instance.getNaturalEndpoints(keyspaceName, tk)) {
+            if (nodes.contains(endpoint)) {
+                return endpoint.equals(Utils.getBroadcastAddress());
+            }
+        }
+        return false;
+    }
+
+    private static void send(ShuffleRows rows, InetAddress node, ShuffleBuffer buffer) {
+        InetAddress local = Utils.getBroadcastAddress();
+        if (node.equals(local)) {
+            buffer.add(local, rows);
+        } else {
+            MessageOut<ShuffleRows> message = new MessageOut<>(MessagingService.Verb.SHUFFLE_ROWS, rows,
+                    ShuffleRows.serializer);
+            MessagingService.instance().sendOneWay(message, node);
+        }
+    }
+
+    /**
+     * Get the query that reads all columns of one table. The conditions that
+     * only use this table are evaluated by the query, so that fewer rows are
+     * sent.
+     */
+    private String getScanSQL(int side, ArrayList<Expression> conjuncts) {
+        TableFilter f = filters[side];
+        ExpressionVisitor notFromOther = ExpressionVisitor.getNotFromResolverVisitor(filters[1 - side]);
+        StatementBuilder buff = new StatementBuilder("SELECT ");
+        for (Column c : f.getTable().getColumns()) {
+            buff.appendExceptFirst(", ");
+            buff.append(c.getSQL());
+        }
+        buff.append(" FROM ").append(f.getTable().getSQL()).append(' ');
+        buff.append(Parser.quoteIdentifier(f.getTableAlias()));
+        buff.resetCount();
+        for (Expression e : conjuncts) {
+            if (e.isEverything(notFromOther) && e.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)) {
+                buff.appendOnlyFirst(" WHERE ");
+                buff.appendExceptFirst(" AND ");
+                buff.append(e.getSQL());
+            }
+        }
+        return buff.toString();
+    }
+
+    /**
+     * The pending result of the part of another node. The connection it is
+     * read from is given back to the pool when the result is closed, or
+     * closed if the part failed.
+     */
+    private static class PartFuture implements Future<ResultInterface> {
+        private final Future<ResultInterface> future;
+        private final FrontendSession session;
+        private ResultInterface result;
+
+        PartFuture(Future<ResultInterface> future, FrontendSession session) {
+            this.future = future;
+            this.session = session;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (future.cancel(mayInterruptIfRunning)) {
+                // the response may still arrive on the connection
+                session.close();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        @Override
+        public synchronized ResultInterface get() throws InterruptedException, ExecutionException {
+            if (result == null) {
+                try {
+                    result = new PartResult(future.get(), session);
+                } catch (ExecutionException e) {
+                    session.close();
+                    throw e;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized ResultInterface get(long timeout, TimeUnit unit) throws InterruptedException,
+                ExecutionException, TimeoutException {
+            if (result == null) {
+                try {
+                    result = new PartResult(future.get(timeout, unit), session);
+                } catch (ExecutionException e) {
+                    session.close();
+                    throw e;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class PartResult extends DelegatedResult {
+        private final FrontendSession session;
+        private boolean closed;
+
+        PartResult(ResultInterface result, FrontendSession session) {
+            this.result = result;
+            this.session = session;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                result.close();
+            } finally {
+                FrontendSessionPool.release(session);
+            }
+        }
+    }
+}
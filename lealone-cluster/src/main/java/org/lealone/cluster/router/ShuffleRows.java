@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.cluster.router;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.lealone.cluster.db.TypeSizes;
+import org.lealone.cluster.io.DataOutputPlus;
+import org.lealone.cluster.io.IVersionedSerializer;
+import org.lealone.engine.Data;
+import org.lealone.util.New;
+import org.lealone.value.Value;
+
+/**
+ * A batch of rows of one table of a shuffle join, sent to the node that joins
+ * the rows with the given join keys.
+ */
+public class ShuffleRows {
+    public static final IVersionedSerializer<ShuffleRows> serializer = new ShuffleRowsSerializer();
+
+    final String shuffleId;
+    final int side;
+    /**
+     * The number of batches the sender sent for this side, including this
+     * one, if this is the last batch; otherwise -1.
+     */
+    final int batchCount;
+    final ArrayList<Value[]> rows;
+    private byte[] bytes;
+
+    public ShuffleRows(String shuffleId, int side, int batchCount, ArrayList<Value[]> rows) {
+        this.shuffleId = shuffleId;
+        this.side = side;
+        this.batchCount = batchCount;
+        this.rows = rows;
+    }
+
+    private int getColumnCount() {
+        return rows.isEmpty() ? 0 : rows.get(0).length;
+    }
+
+    private byte[] getBytes() {
+        if (bytes == null) {
+            Data data = Data.create(null, 1024);
+            for (Value[] row : rows) {
+                for (Value v : row) {
+                    data.checkCapacity(Data.getValueLen(v, null));
+                    data.writeValue(v);
+                }
+            }
+            bytes = Arrays.copyOf(data.getBytes(), data.length());
+        }
+        return bytes;
+    }
+
+    private static class ShuffleRowsSerializer implements IVersionedSerializer<ShuffleRows> {
+        @Override
+        public void serialize(ShuffleRows shuffleRows, DataOutputPlus out, int version) throws IOException {
+            out.writeUTF(shuffleRows.shuffleId);
+            out.writeInt(shuffleRows.side);
+            out.writeInt(shuffleRows.batchCount);
+            out.writeInt(shuffleRows.rows.size());
+            out.writeInt(shuffleRows.getColumnCount());
+            byte[] bytes = shuffleRows.getBytes();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public ShuffleRows deserialize(DataInput in, int version) throws IOException {
+            String shuffleId = in.readUTF();
+            int side = in.readInt();
+            int batchCount = in.readInt();
+            int rowCount = in.readInt();
+            int columnCount = in.readInt();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            Data data = Data.create(null, bytes);
+            ArrayList<Value[]> rows = New.arrayList(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                Value[] row = new Value[columnCount];
+                for (int j = 0; j < columnCount; j++) {
+                    row[j] = data.readValue();
+                }
+                rows.add(row);
+            }
+            return new ShuffleRows(shuffleId, side, batchCount, rows);
+        }
+
+        @Override
+        public long serializedSize(ShuffleRows shuffleRows, int version) {
+            long size = TypeSizes.NATIVE.sizeof(shuffleRows.shuffleId);
+            size += TypeSizes.NATIVE.sizeof(shuffleRows.side);
+            size += TypeSizes.NATIVE.sizeof(shuffleRows.batchCount);
+            size += TypeSizes.NATIVE.sizeof(shuffleRows.rows.size());
+            size += TypeSizes.NATIVE.sizeof(shuffleRows.getColumnCount());
+            int length = shuffleRows.getBytes().length;
+            size += TypeSizes.NATIVE.sizeof(length) + length;
+            return size;
+        }
+    }
+}
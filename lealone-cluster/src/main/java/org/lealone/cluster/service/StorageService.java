@@ -64,6 +64,7 @@ import org.lealone.cluster.locator.IEndpointSnitch;
 import org.lealone.cluster.locator.TokenMetaData;
 import org.lealone.cluster.net.MessagingService;
 import org.lealone.cluster.net.ResponseVerbHandler;
+import org.lealone.cluster.router.ShuffleRowsVerbHandler;
 import org.lealone.cluster.utils.BackgroundActivityMonitor;
 import org.lealone.cluster.utils.FileUtils;
 import org.lealone.cluster.utils.Pair;
@@ -145,6 +146,8 @@ public class StorageService implements IEndpointStateChangeSubscriber {
                 new GossipDigestAck2VerbHandler());
         MessagingService.instance().registerVerbHandlers(MessagingService.Verb.ECHO, //
                 new EchoVerbHandler());
+        MessagingService.instance().registerVerbHandlers(MessagingService.Verb.SHUFFLE_ROWS, //
+                new ShuffleRowsVerbHandler());
     }
 
     public synchronized void start() throws ConfigurationException {
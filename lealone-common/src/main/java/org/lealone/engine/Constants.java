@@ -60,6 +60,13 @@ public class Constants {
      */
     public static final int TCP_PROTOCOL_VERSION_1 = 1;
 
+    /**
+     * The TCP protocol version number 2.
+     * The response of a batch update contains the error of the first entry
+     * that failed.
+     */
+    public static final int TCP_PROTOCOL_VERSION_2 = 2;
+
     /**
      * The major version of this database.
      */
@@ -85,6 +85,21 @@ public class DbSettings extends SettingsBase {
      */
     public final int analyzeAuto = get("ANALYZE_AUTO", 2000);
 
+    /**
+     * Database setting <code>ANALYZE_COMMON_VALUES</code> (default: 16).<br />
+     * The maximum number of most common values ANALYZE keeps for each column,
+     * together with their frequency in the sample.
+     */
+    public final int analyzeCommonValues = get("ANALYZE_COMMON_VALUES", 16);
+
+    /**
+     * Database setting <code>ANALYZE_HISTOGRAM</code> (default: 32).<br />
+     * The number of buckets of the equi-depth histogram ANALYZE builds for
+     * each column. Column statistics (histograms, common values and the
+     * fraction of NULL values) are not built if set to 0.
+     */
+    public final int analyzeHistogram = get("ANALYZE_HISTOGRAM", 32);
+
     /**
      * Database setting <code>ANALYZE_SAMPLE</code> (default: 10000).<br />
      * The default sample size when analyzing a table.
@@ -265,6 +280,48 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean optimizeTwoEquals = get("OPTIMIZE_TWO_EQUALS", true);
 
+    /**
+     * Database setting <code>PARALLEL_NODE_PREFETCH_ROWS</code>
+     * (default: 256).<br />
+     * The number of rows that are fetched ahead from each node by a
+     * distributed query whose rows are not grouped or sorted.
+     */
+    public final int parallelNodePrefetchRows = get("PARALLEL_NODE_PREFETCH_ROWS", 256);
+
+    /**
+     * Database setting <code>PARALLEL_NODE_QUERIES</code> (default: 16).<br />
+     * The number of nodes that are queried at the same time by a distributed
+     * query whose rows are not grouped or sorted. Use 1 to query one node
+     * after the other.
+     */
+    public final int parallelNodeQueries = get("PARALLEL_NODE_QUERIES", 16);
+
+    /**
+     * Database setting <code>PARALLEL_QUERY_MIN_ROWS</code>
+     * (default: 100000).<br />
+     * The minimum number of rows of a table before a group query that scans
+     * it is split into parts that are run in parallel.
+     */
+    public final int parallelQueryMinRows = get("PARALLEL_QUERY_MIN_ROWS", 100000);
+
+    /**
+     * Database setting <code>PARALLEL_QUERY_THREADS</code>
+     * (default: the number of processors).<br />
+     * The number of parts a large group query is split into. Use 1 to
+     * disable parallel queries.
+     */
+    public final int parallelQueryThreads = get("PARALLEL_QUERY_THREADS", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Database setting <code>PLAN_CACHE_SIZE</code> (default: 256).<br />
+     * The size of the plan cache that is shared by all sessions, in number of
+     * statements. A statement that drops out of the query cache of a session
+     * after it was closed is kept here, so that another session of the same
+     * user can run it without parsing and optimizing it again. The shared
+     * plan cache is disabled if set to 0, or if QUERY_CACHE_SIZE is 0.
+     */
+    public final int planCacheSize = get("PLAN_CACHE_SIZE", 256);
+
     /**
      * Database setting <code>QUERY_CACHE_SIZE</code> (default: 8).<br />
      * The size of the query cache, in number of cached statements. Each session
@@ -282,6 +339,15 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean recompileAlways = get("RECOMPILE_ALWAYS", false);
 
+    /**
+     * Database setting <code>RESULT_CACHE_SIZE</code> (default: 0).<br />
+     * The size of the result cache that is shared by all sessions, in number
+     * of rows. Results of queries that only read tables are kept until one of
+     * the tables is changed, and are reused by queries with the same plan and
+     * parameter values. The result cache is disabled if set to 0.
+     */
+    public final int resultCacheSize = get("RESULT_CACHE_SIZE", 0);
+
     /**
      * Database setting <code>ROWID</code> (default: true).<br />
      * If set, each table has a pseudo-column _ROWID_.
@@ -129,6 +129,29 @@ public class SysProperties {
      */
     public static final int COLLATOR_CACHE_SIZE = getProperty("collator.cache.size", 32000);
 
+    /**
+     * System property <code>command.parallel.fan.out</code> (default: 16).<br />
+     * The maximum number of tasks of a single distributed command that are
+     * executed at the same time. The remaining tasks are started when one of
+     * them is done.
+     */
+    public static final int COMMAND_PARALLEL_FAN_OUT = Math.max(1, getProperty("command.parallel.fan.out", 16));
+
+    /**
+     * System property <code>command.parallel.max.threads</code> (default: 64).<br />
+     * The maximum number of threads that execute the tasks of distributed
+     * commands.
+     */
+    public static final int COMMAND_PARALLEL_MAX_THREADS = Math.max(1, getProperty("command.parallel.max.threads", 64));
+
+    /**
+     * System property <code>command.parallel.queue.size</code> (default: 1024).<br />
+     * The number of tasks of distributed commands that may wait for a thread.
+     * If the queue is full, the task is executed by the thread that submits
+     * it, if possible.
+     */
+    public static final int COMMAND_PARALLEL_QUEUE_SIZE = Math.max(1, getProperty("command.parallel.queue.size", 1024));
+
     /**
      * System property <code>datasource.trace.level</code> (default: 1).<br />
      * The trace level of the data source implementation. Default is 1 for
@@ -277,4 +277,11 @@ public interface StorageMap<K, V> {
 
     public Set<Map.Entry<K, V>> entrySet();
 
+    /**
+     * Get the disk space used by the map, or 0 if it is not known.
+     *
+     * @return the number of bytes
+     */
+    public long getDiskSpaceUsed();
+
 }
@@ -198,4 +198,11 @@ public interface TransactionMap<K, V> {
     public K lowerKey(K key);
 
     public int getMapId();
+
+    /**
+     * Get the disk space used by the map, or 0 if it is not known.
+     *
+     * @return the number of bytes
+     */
+    public long getDiskSpaceUsed();
 }
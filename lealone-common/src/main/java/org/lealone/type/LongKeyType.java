@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.type;
+
+/**
+ * A data type for keys that map to a long, with the same sort order.
+ * <p>
+ * If {@link #isLongKey()} returns true, the pages of a map with such a key type
+ * keep the keys in a long array, search them without comparing key objects,
+ * and store them delta encoded.
+ */
+public interface LongKeyType extends DataType {
+
+    /**
+     * Whether all keys of a map with this key type map to a long. If not, the
+     * conversion is only used to read pages that were written with long keys.
+     *
+     * @return true if the pages should keep the keys in long arrays
+     */
+    boolean isLongKey();
+
+    /**
+     * Convert a key to a long.
+     *
+     * @param key the key (not null)
+     * @return the long value
+     */
+    long getLong(Object key);
+
+    /**
+     * Convert a long to a key.
+     *
+     * @param value the long value
+     * @return the key
+     */
+    Object getKey(long value);
+
+}
@@ -123,6 +123,11 @@ public class DataUtils {
      */
     public static final int PAGE_COMPRESSED_HIGH = 2 + 4;
 
+    /**
+     * The bit mask for pages with delta encoded long keys.
+     */
+    public static final int PAGE_LONG_KEYS = 8;
+
     /**
      * The maximum length of a variable size int.
      */
@@ -15,7 +15,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package org.lealone.cluster.concurrent;
+package org.lealone.util;
 
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -40,6 +40,10 @@ public class NamedThreadFactory implements ThreadFactory {
         this.priority = priority;
     }
 
+    public String getId() {
+        return id;
+    }
+
     @Override
     public Thread newThread(Runnable runnable) {
         String name = id + ":" + n.getAndIncrement();
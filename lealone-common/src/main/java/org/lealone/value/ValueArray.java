@@ -24,7 +24,7 @@ public class ValueArray extends Value {
     private final Value[] values;
     private int hash;
 
-    private ValueArray(Class<?> componentType, Value[] list) {
+    protected ValueArray(Class<?> componentType, Value[] list) {
         this.componentType = componentType;
         this.values = list;
     }
@@ -61,7 +61,7 @@ public class ValueArray extends Value {
             return hash;
         }
         int h = 1;
-        for (Value v : values) {
+        for (Value v : getList()) {
             h = h * 31 + v.hashCode();
         }
         hash = h;
@@ -82,7 +82,7 @@ public class ValueArray extends Value {
 
     public long getPrecision() {
         long p = 0;
-        for (Value v : values) {
+        for (Value v : getList()) {
             p += v.getPrecision();
         }
         return p;
@@ -90,7 +90,7 @@ public class ValueArray extends Value {
 
     public String getString() {
         StatementBuilder buff = new StatementBuilder("(");
-        for (Value v : values) {
+        for (Value v : getList()) {
             buff.appendExceptFirst(", ");
             buff.append(v.getString());
         }
@@ -98,16 +98,17 @@ public class ValueArray extends Value {
     }
 
     protected int compareSecure(Value o, CompareMode mode) {
-        ValueArray v = (ValueArray) o;
-        if (values == v.values) {
+        Value[] values = getList();
+        Value[] otherValues = ((ValueArray) o).getList();
+        if (values == otherValues) {
             return 0;
         }
         int l = values.length;
-        int ol = v.values.length;
+        int ol = otherValues.length;
         int len = Math.min(l, ol);
         for (int i = 0; i < len; i++) {
             Value v1 = values[i];
-            Value v2 = v.values[i];
+            Value v2 = otherValues[i];
             int comp = v1.compareTo(v2, mode);
             if (comp != 0) {
                 return comp;
@@ -117,6 +118,7 @@ public class ValueArray extends Value {
     }
 
     public Object getObject() {
+        Value[] values = getList();
         int len = values.length;
         Object[] list = (Object[]) Array.newInstance(componentType, len);
         for (int i = 0; i < len; i++) {
@@ -131,11 +133,11 @@ public class ValueArray extends Value {
 
     public String getSQL() {
         StatementBuilder buff = new StatementBuilder("(");
-        for (Value v : values) {
+        for (Value v : getList()) {
             buff.appendExceptFirst(", ");
             buff.append(v.getSQL());
         }
-        if (values.length == 1) {
+        if (getList().length == 1) {
             buff.append(',');
         }
         return buff.append(')').toString();
@@ -143,7 +145,7 @@ public class ValueArray extends Value {
 
     public String getTraceSQL() {
         StatementBuilder buff = new StatementBuilder("(");
-        for (Value v : values) {
+        for (Value v : getList()) {
             buff.appendExceptFirst(", ");
             buff.append(v.getTraceSQL());
         }
@@ -152,7 +154,7 @@ public class ValueArray extends Value {
 
     public int getDisplaySize() {
         long size = 0;
-        for (Value v : values) {
+        for (Value v : getList()) {
             size += v.getDisplaySize();
         }
         return MathUtils.convertLongToInt(size);
@@ -162,16 +164,17 @@ public class ValueArray extends Value {
         if (!(other instanceof ValueArray)) {
             return false;
         }
-        ValueArray v = (ValueArray) other;
-        if (values == v.values) {
+        Value[] values = getList();
+        Value[] otherValues = ((ValueArray) other).getList();
+        if (values == otherValues) {
             return true;
         }
         int len = values.length;
-        if (len != v.values.length) {
+        if (len != otherValues.length) {
             return false;
         }
         for (int i = 0; i < len; i++) {
-            if (!values[i].equals(v.values[i])) {
+            if (!values[i].equals(otherValues[i])) {
                 return false;
             }
         }
@@ -180,7 +183,7 @@ public class ValueArray extends Value {
 
     public int getMemory() {
         int memory = 32;
-        for (Value v : values) {
+        for (Value v : getList()) {
             memory += v.getMemory() + Constants.MEMORY_POINTER;
         }
         return memory;
@@ -191,7 +194,7 @@ public class ValueArray extends Value {
             return this;
         }
         ArrayList<Value> list = New.arrayList();
-        for (Value v : values) {
+        for (Value v : getList()) {
             v = v.convertPrecision(precision, true);
             // empty byte arrays or strings have precision 0
             // they count as precision 1 here
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.index;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import org.lealone.compress.CompressLZF;
+import org.lealone.message.DbException;
+import org.lealone.engine.DataHandler;
+import org.lealone.type.WriteBuffer;
+import org.lealone.util.DataUtils;
+import org.lealone.value.CompareMode;
+import org.lealone.value.Value;
+
+/**
+ * The value type of a column map. A page of a column map contains the values of
+ * one column for a range of rows, so they are encoded as a whole: run-length
+ * encoded if there are long runs of equal values, dictionary encoded if there
+ * are few distinct values, and written as a plain list otherwise. The encoded
+ * values are then compressed, unless the store already compresses the pages.
+ * Values are only encoded together if they are exactly the same, not merely
+ * equal: for example 'Abc' and 'ABC' are equal in a VARCHAR_IGNORECASE column,
+ * but both spellings are kept.
+ */
+class ColumnDataType extends ValueDataType {
+
+    private static final int PLAIN = 0;
+    private static final int RUN_LENGTH = 1;
+    private static final int DICTIONARY = 2;
+    private static final int COMPRESSED = 4;
+
+    /**
+     * Don't try to compress less than this number of bytes.
+     */
+    private static final int MIN_COMPRESS_LENGTH = 64;
+
+    private final CompressLZF compressor;
+
+    ColumnDataType(CompareMode compareMode, DataHandler handler, boolean compress) {
+        super(compareMode, handler, null);
+        compressor = compress ? new CompressLZF() : null;
+    }
+
+    @Override
+    public void write(WriteBuffer buff, Object[] obj, int len, boolean key) {
+        if (len == 0) {
+            return;
+        }
+        int start = buff.position();
+        int encoding = writeValues(buff, obj, len);
+        if (compressor != null) {
+            int expLen = buff.position() - start - 1;
+            if (expLen >= MIN_COMPRESS_LENGTH) {
+                byte[] exp = new byte[expLen];
+                buff.position(start + 1).get(exp);
+                byte[] comp = new byte[expLen * 2];
+                int compLen;
+                synchronized (compressor) {
+                    compLen = compressor.compress(exp, expLen, comp, 0);
+                }
+                buff.position(start);
+                if (compLen + 8 < expLen) {
+                    buff.put((byte) (encoding | COMPRESSED)).putVarInt(expLen).putVarInt(compLen).put(comp, 0, compLen);
+                } else {
+                    buff.put((byte) encoding).put(exp);
+                }
+            }
+        }
+    }
+
+    private int writeValues(WriteBuffer buff, Object[] obj, int len) {
+        int runs = 1;
+        for (int i = 1; i < len; i++) {
+            if (!isSame(obj[i], obj[i - 1])) {
+                runs++;
+            }
+        }
+        if (runs * 2 <= len) {
+            buff.put((byte) RUN_LENGTH).putVarInt(runs);
+            int start = 0;
+            for (int i = 1; i <= len; i++) {
+                if (i == len || !isSame(obj[i], obj[start])) {
+                    write(buff, obj[start]);
+                    buff.putVarInt(i - start);
+                    start = i;
+                }
+            }
+            return RUN_LENGTH;
+        }
+        HashMap<ExactKey, Integer> dictionary = getDictionary(obj, len, len / 4);
+        if (dictionary != null) {
+            Object[] distinct = new Object[dictionary.size()];
+            for (ExactKey k : dictionary.keySet()) {
+                distinct[dictionary.get(k)] = k.value;
+            }
+            buff.put((byte) DICTIONARY).putVarInt(distinct.length);
+            for (Object v : distinct) {
+                write(buff, v);
+            }
+            for (int i = 0; i < len; i++) {
+                buff.putVarInt(dictionary.get(new ExactKey(obj[i])));
+            }
+            return DICTIONARY;
+        }
+        buff.put((byte) PLAIN);
+        for (int i = 0; i < len; i++) {
+            write(buff, obj[i]);
+        }
+        return PLAIN;
+    }
+
+    private static HashMap<ExactKey, Integer> getDictionary(Object[] obj, int len, int maxSize) {
+        HashMap<ExactKey, Integer> dictionary = new HashMap<>();
+        for (int i = 0; i < len; i++) {
+            ExactKey k = new ExactKey(obj[i]);
+            if (!dictionary.containsKey(k)) {
+                if (dictionary.size() >= maxSize) {
+                    return null;
+                }
+                dictionary.put(k, dictionary.size());
+            }
+        }
+        return dictionary;
+    }
+
+    private static boolean isSame(Object a, Object b) {
+        return a == b || new ExactKey(a).equals(new ExactKey(b));
+    }
+
+    /**
+     * A value that is only equal to the values of the same type with the same
+     * string representation. Large objects are only equal to themselves, so
+     * that they are not read to compare them.
+     */
+    private static class ExactKey {
+        final Object value;
+        private final int type;
+        private final String string;
+
+        ExactKey(Object value) {
+            this.value = value;
+            if (value instanceof Value) {
+                Value v = (Value) value;
+                type = v.getType();
+                string = type == Value.BLOB || type == Value.CLOB ? null : v.getString();
+            } else {
+                type = Value.UNKNOWN;
+                string = null;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            if (string != null) {
+                return 31 * type + string.hashCode();
+            }
+            return value instanceof Value ? System.identityHashCode(value) : value.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ExactKey)) {
+                return false;
+            }
+            ExactKey k = (ExactKey) other;
+            if (type != k.type) {
+                return false;
+            }
+            if (string != null) {
+                return string.equals(k.string);
+            }
+            if (k.string != null) {
+                return false;
+            }
+            return value instanceof Value ? value == k.value : value.equals(k.value);
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer buff, Object[] obj, int len, boolean key) {
+        if (len == 0) {
+            return;
+        }
+        int encoding = buff.get();
+        if ((encoding & COMPRESSED) != 0) {
+            int expLen = DataUtils.readVarInt(buff);
+            int compLen = DataUtils.readVarInt(buff);
+            byte[] comp = new byte[compLen];
+            buff.get(comp);
+            byte[] exp = new byte[expLen];
+            new CompressLZF().expand(comp, 0, compLen, exp, 0, expLen);
+            readValues(ByteBuffer.wrap(exp), encoding & ~COMPRESSED, obj, len);
+        } else {
+            readValues(buff, encoding, obj, len);
+        }
+    }
+
+    private void readValues(ByteBuffer buff, int encoding, Object[] obj, int len) {
+        switch (encoding) {
+        case RUN_LENGTH: {
+            int runs = DataUtils.readVarInt(buff);
+            for (int i = 0, pos = 0; i < runs; i++) {
+                Object v = read(buff);
+                int n = DataUtils.readVarInt(buff);
+                for (int j = 0; j < n; j++) {
+                    obj[pos++] = v;
+                }
+            }
+            break;
+        }
+        case DICTIONARY: {
+            Object[] distinct = new Object[DataUtils.readVarInt(buff)];
+            for (int i = 0; i < distinct.length; i++) {
+                distinct[i] = read(buff);
+            }
+            for (int i = 0; i < len; i++) {
+                obj[i] = distinct[DataUtils.readVarInt(buff)];
+            }
+            break;
+        }
+        case PLAIN:
+            for (int i = 0; i < len; i++) {
+                obj[i] = read(buff);
+            }
+            break;
+        default:
+            throw DbException.throwInternalError("encoding " + encoding);
+        }
+    }
+
+}
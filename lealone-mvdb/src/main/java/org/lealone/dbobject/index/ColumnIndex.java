@@ -0,0 +1,540 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.lealone.api.ErrorCode;
+import org.lealone.dbobject.table.Column;
+import org.lealone.dbobject.table.IndexColumn;
+import org.lealone.dbobject.table.MVTable;
+import org.lealone.dbobject.table.TableFilter;
+import org.lealone.engine.Database;
+import org.lealone.engine.Session;
+import org.lealone.message.DbException;
+import org.lealone.result.Row;
+import org.lealone.result.SearchRow;
+import org.lealone.result.SortOrder;
+import org.lealone.storage.TransactionStorageEngine;
+import org.lealone.transaction.TransactionMap;
+import org.lealone.util.New;
+import org.lealone.value.Value;
+import org.lealone.value.ValueArray;
+import org.lealone.value.ValueLong;
+import org.lealone.value.ValueNull;
+
+/**
+ * A column-oriented copy of the data of a table, used as its scan index.
+ * <p>
+ * Each column is stored in its own map from the row key to the column value,
+ * so that a page of such a map holds the values of one column for a range of
+ * rows, and is encoded as a whole (see {@link ColumnDataType}). A query only
+ * reads the maps of the columns it uses.
+ * <p>
+ * The rows are grouped into segments of SEGMENT_ROWS row keys. The zone map
+ * keeps the smallest and the largest value of each column per segment, and
+ * segments that can not match the index conditions are skipped. The zone map
+ * is only widened, never narrowed, so it is maintained outside of the
+ * transactions: a rolled back or deleted value leaves it too wide, which is
+ * still correct.
+ * <p>
+ * The rows themselves are still stored in the primary index, which is used to
+ * read complete rows.
+ * <p>
+ * It is not one of the indexes of the table and not a schema object: the
+ * table adds and removes its rows, and uses it as the scan index. Its maps
+ * are named after the id of the table.
+ */
+public class ColumnIndex extends IndexBase {
+
+    /**
+     * The number of rows per segment is 1 &lt;&lt; SEGMENT_SHIFT.
+     */
+    private static final int SEGMENT_SHIFT = 10;
+
+    private final MVTable mvTable;
+    private final MVPrimaryIndex primaryIndex;
+    private final ArrayList<TransactionMap<Value, Value>> columnMaps = New.arrayList();
+    private final TransactionMap<Value, Value> zoneMap;
+
+    public ColumnIndex(TransactionStorageEngine storageEngine, Session session, MVTable table,
+            MVPrimaryIndex primaryIndex) {
+        Database db = session.getDatabase();
+        this.mvTable = table;
+        this.primaryIndex = primaryIndex;
+        initIndexBase(table, table.getId(), table.getName() + "_COLUMNS", IndexColumn.wrap(table.getColumns()),
+                IndexType.createScan(table.isPersistData()));
+        // no need to compress twice
+        ColumnDataType dataType = new ColumnDataType(db.getCompareMode(), db, !db.getSettings().compressData);
+        for (Column c : columns) {
+            columnMaps.add(openMap(storageEngine, session, "column." + getId() + "." + c.getColumnId(), dataType));
+        }
+        zoneMap = openMap(storageEngine, session, "column." + getId() + ".zone", new ValueDataType(
+                db.getCompareMode(), db, null));
+        //Fix bug in MVStore when creating lots of temporary tables, where we could run out of transaction IDs
+        session.commit(false);
+    }
+
+    private TransactionMap<Value, Value> openMap(TransactionStorageEngine storageEngine, Session session,
+            String mapName, ValueDataType valueType) {
+        TransactionMap<Value, Value> map = storageEngine.openMap(session, mapName, new RowKeyType(), valueType);
+        if (!mvTable.isPersistData()) {
+            map.setVolatile(true);
+        }
+        return map;
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return table.getSQL() + ".columnScan";
+    }
+
+    @Override
+    public void close(Session session) {
+        // ok
+    }
+
+    private static long getSegment(long key) {
+        return key >> SEGMENT_SHIFT;
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        ValueLong key = ValueLong.get(row.getKey());
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                getMap(session, i).put(key, row.getValue(i));
+            }
+        } catch (IllegalStateException e) {
+            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, e, table.getName());
+        }
+        widenZone(row);
+    }
+
+    private synchronized void widenZone(Row row) {
+        ValueLong segment = ValueLong.get(getSegment(row.getKey()));
+        Value zone = zoneMap.getLatest(segment);
+        Value[] list = zone == null ? null : ((ValueArray) zone).getList();
+        boolean changed = false;
+        for (int i = 0; i < columns.length; i++) {
+            Value v = row.getValue(i);
+            if (v == ValueNull.INSTANCE) {
+                continue;
+            }
+            Value min = list == null ? ValueNull.INSTANCE : list[2 * i];
+            Value max = list == null ? ValueNull.INSTANCE : list[2 * i + 1];
+            boolean widenMin = min == ValueNull.INSTANCE || database.compare(v, min) < 0;
+            boolean widenMax = max == ValueNull.INSTANCE || database.compare(v, max) > 0;
+            if (!widenMin && !widenMax) {
+                continue;
+            }
+            if (!changed) {
+                // the old zone may still be read by other sessions
+                if (list == null) {
+                    list = new Value[2 * columns.length];
+                    Arrays.fill(list, ValueNull.INSTANCE);
+                } else {
+                    list = list.clone();
+                }
+                changed = true;
+            }
+            if (widenMin) {
+                list[2 * i] = v;
+            }
+            if (widenMax) {
+                list[2 * i + 1] = v;
+            }
+        }
+        if (changed) {
+            zoneMap.putCommitted(segment, ValueArray.get(list));
+        }
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        ValueLong key = ValueLong.get(row.getKey());
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                getMap(session, i).remove(key);
+            }
+        } catch (IllegalStateException e) {
+            throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, e, table.getName());
+        }
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        // the bounds are column values, not row keys
+        return primaryIndex.find(session, (SearchRow) null, (SearchRow) null);
+    }
+
+    @Override
+    public Cursor find(TableFilter filter, SearchRow first, SearchRow last) {
+        HashSet<Column> usedColumns = filter.getUsedColumns();
+        if (usedColumns == null) {
+            return find(filter.getSession(), first, last);
+        }
+        boolean[] read = new boolean[columns.length];
+        int readCount = 0;
+        for (Column c : usedColumns) {
+            if (c.getTable() == table && c.getColumnId() >= 0 && !read[c.getColumnId()]) {
+                read[c.getColumnId()] = true;
+                readCount++;
+            }
+        }
+        ArrayList<Integer> bounded = New.arrayList();
+        for (int i = 0; i < columns.length; i++) {
+            if (getBound(first, i) != null || getBound(last, i) != null) {
+                bounded.add(i);
+                if (!read[i]) {
+                    read[i] = true;
+                    readCount++;
+                }
+            }
+        }
+        if (readCount == columns.length) {
+            // reading complete rows from the primary index is faster
+            return find(filter.getSession(), first, last);
+        }
+        int[] readColumns = new int[readCount];
+        for (int i = 0, j = 0; i < columns.length; i++) {
+            if (read[i]) {
+                readColumns[j++] = i;
+            }
+        }
+        int[] boundedColumns = new int[bounded.size()];
+        for (int i = 0; i < boundedColumns.length; i++) {
+            boundedColumns[i] = bounded.get(i);
+        }
+        return new ColumnIndexCursor(filter.getSession(), readColumns, boundedColumns, first, last);
+    }
+
+    /**
+     * Get the bound of a column. NULL bounds (IS NULL conditions) are not used
+     * to skip rows.
+     */
+    private static Value getBound(SearchRow row, int columnId) {
+        if (row == null) {
+            return null;
+        }
+        Value v = row.getValue(columnId);
+        return v == ValueNull.INSTANCE ? null : v;
+    }
+
+    /**
+     * The cost of a scan, which only reads the maps of the columns that the
+     * query uses. If it uses all columns, the cost is that of the primary
+     * index, which is read instead.
+     */
+    @Override
+    public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
+        double cost = primaryIndex.getCost(session, null, null, null);
+        HashSet<Column> usedColumns = filter == null ? null : filter.getUsedColumns();
+        if (usedColumns == null) {
+            return cost;
+        }
+        int readCount = 0;
+        for (Column c : columns) {
+            if (usedColumns.contains(c)) {
+                readCount++;
+            }
+        }
+        // a count(*) query reads the first column
+        readCount = Math.max(1, readCount);
+        return cost * readCount / columns.length;
+    }
+
+    @Override
+    public void remove(Session session) {
+        for (int i = 0; i < columns.length; i++) {
+            TransactionMap<Value, Value> map = getMap(session, i);
+            if (!map.isClosed()) {
+                map.removeMap();
+            }
+        }
+        if (!zoneMap.isClosed()) {
+            zoneMap.removeMap();
+        }
+    }
+
+    @Override
+    public void truncate(Session session) {
+        for (int i = 0; i < columns.length; i++) {
+            getMap(session, i).clear();
+        }
+        zoneMap.clear();
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("COLUMN");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return primaryIndex.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return primaryIndex.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        long size = zoneMap.getDiskSpaceUsed();
+        for (TransactionMap<Value, Value> map : columnMaps) {
+            size += map.getDiskSpaceUsed();
+        }
+        return size;
+    }
+
+    @Override
+    public Row getRow(Session session, long key) {
+        return mvTable.getRow(session, key);
+    }
+
+    @Override
+    public void checkRename() {
+        // ok
+    }
+
+    @Override
+    public MVTable getTable() {
+        return mvTable;
+    }
+
+    private TransactionMap<Value, Value> getMap(Session session, int columnId) {
+        TransactionMap<Value, Value> map = columnMaps.get(columnId);
+        if (session == null) {
+            return map;
+        }
+        return map.getInstance(session.getTransaction(), Long.MAX_VALUE);
+    }
+
+    /**
+     * A cursor that reads the maps of the used columns side by side. The maps
+     * are read one after the other, so a row that another session adds or
+     * removes during the scan may only be seen in some of them. Such a row is
+     * skipped: only the row keys that all maps have are returned.
+     */
+    private class ColumnIndexCursor implements Cursor {
+
+        private final Session session;
+        private final int[] readColumns;
+        private final int[] boundedColumns;
+        private final Value[] min, max;
+        private final Value[] current;
+        private final ArrayList<Iterator<Entry<Value, Value>>> iterators = New.arrayList();
+        // the entry that each iterator is at, if it was not used yet
+        private final long[] keys;
+        private final Value[] values;
+        private final boolean[] pending;
+        private long segment = Long.MIN_VALUE;
+        private long key;
+        private boolean end;
+        private SearchRow searchRow;
+        private Row row;
+
+        ColumnIndexCursor(Session session, int[] readColumns, int[] boundedColumns, SearchRow first,
+                SearchRow last) {
+            this.session = session;
+            // a count(*) query doesn't read any column, the first one is used to find the row keys
+            this.readColumns = readColumns.length == 0 ? new int[] { 0 } : readColumns;
+            this.boundedColumns = boundedColumns;
+            min = new Value[columns.length];
+            max = new Value[columns.length];
+            for (int c : boundedColumns) {
+                min[c] = getBound(first, c);
+                max[c] = getBound(last, c);
+            }
+            current = new Value[columns.length];
+            keys = new long[this.readColumns.length];
+            values = new Value[this.readColumns.length];
+            pending = new boolean[this.readColumns.length];
+            seek(null);
+        }
+
+        private void seek(ValueLong from) {
+            iterators.clear();
+            for (int c : readColumns) {
+                iterators.add(getMap(session, c).entryIterator(from));
+            }
+            Arrays.fill(pending, false);
+        }
+
+        @Override
+        public Row get() {
+            if (row == null) {
+                SearchRow r = getSearchRow();
+                if (r != null) {
+                    row = mvTable.getRow(session, r.getKey());
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            if (searchRow == null && !end) {
+                SearchRow r = mvTable.getTemplateRow();
+                r.setKey(key);
+                for (int c : readColumns) {
+                    r.setValue(c, current[c]);
+                }
+                searchRow = r;
+            }
+            return searchRow;
+        }
+
+        @Override
+        public boolean next() {
+            searchRow = null;
+            row = null;
+            while (!end) {
+                if (!align()) {
+                    end = true;
+                    break;
+                }
+                long s = getSegment(key);
+                if (s != segment) {
+                    segment = s;
+                    if (!matchesZone(s)) {
+                        long next = (s + 1) << SEGMENT_SHIFT;
+                        if (next <= key) {
+                            end = true;
+                        } else {
+                            seek(ValueLong.get(next));
+                        }
+                        continue;
+                    }
+                }
+                if (isInRange()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Move the iterators to the next row key that all of them have, and
+         * read the values of this row.
+         *
+         * @return false if there is no such row key
+         */
+        private boolean align() {
+            long target = Long.MIN_VALUE;
+            int matched = 0;
+            for (int i = 0; matched < readColumns.length; i = (i + 1) % readColumns.length) {
+                Iterator<Entry<Value, Value>> it = iterators.get(i);
+                while (!pending[i] || keys[i] < target) {
+                    if (!it.hasNext()) {
+                        return false;
+                    }
+                    Entry<Value, Value> e = it.next();
+                    keys[i] = e.getKey().getLong();
+                    values[i] = e.getValue();
+                    pending[i] = true;
+                }
+                if (matched == 0 || keys[i] > target) {
+                    // the other iterators have to catch up with this one
+                    target = keys[i];
+                    matched = 1;
+                } else {
+                    matched++;
+                }
+            }
+            key = target;
+            for (int i = 0; i < readColumns.length; i++) {
+                current[readColumns[i]] = values[i];
+                pending[i] = false;
+            }
+            return true;
+        }
+
+        /**
+         * Check the zone map of a segment against the bounds of the columns.
+         */
+        private boolean matchesZone(long s) {
+            if (boundedColumns.length == 0) {
+                return true;
+            }
+            Value zone = zoneMap.getLatest(ValueLong.get(s));
+            if (zone == null) {
+                // only NULL values, which never match a condition
+                return false;
+            }
+            Value[] list = ((ValueArray) zone).getList();
+            for (int c : boundedColumns) {
+                Value zoneMin = list[2 * c], zoneMax = list[2 * c + 1];
+                if (zoneMin == ValueNull.INSTANCE) {
+                    return false;
+                }
+                if (min[c] != null && database.compare(zoneMax, min[c]) < 0) {
+                    return false;
+                }
+                if (max[c] != null && database.compare(zoneMin, max[c]) > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isInRange() {
+            for (int c : boundedColumns) {
+                Value v = current[c];
+                if (v == ValueNull.INSTANCE) {
+                    return false;
+                }
+                if (min[c] != null && database.compare(v, min[c]) < 0) {
+                    return false;
+                }
+                if (max[c] != null && database.compare(v, max[c]) > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.getUnsupportedException("previous");
+        }
+
+    }
+
+}
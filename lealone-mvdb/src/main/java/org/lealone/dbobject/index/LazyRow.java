@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.index;
+
+import org.lealone.engine.Data;
+import org.lealone.result.Row;
+import org.lealone.value.Value;
+
+/**
+ * A row backed by a {@link LazyValueArray}.
+ * Only the columns that are actually read (usually the ones referenced by the table filter) are decoded.
+ */
+class LazyRow extends Row {
+
+    private final LazyValueArray array;
+    private boolean decoded;
+
+    LazyRow(LazyValueArray array) {
+        super(new Value[array.getColumnCount()], 0);
+        this.array = array;
+    }
+
+    @Override
+    public Value getValue(int i) {
+        if (i < 0 || decoded) {
+            return super.getValue(i);
+        }
+        Value[] data = super.getValueList();
+        Value v = data[i];
+        if (v == null) {
+            v = data[i] = array.getValue(i);
+        }
+        return v;
+    }
+
+    @Override
+    public Value[] getValueList() {
+        Value[] data = super.getValueList();
+        if (!decoded) {
+            Value[] list = array.getList();
+            for (int i = 0, len = data.length; i < len; i++) {
+                if (data[i] == null) {
+                    data[i] = list[i];
+                }
+            }
+            decoded = true;
+        }
+        return data;
+    }
+
+    @Override
+    public Row getCopy() {
+        getValueList();
+        return super.getCopy();
+    }
+
+    @Override
+    public int getByteCount(Data dummy) {
+        getValueList();
+        return super.getByteCount(dummy);
+    }
+
+    @Override
+    public String toString() {
+        getValueList();
+        return super.toString();
+    }
+}
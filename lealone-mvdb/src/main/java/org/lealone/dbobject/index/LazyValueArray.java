@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.index;
+
+import java.nio.ByteBuffer;
+
+import org.lealone.engine.Constants;
+import org.lealone.value.Value;
+import org.lealone.value.ValueArray;
+
+/**
+ * A row read from the primary index map whose columns are only decoded on access.
+ * The data contains a fixed size offset per column followed by the column data.
+ */
+class LazyValueArray extends ValueArray {
+
+    private final ValueDataType type;
+    private final int columnCount;
+    private final byte[] data;
+    private volatile Value[] values;
+
+    LazyValueArray(ValueDataType type, int columnCount, byte[] data) {
+        super(Object.class, null);
+        this.type = type;
+        this.columnCount = columnCount;
+        this.data = data;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Decode a single column. The result is not cached.
+     *
+     * @param index the column index
+     * @return the value
+     */
+    public Value getValue(int index) {
+        Value[] list = values;
+        if (list != null) {
+            return list[index];
+        }
+        int offset = 4 * columnCount + getOffset(index);
+        return (Value) type.readValue(ByteBuffer.wrap(data, offset, data.length - offset));
+    }
+
+    @Override
+    public Value[] getList() {
+        Value[] list = values;
+        if (list == null) {
+            list = new Value[columnCount];
+            ByteBuffer buff = ByteBuffer.wrap(data, 4 * columnCount, data.length - 4 * columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                list[i] = (Value) type.readValue(buff);
+            }
+            values = list;
+        }
+        return list;
+    }
+
+    @Override
+    public int getMemory() {
+        // the decoded values are counted whether they are decoded or not, as the page memory is
+        // calculated incrementally and must not change. A value takes about as much as a string
+        // with one character per byte of its data.
+        int valueMemory = 48 + Constants.MEMORY_POINTER;
+        return 32 + Constants.MEMORY_OBJECT + data.length + columnCount * valueMemory
+                + 2 * (data.length - 4 * columnCount);
+    }
+
+    private int getOffset(int index) {
+        int pos = 4 * index;
+        return ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16) | ((data[pos + 2] & 0xff) << 8)
+                | (data[pos + 3] & 0xff);
+    }
+}
@@ -18,6 +18,7 @@ import org.lealone.dbobject.index.IndexType;
 import org.lealone.dbobject.table.Column;
 import org.lealone.dbobject.table.IndexColumn;
 import org.lealone.dbobject.table.MVTable;
+import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Constants;
 import org.lealone.engine.Database;
 import org.lealone.engine.Session;
@@ -26,6 +27,7 @@ import org.lealone.result.Row;
 import org.lealone.result.SearchRow;
 import org.lealone.result.SortOrder;
 import org.lealone.storage.TransactionStorageEngine;
+import org.lealone.transaction.Transaction;
 import org.lealone.transaction.TransactionMap;
 import org.lealone.util.DataUtils;
 import org.lealone.value.Value;
@@ -55,7 +57,12 @@ public class MVPrimaryIndex extends IndexBase {
 
     private final MVTable mvTable;
     private final String mapName;
-    private final TransactionMap<Value, Value> dataMap;
+    private final ValueDataType keyType;
+    private final ValueDataType valueType;
+    /**
+     * The data map, or null if it is not opened yet (see {@link #getDataMap()}).
+     */
+    private volatile TransactionMap<Value, Value> dataMap;
     private long lastKey;
     private int mainIndexColumn = -1;
 
@@ -68,17 +75,47 @@ public class MVPrimaryIndex extends IndexBase {
         for (int i = 0; i < columns.length; i++) {
             sortTypes[i] = SortOrder.ASCENDING;
         }
-        ValueDataType keyType = new ValueDataType(null, null, null);
-        ValueDataType valueType = new ValueDataType(db.getCompareMode(), db, sortTypes);
+        keyType = new RowKeyType();
+        valueType = new ValueDataType(db.getCompareMode(), db, sortTypes, true);
         mapName = "table." + getId();
-        dataMap = storageEngine.openMap(session, mapName, keyType, valueType);
+        if (db.isStarting()) {
+            // opened on first access, so that opening a database does not read every table
+            return;
+        }
+        TransactionMap<Value, Value> map = storageEngine.openMap(session, mapName, keyType, valueType);
         //Fix bug in MVStore when creating lots of temporary tables, where we could run out of transaction IDs
         session.commit(false);
-        if (!table.isPersistData()) {
-            dataMap.setVolatile(true);
+        initDataMap(map);
+    }
+
+    private void initDataMap(TransactionMap<Value, Value> map) {
+        if (!mvTable.isPersistData()) {
+            map.setVolatile(true);
         }
-        Value k = dataMap.lastKey();
+        Value k = map.lastKey();
         lastKey = k == null ? 0 : k.getLong();
+        dataMap = map;
+    }
+
+    /**
+     * Get the data map, and open it if it was not opened yet.
+     *
+     * @return the data map
+     */
+    private TransactionMap<Value, Value> getDataMap() {
+        TransactionMap<Value, Value> map = dataMap;
+        if (map == null) {
+            synchronized (this) {
+                map = dataMap;
+                if (map == null) {
+                    Transaction t = database.getTransactionEngine().beginTransaction(false);
+                    map = t.openMap(mapName, keyType, valueType);
+                    t.commit();
+                    initDataMap(map);
+                }
+            }
+        }
+        return map;
     }
 
     @Override
@@ -106,6 +143,7 @@ public class MVPrimaryIndex extends IndexBase {
 
     @Override
     public void add(Session session, Row row) {
+        TransactionMap<Value, Value> map = getMap(session);
         if (mainIndexColumn == -1) {
             if (row.getKey() == 0) {
                 row.setKey(++lastKey);
@@ -128,7 +166,6 @@ public class MVPrimaryIndex extends IndexBase {
             }
         }
 
-        TransactionMap<Value, Value> map = getMap(session);
         Value key = ValueLong.get(row.getKey());
         Value old = map.getLatest(key);
         if (old != null) {
@@ -209,26 +246,32 @@ public class MVPrimaryIndex extends IndexBase {
     public Row getRow(Session session, long key) {
         TransactionMap<Value, Value> map = getMap(session);
         Value v = map.get(ValueLong.get(key));
-        ValueArray array = (ValueArray) v;
-        Row row = new Row(array.getList(), 0);
+        return createRow(v, key);
+    }
+
+    /**
+     * Create a row from a value of the data map.
+     * The columns of rows read from disk are decoded on first access.
+     *
+     * @param v the value
+     * @param key the row key
+     * @return the row
+     */
+    static Row createRow(Value v, long key) {
+        Row row;
+        if (v instanceof LazyValueArray) {
+            row = new LazyRow((LazyValueArray) v);
+        } else {
+            row = new Row(((ValueArray) v).getList(), 0);
+        }
         row.setKey(key);
         return row;
     }
 
-    //    @Override
-    //    public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
-    //        try {
-    //            long cost = 10 * (dataMap.sizeAsLongMax() + Constants.COST_ROW_OFFSET);
-    //            return cost;
-    //        } catch (IllegalStateException e) {
-    //            throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
-    //        }
-    //    }
-
     @Override
-    public double getCost(Session session, int[] masks, SortOrder sortOrder) {
+    public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
         try {
-            long cost = 10 * (dataMap.sizeAsLongMax() + Constants.COST_ROW_OFFSET);
+            long cost = 10 * (getDataMap().sizeAsLongMax() + Constants.COST_ROW_OFFSET);
             return cost;
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
@@ -296,7 +339,7 @@ public class MVPrimaryIndex extends IndexBase {
      */
     public long getRowCountMax() {
         try {
-            return dataMap.sizeAsLongMax();
+            return getDataMap().sizeAsLongMax();
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
         }
@@ -309,8 +352,7 @@ public class MVPrimaryIndex extends IndexBase {
 
     @Override
     public long getDiskSpaceUsed() {
-        // TODO estimate disk space usage
-        return 0;
+        return getDataMap().getDiskSpaceUsed();
     }
 
     public String getMapName() {
@@ -369,9 +411,9 @@ public class MVPrimaryIndex extends IndexBase {
      */
     TransactionMap<Value, Value> getMap(Session session) {
         if (session == null) {
-            return dataMap;
+            return getDataMap();
         }
-        return dataMap.getInstance(session.getTransaction(), Long.MAX_VALUE);
+        return getDataMap().getInstance(session.getTransaction(), Long.MAX_VALUE);
     }
 
     /**
@@ -393,9 +435,7 @@ public class MVPrimaryIndex extends IndexBase {
         public Row get() {
             if (row == null) {
                 if (current != null) {
-                    ValueArray array = (ValueArray) current.getValue();
-                    row = new Row(array.getList(), 0);
-                    row.setKey(current.getKey().getLong());
+                    row = createRow(current.getValue(), current.getKey().getLong());
                 }
             }
             return row;
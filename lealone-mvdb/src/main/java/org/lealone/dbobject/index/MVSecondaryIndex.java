@@ -7,8 +7,10 @@ package org.lealone.dbobject.index;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.TreeSet;
 
 import org.lealone.api.ErrorCode;
@@ -18,6 +20,8 @@ import org.lealone.dbobject.index.IndexType;
 import org.lealone.dbobject.table.Column;
 import org.lealone.dbobject.table.IndexColumn;
 import org.lealone.dbobject.table.MVTable;
+import org.lealone.dbobject.table.Table;
+import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Database;
 import org.lealone.engine.Session;
 import org.lealone.message.DbException;
@@ -25,8 +29,11 @@ import org.lealone.result.Row;
 import org.lealone.result.SearchRow;
 import org.lealone.result.SortOrder;
 import org.lealone.storage.TransactionStorageEngine;
+import org.lealone.transaction.Transaction;
 import org.lealone.transaction.TransactionMap;
+import org.lealone.util.DataUtils;
 import org.lealone.util.New;
+import org.lealone.util.StatementBuilder;
 import org.lealone.value.CompareMode;
 import org.lealone.value.Value;
 import org.lealone.value.ValueArray;
@@ -44,13 +51,27 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
     final MVTable mvTable;
 
     private final int keyColumns;
+    /**
+     * The non-key columns whose values are stored in the map value, or null.
+     */
+    private final Column[] includeColumns;
     private final String mapName;
-    private final TransactionMap<Value, Value> dataMap;
+    private final ValueDataType keyType;
+    /**
+     * The data map, or null if it is not opened yet (see {@link #getDataMap()}).
+     */
+    private volatile TransactionMap<Value, Value> dataMap;
     private final TransactionStorageEngine storageEngine;
 
     public MVSecondaryIndex(TransactionStorageEngine storageEngine, Session session, MVTable table, int id,
             String indexName, IndexColumn[] columns, IndexType indexType) {
+        this(storageEngine, session, table, id, indexName, columns, null, indexType);
+    }
+
+    public MVSecondaryIndex(TransactionStorageEngine storageEngine, Session session, MVTable table, int id,
+            String indexName, IndexColumn[] columns, Column[] includeColumns, IndexType indexType) {
         this.storageEngine = storageEngine;
+        this.includeColumns = includeColumns != null && includeColumns.length > 0 ? includeColumns : null;
         Database db = session.getDatabase();
         this.mvTable = table;
         initIndexBase(table, id, indexName, columns, indexType);
@@ -66,14 +87,38 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
             sortTypes[i] = columns[i].sortType;
         }
         sortTypes[keyColumns - 1] = SortOrder.ASCENDING;
-        ValueDataType keyType = new ValueDataType(db.getCompareMode(), db, sortTypes);
+        keyType = new ValueDataType(db.getCompareMode(), db, sortTypes);
+        if (db.isStarting()) {
+            // opened on first access, so that opening a database does not read every index
+            return;
+        }
         ValueDataType valueType = new ValueDataType(null, null, null);
-        dataMap = storageEngine.openMap(session, mapName, keyType, valueType);
+        TransactionMap<Value, Value> map = storageEngine.openMap(session, mapName, keyType, valueType);
         //Fix bug in MVStore when creating lots of temporary tables, where we could run out of transaction IDs
         session.commit(false);
-        if (!keyType.equals(dataMap.getKeyType())) {
+        if (!keyType.equals(map.getKeyType())) {
             throw DbException.throwInternalError("Incompatible key type");
         }
+        dataMap = map;
+    }
+
+    /**
+     * Get the data map, and open it if it was not opened yet.
+     *
+     * @return the data map
+     */
+    private TransactionMap<Value, Value> getDataMap() {
+        TransactionMap<Value, Value> map = dataMap;
+        if (map == null) {
+            synchronized (this) {
+                map = dataMap;
+                if (map == null) {
+                    map = openMap(mapName, keyType);
+                    dataMap = map;
+                }
+            }
+        }
+        return map;
     }
 
     @Override
@@ -81,25 +126,26 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
         TransactionMap<Value, Value> map = openMap(bufferName);
         for (Row row : rows) {
             ValueArray key = convertToKey(row);
-            map.put(key, ValueNull.INSTANCE);
+            map.putCommitted(key, convertToValue(row));
         }
     }
 
     @Override
     public void addBufferedRows(List<String> bufferNames) {
         ArrayList<String> mapNames = New.arrayList(bufferNames);
+        TransactionMap<Value, Value> dataMap = getDataMap();
         final CompareMode compareMode = database.getCompareMode();
         /**
          * A source of values.
          */
         class Source implements Comparable<Source> {
-            Value value;
-            Iterator<Value> next;
+            Entry<Value, Value> entry;
+            Iterator<Entry<Value, Value>> next;
             int sourceId;
 
             @Override
             public int compareTo(Source o) {
-                int comp = value.compareTo(o.value, compareMode);
+                int comp = entry.getKey().compareTo(o.entry.getKey(), compareMode);
                 if (comp == 0) {
                     comp = sourceId - o.sourceId;
                 }
@@ -109,10 +155,10 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
         TreeSet<Source> sources = new TreeSet<Source>();
         for (int i = 0; i < bufferNames.size(); i++) {
             TransactionMap<Value, Value> map = openMap(bufferNames.get(i));
-            Iterator<Value> it = map.keyIterator(null);
+            Iterator<Entry<Value, Value>> it = map.entryIterator(null);
             if (it.hasNext()) {
                 Source s = new Source();
-                s.value = it.next();
+                s.entry = it.next();
                 s.next = it;
                 s.sourceId = i;
                 sources.add(s);
@@ -121,7 +167,7 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
         try {
             while (true) {
                 Source s = sources.first();
-                Value v = s.value;
+                Value v = s.entry.getKey();
 
                 if (indexType.isUnique()) {
                     Value[] array = ((ValueArray) v).getList();
@@ -133,18 +179,18 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
                     checkUnique(row, dataMap, unique);
                 }
 
-                dataMap.putCommitted(v, ValueNull.INSTANCE);
+                dataMap.putCommitted(v, s.entry.getValue());
 
-                Iterator<Value> it = s.next;
+                Iterator<Entry<Value, Value>> it = s.next;
                 if (!it.hasNext()) {
                     sources.remove(s);
                     if (sources.size() == 0) {
                         break;
                     }
                 } else {
-                    Value nextValue = it.next();
+                    Entry<Value, Value> nextEntry = it.next();
                     sources.remove(s);
-                    s.value = nextValue;
+                    s.entry = nextEntry;
                     sources.add(s);
                 }
             }
@@ -163,9 +209,18 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
             sortTypes[i] = indexColumns[i].sortType;
         }
         sortTypes[keyColumns - 1] = SortOrder.ASCENDING;
-        ValueDataType keyType = new ValueDataType(database.getCompareMode(), database, sortTypes);
+        return openMap(mapName, new ValueDataType(database.getCompareMode(), database, sortTypes));
+    }
+
+    /**
+     * Open a map outside of any session. The entries of the map must be written
+     * with putCommitted, as the transaction that opened it is already committed.
+     */
+    private TransactionMap<Value, Value> openMap(String mapName, ValueDataType keyType) {
         ValueDataType valueType = new ValueDataType(null, null, null);
-        TransactionMap<Value, Value> map = storageEngine.openMap(null, mapName, keyType, valueType);
+        Transaction t = database.getTransactionEngine().beginTransaction(false);
+        TransactionMap<Value, Value> map = t.openMap(mapName, keyType, valueType);
+        t.commit();
         if (!keyType.equals(map.getKeyType())) {
             throw DbException.throwInternalError("Incompatible key type");
         }
@@ -189,7 +244,7 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
             checkUnique(row, map, unique);
         }
         try {
-            map.put(array, ValueNull.INSTANCE);
+            map.put(array, convertToValue(row));
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.CONCURRENT_UPDATE_1, e, table.getName());
         }
@@ -300,10 +355,11 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
                 break;
             }
             if (min == null) {
-                return new MVSecondaryIndexCursor(session, Collections.<Value> emptyList().iterator(), null);
+                return new MVSecondaryIndexCursor(session, Collections.<Entry<Value, Value>> emptyList().iterator(),
+                        null);
             }
         }
-        return new MVSecondaryIndexCursor(session, map.keyIterator(min), last);
+        return new MVSecondaryIndexCursor(session, map.entryIterator(min), last);
     }
 
     private ValueArray convertToKey(SearchRow r) {
@@ -323,6 +379,25 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
         return ValueArray.get(array);
     }
 
+    /**
+     * Get the map value for the given row: the values of the included columns, if any.
+     *
+     * @param r the row
+     * @return the map value
+     */
+    private Value convertToValue(SearchRow r) {
+        if (includeColumns == null) {
+            return ValueNull.INSTANCE;
+        }
+        int len = includeColumns.length;
+        Value[] array = new Value[len];
+        for (int i = 0; i < len; i++) {
+            Column c = includeColumns[i];
+            array[i] = r.getValue(c.getColumnId()).convertTo(c.getType());
+        }
+        return ValueArray.get(array);
+    }
+
     /**
      * Convert array of values to a SearchRow.
      *
@@ -330,6 +405,17 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
      * @return the row
      */
     SearchRow convertToSearchRow(ValueArray key) {
+        return convertToSearchRow(key, null);
+    }
+
+    /**
+     * Convert an index entry to a SearchRow.
+     *
+     * @param key the index key
+     * @param value the map value, or null
+     * @return the row
+     */
+    SearchRow convertToSearchRow(ValueArray key, Value value) {
         Value[] array = key.getList();
         SearchRow searchRow = mvTable.getTemplateRow();
         searchRow.setKey((array[array.length - 1]).getLong());
@@ -340,27 +426,71 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
             Value v = array[i];
             searchRow.setValue(idx, v);
         }
+        if (includeColumns != null && value instanceof ValueArray) {
+            Value[] included = ((ValueArray) value).getList();
+            for (int i = 0; i < includeColumns.length; i++) {
+                searchRow.setValue(includeColumns[i].getColumnId(), included[i]);
+            }
+        }
         return searchRow;
     }
 
+    @Override
+    public boolean isCovering(HashSet<Column> columns) {
+        for (Column c : columns) {
+            if (c.getTable() != table || c.getColumnId() < 0) {
+                continue;
+            }
+            if (getColumnIndex(c) < 0 && !isIncluded(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isIncluded(Column c) {
+        if (includeColumns != null) {
+            for (Column include : includeColumns) {
+                if (include == c) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getCreateSQLForCopy(Table targetTable, String quotedName) {
+        String sql = super.getCreateSQLForCopy(targetTable, quotedName);
+        if (includeColumns == null) {
+            return sql;
+        }
+        StatementBuilder buff = new StatementBuilder(sql);
+        buff.append(" INCLUDE(");
+        for (Column c : includeColumns) {
+            buff.appendExceptFirst(", ");
+            buff.append(c.getSQL());
+        }
+        return buff.append(')').toString();
+    }
+
     @Override
     public MVTable getTable() {
         return mvTable;
     }
 
-    //    @Override
-    //    public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
-    //        try {
-    //            return 10 * getCostRangeIndex(masks, dataMap.sizeAsLongMax(), filter, sortOrder);
-    //        } catch (IllegalStateException e) {
-    //            throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
-    //        }
-    //    }
-
     @Override
-    public double getCost(Session session, int[] masks, SortOrder sortOrder) {
+    public double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
         try {
-            return 10 * getCostRangeIndex(masks, dataMap.sizeAsLongMax(), sortOrder);
+            long cost = getCostRangeIndex(masks, getDataMap().sizeAsLongMax(), filter, sortOrder);
+            HashSet<Column> usedColumns = filter == null ? null : filter.getUsedColumns();
+            if (usedColumns != null && isCovering(usedColumns)) {
+                // no row is looked up in the primary index, only the entries are read,
+                // which hold a part of the columns of a row
+                int entryColumns = columns.length + (includeColumns == null ? 0 : includeColumns.length);
+                return 10.0 * cost * Math.min(entryColumns, table.getColumns().length) / table.getColumns().length;
+            }
+            return 10 * cost;
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
         }
@@ -391,15 +521,16 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
         Value key = first ? map.firstKey() : map.lastKey();
         while (true) {
             if (key == null) {
-                return new MVSecondaryIndexCursor(session, Collections.<Value> emptyList().iterator(), null);
+                return new MVSecondaryIndexCursor(session, Collections.<Entry<Value, Value>> emptyList().iterator(),
+                        null);
             }
             if (((ValueArray) key).getList()[0] != ValueNull.INSTANCE) {
                 break;
             }
             key = first ? map.higherKey(key) : map.lowerKey(key);
         }
-        ArrayList<Value> list = New.arrayList();
-        list.add(key);
+        ArrayList<Entry<Value, Value>> list = New.arrayList();
+        list.add(new DataUtils.MapEntry<Value, Value>(key, map.get(key)));
         MVSecondaryIndexCursor cursor = new MVSecondaryIndexCursor(session, list.iterator(), null);
         cursor.next();
         return cursor;
@@ -407,6 +538,11 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
 
     @Override
     public boolean needRebuild() {
+        if (dataMap == null) {
+            // an index that is opened with the database was built before,
+            // unless its map was never created
+            return !storageEngine.hasMap(database, mapName);
+        }
         try {
             return dataMap.sizeAsLongMax() == 0;
         } catch (IllegalStateException e) {
@@ -423,7 +559,7 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
     @Override
     public long getRowCountApproximation() {
         try {
-            return dataMap.sizeAsLongMax();
+            return getDataMap().sizeAsLongMax();
         } catch (IllegalStateException e) {
             throw DbException.get(ErrorCode.OBJECT_CLOSED, e);
         }
@@ -431,8 +567,7 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
 
     @Override
     public long getDiskSpaceUsed() {
-        // TODO estimate disk space usage
-        return 0;
+        return getDataMap().getDiskSpaceUsed();
     }
 
     @Override
@@ -458,9 +593,9 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
      */
     TransactionMap<Value, Value> getMap(Session session) {
         if (session == null) {
-            return dataMap;
+            return getDataMap();
         }
-        return dataMap.getInstance(session.getTransaction(), Long.MAX_VALUE);
+        return getDataMap().getInstance(session.getTransaction(), Long.MAX_VALUE);
     }
 
     /**
@@ -469,13 +604,13 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
     private class MVSecondaryIndexCursor implements Cursor {
 
         private final Session session;
-        private final Iterator<Value> it;
+        private final Iterator<Entry<Value, Value>> it;
         private final SearchRow last;
-        private Value current;
+        private Entry<Value, Value> current;
         private SearchRow searchRow;
         private Row row;
 
-        public MVSecondaryIndexCursor(Session session, Iterator<Value> it, SearchRow last) {
+        public MVSecondaryIndexCursor(Session session, Iterator<Entry<Value, Value>> it, SearchRow last) {
             this.session = session;
             this.it = it;
             this.last = last;
@@ -496,7 +631,7 @@ public class MVSecondaryIndex extends IndexBase implements MVIndex {
         public SearchRow getSearchRow() {
             if (searchRow == null) {
                 if (current != null) {
-                    searchRow = convertToSearchRow((ValueArray) current);
+                    searchRow = convertToSearchRow((ValueArray) current.getKey(), current.getValue());
                 }
             }
             return searchRow;
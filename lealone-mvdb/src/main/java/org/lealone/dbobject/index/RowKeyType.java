@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.index;
+
+import org.lealone.value.ValueLong;
+
+/**
+ * The key type of the maps that are keyed by row key. The keys are always
+ * longs, so the pages of such a map keep them in long arrays.
+ */
+class RowKeyType extends ValueDataType {
+
+    RowKeyType() {
+        super(null, null, null);
+    }
+
+    @Override
+    public boolean isLongKey() {
+        return true;
+    }
+
+    @Override
+    public int compare(Object a, Object b) {
+        if (a instanceof ValueLong && b instanceof ValueLong) {
+            long x = ((ValueLong) a).getLong();
+            long y = ((ValueLong) b).getLong();
+            return x < y ? -1 : (x == y ? 0 : 1);
+        }
+        return super.compare(a, b);
+    }
+
+}
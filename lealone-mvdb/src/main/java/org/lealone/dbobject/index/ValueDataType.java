@@ -18,7 +18,7 @@ import org.lealone.engine.DataHandler;
 import org.lealone.message.DbException;
 import org.lealone.result.SimpleResultSet;
 import org.lealone.result.SortOrder;
-import org.lealone.type.DataType;
+import org.lealone.type.LongKeyType;
 import org.lealone.type.WriteBuffer;
 import org.lealone.util.DataUtils;
 import org.lealone.value.CompareMode;
@@ -48,7 +48,7 @@ import org.lealone.value.ValueUuid;
 /**
  * A row type.
  */
-public class ValueDataType implements DataType {
+public class ValueDataType implements LongKeyType {
 
     private static final int INT_0_15 = 32;
     private static final int LONG_0_7 = 48;
@@ -63,15 +63,31 @@ public class ValueDataType implements DataType {
     private static final int LONG_NEG = 67;
     private static final int STRING_0_31 = 68;
     private static final int BYTES_0_31 = 100;
+    private static final int ROW = 132;
 
     final DataHandler handler;
     final CompareMode compareMode;
     final int[] sortTypes;
+    final boolean rowFormat;
 
     public ValueDataType(CompareMode compareMode, DataHandler handler, int[] sortTypes) {
+        this(compareMode, handler, sortTypes, false);
+    }
+
+    /**
+     * Create a new data type.
+     *
+     * @param compareMode the compare mode
+     * @param handler the data handler
+     * @param sortTypes the sort types
+     * @param rowFormat whether top level arrays are stored as rows with column offsets,
+     *            so that single columns can be decoded lazily (see {@link LazyValueArray})
+     */
+    public ValueDataType(CompareMode compareMode, DataHandler handler, int[] sortTypes, boolean rowFormat) {
         this.compareMode = compareMode;
         this.handler = handler;
         this.sortTypes = sortTypes;
+        this.rowFormat = rowFormat;
     }
 
     @Override
@@ -86,7 +102,8 @@ public class ValueDataType implements DataType {
             int bl = bx.length;
             int len = Math.min(al, bl);
             for (int i = 0; i < len; i++) {
-                int sortType = sortTypes[i];
+                // no sort types if the map was opened without its index (to complete transactions)
+                int sortType = sortTypes == null ? SortOrder.ASCENDING : sortTypes[i];
                 int comp = compareValues(ax[i], bx[i], sortType);
                 if (comp != 0) {
                     return comp;
@@ -134,6 +151,21 @@ public class ValueDataType implements DataType {
         return a.compareTypeSave(b, compareMode);
     }
 
+    @Override
+    public boolean isLongKey() {
+        return false;
+    }
+
+    @Override
+    public long getLong(Object key) {
+        return ((Value) key).getLong();
+    }
+
+    @Override
+    public Object getKey(long value) {
+        return ValueLong.get(value);
+    }
+
     @Override
     public int getMemory(Object obj) {
         return getMemory((Value) obj);
@@ -165,7 +197,39 @@ public class ValueDataType implements DataType {
     @Override
     public void write(WriteBuffer buff, Object obj) {
         Value x = (Value) obj;
-        writeValue(buff, x);
+        if (x instanceof LazyValueArray) {
+            // unchanged row, no need to decode it
+            LazyValueArray row = (LazyValueArray) x;
+            byte[] data = row.getData();
+            int len = row.getColumnCount();
+            buff.put((byte) ROW).putVarInt(len).putInt(data.length - 4 * len).put(data);
+        } else if (rowFormat && x instanceof ValueArray) {
+            writeRow(buff, ((ValueArray) x).getList());
+        } else {
+            writeValue(buff, x);
+        }
+    }
+
+    /**
+     * Write the columns of a row. The format is: the column count, the length
+     * of the column data, a fixed size offset per column (relative to the
+     * start of the column data), and then the column data itself.
+     */
+    private void writeRow(WriteBuffer buff, Value[] columns) {
+        int len = columns.length;
+        buff.put((byte) ROW).putVarInt(len);
+        int lengthPos = buff.position();
+        buff.putInt(0);
+        int offsetPos = buff.position();
+        for (int i = 0; i < len; i++) {
+            buff.putInt(0);
+        }
+        int start = buff.position();
+        for (int i = 0; i < len; i++) {
+            buff.putInt(offsetPos + 4 * i, buff.position() - start);
+            writeValue(buff, columns[i]);
+        }
+        buff.putInt(lengthPos, buff.position() - start);
     }
 
     private void writeValue(WriteBuffer buff, Value v) {
@@ -385,7 +449,7 @@ public class ValueDataType implements DataType {
      *
      * @return the value
      */
-    private Object readValue(ByteBuffer buff) {
+    Object readValue(ByteBuffer buff) {
         int type = buff.get() & 255;
         switch (type) {
         case Value.NULL:
@@ -495,6 +559,13 @@ public class ValueDataType implements DataType {
             }
             return ValueArray.get(list);
         }
+        case ROW: {
+            int columnCount = readVarInt(buff);
+            int len = buff.getInt();
+            byte[] data = DataUtils.newBytes(4 * columnCount + len);
+            buff.get(data, 0, data.length);
+            return new LazyValueArray(this, columnCount, data);
+        }
         case Value.RESULT_SET: {
             SimpleResultSet rs = new SimpleResultSet();
             rs.setAutoClose(false);
@@ -564,7 +635,7 @@ public class ValueDataType implements DataType {
         if (!compareMode.equals(v.compareMode)) {
             return false;
         }
-        return Arrays.equals(sortTypes, v.sortTypes);
+        return rowFormat == v.rowFormat && Arrays.equals(sortTypes, v.sortTypes);
     }
 
 }
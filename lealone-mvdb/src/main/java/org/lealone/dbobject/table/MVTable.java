@@ -20,6 +20,7 @@ import org.lealone.dbobject.DbObject;
 import org.lealone.dbobject.SchemaObject;
 import org.lealone.dbobject.constraint.Constraint;
 import org.lealone.dbobject.constraint.ConstraintReferential;
+import org.lealone.dbobject.index.ColumnIndex;
 import org.lealone.dbobject.index.Cursor;
 import org.lealone.dbobject.index.HashIndex;
 import org.lealone.dbobject.index.Index;
@@ -69,6 +70,7 @@ public class MVTable extends TableBase {
     private int nextAnalyze;
     private boolean containsLargeObject;
     private Column rowIdColumn;
+    private ColumnIndex columnIndex;
 
     private final TransactionStorageEngine storageEngine;
 
@@ -96,6 +98,15 @@ public class MVTable extends TableBase {
         indexes.add(primaryIndex);
     }
 
+    /**
+     * Keep a column-oriented copy of the data, and use it as the scan index.
+     *
+     * @param session the session
+     */
+    public void initColumnIndex(Session session) {
+        columnIndex = new ColumnIndex(storageEngine, session, this, primaryIndex);
+    }
+
     public String getMapName() {
         return primaryIndex.getMapName();
     }
@@ -393,6 +404,12 @@ public class MVTable extends TableBase {
     @Override
     public Index addIndex(Session session, String indexName, int indexId, IndexColumn[] cols, IndexType indexType,
             boolean create, String indexComment) {
+        return addIndex(session, indexName, indexId, cols, null, indexType, create, indexComment);
+    }
+
+    @Override
+    public Index addIndex(Session session, String indexName, int indexId, IndexColumn[] cols,
+            Column[] includeColumns, IndexType indexType, boolean create, String indexComment) {
         if (indexType.isPrimaryKey()) {
             for (IndexColumn c : cols) {
                 Column column = c.column;
@@ -419,14 +436,15 @@ public class MVTable extends TableBase {
         if (mainIndexColumn != -1) {
             primaryIndex.setMainIndexColumn(mainIndexColumn);
             index = new MVDelegateIndex(this, indexId, indexName, primaryIndex, indexType);
-        } else if (indexType.isHash() && cols.length <= 1) { //TODO 是否要支持多版本
+        } else if (indexType.isHash() && cols.length <= 1 && includeColumns == null) { //TODO 是否要支持多版本
             if (indexType.isUnique()) {
                 index = new HashIndex(this, indexId, indexName, cols, indexType);
             } else {
                 index = new NonUniqueHashIndex(this, indexId, indexName, cols, indexType);
             }
         } else {
-            index = new MVSecondaryIndex(storageEngine, session, this, indexId, indexName, cols, indexType);
+            index = new MVSecondaryIndex(storageEngine, session, this, indexId, indexName, cols, includeColumns,
+                    indexType);
         }
         if (index instanceof MVIndex && index.needRebuild()) {
             rebuildIndex(session, (MVIndex) index, indexName);
@@ -582,9 +600,13 @@ public class MVTable extends TableBase {
     @Override
     public void removeRow(Session session, Row row) {
         lastModificationId = database.getNextModificationDataId();
+        session.addModifiedTable(this);
         //LocalTransaction t = getTransaction(session);
         //long savepoint = t.setSavepoint();
         try {
+            if (columnIndex != null) {
+                columnIndex.remove(session, row);
+            }
             for (int i = indexes.size() - 1; i >= 0; i--) {
                 Index index = indexes.get(i);
                 index.remove(session, row);
@@ -599,6 +621,10 @@ public class MVTable extends TableBase {
     @Override
     public void truncate(Session session) {
         lastModificationId = database.getNextModificationDataId();
+        session.addModifiedTable(this);
+        if (columnIndex != null) {
+            columnIndex.truncate(session);
+        }
         for (int i = indexes.size() - 1; i >= 0; i--) {
             Index index = indexes.get(i);
             index.truncate(session);
@@ -609,6 +635,7 @@ public class MVTable extends TableBase {
     @Override
     public void addRow(Session session, Row row) {
         lastModificationId = database.getNextModificationDataId();
+        session.addModifiedTable(this);
         //LocalTransaction t = getTransaction(session);
         //long savepoint = t.setSavepoint();
         try {
@@ -616,6 +643,9 @@ public class MVTable extends TableBase {
                 Index index = indexes.get(i);
                 index.add(session, row);
             }
+            if (columnIndex != null) {
+                columnIndex.add(session, row);
+            }
         } catch (Throwable e) {
             //t.rollbackToSavepoint(savepoint);
             DbException de = DbException.convert(e);
@@ -661,6 +691,9 @@ public class MVTable extends TableBase {
 
     @Override
     public Index getScanIndex(Session session) {
+        if (columnIndex != null) {
+            return columnIndex;
+        }
         return primaryIndex;
     }
 
@@ -710,6 +743,9 @@ public class MVTable extends TableBase {
         //database.getMvStore().removeTable(this);
         storageEngine.removeTable(this);
         super.removeChildrenAndResources(session);
+        if (columnIndex != null) {
+            columnIndex.remove(session);
+        }
         // go backwards because database.removeIndex will
         // call table.removeIndex
         while (indexes.size() > 1) {
@@ -746,7 +782,12 @@ public class MVTable extends TableBase {
 
     @Override
     public long getDiskSpaceUsed() {
-        return primaryIndex.getDiskSpaceUsed();
+        long size = primaryIndex.getDiskSpaceUsed();
+        if (columnIndex != null) {
+            // the column-oriented copy of the rows
+            size += columnIndex.getDiskSpaceUsed();
+        }
+        return size;
     }
 
     @Override
@@ -777,6 +818,7 @@ public class MVTable extends TableBase {
      * Mark the transaction as committed, so that the modification counter of
      * the database is incremented.
      */
+    @Override
     public void commit() {
         if (database != null) {
             lastModificationId = database.getNextModificationDataId();
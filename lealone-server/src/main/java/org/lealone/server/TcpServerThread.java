@@ -87,13 +87,13 @@ public class TcpServerThread implements Runnable {
                 if (minClientVersion < Constants.TCP_PROTOCOL_VERSION_1) {
                     throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, ""
                             + Constants.TCP_PROTOCOL_VERSION_1);
-                } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_1) {
+                } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_2) {
                     throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, ""
-                            + Constants.TCP_PROTOCOL_VERSION_1);
+                            + Constants.TCP_PROTOCOL_VERSION_2);
                 }
                 int maxClientVersion = transfer.readInt();
-                if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_1) {
-                    clientVersion = Constants.TCP_PROTOCOL_VERSION_1;
+                if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_2) {
+                    clientVersion = Constants.TCP_PROTOCOL_VERSION_2;
                 } else {
                     clientVersion = minClientVersion;
                 }
@@ -258,22 +258,9 @@ public class TcpServerThread implements Runnable {
 
     private void sendError(Throwable t) {
         try {
-            SQLException e = DbException.convert(t).getSQLException();
-            StringWriter writer = new StringWriter();
-            e.printStackTrace(new PrintWriter(writer));
-            String trace = writer.toString();
-            String message;
-            String sql;
-            if (e instanceof JdbcSQLException) {
-                JdbcSQLException j = (JdbcSQLException) e;
-                message = j.getOriginalMessage();
-                sql = j.getSQL();
-            } else {
-                message = e.getMessage();
-                sql = null;
-            }
-            transfer.writeInt(FrontendSession.STATUS_ERROR).writeString(e.getSQLState()).writeString(message)
-                    .writeString(sql).writeInt(e.getErrorCode()).writeString(trace).flush();
+            transfer.writeInt(FrontendSession.STATUS_ERROR);
+            writeError(t);
+            transfer.flush();
         } catch (Exception e2) {
             if (!transfer.isClosed()) {
                 server.traceError(e2);
@@ -283,6 +270,25 @@ public class TcpServerThread implements Runnable {
         }
     }
 
+    private void writeError(Throwable t) throws IOException {
+        SQLException e = DbException.convert(t).getSQLException();
+        StringWriter writer = new StringWriter();
+        e.printStackTrace(new PrintWriter(writer));
+        String trace = writer.toString();
+        String message;
+        String sql;
+        if (e instanceof JdbcSQLException) {
+            JdbcSQLException j = (JdbcSQLException) e;
+            message = j.getOriginalMessage();
+            sql = j.getSQL();
+        } else {
+            message = e.getMessage();
+            sql = null;
+        }
+        transfer.writeString(e.getSQLState()).writeString(message).writeString(sql).writeInt(e.getErrorCode())
+                .writeString(trace);
+    }
+
     private void setParameters(Command command) throws IOException {
         int len = transfer.readInt();
         ArrayList<? extends ParameterInterface> params = command.getParameters();
@@ -306,9 +312,16 @@ public class TcpServerThread implements Runnable {
         }
         transfer.writeInt(status);
         int[] result = command.getResult();
+        DbException error = command.getError();
         command.close();
         for (int i = 0; i < size; i++)
             transfer.writeInt(result[i]);
+        // the error of the first entry that failed
+        if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_2) {
+            transfer.writeBoolean(error != null);
+            if (error != null)
+                writeError(error);
+        }
         transfer.flush();
     }
 
@@ -368,18 +381,33 @@ public class TcpServerThread implements Runnable {
             session.setAutoCommit(false);
             session.setRoot(false);
         }
-        case FrontendSession.COMMAND_EXECUTE_QUERY: {
+        case FrontendSession.COMMAND_EXECUTE_QUERY:
+        case FrontendSession.COMMAND_EXECUTE_SHUFFLE_QUERY: {
             int id = transfer.readInt();
             int objectId = transfer.readInt();
             int maxRows = transfer.readInt();
             int fetchSize = transfer.readInt();
+            String shuffleId = null;
+            String[] shuffleNodes = null;
+            if (operation == FrontendSession.COMMAND_EXECUTE_SHUFFLE_QUERY) {
+                shuffleId = transfer.readString();
+                shuffleNodes = new String[transfer.readInt()];
+                for (int i = 0; i < shuffleNodes.length; i++) {
+                    shuffleNodes[i] = transfer.readString();
+                }
+            }
             Command command = (Command) cache.getObject(id, false);
             command.getPrepared().setFetchSize(fetchSize);
             setParameters(command);
             int old = session.getModificationId();
             ResultInterface result;
             synchronized (session) {
-                result = command.executeQuery(maxRows, false);
+                session.setShuffle(shuffleId, shuffleNodes);
+                try {
+                    result = command.executeQuery(maxRows, false);
+                } finally {
+                    session.setShuffle(null, null);
+                }
             }
             cache.addObject(objectId, result);
             int columnCount = result.getVisibleColumnCount();
@@ -429,6 +457,42 @@ public class TcpServerThread implements Runnable {
             transfer.flush();
             break;
         }
+        case FrontendSession.COMMAND_EXECUTE_DISTRIBUTED_UPDATE_ROWS: {
+            session.setAutoCommit(false);
+            session.setRoot(false);
+        }
+        case FrontendSession.COMMAND_EXECUTE_UPDATE_ROWS: {
+            int id = transfer.readInt();
+            Command command = (Command) cache.getObject(id, false);
+            int size = transfer.readInt();
+            int columnCount = transfer.readInt();
+            ArrayList<Value[]> rows = New.arrayList(size);
+            for (int i = 0; i < size; i++) {
+                Value[] values = new Value[columnCount];
+                for (int j = 0; j < columnCount; j++) {
+                    values[j] = transfer.readValue();
+                }
+                rows.add(values);
+            }
+            int old = session.getModificationId();
+            int updateCount;
+            synchronized (session) {
+                updateCount = command.executeUpdate(rows);
+            }
+            int status;
+            if (session.isClosed()) {
+                status = FrontendSession.STATUS_CLOSED;
+            } else {
+                status = getState(old);
+            }
+            transfer.writeInt(status);
+            if (operation == FrontendSession.COMMAND_EXECUTE_DISTRIBUTED_UPDATE_ROWS)
+                transfer.writeString(session.getTransaction().getLocalTransactionNames());
+
+            transfer.writeInt(updateCount).writeBoolean(session.isAutoCommit());
+            transfer.flush();
+            break;
+        }
         case FrontendSession.COMMAND_EXECUTE_DISTRIBUTED_COMMIT: {
             int old = session.getModificationId();
             synchronized (session) {
@@ -607,6 +671,13 @@ public class TcpServerThread implements Runnable {
             transfer.flush();
             break;
         }
+        case FrontendSession.ASYNC_REQUEST: {
+            // the client does not wait for the response, it finds the response by the request id
+            int requestId = transfer.readInt();
+            transfer.writeInt(requestId);
+            process();
+            break;
+        }
         default:
             if (server.isTraceEnabled())
                 trace("Unknown operation: " + operation);
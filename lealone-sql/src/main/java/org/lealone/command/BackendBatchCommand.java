@@ -19,14 +19,19 @@
  */
 package org.lealone.command;
 
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.List;
 
+import org.lealone.api.ErrorCode;
 import org.lealone.api.ParameterInterface;
 import org.lealone.command.CommandInterface;
+import org.lealone.command.dml.InsertOrMerge;
 import org.lealone.engine.Session;
 import org.lealone.expression.Parameter;
 import org.lealone.message.DbException;
 import org.lealone.result.ResultInterface;
+import org.lealone.util.New;
 import org.lealone.value.Value;
 
 public class BackendBatchCommand implements CommandInterface {
@@ -35,6 +40,7 @@ public class BackendBatchCommand implements CommandInterface {
     private ArrayList<Value[]> batchParameters; //对应JdbcPreparedStatement.executeBatch()
     private Command preparedCommand;
     private int[] result;
+    private DbException error;
 
     public BackendBatchCommand(Session session, ArrayList<String> batchCommands) {
         this.session = session;
@@ -73,28 +79,118 @@ public class BackendBatchCommand implements CommandInterface {
             int size = batchCommands.size();
             result = new int[size];
             for (int i = 0; i < size; i++) {
-                Command c = session.prepareCommand(batchCommands.get(i));
-                result[i] = c.executeUpdate();
-                c.close();
+                try {
+                    Command c = session.prepareCommand(batchCommands.get(i));
+                    try {
+                        result[i] = c.executeUpdate();
+                    } finally {
+                        c.close();
+                    }
+                } catch (DbException e) {
+                    setError(i, e);
+                }
             }
         } else {
             int size = batchParameters.size();
             result = new int[size];
+            if (executeInsertOrMerge())
+                return 0;
             Value[] values;
             ArrayList<? extends ParameterInterface> params = preparedCommand.getParameters();
             int paramsSize = params.size();
             for (int i = 0; i < size; i++) {
                 values = batchParameters.get(i);
-                for (int j = 0; j < paramsSize; j++) {
-                    Parameter p = (Parameter) params.get(j);
-                    p.setValue(values[j], true);
+                setParameters(params, values);
+                try {
+                    result[i] = preparedCommand.executeUpdate();
+                } catch (DbException e) {
+                    setError(i, e);
                 }
-                result[i] = preparedCommand.executeUpdate();
             }
         }
         return 0;
     }
 
+    /**
+     * Remember that the given entry failed. The other entries are still
+     * executed, like JdbcStatement.executeBatch does in embedded mode.
+     */
+    private void setError(int i, DbException e) {
+        result[i] = Statement.EXECUTE_FAILED;
+        if (error == null) {
+            error = e;
+        }
+    }
+
+    /**
+     * Execute all parameter sets of an INSERT or MERGE statement as one
+     * statement with the rows of all sets. In cluster mode the rows are then
+     * routed together, with one request per node instead of one per row.
+     * <p>
+     * If the statement fails and it was atomic, that is it only ran on this
+     * node or it is part of a transaction, it was rolled back, and the sets
+     * are executed one after the other with the rows that were already
+     * evaluated, so that the update counts of the sets before the one that
+     * fails are known. Otherwise the rows that reached other nodes may be
+     * committed there, so executing them again could insert them twice, and
+     * all sets are reported as failed.
+     *
+     * @return false if the statement is not an INSERT or MERGE with a VALUES
+     *         list that can be evaluated up front
+     */
+    private boolean executeInsertOrMerge() {
+        Prepared prepared = preparedCommand.getPrepared();
+        if (!(prepared instanceof InsertOrMerge) || batchParameters.isEmpty())
+            return false;
+        InsertOrMerge iom = (InsertOrMerge) prepared;
+        ArrayList<? extends ParameterInterface> params = preparedCommand.getParameters();
+        int size = batchParameters.size();
+        List<List<Value[]>> sets = New.arrayList(size);
+        List<Value[]> rowValues = New.arrayList(size);
+        for (Value[] values : batchParameters) {
+            setParameters(params, values);
+            List<Value[]> rows = iom.getCurrentRowValues();
+            if (rows == null)
+                return false;
+            sets.add(rows);
+            rowValues.addAll(rows);
+        }
+        boolean atomic = prepared.isLocal() || !session.isAutoCommit();
+        try {
+            preparedCommand.executeUpdate(rowValues);
+        } catch (DbException e) {
+            int errorCode = e.getErrorCode();
+            if (errorCode == ErrorCode.DEADLOCK_1 || errorCode == ErrorCode.OUT_OF_MEMORY) {
+                // not only the statement was rolled back
+                throw e;
+            }
+            for (int i = 0; i < size; i++) {
+                if (atomic) {
+                    try {
+                        result[i] = preparedCommand.executeUpdate(sets.get(i));
+                    } catch (DbException e2) {
+                        setError(i, e2);
+                    }
+                } else {
+                    setError(i, e);
+                }
+            }
+            return true;
+        }
+        //每组参数都产生VALUES中的所有行
+        for (int i = 0; i < size; i++) {
+            result[i] = sets.get(i).size();
+        }
+        return true;
+    }
+
+    private static void setParameters(ArrayList<? extends ParameterInterface> params, Value[] values) {
+        for (int j = 0, size = params.size(); j < size; j++) {
+            Parameter p = (Parameter) params.get(j);
+            p.setValue(values[j], true);
+        }
+    }
+
     @Override
     public void close() {
         if (session == null || session.isClosed()) {
@@ -127,4 +223,13 @@ public class BackendBatchCommand implements CommandInterface {
         return result;
     }
 
+    /**
+     * Get the error of the first entry that failed.
+     *
+     * @return the error, or null if all entries succeeded
+     */
+    public DbException getError() {
+        return error;
+    }
+
 }
@@ -8,6 +8,7 @@ package org.lealone.command;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.lealone.api.ErrorCode;
 import org.lealone.api.ParameterInterface;
@@ -18,6 +19,7 @@ import org.lealone.message.DbException;
 import org.lealone.message.Trace;
 import org.lealone.result.ResultInterface;
 import org.lealone.util.MathUtils;
+import org.lealone.value.Value;
 
 /**
  * Represents a SQL statement. This object is only used on the server side.
@@ -27,7 +29,7 @@ public abstract class Command implements CommandInterface {
     /**
      * The session.
      */
-    protected final Session session;
+    protected Session session;
 
     /**
      * The last start time.
@@ -277,6 +279,17 @@ public abstract class Command implements CommandInterface {
         }
     }
 
+    /**
+     * Execute an INSERT or MERGE statement with the rows that were sent by
+     * another node instead of the rows of its VALUES list.
+     *
+     * @param rowValues the values of each row
+     * @return the update count
+     */
+    public int executeUpdate(List<Value[]> rowValues) {
+        throw DbException.throwInternalError(sql);
+    }
+
     private long filterConcurrentUpdate(DbException e, long start) {
         if (e.getErrorCode() != ErrorCode.CONCURRENT_UPDATE_1) {
             throw e;
@@ -324,6 +337,26 @@ public abstract class Command implements CommandInterface {
         return false;
     }
 
+    /**
+     * Check if the command can be used by another session of the same user
+     * after it was closed.
+     *
+     * @return true if it can be shared
+     */
+    public boolean isShareable() {
+        return false;
+    }
+
+    /**
+     * Move the command to another session. This is used by the plan cache.
+     *
+     * @param session the new session
+     */
+    void setSession(Session session) {
+        this.session = session;
+        getPrepared().setSession(session);
+    }
+
     /**
      * Whether the command is already closed (in which case it can be re-used).
      *
@@ -7,10 +7,13 @@
 package org.lealone.command;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.lealone.api.DatabaseEventListener;
 import org.lealone.api.ParameterInterface;
+import org.lealone.command.dml.InsertOrMerge;
 import org.lealone.expression.Parameter;
+import org.lealone.message.DbException;
 import org.lealone.result.ResultInterface;
 import org.lealone.value.Value;
 import org.lealone.value.ValueNull;
@@ -24,6 +27,7 @@ public class CommandContainer extends Command {
     protected Prepared prepared;
     private boolean readOnlyKnown;
     private boolean readOnly;
+    private List<Value[]> rowValues;
 
     protected CommandContainer(Parser parser, String sql, Prepared prepared) {
         super(parser, sql);
@@ -72,13 +76,31 @@ public class CommandContainer extends Command {
         setProgress(DatabaseEventListener.STATE_STATEMENT_START);
         start();
         session.setLastScopeIdentity(ValueNull.INSTANCE);
-        prepared.checkParameters();
+        if (rowValues != null) {
+            // after recompileIfRequired, because it may create a new prepared statement
+            ((InsertOrMerge) prepared).setRowValues(rowValues);
+        } else {
+            prepared.checkParameters();
+        }
         int updateCount = updateInternal();
         prepared.trace(startTime, updateCount);
         setProgress(DatabaseEventListener.STATE_STATEMENT_END);
         return updateCount;
     }
 
+    @Override
+    public int executeUpdate(List<Value[]> rowValues) {
+        if (!(prepared instanceof InsertOrMerge)) {
+            throw DbException.throwInternalError(prepared.getSQL());
+        }
+        this.rowValues = rowValues;
+        try {
+            return executeUpdate();
+        } finally {
+            this.rowValues = null;
+        }
+    }
+
     protected int updateInternal() {
         return prepared.update();
     }
@@ -114,6 +136,11 @@ public class CommandContainer extends Command {
         return prepared.isCacheable();
     }
 
+    @Override
+    public boolean isShareable() {
+        return prepared.isShareable();
+    }
+
     public int getCommandType() {
         return prepared.getType();
     }
@@ -89,6 +89,7 @@ import org.lealone.dbobject.UserDataType;
 import org.lealone.dbobject.constraint.ConstraintReferential;
 import org.lealone.dbobject.index.Index;
 import org.lealone.dbobject.table.Column;
+import org.lealone.dbobject.table.ColumnStatistics;
 import org.lealone.dbobject.table.FunctionTable;
 import org.lealone.dbobject.table.IndexColumn;
 import org.lealone.dbobject.table.RangeTable;
@@ -2114,6 +2115,11 @@ public class Parser {
                 agg.setSeparator(readExpression());
             }
             r = agg;
+        } else if (aggregateType == Aggregate.APPROX_PERCENTILE) {
+            Aggregate agg = new Aggregate(Aggregate.APPROX_PERCENTILE, readExpression(), currentSelect, false);
+            read(",");
+            agg.setFraction(readExpression());
+            r = agg;
         } else {
             boolean distinct = readIf("DISTINCT");
             r = new Aggregate(aggregateType, readExpression(), currentSelect, distinct);
@@ -3650,6 +3656,11 @@ public class Parser {
                 read("NULL");
             }
         }
+        parseColumnOptions(column);
+        return column;
+    }
+
+    private void parseColumnOptions(Column column) {
         if (readIf("NULL_TO_DEFAULT")) {
             column.setConvertNullToDefault(true);
         }
@@ -3661,11 +3672,14 @@ public class Parser {
             int value = getPositiveInt();
             column.setSelectivity(value);
         }
+        if (readIf("STATISTICS")) {
+            Value value = readExpression().optimize(session).getValue(session);
+            column.setStatistics(ColumnStatistics.get(value, column.getType()));
+        }
         String comment = readCommentIf();
         if (comment != null) {
             column.setComment(comment);
         }
-        return column;
     }
 
     private void parseAutoIncrement(Column column) {
@@ -3923,6 +3937,10 @@ public class Parser {
             command.setComment(readCommentIf());
             read("(");
             command.setIndexColumns(parseIndexColumnList());
+            if (readIf("INCLUDE")) {
+                read("(");
+                command.setIncludeColumnNames(parseColumnList());
+            }
             return command;
         }
     }
@@ -5282,6 +5300,8 @@ public class Parser {
         } else {
             readIf("NULL");
         }
+        // older versions wrote these options after ROW KEY
+        parseColumnOptions(column);
         if (readIf("CHECK")) {
             Expression expr = readExpression();
             column.addCheckConstraint(session, expr);
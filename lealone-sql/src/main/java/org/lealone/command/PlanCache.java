@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.command;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lealone.engine.Session;
+import org.lealone.util.StatementBuilder;
+
+/**
+ * The plan cache that is shared by all sessions of a database. It keeps
+ * prepared commands that were closed and dropped out of the query cache of
+ * their session, so that another session can take one and run it without
+ * parsing and optimizing the statement again. A command is only used by one
+ * session at a time: it is removed from the cache when it is taken.
+ *
+ * The key contains the user and the schema settings of the session, because
+ * the access rights are checked and the names are resolved when the statement
+ * is prepared. Commands that are outdated because of a DDL statement (see the
+ * modification id) are dropped when they are found.
+ */
+public class PlanCache {
+
+    private final int maxSize;
+    private final ConcurrentHashMap<String, ConcurrentLinkedQueue<Command>> commands;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public PlanCache(int maxSize) {
+        this.maxSize = maxSize;
+        commands = new ConcurrentHashMap<String, ConcurrentLinkedQueue<Command>>();
+    }
+
+    /**
+     * Take a command for the given statement out of the cache, and move it to
+     * the given session.
+     *
+     * @param session the session
+     * @param sql the SQL statement
+     * @return the command, or null if there is none
+     */
+    public Command take(Session session, String sql) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        ConcurrentLinkedQueue<Command> queue = commands.get(getKey(session, sql));
+        if (queue == null) {
+            return null;
+        }
+        for (Command command; (command = queue.poll()) != null;) {
+            size.decrementAndGet();
+            if (!command.getPrepared().needRecompile()) {
+                command.setSession(session);
+                command.reuse();
+                return command;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a command that was closed by the given session. Commands that can
+     * not be shared are ignored.
+     *
+     * @param session the session that prepared the command
+     * @param command the command
+     */
+    public void add(Session session, Command command) {
+        if (maxSize <= 0 || !command.canReuse() || !command.isShareable() || command.getPrepared().needRecompile()) {
+            return;
+        }
+        if (size.incrementAndGet() > maxSize) {
+            size.decrementAndGet();
+            makeRoom();
+            if (size.incrementAndGet() > maxSize) {
+                size.decrementAndGet();
+                return;
+            }
+        }
+        String key = getKey(session, command.sql);
+        ConcurrentLinkedQueue<Command> queue = commands.get(key);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<Command>();
+            ConcurrentLinkedQueue<Command> old = commands.putIfAbsent(key, queue);
+            if (old != null) {
+                queue = old;
+            }
+        }
+        queue.offer(command);
+    }
+
+    /**
+     * Remove the outdated commands, and then other commands until the cache
+     * is three quarters full. The size is counted again, because a command
+     * that is added to a queue while the queue is removed gets lost.
+     */
+    private synchronized void makeRoom() {
+        if (size.get() < maxSize) {
+            return;
+        }
+        int count = 0;
+        int keep = maxSize * 3 / 4;
+        for (Iterator<ConcurrentLinkedQueue<Command>> it = commands.values().iterator(); it.hasNext();) {
+            ConcurrentLinkedQueue<Command> queue = it.next();
+            for (Iterator<Command> i = queue.iterator(); i.hasNext();) {
+                if (i.next().getPrepared().needRecompile() || count >= keep) {
+                    i.remove();
+                } else {
+                    count++;
+                }
+            }
+            if (queue.isEmpty()) {
+                it.remove();
+            }
+        }
+        size.set(count);
+    }
+
+    /**
+     * Remove all commands.
+     */
+    public void clear() {
+        commands.clear();
+        size.set(0);
+    }
+
+    private static String getKey(Session session, String sql) {
+        StatementBuilder buff = new StatementBuilder(session.getUser().getName());
+        buff.append('\n').append(session.getCurrentSchemaName());
+        String[] searchPath = session.getSchemaSearchPath();
+        if (searchPath != null) {
+            for (String s : searchPath) {
+                buff.append(',').append(s);
+            }
+        }
+        return buff.append('\n').append(sql).toString();
+    }
+
+}
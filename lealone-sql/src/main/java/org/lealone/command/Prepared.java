@@ -7,9 +7,15 @@
 package org.lealone.command;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 
 import org.lealone.api.DatabaseEventListener;
 import org.lealone.api.ErrorCode;
+import org.lealone.dbobject.DbObject;
+import org.lealone.dbobject.table.FunctionTable;
+import org.lealone.dbobject.table.Table;
+import org.lealone.dbobject.table.TableView;
 import org.lealone.engine.Database;
 import org.lealone.engine.Session;
 import org.lealone.engine.SysProperties;
@@ -18,6 +24,7 @@ import org.lealone.expression.Parameter;
 import org.lealone.message.DbException;
 import org.lealone.message.Trace;
 import org.lealone.result.ResultInterface;
+import org.lealone.util.New;
 import org.lealone.util.StatementBuilder;
 import org.lealone.value.Value;
 
@@ -298,7 +305,8 @@ public abstract class Prepared {
     }
 
     /**
-     * Set the session for this statement.
+     * Set the session for this statement. A statement that holds other
+     * statements or table filters moves them to the new session as well.
      *
      * @param currentSession the new session
      */
@@ -407,6 +415,42 @@ public abstract class Prepared {
         return buff.toString();
     }
 
+    /**
+     * Evaluate the rows of a VALUES list with the current parameter values.
+     * If a row uses DEFAULT, which is only handled when the rows are created,
+     * no expression is evaluated, so that a sequence is not incremented in
+     * vain.
+     *
+     * @param list the expressions of each row
+     * @param columnCount the number of columns
+     * @return the values of each row, or null if there are no rows or columns
+     *         or a row uses DEFAULT
+     */
+    protected List<Value[]> getRowValues(ArrayList<Expression[]> list, int columnCount) {
+        if (list.isEmpty() || columnCount == 0)
+            return null;
+        for (Expression[] expr : list) {
+            for (int i = 0; i < columnCount; i++) {
+                if (expr[i] == null)
+                    return null;
+            }
+        }
+        List<Value[]> values = New.arrayList(list.size());
+        for (int x = 0, size = list.size(); x < size; x++) {
+            Expression[] expr = list.get(x);
+            Value[] v = new Value[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                try {
+                    v[i] = expr[i].optimize(session).getValue(session);
+                } catch (DbException ex) {
+                    throw setRow(ex, x + 1, getSQL(expr));
+                }
+            }
+            values.add(v);
+        }
+        return values;
+    }
+
     /**
      * Set the SQL statement of the exception to the given row.
      *
@@ -432,6 +476,38 @@ public abstract class Prepared {
         return false;
     }
 
+    /**
+     * Check if the statement can be used by another session of the same user
+     * after it was closed. See PlanCache.
+     *
+     * @return true if it can be shared
+     */
+    public boolean isShareable() {
+        return false;
+    }
+
+    /**
+     * Check if a statement that uses the given objects can be shared between
+     * sessions. Views, function tables and local temporary tables are bound to
+     * the session that prepared the statement.
+     *
+     * @param dependencies the objects the statement uses
+     * @return true if it can be shared
+     */
+    protected static boolean isShareable(HashSet<DbObject> dependencies) {
+        for (DbObject obj : dependencies) {
+            if (obj instanceof TableView || obj instanceof FunctionTable) {
+                return false;
+            } else if (obj instanceof Table) {
+                Table table = (Table) obj;
+                if (table.isTemporary() && !table.isGlobalTemporary()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public Command getCommand() {
         return command;
     }
@@ -6,14 +6,21 @@
  */
 package org.lealone.command.ddl;
 
+import java.util.ArrayList;
+import java.util.Random;
+
 import org.lealone.command.CommandInterface;
 import org.lealone.command.Prepared;
 import org.lealone.dbobject.Right;
+import org.lealone.dbobject.index.Cursor;
 import org.lealone.dbobject.table.Column;
+import org.lealone.dbobject.table.ColumnStatistics;
 import org.lealone.dbobject.table.Table;
 import org.lealone.engine.Database;
 import org.lealone.engine.Session;
 import org.lealone.result.ResultInterface;
+import org.lealone.result.Row;
+import org.lealone.util.New;
 import org.lealone.util.StatementBuilder;
 import org.lealone.value.Value;
 
@@ -102,6 +109,10 @@ public class Analyze extends DefineCommand {
             int selectivity = result.currentRow()[j].getInt();
             columns[j].setSelectivity(selectivity);
         }
+        int buckets = db.getSettings().analyzeHistogram;
+        if (buckets > 0) {
+            analyzeColumns(session, table, sample, buckets, manual);
+        }
         if (manual) {
             db.update(session, table);
         } else {
@@ -117,6 +128,79 @@ public class Analyze extends DefineCommand {
         }
     }
 
+    /**
+     * Build the histogram, the most common values and the fraction of NULL
+     * values of each column. For the ANALYZE statement the whole table is
+     * read, and a random sample of its rows is kept, so that the statistics do
+     * not only describe the rows at the start of the table. The automatic
+     * analysis runs within a statement that changes the table, so it only
+     * reads the first sample rows, like the selectivity query.
+     *
+     * @param session the session
+     * @param table the table
+     * @param sample the number of sample rows, or 0 for ANALYZE_SAMPLE rows
+     * @param buckets the number of histogram buckets
+     * @param manual whether the ANALYZE statement was used
+     */
+    private static void analyzeColumns(Session session, Table table, int sample, int buckets, boolean manual) {
+        Database db = session.getDatabase();
+        ArrayList<Column> columns = New.arrayList();
+        for (Column col : table.getColumns()) {
+            int type = col.getType();
+            if (type == Value.BLOB || type == Value.CLOB || type == Value.ARRAY || type == Value.JAVA_OBJECT) {
+                // these columns can not be indexed
+                col.setStatistics(null);
+                continue;
+            }
+            columns.add(col);
+        }
+        if (columns.isEmpty()) {
+            return;
+        }
+        int columnCount = columns.size();
+        int size = sample > 0 ? sample : Math.max(db.getSettings().analyzeSample, 1);
+        ArrayList<Value[]> rows = New.arrayList();
+        // the same rows are sampled each time, if the table did not change
+        Random random = new Random(table.getId());
+        // the rows are read from the scan index, a query would first copy the
+        // whole table into its result
+        Cursor cursor = table.getScanIndex(session).find(session, null, null);
+        for (long count = 0; cursor.next(); count++) {
+            if ((count & 4095) == 4095) {
+                session.checkCanceled();
+            }
+            int i;
+            if (count < size) {
+                i = rows.size();
+                rows.add(null);
+            } else if (!manual) {
+                break;
+            } else {
+                // reservoir sampling
+                long j = (long) (random.nextDouble() * (count + 1));
+                if (j >= size) {
+                    continue;
+                }
+                i = (int) j;
+            }
+            Row row = cursor.get();
+            Value[] v = new Value[columnCount];
+            for (int j = 0; j < columnCount; j++) {
+                v[j] = row.getValue(columns.get(j).getColumnId());
+            }
+            rows.set(i, v);
+        }
+        int rowCount = rows.size();
+        Value[] values = new Value[rowCount];
+        for (int j = 0; j < columnCount; j++) {
+            for (int i = 0; i < rowCount; i++) {
+                values[i] = rows.get(i)[j];
+            }
+            columns.get(j).setStatistics(ColumnStatistics.create(values, rowCount,
+                    db.getSettings().analyzeCommonValues, buckets, db.getCompareMode()));
+        }
+    }
+
     public void setTop(int top) {
         this.sampleRows = top;
     }
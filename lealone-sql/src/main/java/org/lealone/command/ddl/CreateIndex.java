@@ -11,6 +11,7 @@ import org.lealone.command.CommandInterface;
 import org.lealone.dbobject.Right;
 import org.lealone.dbobject.Schema;
 import org.lealone.dbobject.index.IndexType;
+import org.lealone.dbobject.table.Column;
 import org.lealone.dbobject.table.IndexColumn;
 import org.lealone.dbobject.table.Table;
 import org.lealone.engine.Constants;
@@ -27,6 +28,7 @@ public class CreateIndex extends SchemaCommand {
     private String tableName;
     private String indexName;
     private IndexColumn[] indexColumns;
+    private String[] includeColumnNames;
     private boolean primaryKey, unique, hash;
     private boolean ifNotExists;
     private String comment;
@@ -51,6 +53,10 @@ public class CreateIndex extends SchemaCommand {
         this.indexColumns = columns;
     }
 
+    public void setIncludeColumnNames(String[] includeColumnNames) {
+        this.includeColumnNames = includeColumnNames;
+    }
+
     public int update() {
         if (!transactional) {
             session.commit(true);
@@ -89,7 +95,14 @@ public class CreateIndex extends SchemaCommand {
             indexType = IndexType.createNonUnique(persistent, hash);
         }
         IndexColumn.mapColumns(indexColumns, table);
-        table.addIndex(session, indexName, id, indexColumns, indexType, create, comment);
+        Column[] includeColumns = null;
+        if (includeColumnNames != null) {
+            includeColumns = new Column[includeColumnNames.length];
+            for (int i = 0; i < includeColumnNames.length; i++) {
+                includeColumns[i] = table.getColumn(includeColumnNames[i]);
+            }
+        }
+        table.addIndex(session, indexName, id, indexColumns, includeColumns, indexType, create, comment);
         return 0;
     }
 
@@ -52,6 +52,14 @@ public class CreateTable extends SchemaCommand {
         this.asQuery = query;
     }
 
+    @Override
+    public void setSession(Session currentSession) {
+        super.setSession(currentSession);
+        for (DefineCommand command : constraintCommands) {
+            command.setSession(currentSession);
+        }
+    }
+
     public void setTemporary(boolean temporary) {
         data.temporary = temporary;
     }
@@ -6,20 +6,24 @@
  */
 package org.lealone.command.dml;
 
+import java.util.HashSet;
 import java.util.concurrent.Callable;
 
 import org.lealone.api.Trigger;
 import org.lealone.command.CommandInterface;
 import org.lealone.command.Prepared;
+import org.lealone.dbobject.DbObject;
 import org.lealone.dbobject.Right;
 import org.lealone.dbobject.table.PlanItem;
 import org.lealone.dbobject.table.Table;
 import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Session;
 import org.lealone.expression.Expression;
+import org.lealone.expression.ExpressionVisitor;
 import org.lealone.result.ResultInterface;
 import org.lealone.result.Row;
 import org.lealone.result.RowList;
+import org.lealone.util.New;
 import org.lealone.util.StringUtils;
 import org.lealone.value.Value;
 import org.lealone.value.ValueNull;
@@ -175,6 +179,23 @@ public class Delete extends Prepared implements Callable<Integer> {
         return true;
     }
 
+    @Override
+    public void setSession(Session currentSession) {
+        super.setSession(currentSession);
+        tableFilter.setSession(currentSession);
+    }
+
+    @Override
+    public boolean isShareable() {
+        HashSet<DbObject> dependencies = New.hashSet();
+        dependencies.add(tableFilter.getTable());
+        ExpressionVisitor visitor = ExpressionVisitor.getDependenciesVisitor(dependencies);
+        if (condition != null) {
+            condition.isEverything(visitor);
+        }
+        return isShareable(dependencies);
+    }
+
     public Table getTable() {
         return tableFilter.getTable();
     }
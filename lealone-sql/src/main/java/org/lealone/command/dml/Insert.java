@@ -7,6 +7,7 @@
 package org.lealone.command.dml;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import org.lealone.api.ErrorCode;
@@ -14,12 +15,14 @@ import org.lealone.api.Trigger;
 import org.lealone.command.Command;
 import org.lealone.command.CommandInterface;
 import org.lealone.command.Prepared;
+import org.lealone.dbobject.DbObject;
 import org.lealone.dbobject.Right;
 import org.lealone.dbobject.index.Index;
 import org.lealone.dbobject.table.Column;
 import org.lealone.dbobject.table.Table;
 import org.lealone.engine.Session;
 import org.lealone.expression.Expression;
+import org.lealone.expression.ExpressionVisitor;
 import org.lealone.expression.Parameter;
 import org.lealone.message.DbException;
 import org.lealone.result.ResultInterface;
@@ -46,6 +49,7 @@ public class Insert extends Prepared implements ResultTarget, InsertOrMerge {
     protected boolean insertFromSelect;
 
     private List<Row> rows;
+    private List<Value[]> rowValues;
 
     public Insert(Session session) {
         super(session);
@@ -72,6 +76,11 @@ public class Insert extends Prepared implements ResultTarget, InsertOrMerge {
         this.columns = columns;
     }
 
+    @Override
+    public Column[] getColumns() {
+        return columns;
+    }
+
     public void setQuery(Query query) {
         this.query = query;
     }
@@ -86,6 +95,16 @@ public class Insert extends Prepared implements ResultTarget, InsertOrMerge {
         this.rows = rows;
     }
 
+    @Override
+    public void setRowValues(List<Value[]> rowValues) {
+        this.rowValues = rowValues;
+    }
+
+    @Override
+    public List<Value[]> getCurrentRowValues() {
+        return getRowValues(list, columns.length);
+    }
+
     /**
      * Add a row to this merge statement.
      *
@@ -133,7 +152,15 @@ public class Insert extends Prepared implements ResultTarget, InsertOrMerge {
 
     protected void createRows() {
         int listSize = list.size();
-        if (listSize > 0) {
+        if (rowValues != null) {
+            List<Value[]> values = rowValues;
+            rowValues = null;
+            rows = New.arrayList(values.size());
+            rowNumber = 0;
+            for (Value[] v : values) {
+                addRow(v);
+            }
+        } else if (listSize > 0) {
             rows = New.arrayList(listSize);
             for (int x = 0; x < listSize; x++) {
                 Expression[] expr = list.get(x);
@@ -311,6 +338,28 @@ public class Insert extends Prepared implements ResultTarget, InsertOrMerge {
         return buff.toString();
     }
 
+    @Override
+    public String getTemplateSQL() {
+        StatementBuilder buff = new StatementBuilder("INSERT INTO ");
+        buff.append(table.getSQL()).append('(');
+        for (Column c : columns) {
+            buff.appendExceptFirst(", ");
+            buff.append(c.getSQL());
+        }
+        buff.append(") ");
+        if (sortedInsertMode) {
+            buff.append("SORTED ");
+        }
+        buff.append("VALUES(");
+        buff.resetCount();
+        for (int i = 0; i < columns.length; i++) {
+            buff.appendExceptFirst(", ");
+            buff.append('?');
+        }
+        buff.append(')');
+        return buff.toString();
+    }
+
     @Override
     public void prepare() {
         if (columns == null) {
@@ -374,6 +423,24 @@ public class Insert extends Prepared implements ResultTarget, InsertOrMerge {
         return true;
     }
 
+    @Override
+    public boolean isShareable() {
+        if (query != null) {
+            return false;
+        }
+        HashSet<DbObject> dependencies = New.hashSet();
+        dependencies.add(table);
+        ExpressionVisitor visitor = ExpressionVisitor.getDependenciesVisitor(dependencies);
+        for (Expression[] expr : list) {
+            for (Expression e : expr) {
+                if (e != null) {
+                    e.isEverything(visitor);
+                }
+            }
+        }
+        return isShareable(dependencies);
+    }
+
     public boolean isBatch() {
         return query != null || list.size() > 1; // || table.doesSecondaryIndexExist();
     }
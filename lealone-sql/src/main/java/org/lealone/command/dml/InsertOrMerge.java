@@ -20,8 +20,10 @@ package org.lealone.command.dml;
 import java.util.List;
 import java.util.concurrent.Callable;
 
+import org.lealone.dbobject.table.Column;
 import org.lealone.dbobject.table.Table;
 import org.lealone.result.Row;
+import org.lealone.value.Value;
 
 public interface InsertOrMerge extends Callable<Integer> {
     Table getTable();
@@ -32,6 +34,32 @@ public interface InsertOrMerge extends Callable<Integer> {
 
     String getPlanSQL(List<Row> rows);
 
+    Column[] getColumns();
+
+    /**
+     * Get the SQL statement with a single row of parameters. Other nodes
+     * prepare it once, and then receive the rows as values.
+     *
+     * @return the SQL statement
+     */
+    String getTemplateSQL();
+
+    /**
+     * Use the given values of the columns instead of the VALUES list the next
+     * time the statement is executed.
+     *
+     * @param rowValues the values of each row
+     */
+    void setRowValues(List<Value[]> rowValues);
+
+    /**
+     * Evaluate the VALUES list with the current parameter values.
+     *
+     * @return the values of the columns of each row, or null if the rows come
+     *         from a query or use DEFAULT
+     */
+    List<Value[]> getCurrentRowValues();
+
     @Override
     Integer call();
 }
@@ -42,6 +42,7 @@ public class Merge extends Prepared implements InsertOrMerge {
     protected Prepared update;
 
     private List<Row> rows;
+    private List<Value[]> rowValues;
 
     public Merge(Session session) {
         super(session);
@@ -68,6 +69,11 @@ public class Merge extends Prepared implements InsertOrMerge {
         this.columns = columns;
     }
 
+    @Override
+    public Column[] getColumns() {
+        return columns;
+    }
+
     public void setKeys(Column[] keys) {
         this.keys = keys;
     }
@@ -95,6 +101,16 @@ public class Merge extends Prepared implements InsertOrMerge {
         this.rows = rows;
     }
 
+    @Override
+    public void setRowValues(List<Value[]> rowValues) {
+        this.rowValues = rowValues;
+    }
+
+    @Override
+    public List<Value[]> getCurrentRowValues() {
+        return getRowValues(list, columns.length);
+    }
+
     @Override
     public int update() {
         createRows();
@@ -113,7 +129,19 @@ public class Merge extends Prepared implements InsertOrMerge {
 
     protected void createRows() {
         int listSize = list.size();
-        if (listSize > 0) {
+        if (rowValues != null) {
+            List<Value[]> values = rowValues;
+            rowValues = null;
+            rows = New.arrayList(values.size());
+            for (int x = 0, size = values.size(); x < size; x++) {
+                Value[] v = values.get(x);
+                try {
+                    rows.add(createRow(v));
+                } catch (DbException ex) {
+                    throw setRow(ex, x + 1, getSQL(v));
+                }
+            }
+        } else if (listSize > 0) {
             rows = New.arrayList(listSize);
             for (int x = 0; x < listSize; x++) {
                 Expression[] expr = list.get(x);
@@ -342,6 +370,34 @@ public class Merge extends Prepared implements InsertOrMerge {
         return buff.toString();
     }
 
+    @Override
+    public String getTemplateSQL() {
+        StatementBuilder buff = new StatementBuilder("MERGE INTO ");
+        buff.append(table.getSQL()).append('(');
+        for (Column c : columns) {
+            buff.appendExceptFirst(", ");
+            buff.append(c.getSQL());
+        }
+        buff.append(')');
+        if (keys != null) {
+            buff.append(" KEY(");
+            buff.resetCount();
+            for (Column c : keys) {
+                buff.appendExceptFirst(", ");
+                buff.append(c.getSQL());
+            }
+            buff.append(')');
+        }
+        buff.append(" VALUES(");
+        buff.resetCount();
+        for (int i = 0; i < columns.length; i++) {
+            buff.appendExceptFirst(", ");
+            buff.append('?');
+        }
+        buff.append(')');
+        return buff.toString();
+    }
+
     @Override
     public void prepare() {
         if (columns == null) {
@@ -12,6 +12,7 @@ import java.util.List;
 
 import org.lealone.api.ErrorCode;
 import org.lealone.command.Prepared;
+import org.lealone.dbobject.DbObject;
 import org.lealone.dbobject.table.ColumnResolver;
 import org.lealone.dbobject.table.Table;
 import org.lealone.dbobject.table.TableFilter;
@@ -25,10 +26,13 @@ import org.lealone.expression.Parameter;
 import org.lealone.expression.ValueExpression;
 import org.lealone.message.DbException;
 import org.lealone.result.LocalResult;
+import org.lealone.result.ResultCache;
 import org.lealone.result.ResultInterface;
 import org.lealone.result.ResultTarget;
 import org.lealone.result.SortOrder;
 import org.lealone.util.New;
+import org.lealone.util.StatementBuilder;
+import org.lealone.value.DataType;
 import org.lealone.value.Value;
 import org.lealone.value.ValueInt;
 import org.lealone.value.ValueNull;
@@ -69,6 +73,7 @@ public abstract class Query extends Prepared {
     private LocalResult lastResult;
     private Value[] lastParameters;
     private boolean cacheableChecked;
+    private Boolean resultCacheable;
 
     Query(Session session) {
         super(session);
@@ -297,6 +302,10 @@ public abstract class Query extends Prepared {
      */
     public ResultInterface query(int limit, ResultTarget target) {
         fireBeforeSelectTriggers();
+        ResultCache resultCache = session.getDatabase().getResultCache();
+        if (target == null && resultCache != null && isResultCacheable()) {
+            return queryWithResultCache(resultCache, limit);
+        }
         if (noCache || !session.getDatabase().getOptimizeReuseResults()) {
             return queryWithoutCache(limit, target);
         }
@@ -322,12 +331,76 @@ public abstract class Query extends Prepared {
         return r;
     }
 
+    private LocalResult queryWithResultCache(ResultCache resultCache, int limit) {
+        String key = getResultCacheKey(limit);
+        if (key == null) {
+            return queryWithoutCache(limit, null);
+        }
+        LocalResult r = resultCache.get(session, this, key);
+        if (r == null) {
+            long now = session.getDatabase().getModificationDataId();
+            r = queryWithoutCache(limit, null);
+            resultCache.put(session, key, r, now);
+        }
+        return r;
+    }
+
+    /**
+     * Check if the result of this query can be kept in the result cache. The
+     * query must be deterministic and may only read regular tables, and the
+     * session must not have uncommitted changes.
+     *
+     * @return true if it can
+     */
+    private boolean isResultCacheable() {
+        if (noCache || session.hasModifiedTables()) {
+            return false;
+        }
+        if (resultCacheable == null) {
+            resultCacheable = isShareable() && isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)
+                    && isEverything(ExpressionVisitor.INDEPENDENT_VISITOR)
+                    && getMaxDataModificationId() != Long.MAX_VALUE;
+        }
+        return resultCacheable;
+    }
+
+    private String getResultCacheKey(int limit) {
+        StatementBuilder buff = new StatementBuilder(getPlanSQL());
+        buff.append('\n').append(limit);
+        for (Value v : getParameterValues()) {
+            if (v == null || DataType.isLargeObject(v.getType())) {
+                return null;
+            }
+            buff.append('\n').append(v.getType()).append(':').append(v.getSQL());
+        }
+        return buff.toString();
+    }
+
     private void closeLastResult() {
         if (lastResult != null) {
             lastResult.close();
         }
     }
 
+    @Override
+    public void setSession(Session currentSession) {
+        if (currentSession != session) {
+            // the last result may contain rows that only the old session can see
+            lastResult = null;
+        }
+        super.setSession(currentSession);
+    }
+
+    @Override
+    public boolean isShareable() {
+        if (!isCacheable()) {
+            return false;
+        }
+        HashSet<DbObject> dependencies = New.hashSet();
+        isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies));
+        return isShareable(dependencies);
+    }
+
     /**
      * Initialize the order by list. This call may extend the expressions list.
      *
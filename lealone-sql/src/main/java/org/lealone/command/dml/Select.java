@@ -8,19 +8,25 @@ package org.lealone.command.dml;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.lealone.api.ErrorCode;
 import org.lealone.api.Trigger;
 import org.lealone.command.CommandInterface;
+import org.lealone.command.router.CommandParallel;
+import org.lealone.command.router.MergedResult;
 import org.lealone.dbobject.index.Cursor;
 import org.lealone.dbobject.index.Index;
+import org.lealone.dbobject.index.IndexCondition;
 import org.lealone.dbobject.index.IndexType;
 import org.lealone.dbobject.table.Column;
 import org.lealone.dbobject.table.ColumnResolver;
+import org.lealone.dbobject.table.ColumnStatistics;
 import org.lealone.dbobject.table.IndexColumn;
 import org.lealone.dbobject.table.Table;
 import org.lealone.dbobject.table.TableFilter;
@@ -28,6 +34,7 @@ import org.lealone.engine.Constants;
 import org.lealone.engine.Database;
 import org.lealone.engine.Session;
 import org.lealone.engine.SysProperties;
+import org.lealone.expression.Aggregate;
 import org.lealone.expression.Calculator;
 import org.lealone.expression.Comparison;
 import org.lealone.expression.ConditionAndOr;
@@ -35,12 +42,15 @@ import org.lealone.expression.Expression;
 import org.lealone.expression.ExpressionColumn;
 import org.lealone.expression.ExpressionVisitor;
 import org.lealone.expression.Parameter;
+import org.lealone.expression.ValueExpression;
 import org.lealone.expression.Wildcard;
 import org.lealone.message.DbException;
 import org.lealone.result.LocalResult;
 import org.lealone.result.ResultInterface;
 import org.lealone.result.ResultTarget;
+import org.lealone.result.ResultTempTable;
 import org.lealone.result.Row;
+import org.lealone.result.RowBatch;
 import org.lealone.result.SearchRow;
 import org.lealone.result.SortOrder;
 import org.lealone.util.New;
@@ -49,6 +59,7 @@ import org.lealone.util.StringUtils;
 import org.lealone.util.ValueHashMap;
 import org.lealone.value.Value;
 import org.lealone.value.ValueArray;
+import org.lealone.value.ValueLong;
 import org.lealone.value.ValueNull;
 
 /**
@@ -77,7 +88,18 @@ public class Select extends Query implements Callable<ResultInterface> {
     private ArrayList<Expression> group;
     private int[] groupIndex;
     private boolean[] groupByExpression;
-    private HashMap<Expression, Object> currentGroup;
+    private SelectGroup currentGroup;
+    private int groupSlotCount;
+    private int maxMemoryGroups;
+    private ResultTempTable spilledRows;
+    private ArrayList<Value[]> spillBatch;
+    private boolean parallelPart;
+    // the statements that compute and merge the partial aggregates of this
+    // query, prepared once and reused by every execution
+    private String partSQL;
+
+    private static final AtomicLong parallelQueries = new AtomicLong();
+    private Select partSelect, mergeSelect, finalMergeSelect;
     private int havingIndex;
     private boolean isGroupQuery, isGroupSortedQuery;
     private boolean isForUpdate, isForUpdateMvcc;
@@ -115,6 +137,24 @@ public class Select extends Query implements Callable<ResultInterface> {
         super(session);
     }
 
+    @Override
+    public void setSession(Session currentSession) {
+        super.setSession(currentSession);
+        for (TableFilter f : filters) {
+            f.setSession(currentSession);
+        }
+        // the queries of a distributed or parallel group query move along
+        if (partSelect != null) {
+            partSelect.setSession(currentSession);
+        }
+        if (mergeSelect != null) {
+            mergeSelect.setSession(currentSession);
+        }
+        if (finalMergeSelect != null) {
+            finalMergeSelect.setSession(currentSession);
+        }
+    }
+
     /**
      * Add a table to the query.
      *
@@ -159,10 +199,24 @@ public class Select extends Query implements Callable<ResultInterface> {
         return group;
     }
 
-    public HashMap<Expression, Object> getCurrentGroup() {
+    public SelectGroup getCurrentGroup() {
         return currentGroup;
     }
 
+    /**
+     * Reserve a slot in each group for the aggregate data or the column value
+     * of an expression, see {@link SelectGroup}.
+     *
+     * @return the slot
+     */
+    public int addGroupSlot() {
+        return groupSlotCount++;
+    }
+
+    private SelectGroup newGroup() {
+        return new SelectGroup(groupSlotCount);
+    }
+
     public int getCurrentGroupRowId() {
         return currentGroupRowId;
     }
@@ -203,28 +257,22 @@ public class Select extends Query implements Callable<ResultInterface> {
 
                 if (previousKeyValues == null) {
                     previousKeyValues = keyValues;
-                    currentGroup = New.hashMap();
+                    currentGroup = newGroup();
                 } else if (!Arrays.equals(previousKeyValues, keyValues)) {
-                    addGroupSortedRow(previousKeyValues, columnCount, result);
+                    addGroupRow(previousKeyValues, columnCount, result);
                     previousKeyValues = keyValues;
-                    currentGroup = New.hashMap();
+                    currentGroup = newGroup();
                 }
                 currentGroupRowId++;
-
-                for (int i = 0; i < columnCount; i++) {
-                    if (groupByExpression == null || !groupByExpression[i]) {
-                        Expression expr = expressions.get(i);
-                        expr.updateAggregate(session);
-                    }
-                }
+                updateAggregates(columnCount);
             }
         }
         if (previousKeyValues != null) {
-            addGroupSortedRow(previousKeyValues, columnCount, result);
+            addGroupRow(previousKeyValues, columnCount, result);
         }
     }
 
-    private void addGroupSortedRow(Value[] keyValues, int columnCount, ResultTarget result) {
+    private void addGroupRow(Value[] keyValues, int columnCount, ResultTarget result) {
         Value[] row = new Value[columnCount];
         for (int j = 0; groupIndex != null && j < groupIndex.length; j++) {
             row[groupIndex[j]] = keyValues[j];
@@ -335,9 +383,19 @@ public class Select extends Query implements Callable<ResultInterface> {
         return count;
     }
 
+    private boolean hasSketches() {
+        for (int i = 0, size = expressions.size(); i < size; i++) {
+            Expression expr = expressions.get(i);
+            if (expr instanceof Aggregate && ((Aggregate) expr).isSketch()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public ResultInterface calculate(ResultInterface result, Select select) {
         int columnCount = expressions.size();
-        if (select.expressions.size() == columnCount)
+        if (select.expressions.size() == columnCount && !hasSketches())
             return result;
         LocalResult lr = new LocalResult(session, expressionArray, columnCount);
 
@@ -365,7 +423,7 @@ public class Select extends Query implements Callable<ResultInterface> {
         //columnCount = visibleColumnCount;
         int columnCount = expressions.size();
         LocalResult result = new LocalResult(session, expressionArray, visibleColumnCount);
-        ValueHashMap<HashMap<Expression, Object>> groups = ValueHashMap.newInstance();
+        ValueHashMap<SelectGroup> groups = ValueHashMap.newInstance();
         int rowNumber = 0;
         setCurrentRowNumber(0);
         ValueArray defaultGroup = ValueArray.get(new Value[0]);
@@ -387,9 +445,9 @@ public class Select extends Query implements Callable<ResultInterface> {
                 }
                 key = ValueArray.get(keyValues);
             }
-            HashMap<Expression, Object> values = groups.get(key);
+            SelectGroup values = groups.get(key);
             if (values == null) {
-                values = new HashMap<Expression, Object>();
+                values = newGroup();
                 groups.put(key, values);
             }
             currentGroup = values;
@@ -409,7 +467,7 @@ public class Select extends Query implements Callable<ResultInterface> {
         }
         //}
         if (groupIndex == null && groups.size() == 0) {
-            groups.put(defaultGroup, new HashMap<Expression, Object>());
+            groups.put(defaultGroup, newGroup());
         }
         columnCount = expressions.size();
         ArrayList<Value> keys = groups.keys();
@@ -439,70 +497,442 @@ public class Select extends Query implements Callable<ResultInterface> {
     }
 
     private void queryGroup(int columnCount, LocalResult result) {
-        ValueHashMap<HashMap<Expression, Object>> groups = ValueHashMap.newInstance();
+        ValueHashMap<SelectGroup> groups = ValueHashMap.newInstance();
         int rowNumber = 0;
         setCurrentRowNumber(0);
         ValueArray defaultGroup = ValueArray.get(new Value[0]);
-        while (topTableFilter.next()) {
-            setCurrentRowNumber(rowNumber + 1);
-            if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
-                Value key;
-                rowNumber++;
-                if (groupIndex == null) {
-                    key = defaultGroup;
-                } else {
-                    Value[] keyValues = new Value[groupIndex.length];
-                    // update group
-                    for (int i = 0; i < groupIndex.length; i++) {
-                        int idx = groupIndex[i];
-                        Expression expr = expressions.get(idx);
-                        keyValues[i] = expr.getValue(session);
-                    }
-                    key = ValueArray.get(keyValues);
-                }
-                HashMap<Expression, Object> values = groups.get(key);
-                if (values == null) {
-                    values = new HashMap<Expression, Object>();
-                    groups.put(key, values);
-                }
-                currentGroup = values;
-                currentGroupRowId++;
-                int len = columnCount;
-                for (int i = 0; i < len; i++) {
-                    if (groupByExpression == null || !groupByExpression[i]) {
-                        Expression expr = expressions.get(i);
-                        expr.updateAggregate(session);
+        maxMemoryGroups = getMaxMemoryGroups();
+        try {
+            if (isBatchQuery()) {
+                queryGroupBatch(columnCount, groups, defaultGroup);
+            } else {
+                while (topTableFilter.next()) {
+                    setCurrentRowNumber(rowNumber + 1);
+                    if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
+                        rowNumber++;
+                        updateGroup(columnCount, groups, defaultGroup, false);
+                        if (sampleSize > 0 && rowNumber >= sampleSize) {
+                            break;
+                        }
                     }
                 }
-                if (sampleSize > 0 && rowNumber >= sampleSize) {
-                    break;
+            }
+            if (groupIndex == null && groups.size() == 0) {
+                groups.put(defaultGroup, newGroup());
+            }
+            ArrayList<Value> keys = groups.keys();
+            for (Value v : keys) {
+                ValueArray key = (ValueArray) v;
+                currentGroup = groups.get(key);
+                addGroupRow(key.getList(), columnCount, result);
+            }
+            if (spilledRows != null) {
+                // the groups in memory are no longer needed
+                groups = null;
+                queryGroupSpilled(columnCount, result);
+            }
+        } finally {
+            if (spilledRows != null) {
+                spilledRows.close();
+                spilledRows = null;
+                spillBatch = null;
+            }
+        }
+    }
+
+    /**
+     * Get the maximum number of groups that are kept in memory. The rows of
+     * the other groups are written to a temporary table, which is only done
+     * for a single table.
+     *
+     * @return the maximum number of groups
+     */
+    private int getMaxMemoryGroups() {
+        Database db = session.getDatabase();
+        if (groupIndex == null || parallelPart || topTableFilter.getJoin() != null
+                || topTableFilter.getNestedJoin() != null || !db.isPersistent() || db.isReadOnly()) {
+            return Integer.MAX_VALUE;
+        }
+        return db.getMaxMemoryRows();
+    }
+
+    /**
+     * Write the current row to the temporary table, because its group is not
+     * in memory and there is no room for another group.
+     *
+     * @param key the group key
+     * @param batch whether the row is the current row of a batch
+     */
+    private void spillRow(ValueArray key, boolean batch) {
+        Value[] keyValues = key.getList();
+        // in a batch, the search row has all the columns the query uses, but
+        // the cursor is already past it
+        SearchRow r = batch ? topTableFilter.getCurrentSearchRow() : topTableFilter.get();
+        int columnCount = topTableFilter.getTable().getColumns().length;
+        Value[] row = new Value[keyValues.length + 1 + columnCount];
+        System.arraycopy(keyValues, 0, row, 0, keyValues.length);
+        // the row key keeps equal rows apart, as the temporary table only
+        // keeps distinct rows
+        row[keyValues.length] = ValueLong.get(r.getKey());
+        for (int i = 0; i < columnCount; i++) {
+            Value v = r.getValue(i);
+            row[keyValues.length + 1 + i] = v == null ? ValueNull.INSTANCE : v;
+        }
+        if (spilledRows == null) {
+            spilledRows = new ResultTempTable(session, null);
+            spillBatch = New.arrayList();
+        }
+        spillBatch.add(row);
+        if (spillBatch.size() >= maxMemoryGroups) {
+            spilledRows.addRows(spillBatch);
+            spillBatch.clear();
+        }
+    }
+
+    /**
+     * Aggregate the groups that did not fit in memory. The temporary table
+     * returns their rows sorted by the group key, so only one of these groups
+     * is in memory at a time.
+     *
+     * @param columnCount the number of expressions
+     * @param result the result to add the groups to
+     */
+    private void queryGroupSpilled(int columnCount, LocalResult result) {
+        if (spillBatch.size() > 0) {
+            spilledRows.addRows(spillBatch);
+        }
+        spillBatch = null;
+        spilledRows.done();
+        spilledRows.reset();
+        int keyLength = groupIndex.length;
+        Value[] keyValues = null;
+        Value[] row;
+        while ((row = spilledRows.next()) != null) {
+            Value[] k = Arrays.copyOf(row, keyLength);
+            if (keyValues == null || !Arrays.equals(keyValues, k)) {
+                if (keyValues != null) {
+                    addGroupRow(keyValues, columnCount, result);
                 }
+                keyValues = k;
+                currentGroup = newGroup();
             }
+            Row r = new Row(Arrays.copyOfRange(row, keyLength + 1, row.length), Row.MEMORY_CALCULATE);
+            r.setKey(row[keyLength].getLong());
+            topTableFilter.set(r);
+            currentGroupRowId++;
+            updateAggregates(columnCount);
         }
-        if (groupIndex == null && groups.size() == 0) {
-            groups.put(defaultGroup, new HashMap<Expression, Object>());
+        if (keyValues != null) {
+            addGroupRow(keyValues, columnCount, result);
         }
-        ArrayList<Value> keys = groups.keys();
-        for (Value v : keys) {
-            ValueArray key = (ValueArray) v;
-            currentGroup = groups.get(key);
-            Value[] keyValues = key.getList();
-            Value[] row = new Value[columnCount];
-            for (int j = 0; groupIndex != null && j < groupIndex.length; j++) {
-                row[groupIndex[j]] = keyValues[j];
+    }
+
+    /**
+     * Run a group query over a large table as several queries over disjoint
+     * ranges of the row key, on the threads of {@link CommandParallel}, and
+     * merge their partial aggregates the same way the results of a
+     * distributed query are merged.
+     *
+     * @param result the result to add the merged groups to
+     * @return false if the query can not be split
+     */
+    private boolean queryGroupParallel(LocalResult result) {
+        int threads = session.getDatabase().getSettings().parallelQueryThreads;
+        // the parts run in their own sessions, which do not see the
+        // uncommitted changes of this one
+        if (threads <= 1 || !session.isAutoCommit() || !isParallelQuery()) {
+            return false;
+        }
+        Table table = topTableFilter.getTable();
+        long rowCount = table.getRowCountApproximation();
+        if (rowCount < session.getDatabase().getSettings().parallelQueryMinRows) {
+            return false;
+        }
+        // the parts and the merge keep all their groups in memory, so a query
+        // that may have more groups than fit in memory is not split and
+        // writes the other groups to a temporary table instead
+        if (groupIndex != null && getGroupCountEstimate(rowCount) > getMaxMemoryGroups()) {
+            return false;
+        }
+        // without index conditions, the parts can scan the table in key order
+        // whatever index was chosen
+        Index index = table.getScanIndex(session);
+        if (!index.isRowIdIndex()) {
+            return false;
+        }
+        SearchRow first = index.findFirstOrLast(session, true).getSearchRow();
+        SearchRow last = index.findFirstOrLast(session, false).getSearchRow();
+        if (first == null || last == null) {
+            return false;
+        }
+        long min = first.getKey(), max = last.getKey();
+        long step = (max - min) / threads + 1;
+        if (max - min < 0 || step < 2) {
+            return false;
+        }
+        // the first and the last part are left open, so that no row is
+        // missed if rows were added since the range was read
+        String sql = getPartSQL();
+        ArrayList<Callable<ResultInterface>> parts = New.arrayList(threads);
+        ArrayList<Session> sessions = New.arrayList(threads);
+        List<Future<ResultInterface>> futures = null;
+        try {
+            for (int i = 0; i < threads; i++) {
+                // each part runs in its own session, as a session is not thread safe
+                Session partSession = createPartSession();
+                sessions.add(partSession);
+                final Select part = prepareParallelPart(partSession, sql);
+                TableFilter f = part.topTableFilter;
+                if (f.getJoin() != null || !f.getIndexConditions().isEmpty()) {
+                    return false;
+                }
+                f.setIndex(index);
+                ExpressionColumn key = new ExpressionColumn(session.getDatabase(), f.getRowIdColumn());
+                if (i > 0) {
+                    f.addIndexCondition(IndexCondition.get(Comparison.BIGGER_EQUAL, key,
+                            ValueExpression.get(ValueLong.get(min + i * step))));
+                }
+                if (i < threads - 1) {
+                    f.addIndexCondition(IndexCondition.get(Comparison.SMALLER_EQUAL, key,
+                            ValueExpression.get(ValueLong.get(min + (i + 1) * step - 1))));
+                }
+                parts.add(new Callable<ResultInterface>() {
+                    public ResultInterface call() {
+                        return part.queryWithoutCache(0, null);
+                    }
+                });
             }
-            for (int j = 0; j < columnCount; j++) {
-                if (groupByExpression != null && groupByExpression[j]) {
-                    continue;
+            futures = CommandParallel.submitSelectCallable(parts);
+            ResultInterface merged = new MergedResult(futures, this);
+            while (merged.next()) {
+                result.addRow(merged.currentRow());
+            }
+            merged.close();
+            parallelQueries.incrementAndGet();
+            return true;
+        } finally {
+            if (futures != null) {
+                // a part that is still running uses its session
+                for (Future<ResultInterface> f : futures) {
+                    if (!f.cancel(false)) {
+                        try {
+                            f.get();
+                        } catch (Exception e) {
+                            // ignore, the merge already failed
+                        }
+                    }
                 }
-                Expression expr = expressions.get(j);
-                row[j] = expr.getValue(session);
             }
-            if (isHavingNullOrFalse(row)) {
+            for (Session s : sessions) {
+                // the parts only read, this ends their transactions and
+                // releases their locks
+                s.rollback();
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * Estimate the number of groups from the statistics of the grouped
+     * columns.
+     *
+     * @param rowCount the number of rows of the table
+     * @return the estimated number of groups
+     */
+    private long getGroupCountEstimate(long rowCount) {
+        double groups = 1;
+        for (int idx : groupIndex) {
+            Expression expr = expressions.get(idx).getNonAliasExpression();
+            if (!(expr instanceof ExpressionColumn)) {
+                return rowCount;
+            }
+            Column col = ((ExpressionColumn) expr).getColumn();
+            ColumnStatistics statistics = col.getStatistics();
+            int distinct = statistics == null ? -1 : statistics.getDistinctCount();
+            if (distinct >= 0) {
+                groups *= Math.max(distinct, 1);
+            } else {
+                groups *= Math.max(rowCount * col.getSelectivity() / 100.0, 1);
+            }
+        }
+        return (long) Math.min(groups, rowCount);
+    }
+
+    /**
+     * Get the number of group queries that were split into parallel parts.
+     *
+     * @return the number of queries
+     */
+    public static long getParallelQueryCount() {
+        return parallelQueries.get();
+    }
+
+    private Session createPartSession() {
+        Database db = session.getDatabase();
+        Session s = db.createInternalSession(session.getUser());
+        s.setCurrentSchema(db.getSchema(session.getCurrentSchemaName()));
+        s.setSchemaSearchPath(session.getSchemaSearchPath());
+        return s;
+    }
+
+    /**
+     * Check if the partial aggregates of this query can be computed
+     * separately for parts of the table and merged.
+     *
+     * @return true if they can
+     */
+    private boolean isParallelQuery() {
+        if (!isBatchQuery() || having != null || havingIndex >= 0 || distinct
+                || topTableFilter.getRowIdColumn() == null
+                || !Table.TABLE.equals(topTableFilter.getTable().getTableType())) {
+            return false;
+        }
+        if (!topTableFilter.getIndexConditions().isEmpty()) {
+            // this also keeps the parts themselves from being split again
+            return false;
+        }
+        for (int i = 0, size = expressions.size(); i < size; i++) {
+            if (groupByExpression != null && groupByExpression[i]) {
                 continue;
             }
-            row = keepOnlyDistinct(row, columnCount);
-            result.addRow(row);
+            Expression expr = expressions.get(i);
+            if (!(expr instanceof Aggregate) || !((Aggregate) expr).isMergeSupported()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the SQL statement that computes the partial aggregates of this group
+     * query on one node. The limit is applied to the merged groups, so it is
+     * not part of the statement.
+     *
+     * @return the SQL statement
+     */
+    public String getPartSQL() {
+        if (partSQL == null) {
+            Expression limit = limitExpr, offset = offsetExpr;
+            limitExpr = null;
+            offsetExpr = null;
+            try {
+                partSQL = getPlanSQL(true);
+            } finally {
+                limitExpr = limit;
+                offsetExpr = offset;
+            }
+        }
+        return partSQL;
+    }
+
+    /**
+     * Get the query that computes the partial aggregates of this group query
+     * on the local node.
+     *
+     * @return the query, with the current parameter values
+     */
+    public Select getPartSelect() {
+        if (partSelect == null) {
+            partSelect = (Select) session.prepare(getPartSQL(), true);
+            partSelect.setLocal(true);
+        }
+        setParameterValues(partSelect);
+        return partSelect;
+    }
+
+    /**
+     * Get the query that merges the partial aggregates of the nodes or of the
+     * parallel parts.
+     *
+     * @return the query, with the current parameter values
+     */
+    public Select getMergeSelect() {
+        if (mergeSelect == null) {
+            mergeSelect = prepareParallelPart(session, getPartSQL());
+            removeJoin(mergeSelect);
+        } else {
+            setParameterValues(mergeSelect);
+        }
+        return mergeSelect;
+    }
+
+    /**
+     * Get the query that merges the groups again after the values of
+     * aggregates such as AVG were calculated from their partial aggregates.
+     *
+     * @return the query, with the current parameter values
+     */
+    public Select getFinalMergeSelect() {
+        if (finalMergeSelect == null) {
+            finalMergeSelect = prepareParallelPart(session, getPlanSQL());
+            removeJoin(finalMergeSelect);
+        } else {
+            setParameterValues(finalMergeSelect);
+        }
+        return finalMergeSelect;
+    }
+
+    /**
+     * Sort the merged groups of a distributed group query, and apply the
+     * limit and the offset.
+     *
+     * @param groups the merged groups
+     * @return the result
+     */
+    public ResultInterface sortAndLimit(ResultInterface groups) {
+        int limitRows = getLimitRows();
+        if (sort == null && limitRows < 0 && offsetExpr == null) {
+            return groups;
+        }
+        LocalResult result = new LocalResult(session, expressionArray, visibleColumnCount);
+        if (sort != null) {
+            result.setSortOrder(sort);
+        }
+        if (offsetExpr != null) {
+            result.setOffset(offsetExpr.getValue(session).getInt());
+        }
+        if (limitRows >= 0) {
+            result.setLimit(limitRows);
+        }
+        while (groups.next()) {
+            result.addRow(groups.currentRow());
+        }
+        groups.close();
+        result.done();
+        return result;
+    }
+
+    /**
+     * The rows a merge query reads are the groups of the parts, so the other
+     * table of a join and the conditions of the query do not apply to them.
+     */
+    private static void removeJoin(Select merge) {
+        TableFilter f = merge.topTableFilter;
+        f.removeJoin();
+        f.removeJoinCondition();
+        f.removeFilterCondition();
+    }
+
+    private Select prepareParallelPart(Session s, String sql) {
+        Select part = (Select) s.prepare(sql, true);
+        part.setLocal(true);
+        // the partial groups are merged in memory, so the parts do not write
+        // them to temporary tables either
+        part.parallelPart = true;
+        // the limit is applied to the merged groups
+        part.setLimit(null);
+        part.setOffset(null);
+        setParameterValues(part);
+        return part;
+    }
+
+    private void setParameterValues(Select part) {
+        ArrayList<Parameter> params = getParameters();
+        ArrayList<Parameter> partParams = part.getParameters();
+        if (params != null && partParams != null) {
+            for (int i = 0, size = Math.min(params.size(), partParams.size()); i < size; i++) {
+                partParams.get(i).setValue(params.get(i).getParamValue());
+            }
         }
     }
 
@@ -590,6 +1020,119 @@ public class Select extends Query implements Callable<ResultInterface> {
         return null;
     }
 
+    private void updateGroup(int columnCount, ValueHashMap<SelectGroup> groups, ValueArray defaultGroup,
+            boolean batch) {
+        Value key;
+        if (groupIndex == null) {
+            key = defaultGroup;
+        } else {
+            Value[] keyValues = new Value[groupIndex.length];
+            // update group
+            for (int i = 0; i < groupIndex.length; i++) {
+                int idx = groupIndex[i];
+                Expression expr = expressions.get(idx);
+                keyValues[i] = expr.getValue(session);
+            }
+            key = ValueArray.get(keyValues);
+        }
+        SelectGroup values = groups.get(key);
+        if (values == null) {
+            if (groups.size() >= maxMemoryGroups) {
+                spillRow((ValueArray) key, batch);
+                return;
+            }
+            values = newGroup();
+            groups.put(key, values);
+        }
+        currentGroup = values;
+        currentGroupRowId++;
+        updateAggregates(columnCount);
+    }
+
+    private void updateAggregates(int columnCount) {
+        for (int i = 0; i < columnCount; i++) {
+            if (groupByExpression == null || !groupByExpression[i]) {
+                Expression expr = expressions.get(i);
+                expr.updateAggregate(session);
+            }
+        }
+    }
+
+    /**
+     * Check if the rows can be read and filtered a batch at a time, see
+     * {@link RowBatch}. This is only done for a single table, and if the
+     * condition does not depend on the row number.
+     *
+     * @return true if batches can be used
+     */
+    private boolean isBatchQuery() {
+        if (topTableFilter.getJoin() != null || topTableFilter.getNestedJoin() != null || isForUpdate
+                || sampleSize > 0) {
+            return false;
+        }
+        return condition == null || condition.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR);
+    }
+
+    /**
+     * Get the aggregates that can be updated a batch at a time, if all
+     * expressions are such aggregates and there is no GROUP BY.
+     *
+     * @param columnCount the number of expressions
+     * @return the aggregates, or null
+     */
+    private ArrayList<Aggregate> getBatchAggregates(int columnCount) {
+        if (groupIndex != null) {
+            return null;
+        }
+        ArrayList<Aggregate> list = New.arrayList();
+        for (int i = 0; i < columnCount; i++) {
+            Expression expr = expressions.get(i);
+            if (!(expr instanceof Aggregate) || !((Aggregate) expr).isBatchSupported()) {
+                return null;
+            }
+            // the same aggregate may be used more than once
+            if (!list.contains(expr)) {
+                list.add((Aggregate) expr);
+            }
+        }
+        return list;
+    }
+
+    private void queryGroupBatch(int columnCount, ValueHashMap<SelectGroup> groups,
+            ValueArray defaultGroup) {
+        ArrayList<Aggregate> aggregates = getBatchAggregates(columnCount);
+        RowBatch batch = new RowBatch(topTableFilter);
+        int[] sel = new int[RowBatch.SIZE];
+        int rowNumber = 0;
+        while (batch.next()) {
+            // the condition is evaluated outside of any group
+            currentGroup = null;
+            int selSize = batch.select(session, condition, sel);
+            if (selSize == 0) {
+                continue;
+            }
+            if (aggregates != null) {
+                SelectGroup values = groups.get(defaultGroup);
+                if (values == null) {
+                    values = newGroup();
+                    groups.put(defaultGroup, values);
+                }
+                currentGroup = values;
+                rowNumber += selSize;
+                setCurrentRowNumber(rowNumber);
+                for (Aggregate a : aggregates) {
+                    a.updateAggregate(session, batch, sel, selSize);
+                }
+            } else {
+                for (int i = 0; i < selSize; i++) {
+                    batch.setCurrentRow(sel[i]);
+                    setCurrentRowNumber(++rowNumber);
+                    updateGroup(columnCount, groups, defaultGroup, true);
+                }
+            }
+        }
+    }
+
     private void queryDistinct(ResultTarget result, long limitRows) {
         // limitRows must be long, otherwise we get an int overflow
         // if limitRows is at or near Integer.MAX_VALUE
@@ -641,6 +1184,10 @@ public class Select extends Query implements Callable<ResultInterface> {
         }
         int rowNumber = 0;
         setCurrentRowNumber(0);
+        if (condition != null && isBatchQuery() && (limitRows <= 0 || sort != null && !sortUsingIndex)) {
+            queryFlatBatch(columnCount, result);
+            return;
+        }
         ArrayList<Row> forUpdateRows = null;
         if (isForUpdateMvcc) {
             forUpdateRows = New.arrayList();
@@ -671,6 +1218,25 @@ public class Select extends Query implements Callable<ResultInterface> {
         }
     }
 
+    private void queryFlatBatch(int columnCount, ResultTarget result) {
+        RowBatch batch = new RowBatch(topTableFilter);
+        int[] sel = new int[RowBatch.SIZE];
+        int rowNumber = 0;
+        while (batch.next()) {
+            int selSize = batch.select(session, condition, sel);
+            for (int i = 0; i < selSize; i++) {
+                batch.setCurrentRow(sel[i]);
+                setCurrentRowNumber(++rowNumber);
+                Value[] row = new Value[columnCount];
+                for (int j = 0; j < columnCount; j++) {
+                    Expression expr = expressions.get(j);
+                    row[j] = expr.getValue(session);
+                }
+                result.addRow(row);
+            }
+        }
+    }
+
     private void queryQuick(int columnCount, ResultTarget result) {
         Value[] row = new Value[columnCount];
         for (int i = 0; i < columnCount; i++) {
@@ -721,6 +1287,14 @@ public class Select extends Query implements Callable<ResultInterface> {
         }
         if (limitRows >= 0 || offsetExpr != null) {
             result = createLocalResult(result);
+            // set before the rows are added, so that a sorted result only
+            // needs to keep the first rows
+            if (offsetExpr != null) {
+                result.setOffset(offsetExpr.getValue(session).getInt());
+            }
+            if (limitRows >= 0) {
+                result.setLimit(limitRows);
+            }
         }
         topTableFilter.startQuery(session);
         topTableFilter.reset();
@@ -740,26 +1314,24 @@ public class Select extends Query implements Callable<ResultInterface> {
         }
         topTableFilter.lock(session, exclusive, exclusive);
         ResultTarget to = result != null ? result : target;
-        if (limitRows != 0) {
-            if (isQuickAggregateQuery) {
-                queryQuick(columnCount, to);
-            } else if (isGroupQuery) {
-                if (isGroupSortedQuery) {
-                    queryGroupSorted(columnCount, to);
+        try {
+            if (limitRows != 0) {
+                if (isQuickAggregateQuery) {
+                    queryQuick(columnCount, to);
+                } else if (isGroupQuery) {
+                    if (isGroupSortedQuery) {
+                        queryGroupSorted(columnCount, to);
+                    } else if (!queryGroupParallel(result)) {
+                        queryGroup(columnCount, result);
+                    }
+                } else if (isDistinctQuery) {
+                    queryDistinct(to, limitRows);
                 } else {
-                    queryGroup(columnCount, result);
+                    queryFlat(columnCount, to, limitRows);
                 }
-            } else if (isDistinctQuery) {
-                queryDistinct(to, limitRows);
-            } else {
-                queryFlat(columnCount, to, limitRows);
             }
-        }
-        if (offsetExpr != null) {
-            result.setOffset(offsetExpr.getValue(session).getInt());
-        }
-        if (limitRows >= 0) {
-            result.setLimit(limitRows);
+        } finally {
+            topTableFilter.endQuery();
         }
         if (result != null) {
             result.done();
@@ -1066,6 +1638,9 @@ public class Select extends Query implements Callable<ResultInterface> {
         for (TableFilter t : topArray) {
             t.setFullCondition(condition);
         }
+        if (!isForUpdate) {
+            setUsedColumns();
+        }
 
         Optimizer optimizer = new Optimizer(topArray, condition, session);
         optimizer.optimize();
@@ -1078,6 +1653,30 @@ public class Select extends Query implements Callable<ResultInterface> {
         return planCost;
     }
 
+    private void setUsedColumns() {
+        HashSet<Column> columns = New.hashSet();
+        ExpressionVisitor visitor = ExpressionVisitor.getColumnsVisitor(columns);
+        for (Expression e : expressions) {
+            e.isEverything(visitor);
+        }
+        if (condition != null) {
+            condition.isEverything(visitor);
+        }
+        for (TableFilter f : filters) {
+            Expression on = f.getJoinCondition();
+            if (on != null) {
+                on.isEverything(visitor);
+            }
+            on = f.getFilterCondition();
+            if (on != null) {
+                on.isEverything(visitor);
+            }
+        }
+        for (TableFilter f : filters) {
+            f.setUsedColumns(columns);
+        }
+    }
+
     private void setEvaluatableRecursive(TableFilter f) {
         for (; f != null; f = f.getJoin()) {
             f.setEvaluatable(f, true);
@@ -1259,6 +1858,28 @@ public class Select extends Query implements Callable<ResultInterface> {
         return having;
     }
 
+    public Expression getCondition() {
+        return condition;
+    }
+
+    /**
+     * Read the rows of the given table filters from other indexes, which are
+     * scanned in full and return the rows in no particular order. This must
+     * be called after the query is prepared. The result no longer depends on
+     * the tables only, so it is not cached.
+     *
+     * @param tableFilters the table filters
+     * @param indexes the indexes, one for each table filter
+     */
+    public void setScanIndexes(TableFilter[] tableFilters, Index[] indexes) {
+        for (int i = 0; i < tableFilters.length; i++) {
+            tableFilters[i].setScanIndex(indexes[i]);
+        }
+        sortUsingIndex = false;
+        isGroupSortedQuery = false;
+        disableCache();
+    }
+
     @Override
     public int getColumnCount() {
         return visibleColumnCount;
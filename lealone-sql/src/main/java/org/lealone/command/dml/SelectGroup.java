@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.command.dml;
+
+import java.util.Arrays;
+
+/**
+ * The aggregate data and the column values of one group of a group query.
+ * They are kept in an array, at the slot the select gave to the expression
+ * (see {@link Select#addGroupSlot()}), which takes much less memory than a
+ * hash map per group when there are many groups.
+ */
+public class SelectGroup {
+
+    private Object[] values;
+
+    SelectGroup(int slotCount) {
+        values = new Object[slotCount];
+    }
+
+    /**
+     * Get the object in the given slot.
+     *
+     * @param slot the slot, or -1 if the expression has no slot yet
+     * @return the object, or null if none was set
+     */
+    public Object get(int slot) {
+        return slot >= 0 && slot < values.length ? values[slot] : null;
+    }
+
+    /**
+     * Set the object in the given slot.
+     *
+     * @param slot the slot
+     * @param value the object
+     */
+    public void set(int slot, Object value) {
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, slot + 1);
+        }
+        values[slot] = value;
+    }
+}
@@ -8,12 +8,14 @@ package org.lealone.command.dml;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.concurrent.Callable;
 
 import org.lealone.api.ErrorCode;
 import org.lealone.api.Trigger;
 import org.lealone.command.CommandInterface;
 import org.lealone.command.Prepared;
+import org.lealone.dbobject.DbObject;
 import org.lealone.dbobject.Right;
 import org.lealone.dbobject.table.Column;
 import org.lealone.dbobject.table.PlanItem;
@@ -21,6 +23,7 @@ import org.lealone.dbobject.table.Table;
 import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Session;
 import org.lealone.expression.Expression;
+import org.lealone.expression.ExpressionVisitor;
 import org.lealone.expression.Parameter;
 import org.lealone.expression.ValueExpression;
 import org.lealone.message.DbException;
@@ -239,6 +242,26 @@ public class Update extends Prepared implements Callable<Integer> {
         return true;
     }
 
+    @Override
+    public void setSession(Session currentSession) {
+        super.setSession(currentSession);
+        tableFilter.setSession(currentSession);
+    }
+
+    @Override
+    public boolean isShareable() {
+        HashSet<DbObject> dependencies = New.hashSet();
+        dependencies.add(tableFilter.getTable());
+        ExpressionVisitor visitor = ExpressionVisitor.getDependenciesVisitor(dependencies);
+        if (condition != null) {
+            condition.isEverything(visitor);
+        }
+        for (Expression e : expressionMap.values()) {
+            e.isEverything(visitor);
+        }
+        return isShareable(dependencies);
+    }
+
     public Table getTable() {
         return tableFilter.getTable();
     }
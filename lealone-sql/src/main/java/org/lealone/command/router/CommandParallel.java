@@ -17,70 +17,92 @@
  */
 package org.lealone.command.router;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.lealone.command.dml.Select;
+import org.lealone.engine.SysProperties;
 import org.lealone.message.DbException;
 import org.lealone.result.ResultInterface;
+import org.lealone.util.NamedThreadFactory;
 import org.lealone.util.New;
 
+/**
+ * Executes the tasks of distributed commands. The number of threads and the
+ * number of waiting tasks are bounded, and each command only runs up to
+ * COMMAND_PARALLEL_FAN_OUT tasks at the same time.
+ * <p>
+ * A thread that waits for a task which has not started yet runs the task
+ * itself, and the tasks submitted by a thread of the pool only run in that
+ * thread. So a thread of the pool never waits for a task in the queue, and
+ * nested commands can not use up the pool.
+ */
 public class CommandParallel {
+    private final static AtomicLong rejectedTasks = new AtomicLong();
+    private final static ThreadLocal<Boolean> poolThread = new ThreadLocal<Boolean>();
     private final static ThreadPoolExecutor pool = initPool();
 
-    static class NamedThreadFactory implements ThreadFactory {
-        protected final String id;
-        private final int priority;
-        protected final AtomicInteger n = new AtomicInteger(1);
+    private static ThreadPoolExecutor initPool() {
+        int maxThreads = SysProperties.COMMAND_PARALLEL_MAX_THREADS;
+        int keepAliveTime = 60;
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, keepAliveTime, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(SysProperties.COMMAND_PARALLEL_QUEUE_SIZE),
+                new NamedThreadFactory(CommandParallel.class.getSimpleName()), new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        rejectedTasks.incrementAndGet();
+                        throw new RejectedExecutionException();
+                    }
+                }) {
+            @Override
+            protected void beforeExecute(Thread t, Runnable r) {
+                poolThread.set(Boolean.TRUE);
+            }
+        };
+        pool.allowCoreThreadTimeOut(true);
 
-        public NamedThreadFactory(String id) {
-            this(id, Thread.NORM_PRIORITY);
-        }
+        return pool;
+    }
 
-        public NamedThreadFactory(String id, int priority) {
+    public static ThreadPoolExecutor getThreadPoolExecutor() {
+        return pool;
+    }
 
-            this.id = id;
-            this.priority = priority;
-        }
+    /**
+     * Check if the current thread is a thread of the pool.
+     *
+     * @return true if it is
+     */
+    public static boolean isPoolThread() {
+        return poolThread.get() != null;
+    }
 
-        @Override
-        public Thread newThread(Runnable runnable) {
-            String name = id + ":" + n.getAndIncrement();
-            Thread thread = new Thread(runnable, name);
-            thread.setPriority(priority);
-            thread.setDaemon(true);
-            return thread;
-        }
+    public static int getActiveTaskCount() {
+        return pool.getActiveCount();
     }
 
-    private static ThreadPoolExecutor initPool() {
-        //        int corePoolSize = HBaseUtils.getConfiguration().getInt(COMMAND_PARALLEL_CORE_POOL_SIZE,
-        //                DEFAULT_COMMAND_PARALLEL_CORE_POOL_SIZE);
-        //        int maxPoolSize = HBaseUtils.getConfiguration().getInt(COMMAND_PARALLEL_MAX_POOL_SIZE,
-        //                DEFAULT_COMMAND_PARALLEL_MAX_POOL_SIZE);
-        //        int keepAliveTime = HBaseUtils.getConfiguration().getInt(COMMAND_PARALLEL_KEEP_ALIVE_TIME,
-        //                DEFAULT_COMMAND_PARALLEL_KEEP_ALIVE_TIME);
-
-        int corePoolSize = 3;
-        int maxPoolSize = Integer.MAX_VALUE;
-        int keepAliveTime = 3;
-
-        ThreadPoolExecutor pool = new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, TimeUnit.SECONDS,
-                new SynchronousQueue<Runnable>(), new NamedThreadFactory(CommandParallel.class.getSimpleName()));
-        pool.allowCoreThreadTimeOut(true);
+    public static long getPendingTaskCount() {
+        return pool.getQueue().size();
+    }
 
-        return pool;
+    public static long getCompletedTaskCount() {
+        return pool.getCompletedTaskCount();
     }
 
-    public static ThreadPoolExecutor getThreadPoolExecutor() {
-        return pool;
+    public static long getRejectedTaskCount() {
+        return rejectedTasks.get();
     }
 
     public static String getPlanSQL(Select select) {
@@ -90,16 +112,50 @@ public class CommandParallel {
             return select.getSQL();
     }
 
-    public static int executeUpdateCallable(List<Callable<Integer>> commands) {
-        int size = commands.size();
-        List<Future<Integer>> futures = New.arrayList(size);
-        for (int i = 0; i < size; i++) {
-            futures.add(pool.submit(commands.get(i)));
+    /**
+     * Execute a task in the pool.
+     *
+     * @param task the task
+     * @return false if the pool is busy and the task was not accepted
+     */
+    public static boolean execute(Runnable task) {
+        try {
+            pool.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
         }
+    }
+
+    public static int executeUpdateCallable(List<Callable<Integer>> commands) {
+        List<Future<Integer>> futures = submit(commands);
+        int size = futures.size();
         int updateCount = 0;
         try {
             for (int i = 0; i < size; i++) {
-                updateCount += futures.get(i).get();
+                updateCount += get(futures.get(i));
+            }
+        } catch (Exception e) {
+            throwException(e);
+        }
+        return updateCount;
+    }
+
+    /**
+     * Run the local update in the caller while the other nodes run theirs,
+     * and add up the update counts.
+     *
+     * @param localUpdate the local update, or null
+     * @param remoteUpdates the pending update counts of the other nodes
+     * @return the update count
+     */
+    public static int executeUpdate(Callable<Integer> localUpdate, List<Future<Integer>> remoteUpdates) {
+        int updateCount = 0;
+        try {
+            if (localUpdate != null)
+                updateCount += localUpdate.call();
+            for (Future<Integer> f : remoteUpdates) {
+                updateCount += f.get();
             }
         } catch (Exception e) {
             throwException(e);
@@ -108,20 +164,87 @@ public class CommandParallel {
     }
 
     public static List<ResultInterface> executeSelectCallable(List<Callable<ResultInterface>> commands) {
-        int size = commands.size();
-        List<Future<ResultInterface>> futures = New.arrayList(size);
+        List<Future<ResultInterface>> futures = submitSelectCallable(commands);
+        int size = futures.size();
         List<ResultInterface> results = New.arrayList(size);
         for (int i = 0; i < size; i++) {
-            futures.add(pool.submit(commands.get(i)));
+            results.add(getResult(futures.get(i)));
         }
+        return results;
+    }
+
+    /**
+     * Start the queries in the pool without waiting for them.
+     *
+     * @param commands the queries
+     * @return the pending results, in the order of the queries
+     */
+    public static List<Future<ResultInterface>> submitSelectCallable(List<Callable<ResultInterface>> commands) {
+        return submit(commands);
+    }
+
+    /**
+     * Wait for the result of a query that was started in the pool.
+     *
+     * @param future the pending result
+     * @return the result
+     */
+    public static ResultInterface getResult(Future<ResultInterface> future) {
         try {
-            for (int i = 0; i < size; i++) {
-                results.add(futures.get(i).get());
-            }
+            return get(future);
         } catch (Exception e) {
             throwException(e);
+            return null;
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws Exception {
+        if (future instanceof Task) {
+            // if the task did not start yet, run it here instead of waiting for a thread of the pool
+            ((Task<?>) future).run();
+        }
+        return future.get();
+    }
+
+    private static <T> List<Future<T>> submit(List<Callable<T>> commands) {
+        final int size = commands.size();
+        final ArrayList<Task<T>> tasks = New.arrayList(size);
+        // a thread of the pool runs its own tasks when it waits for them
+        boolean inline = isPoolThread();
+        int fanOut = inline ? 0 : Math.min(size, SysProperties.COMMAND_PARALLEL_FAN_OUT);
+        final AtomicInteger next = new AtomicInteger(inline ? size : fanOut);
+        for (int i = 0; i < size; i++) {
+            tasks.add(new Task<T>(commands.get(i)) {
+                @Override
+                protected void done() {
+                    // each task that is done starts the next one of the same command
+                    int index = next.getAndIncrement();
+                    if (index < size)
+                        execute(tasks.get(index));
+                }
+            });
+        }
+        for (int i = 0; i < fanOut; i++) {
+            execute(tasks.get(i));
+        }
+        return new ArrayList<Future<T>>(tasks);
+    }
+
+    private static void execute(Task<?> task) {
+        if (task.isDone()) {
+            // the thread that waits for it has already run it
+            return;
+        }
+        if (!execute((Runnable) task)) {
+            // the caller waits for the task anyway, so it can just as well run it
+            task.run();
+        }
+    }
+
+    private static class Task<T> extends FutureTask<T> {
+        Task(Callable<T> callable) {
+            super(callable);
         }
-        return results;
     }
 
     private static void throwException(Throwable e) {
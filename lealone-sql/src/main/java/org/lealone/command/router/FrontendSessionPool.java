@@ -94,6 +94,24 @@ public class FrontendSessionPool {
 
     public static FrontendCommand getFrontendCommand(Session originalSession, Prepared prepared, //
             String url, String sql) throws Exception {
+        return getFrontendCommand(originalSession, prepared, url, sql, prepared.getFetchSize());
+    }
+
+    public static FrontendCommand getFrontendCommand(Session originalSession, Prepared prepared, //
+            String url, String sql, int fetchSize) throws Exception {
+        FrontendSession fs = getFrontendSession(originalSession, url);
+        return getFrontendCommand(fs, sql, prepared.getParameters(), fetchSize);
+    }
+
+    /**
+     * Get the session of the given node that belongs to the original session,
+     * and open it if required.
+     *
+     * @param originalSession the original session
+     * @param url the URL of the node
+     * @return the session of the node
+     */
+    public static FrontendSession getFrontendSession(Session originalSession, String url) throws Exception {
         FrontendSession fs = originalSession.getFrontendSession(url);
         if (fs != null && fs.isClosed())
             fs = null;
@@ -109,7 +127,7 @@ public class FrontendSessionPool {
         if (isNew)
             originalSession.addFrontendSession(url, fs);
 
-        return getFrontendCommand(fs, sql, prepared.getParameters(), prepared.getFetchSize());
+        return fs;
     }
 
     public static FrontendCommand getFrontendCommand(FrontendSession fs, String sql, //
@@ -18,6 +18,7 @@
 package org.lealone.command.router;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.lealone.command.dml.Select;
 import org.lealone.dbobject.index.IndexType;
@@ -26,35 +27,43 @@ import org.lealone.dbobject.table.Table;
 import org.lealone.result.DelegatedResult;
 import org.lealone.result.ResultInterface;
 
+/**
+ * The groups of a group query that was run on several nodes, or on several
+ * parts of a table. The partial aggregates of each group are merged in a hash
+ * table while the rows of the nodes are read, one node after the other. The
+ * statements that merge them are prepared once with the query.
+ */
 public class MergedResult extends DelegatedResult {
-    public MergedResult(List<ResultInterface> results, Select newSelect, Select oldSelect) {
-        //1. 结果集串行化，为合并做准备
-        SerializedResult serializedResult = new SerializedResult(results, oldSelect);
-        Table table = newSelect.getTopTableFilter().getTable();
-        newSelect.getTopTableFilter().setIndex(
+    public MergedResult(List<Future<ResultInterface>> results, Select select) {
+        //1. 结果集串行化，为合并做准备，先返回的节点不用等其他节点
+        SerializedResult serializedResult = new SerializedResult(results, select);
+        Select mergeSelect = select.getMergeSelect();
+        Table table = mergeSelect.getTopTableFilter().getTable();
+        mergeSelect.getTopTableFilter().setIndex(
                 new MergedIndex(serializedResult, table, -1, IndexColumn.wrap(table.getColumns()), IndexType
                         .createScan(false)));
 
         //2. 把多个结果集合并
-        ResultInterface mergedResult = newSelect.queryGroupMerge();
+        ResultInterface mergedResult = mergeSelect.queryGroupMerge();
+        serializedResult.close();
 
         //3. 计算合并后的结果集,
-        //例如oldSelect="select avg"时，在分布式环境要转成newSelect="select count, sum"，
+        //例如select="select avg"时，在分布式环境要转成mergeSelect="select count, sum"，
         //此时就由count, sum来算出avg
-        ResultInterface calculatedResult = oldSelect.calculate(mergedResult, newSelect);
+        ResultInterface calculatedResult = select.calculate(mergedResult, mergeSelect);
 
         //4. 如果不存在avg、stddev这类需要拆分为count、sum的计算，此时mergedResult和calculatedResult是同一个实例
-        //否则就是不同实例，需要再一次按oldSelect合并结果集
+        //否则就是不同实例，需要再一次按select合并结果集
         if (mergedResult != calculatedResult) {
-            table = oldSelect.getTopTableFilter().getTable();
-            oldSelect.getTopTableFilter().setIndex(
+            Select finalMergeSelect = select.getFinalMergeSelect();
+            table = finalMergeSelect.getTopTableFilter().getTable();
+            finalMergeSelect.getTopTableFilter().setIndex(
                     new MergedIndex(calculatedResult, table, -1, IndexColumn.wrap(table.getColumns()), IndexType
                             .createScan(false)));
             //5. 最终结果集
-            result = oldSelect.queryGroupMerge();
+            result = finalMergeSelect.queryGroupMerge();
 
             //6. 立刻关闭中间结果集
-            serializedResult.close();
             mergedResult.close();
             calculatedResult.close();
         } else {
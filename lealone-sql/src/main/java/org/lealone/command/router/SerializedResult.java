@@ -17,16 +17,39 @@
  */
 package org.lealone.command.router;
 
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.lealone.command.CommandInterface;
 import org.lealone.command.dml.Select;
+import org.lealone.engine.DbSettings;
+import org.lealone.message.DbException;
 import org.lealone.result.DelegatedResult;
 import org.lealone.result.ResultInterface;
+import org.lealone.util.New;
+import org.lealone.value.Value;
 
+/**
+ * The rows of several nodes, one node after the other. If the nodes are
+ * queried by commands, up to PARALLEL_NODE_QUERIES nodes are queried at the
+ * same time, and their rows are handed out as soon as they arrive. Once the
+ * limit is reached, the outstanding nodes are not queried any more. The local
+ * node is queried by the caller, as its command uses the caller's session,
+ * and its rows come first.
+ */
 public class SerializedResult extends DelegatedResult {
     private final static int UNKNOW_ROW_COUNT = -1;
-    private final List<ResultInterface> results;
+
+    /**
+     * Marks the end of the rows of a node.
+     */
+    private final static Value[] END = new Value[0];
+
+    private final List<Future<ResultInterface>> results;
     private final List<? extends CommandInterface> commands;
     private final int maxRows;
     private final int limitRows;
@@ -36,6 +59,22 @@ public class SerializedResult extends DelegatedResult {
     private int index = 0;
     private int count = 0;
 
+    // only used if the nodes are queried at the same time
+    private BlockingQueue<Value[]> rows;
+    private Value[] currentRow;
+    private int parallelism;
+    private int started, running, finished;
+    // the other nodes, which are queried by the threads of the pool
+    private List<CommandInterface> remoteCommands;
+    private int remoteCount;
+    // the local nodes, and the result of the one the caller reads
+    private final LinkedList<CommandInterface> localCommands = new LinkedList<CommandInterface>();
+    private ResultInterface localResult;
+    // the commands that the pool did not accept, the next node that is done starts them
+    private final LinkedList<CommandInterface> waiting = new LinkedList<CommandInterface>();
+    private volatile boolean closed;
+    private volatile Throwable error;
+
     public SerializedResult(List<? extends CommandInterface> commands, int maxRows, boolean scrollable, Select select) {
         this.results = null;
         this.commands = commands;
@@ -43,14 +82,77 @@ public class SerializedResult extends DelegatedResult {
         this.limitRows = select.getLimitRows();
         this.scrollable = scrollable;
         this.size = commands.size();
+        DbSettings settings = select.getSession().getDatabase().getSettings();
+        // a thread of the pool must not wait for the other threads of the pool
+        parallelism = CommandParallel.isPoolThread() ? 1 : Math.min(size, settings.parallelNodeQueries);
+        if (parallelism > 1) {
+            remoteCommands = New.arrayList(size);
+            for (CommandInterface c : commands) {
+                if (c instanceof CommandWrapper) {
+                    localCommands.add(c);
+                } else {
+                    remoteCommands.add(c);
+                }
+            }
+            remoteCount = remoteCommands.size();
+            rows = new ArrayBlockingQueue<Value[]>(Math.max(1, settings.parallelNodePrefetchRows) * parallelism);
+            // the other nodes are started by the threads of the pool
+            if (startNext(false)) {
+                try {
+                    if (nextLocalResult()) {
+                        synchronized (this) {
+                            if (result == null) {
+                                result = localResult;
+                            }
+                        }
+                    } else {
+                        waitForResult();
+                    }
+                } catch (RuntimeException e) {
+                    close();
+                    throw e;
+                }
+                return;
+            }
+            // the pool is busy, query the nodes one after the other
+            rows = null;
+            waiting.clear();
+            localCommands.clear();
+            started = 0;
+        }
         nextResult();
     }
 
-    public SerializedResult(List<ResultInterface> results, Select select) {
+    /**
+     * Query the next local node in the current thread.
+     *
+     * @return false if there is none left
+     */
+    private boolean nextLocalResult() {
+        if (localResult != null) {
+            localResult.close();
+            localResult = null;
+        }
+        if (localCommands.isEmpty() || closed) {
+            return false;
+        }
+        localResult = localCommands.removeFirst().executeQuery(maxRows, scrollable);
+        return true;
+    }
+
+    /**
+     * Create a result over the pending results of the nodes. The rows of a
+     * node are read as soon as the node and the nodes before it are done.
+     * The limit of the query is not applied, all rows are returned.
+     *
+     * @param results the pending results
+     * @param select the query
+     */
+    public SerializedResult(List<Future<ResultInterface>> results, Select select) {
         this.results = results;
         this.commands = null;
         this.maxRows = -1;
-        this.limitRows = select.getLimitRows();
+        this.limitRows = -1;
         this.scrollable = false;
         this.size = results.size();
         nextResult();
@@ -64,17 +166,140 @@ public class SerializedResult extends DelegatedResult {
             result.close();
 
         if (results != null)
-            result = results.get(index++);
+            result = CommandParallel.getResult(results.get(index++));
         else
             result = commands.get(index++).executeQuery(maxRows, scrollable);
         return true;
     }
 
+    private synchronized CommandInterface nextCommand() {
+        if (closed) {
+            return null;
+        }
+        if (!waiting.isEmpty()) {
+            return waiting.removeFirst();
+        }
+        if (started < remoteCount) {
+            return remoteCommands.get(started++);
+        }
+        return null;
+    }
+
+    /**
+     * Query the next node in a thread of the pool, if there is one left.
+     *
+     * @param inline whether the current thread may query the node itself if
+     *            the pool is busy
+     * @return false if the pool is busy and the node is still waiting
+     */
+    private boolean startNext(boolean inline) {
+        final CommandInterface command = nextCommand();
+        if (command == null) {
+            return true;
+        }
+        boolean accepted = CommandParallel.execute(new Runnable() {
+            @Override
+            public void run() {
+                fetch(command);
+            }
+        });
+        if (!accepted) {
+            if (inline) {
+                fetch(command);
+                return true;
+            }
+            synchronized (this) {
+                waiting.addFirst(command);
+            }
+        }
+        return accepted;
+    }
+
+    private void fetch(CommandInterface command) {
+        boolean startMore;
+        synchronized (this) {
+            startMore = ++running < parallelism;
+        }
+        if (startMore) {
+            // if the pool is busy, the node is started when this one is done
+            startNext(false);
+        }
+        ResultInterface r = null;
+        try {
+            r = command.executeQuery(maxRows, scrollable);
+            synchronized (this) {
+                // the first node that answers provides the meta data
+                if (result == null) {
+                    result = r;
+                    notifyAll();
+                }
+            }
+            while (!closed && r.next()) {
+                put(r.currentRow().clone());
+            }
+        } catch (Throwable e) {
+            if (error == null) {
+                error = e;
+            }
+        } finally {
+            if (r != null) {
+                // the meta data is still available after the result is closed
+                r.close();
+            }
+            synchronized (this) {
+                running--;
+                notifyAll();
+            }
+            put(END);
+            // this thread is done with its own node, so it can query the next one if the pool is busy
+            startNext(true);
+        }
+    }
+
+    private void put(Value[] row) {
+        try {
+            while (!closed) {
+                if (rows.offer(row, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw DbException.convert(e);
+        }
+    }
+
+    private synchronized void waitForResult() {
+        try {
+            while (result == null && error == null) {
+                wait(100);
+            }
+        } catch (InterruptedException e) {
+            error = e;
+        }
+        checkError();
+    }
+
+    private void checkError() {
+        Throwable e = error;
+        if (e != null) {
+            close();
+            throw DbException.convert(e);
+        }
+    }
+
     @Override
     public boolean next() {
         count++;
-        if (limitRows >= 0 && count > limitRows)
+        if (limitRows >= 0 && count > limitRows) {
+            if (rows != null) {
+                // stop the nodes that are still queried
+                close();
+            }
             return false;
+        }
+        if (rows != null) {
+            return nextRow();
+        }
         boolean next = result.next();
         if (!next) {
             boolean nextResult;
@@ -92,6 +317,82 @@ public class SerializedResult extends DelegatedResult {
         return next;
     }
 
+    private boolean nextRow() {
+        try {
+            while (localResult != null) {
+                if (localResult.next()) {
+                    currentRow = localResult.currentRow();
+                    return true;
+                }
+                nextLocalResult();
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        try {
+            while (finished < remoteCount && !closed) {
+                Value[] row = rows.take();
+                if (row == END) {
+                    finished++;
+                    checkError();
+                } else {
+                    currentRow = row;
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            error = e;
+        }
+        checkError();
+        currentRow = null;
+        return false;
+    }
+
+    @Override
+    public Value[] currentRow() {
+        if (rows != null) {
+            return currentRow;
+        }
+        return result.currentRow();
+    }
+
+    @Override
+    public int getRowId() {
+        if (rows != null) {
+            return count - 1;
+        }
+        return result.getRowId();
+    }
+
+    @Override
+    public void close() {
+        if (rows == null) {
+            super.close();
+            // the nodes that were not read yet: those that did not start are
+            // not queried any more, the others are waited for
+            while (results != null && index < size) {
+                Future<ResultInterface> f = results.get(index++);
+                if (!f.cancel(false)) {
+                    try {
+                        CommandParallel.getResult(f).close();
+                    } catch (DbException e) {
+                        // ignore
+                    }
+                }
+            }
+            return;
+        }
+        // the threads close the results of their nodes
+        closed = true;
+        rows.clear();
+        if (localResult != null) {
+            localResult.close();
+            localResult = null;
+        }
+        localCommands.clear();
+    }
+
     @Override
     public int getRowCount() {
         return UNKNOW_ROW_COUNT;
@@ -17,7 +17,10 @@
  */
 package org.lealone.command.router;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Future;
 
 import org.lealone.command.dml.Select;
 import org.lealone.engine.Session;
@@ -27,25 +30,66 @@ import org.lealone.result.SortOrder;
 import org.lealone.value.Value;
 import org.lealone.value.ValueNull;
 
+/**
+ * Merges the sorted results of several nodes while they are read. Each node
+ * only has to deliver its first batch of rows before the first row is
+ * returned, and once the limit is reached the nodes are not read any more.
+ */
 public class SortedResult extends DelegatedResult {
-    private static final Value[] END = new Value[0];
     private final SortOrder sort;
+    private final List<Future<ResultInterface>> futures;
     private final ResultInterface[] results;
-    private final int limit;
     private final int size;
-    private int rowCount = -1;
-    private Value[] currentRow;
+    private final int offset;
+    private final int limitRows;
+    private final int limit;
+    private final int visibleColumnCount;
     private final Value[][] currentRows;
+    private final PriorityQueue<Integer> heads;
 
+    private boolean started;
+    private boolean closed;
+    private Value[] currentRow;
     private int rowNumber;
 
-    public SortedResult(int maxRows, Session session, Select select, List<ResultInterface> results) {
+    public SortedResult(int maxRows, Session session, Select select, List<Future<ResultInterface>> futures) {
         this.sort = select.getSortOrder();
-        this.results = results.toArray(new ResultInterface[results.size()]);
-        this.result = this.results[0];
-        this.size = this.results.length;
-        currentRows = new Value[size][];
+        this.futures = futures;
+        this.size = futures.size();
+        this.results = new ResultInterface[size];
+        this.currentRows = new Value[size][];
+        this.offset = getOffset(session, select);
+        this.limitRows = getLimitRows(maxRows, session, select);
+        this.limit = limitRows < 0 ? -1 : limitRows + offset;
+        // the nodes also return the columns that are only used for sorting
+        this.visibleColumnCount = select.getColumnCount();
+        this.heads = new PriorityQueue<Integer>(Math.max(1, size), new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int comp = sort.compare(currentRows[a], currentRows[b]);
+                // rows that are equal are returned in the order of the nodes
+                return comp != 0 ? comp : a.compareTo(b);
+            }
+        });
+        // the meta data is the same for all nodes
+        this.result = getResult(0);
+    }
 
+    /**
+     * Get the number of rows each node has to return at most, so that the
+     * merged result can apply the limit and the offset.
+     *
+     * @param maxRows the maximum number of rows of the query, or 0
+     * @param session the session
+     * @param select the query
+     * @return the number of rows, or -1 if there is no limit
+     */
+    public static int getNodeLimit(int maxRows, Session session, Select select) {
+        int limitRows = getLimitRows(maxRows, session, select);
+        return limitRows < 0 ? -1 : limitRows + getOffset(session, select);
+    }
+
+    private static int getLimitRows(int maxRows, Session session, Select select) {
         int limitRows = maxRows == 0 ? -1 : maxRows;
         if (select.getLimit() != null) {
             Value v = select.getLimit().getValue(session);
@@ -56,27 +100,69 @@ public class SortedResult extends DelegatedResult {
                 limitRows = Math.min(l, limitRows);
             }
         }
+        return limitRows;
+    }
 
-        int offset;
+    private static int getOffset(Session session, Select select) {
         if (select.getOffset() != null) {
-            offset = select.getOffset().getValue(session).getInt();
-        } else {
-            offset = 0;
+            Value v = select.getOffset().getValue(session);
+            return v == ValueNull.INSTANCE ? 0 : Math.max(0, v.getInt());
         }
+        return 0;
+    }
 
-        if (limitRows >= 0)
-            rowCount = limitRows;
+    private ResultInterface getResult(int i) {
+        if (results[i] == null) {
+            results[i] = CommandParallel.getResult(futures.get(i));
+        }
+        return results[i];
+    }
 
-        limit = limitRows + offset;
+    /**
+     * Read the first row of each node and skip the offset.
+     */
+    private void start() {
+        started = true;
+        for (int i = 0; i < size; i++) {
+            advance(i);
+        }
+        while (rowNumber < offset && nextRow()) {
+            // skip
+        }
+    }
 
-        for (int i = 0; i < offset; i++)
-            next();
+    private void advance(int i) {
+        ResultInterface r = getResult(i);
+        if (r.next()) {
+            currentRows[i] = r.currentRow();
+            heads.add(i);
+        } else {
+            currentRows[i] = null;
+        }
+    }
+
+    private boolean nextRow() {
+        Integer i = heads.poll();
+        if (i == null) {
+            currentRow = null;
+            return false;
+        }
+        currentRow = currentRows[i];
+        advance(i);
+        rowNumber++;
+        return true;
     }
 
     @Override
     public void reset() {
-        for (int i = 0; i < size; i++)
-            results[i].reset();
+        for (int i = 0; i < size; i++) {
+            getResult(i).reset();
+            currentRows[i] = null;
+        }
+        heads.clear();
+        currentRow = null;
+        rowNumber = 0;
+        started = false;
     }
 
     @Override
@@ -86,73 +172,72 @@ public class SortedResult extends DelegatedResult {
 
     @Override
     public boolean next() {
+        if (closed) {
+            currentRow = null;
+            return false;
+        }
         if (limit == 0 || (limit > 0 && rowNumber >= limit)) {
+            // the remaining rows of the nodes are not needed
+            close();
             currentRow = null;
             return false;
         }
-        rowNumber++;
-
-        int next = -1;
-        Value[] row = null;
-        for (int i = 0; i < size; i++) {
-            if (currentRows[i] == END)
-                continue;
-            if (currentRows[i] == null) {
-                if (results[i].next())
-                    currentRows[i] = results[i].currentRow();
-                else
-                    currentRows[i] = END;
-            }
-            if (currentRows[i] != END) {
-                if (next == -1) {
-                    next = i;
-                    row = currentRows[i];
-                } else {
-                    if (sort.compare(row, currentRows[i]) > 0) {
-                        next = i;
-                        row = currentRows[i];
-                    }
-                }
-            }
+        if (!started) {
+            start();
         }
-        currentRow = row;
-        currentRows[next] = null;
-        return currentRow != null;
+        return nextRow();
+    }
+
+    @Override
+    public int getVisibleColumnCount() {
+        return visibleColumnCount;
+    }
+
+    @Override
+    public int getRowId() {
+        return rowNumber - offset - 1;
     }
 
     @Override
     public boolean needToClose() {
         boolean needToClose = true;
         for (int i = 0; i < size; i++)
-            needToClose = needToClose && results[i].needToClose();
+            needToClose = needToClose && getResult(i).needToClose();
 
         return needToClose;
     }
 
     @Override
     public void close() {
-        for (int i = 0; i < size; i++)
-            results[i].close();
+        if (closed)
+            return;
+        closed = true;
+        heads.clear();
+        RuntimeException error = null;
+        for (int i = 0; i < size; i++) {
+            try {
+                getResult(i).close();
+            } catch (RuntimeException e) {
+                if (error == null)
+                    error = e;
+            }
+        }
+        if (error != null)
+            throw error;
     }
 
     @Override
     public int getRowCount() {
-        if (rowCount == -2) //前一次调用getRowCount()计算得出results中至少有一个是无法确定rowCount的
-            return -1;
-        if (rowCount == -1) { //第一次调用getRowCount()
-            int c = 0;
-            for (int i = 0; i < size; i++) {
-                if (results[i].getRowCount() == -1) {
-                    rowCount = -2;
-                    return -1;
-                } else {
-                    c += results[i].getRowCount();
-                }
-            }
-            rowCount = c;
-            return c;
-        } else {
-            return rowCount;
+        int c = 0;
+        for (int i = 0; i < size; i++) {
+            int count = getResult(i).getRowCount();
+            if (count < 0)
+                return -1;
+            c += count;
         }
+        c = Math.max(0, c - offset);
+        if (limitRows >= 0)
+            c = Math.min(c, limitRows);
+        return c;
     }
 }
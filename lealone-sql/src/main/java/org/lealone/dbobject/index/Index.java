@@ -6,6 +6,8 @@
  */
 package org.lealone.dbobject.index;
 
+import java.util.HashSet;
+
 import org.lealone.dbobject.SchemaObject;
 import org.lealone.dbobject.table.Column;
 import org.lealone.dbobject.table.IndexColumn;
@@ -80,10 +82,11 @@ public interface Index extends SchemaObject {
      * @param session the session
      * @param masks per-column comparison bit masks, null means 'always false',
      *              see constants in IndexCondition
+     * @param filter the table filter, or null if the conditions are not known
      * @param sortOrder the sort order
      * @return the estimated cost
      */
-    double getCost(Session session, int[] masks, SortOrder sortOrder);
+    double getCost(Session session, int[] masks, TableFilter filter, SortOrder sortOrder);
 
     /**
      * Remove the index.
@@ -125,6 +128,15 @@ public interface Index extends SchemaObject {
      */
     Cursor findNext(Session session, SearchRow higherThan, SearchRow last);
 
+    /**
+     * Check if the index can return the values of all the given columns
+     * without reading the table row.
+     *
+     * @param columns the columns
+     * @return true if the index contains all the columns
+     */
+    boolean isCovering(HashSet<Column> columns);
+
     /**
      * Find the first (or last) value of this index. The cursor returned is
      * positioned on the correct row, or on null if no row has been found.
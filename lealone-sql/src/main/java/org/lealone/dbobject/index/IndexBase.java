@@ -6,6 +6,8 @@
  */
 package org.lealone.dbobject.index;
 
+import java.util.HashSet;
+
 import org.lealone.api.ErrorCode;
 import org.lealone.dbobject.DbObject;
 import org.lealone.dbobject.SchemaObjectBase;
@@ -102,6 +104,11 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
         return e;
     }
 
+    @Override
+    public boolean isCovering(HashSet<Column> columns) {
+        return false;
+    }
+
     @Override
     public String getPlanSQL() {
         return getSQL();
@@ -142,14 +149,17 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
     /**
      * Calculate the cost for the given mask as if this index was a typical
      * b-tree range index. This is the estimated cost required to search one
-     * row, and then iterate over the given number of rows.
+     * row, and then iterate over the given number of rows. If the column
+     * statistics are known, the number of rows is estimated from the values
+     * of the conditions.
      *
      * @param masks the search mask
      * @param rowCount the number of rows in the index
+     * @param filter the table filter, or null if the conditions are not known
      * @param sortOrder the sort order
      * @return the estimated cost
      */
-    protected long getCostRangeIndex(int[] masks, long rowCount, SortOrder sortOrder) {
+    protected long getCostRangeIndex(int[] masks, long rowCount, TableFilter filter, SortOrder sortOrder) {
         rowCount += Constants.COST_ROW_OFFSET;
         long cost = rowCount;
         long rows = rowCount;
@@ -161,18 +171,26 @@ public abstract class IndexBase extends SchemaObjectBase implements Index {
             Column column = columns[i];
             int index = column.getColumnId();
             int mask = masks[index];
+            double fraction = filter == null || mask == 0 ? -1 : filter.getConditionFraction(column);
             if ((mask & IndexCondition.EQUALITY) == IndexCondition.EQUALITY) {
                 if (i == columns.length - 1 && getIndexType().isUnique()) {
                     cost = 3;
                     break;
                 }
                 totalSelectivity = 100 - ((100 - totalSelectivity) * (100 - column.getSelectivity()) / 100);
-                long distinctRows = rowCount * totalSelectivity / 100;
-                if (distinctRows <= 0) {
-                    distinctRows = 1;
+                if (fraction >= 0) {
+                    rows = Math.max((long) (rows * fraction), 1);
+                } else {
+                    long distinctRows = rowCount * totalSelectivity / 100;
+                    if (distinctRows <= 0) {
+                        distinctRows = 1;
+                    }
+                    rows = Math.min(rows, Math.max(rowCount / distinctRows, 1));
                 }
-                rows = Math.max(rowCount / distinctRows, 1);
                 cost = 2 + rows;
+            } else if (fraction >= 0 && (mask & IndexCondition.RANGE) != 0) {
+                cost = 2 + (long) (rows * fraction);
+                break;
             } else if ((mask & IndexCondition.RANGE) == IndexCondition.RANGE) {
                 cost = 2 + rows / 4;
                 break;
@@ -157,9 +157,11 @@ public class IndexCondition {
      * Get the current result of the expression. The rows may not be of the same
      * type, therefore the rows may not be unique.
      *
+     * @param session the session
      * @return the result
      */
-    public ResultInterface getCurrentResult() {
+    public ResultInterface getCurrentResult(Session session) {
+        expressionQuery.setSession(session);
         return expressionQuery.query(0);
     }
 
@@ -313,6 +315,24 @@ public class IndexCondition {
         return column;
     }
 
+    /**
+     * Get the expression the column is compared with.
+     *
+     * @return the expression, or null for IN(...) conditions
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Get the expressions of an IN(...) condition.
+     *
+     * @return the expressions, or null for other conditions
+     */
+    public List<Expression> getExpressionList() {
+        return expressionList;
+    }
+
     /**
      * Check if the expression can be evaluated.
      *
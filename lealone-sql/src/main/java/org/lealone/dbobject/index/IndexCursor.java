@@ -108,7 +108,7 @@ public class IndexCursor implements Cursor {
                 if (start == null && end == null) {
                     if (canUseIndexForIn(column)) {
                         this.inColumn = column;
-                        inResult = condition.getCurrentResult();
+                        inResult = condition.getCurrentResult(s);
                     }
                 }
             } else {
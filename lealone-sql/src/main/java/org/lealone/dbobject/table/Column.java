@@ -88,6 +88,7 @@ public class Column {
     private boolean isComputed;
     private TableFilter computeTableFilter;
     private int selectivity;
+    private ColumnStatistics statistics;
     private SingleColumnResolver resolver;
     private String comment;
     private boolean primaryKey;
@@ -495,6 +496,17 @@ public class Column {
     }
 
     public String getCreateSQL(boolean isAlter) {
+        return getCreateSQL(isAlter, false);
+    }
+
+    /**
+     * Get the SQL snippet of the column definition.
+     *
+     * @param isAlter whether the snippet is used in ALTER TABLE
+     * @param withStatistics whether to include the statistics built by ANALYZE
+     * @return the SQL snippet
+     */
+    public String getCreateSQL(boolean isAlter, boolean withStatistics) {
         StringBuilder buff = new StringBuilder();
         if (name != null) {
             if (isAlter && table != null && !table.isStatic() && columnFamilyName != null)
@@ -532,9 +544,6 @@ public class Column {
                 }
             }
         }
-        if (isRowKeyColumn) {
-            buff.append(" ROW KEY");
-        }
         if (!nullable) {
             buff.append(" NOT NULL");
         }
@@ -547,9 +556,16 @@ public class Column {
         if (selectivity != 0) {
             buff.append(" SELECTIVITY ").append(selectivity);
         }
+        if (withStatistics && statistics != null) {
+            buff.append(" STATISTICS ").append(statistics.getSQL());
+        }
         if (comment != null) {
             buff.append(" COMMENT ").append(StringUtils.quoteStringSQL(comment));
         }
+        if (isRowKeyColumn) {
+            // after all options that are parsed together with the data type
+            buff.append(" ROW KEY");
+        }
         if (checkConstraint != null) {
             buff.append(" CHECK ").append(checkConstraintSQL);
         }
@@ -635,6 +651,19 @@ public class Column {
         this.selectivity = selectivity;
     }
 
+    /**
+     * Get the statistics built by ANALYZE.
+     *
+     * @return the statistics, or null if they are not known
+     */
+    public ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(ColumnStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     /**
      * Add a check constraint expression to this column. An existing check
      * constraint constraint is added using AND.
@@ -824,6 +853,7 @@ public class Column {
         computeTableFilter = source.computeTableFilter;
         isComputed = source.isComputed;
         selectivity = source.selectivity;
+        statistics = source.statistics;
         primaryKey = source.primaryKey;
 
         columnFamilyName = source.columnFamilyName;
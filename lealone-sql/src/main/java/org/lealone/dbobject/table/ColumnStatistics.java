@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.table;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.lealone.api.ErrorCode;
+import org.lealone.message.DbException;
+import org.lealone.util.StatementBuilder;
+import org.lealone.value.CompareMode;
+import org.lealone.value.Value;
+import org.lealone.value.ValueArray;
+import org.lealone.value.ValueDouble;
+import org.lealone.value.ValueNull;
+
+/**
+ * The statistics of a column, built by ANALYZE from a sample of the rows. They
+ * contain the fraction of NULL values, the most common values together with
+ * their frequency, and an equi-depth histogram of the other values. The
+ * optimizer uses them to estimate how many rows match a condition with a
+ * constant value.
+ */
+public class ColumnStatistics {
+
+    private final double nullFraction;
+
+    /**
+     * The average frequency of a value that is neither NULL nor a common value.
+     */
+    private final double otherFrequency;
+
+    private final Value[] commonValues;
+    private final double[] commonFrequencies;
+    private final double commonFraction;
+
+    /**
+     * The bounds of the histogram buckets. Each bucket contains the same
+     * number of the values that are neither NULL nor a common value.
+     */
+    private final Value[] histogram;
+
+    public ColumnStatistics(double nullFraction, double otherFrequency, Value[] commonValues,
+            double[] commonFrequencies, Value[] histogram) {
+        this.nullFraction = nullFraction;
+        this.otherFrequency = otherFrequency;
+        this.commonValues = commonValues;
+        this.commonFrequencies = commonFrequencies;
+        this.histogram = histogram;
+        double f = 0;
+        for (double d : commonFrequencies) {
+            f += d;
+        }
+        commonFraction = f;
+    }
+
+    /**
+     * Build the statistics of a column from the sampled values.
+     *
+     * @param values the sampled values (the array is sorted)
+     * @param count the number of sampled values
+     * @param maxCommonValues the maximum number of common values to keep
+     * @param buckets the number of histogram buckets
+     * @param compareMode the compare mode
+     * @return the statistics, or null if there are no values
+     */
+    public static ColumnStatistics create(Value[] values, int count, int maxCommonValues, int buckets,
+            final CompareMode compareMode) {
+        if (count == 0) {
+            return null;
+        }
+        int nonNull = 0;
+        for (int i = 0; i < count; i++) {
+            Value v = values[i];
+            if (v != null && v != ValueNull.INSTANCE) {
+                values[nonNull++] = v;
+            }
+        }
+        double nullFraction = (double) (count - nonNull) / count;
+        Arrays.sort(values, 0, nonNull, new Comparator<Value>() {
+            @Override
+            public int compare(Value a, Value b) {
+                return a.compareTo(b, compareMode);
+            }
+        });
+
+        // the start of each run of equal values
+        int distinct = 0;
+        int[] starts = new int[nonNull + 1];
+        for (int i = 0; i < nonNull; i++) {
+            if (i == 0 || values[i].compareTo(values[i - 1], compareMode) != 0) {
+                starts[distinct++] = i;
+            }
+        }
+        starts[distinct] = nonNull;
+
+        // the values that are more common than the average value,
+        // or all values if they all fit in the list
+        Integer[] runs = new Integer[distinct];
+        for (int i = 0; i < distinct; i++) {
+            runs[i] = i;
+        }
+        final int[] s = starts;
+        Arrays.sort(runs, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return (s[b + 1] - s[b]) - (s[a + 1] - s[a]);
+            }
+        });
+        boolean all = distinct <= maxCommonValues;
+        double average = distinct == 0 ? 0 : (double) nonNull / distinct;
+        int commonCount = 0;
+        boolean[] common = new boolean[distinct];
+        for (int i = 0; i < distinct && commonCount < maxCommonValues; i++) {
+            int run = runs[i];
+            int size = starts[run + 1] - starts[run];
+            if (!all && (size < 2 || size <= average)) {
+                break;
+            }
+            common[run] = true;
+            commonCount++;
+        }
+        Value[] commonValues = new Value[commonCount];
+        double[] commonFrequencies = new double[commonCount];
+        for (int i = 0, j = 0; i < distinct; i++) {
+            if (common[i]) {
+                commonValues[j] = values[starts[i]];
+                commonFrequencies[j++] = (double) (starts[i + 1] - starts[i]) / count;
+            }
+        }
+
+        // the histogram of the remaining values
+        int other = 0;
+        for (int i = 0; i < distinct; i++) {
+            if (!common[i]) {
+                for (int j = starts[i]; j < starts[i + 1]; j++) {
+                    values[other++] = values[j];
+                }
+            }
+        }
+        double otherFrequency = distinct == commonCount ? 0 : (double) other / (distinct - commonCount) / count;
+        Value[] histogram;
+        if (other == 0) {
+            histogram = new Value[0];
+        } else if (other == 1) {
+            histogram = new Value[] { values[0] };
+        } else {
+            int b = Math.min(buckets, other - 1);
+            histogram = new Value[b + 1];
+            for (int i = 0; i <= b; i++) {
+                histogram[i] = values[(int) ((long) i * (other - 1) / b)];
+            }
+        }
+        return new ColumnStatistics(nullFraction, otherFrequency, commonValues, commonFrequencies, histogram);
+    }
+
+    /**
+     * Read the statistics from the value that is stored in the column
+     * definition.
+     *
+     * @param value the array of statistics values, see getSQL
+     * @param type the data type of the column
+     * @return the statistics
+     * @throws DbException if the value is not a valid statistics value
+     */
+    public static ColumnStatistics get(Value value, int type) {
+        Value[] list = ((ValueArray) value.convertTo(Value.ARRAY)).getList();
+        if (list.length != 5) {
+            throw DbException.get(ErrorCode.INVALID_VALUE_2, "STATISTICS", value.getSQL());
+        }
+        Value[] commonValues = convert(list[2], type);
+        Value[] frequencies = ((ValueArray) list[3].convertTo(Value.ARRAY)).getList();
+        if (frequencies.length != commonValues.length) {
+            throw DbException.get(ErrorCode.INVALID_VALUE_2, "STATISTICS", value.getSQL());
+        }
+        double[] commonFrequencies = new double[frequencies.length];
+        for (int i = 0; i < frequencies.length; i++) {
+            commonFrequencies[i] = frequencies[i].getDouble();
+        }
+        return new ColumnStatistics(list[0].getDouble(), list[1].getDouble(), commonValues, commonFrequencies,
+                convert(list[4], type));
+    }
+
+    private static Value[] convert(Value value, int type) {
+        Value[] list = ((ValueArray) value.convertTo(Value.ARRAY)).getList();
+        Value[] values = new Value[list.length];
+        for (int i = 0; i < list.length; i++) {
+            values[i] = list[i].convertTo(type);
+        }
+        return values;
+    }
+
+    /**
+     * Get the SQL snippet that is stored in the column definition.
+     *
+     * @return the SQL snippet
+     */
+    public String getSQL() {
+        StatementBuilder buff = new StatementBuilder("(");
+        buff.append(ValueDouble.get(nullFraction).getSQL()).append(", ");
+        buff.append(ValueDouble.get(otherFrequency).getSQL()).append(", ");
+        buff.append(ValueArray.get(commonValues).getSQL()).append(", ");
+        Value[] frequencies = new Value[commonFrequencies.length];
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = ValueDouble.get(commonFrequencies[i]);
+        }
+        buff.append(ValueArray.get(frequencies).getSQL()).append(", ");
+        buff.append(ValueArray.get(histogram).getSQL());
+        return buff.append(')').toString();
+    }
+
+    /**
+     * Get the number of distinct values, if the sample contained few enough
+     * values to keep all of them in the list of common values.
+     *
+     * @return the number of distinct values including NULL, or -1 if it is not
+     *         known
+     */
+    public int getDistinctCount() {
+        if (otherFrequency > 0 || histogram.length > 0) {
+            return -1;
+        }
+        return commonValues.length + (nullFraction > 0 ? 1 : 0);
+    }
+
+    /**
+     * Estimate the fraction of the rows where the column is equal to the given
+     * value.
+     *
+     * @param value the value
+     * @param compareMode the compare mode
+     * @return the fraction of the rows, between 0 and 1
+     */
+    public double getEqualFraction(Value value, CompareMode compareMode) {
+        if (value == ValueNull.INSTANCE) {
+            return nullFraction;
+        }
+        double min = 1;
+        for (int i = 0; i < commonValues.length; i++) {
+            if (commonValues[i].compareTo(value, compareMode) == 0) {
+                return commonFrequencies[i];
+            }
+            min = Math.min(min, commonFrequencies[i]);
+        }
+        // a value that is not in the list is not more common than the listed values
+        return Math.min(otherFrequency, min);
+    }
+
+    /**
+     * Estimate the fraction of the rows where the column is in the given
+     * range.
+     *
+     * @param first the lower bound, or null if there is none
+     * @param last the upper bound, or null if there is none
+     * @param compareMode the compare mode
+     * @return the fraction of the rows, between 0 and 1
+     */
+    public double getRangeFraction(Value first, Value last, CompareMode compareMode) {
+        double f = 0;
+        for (int i = 0; i < commonValues.length; i++) {
+            Value v = commonValues[i];
+            if ((first == null || v.compareTo(first, compareMode) >= 0)
+                    && (last == null || v.compareTo(last, compareMode) <= 0)) {
+                f += commonFrequencies[i];
+            }
+        }
+        double other = 1 - nullFraction - commonFraction;
+        if (other > 0) {
+            f += other * getHistogramFraction(first, last, compareMode);
+        }
+        return Math.max(0, Math.min(f, 1));
+    }
+
+    private double getHistogramFraction(Value first, Value last, CompareMode compareMode) {
+        int buckets = histogram.length - 1;
+        if (buckets < 1) {
+            if (buckets < 0) {
+                return 0;
+            }
+            Value v = histogram[0];
+            boolean in = (first == null || v.compareTo(first, compareMode) >= 0)
+                    && (last == null || v.compareTo(last, compareMode) <= 0);
+            return in ? 1 : 0;
+        }
+        double f = 0;
+        for (int i = 0; i < buckets; i++) {
+            Value a = histogram[i], b = histogram[i + 1];
+            if ((last != null && a.compareTo(last, compareMode) > 0)
+                    || (first != null && b.compareTo(first, compareMode) < 0)) {
+                continue;
+            }
+            boolean fromStart = first == null || a.compareTo(first, compareMode) >= 0;
+            boolean toEnd = last == null || b.compareTo(last, compareMode) <= 0;
+            if (fromStart && toEnd) {
+                f += 1;
+            } else if (isNumeric(a.getType())) {
+                double start = fromStart ? a.getDouble() : first.getDouble();
+                double end = toEnd ? b.getDouble() : last.getDouble();
+                double width = b.getDouble() - a.getDouble();
+                f += width > 0 ? Math.max(0, end - start) / width : 1;
+            } else {
+                // the position within the bucket is not known
+                f += 0.5;
+            }
+        }
+        return f / buckets;
+    }
+
+    private static boolean isNumeric(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DECIMAL:
+        case Value.DOUBLE:
+        case Value.FLOAT:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.table;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.lealone.dbobject.index.Cursor;
+import org.lealone.dbobject.index.IndexCondition;
+import org.lealone.engine.Database;
+import org.lealone.engine.Session;
+import org.lealone.result.ResultTempTable;
+import org.lealone.result.Row;
+import org.lealone.util.New;
+import org.lealone.util.StatementBuilder;
+import org.lealone.value.Value;
+import org.lealone.value.ValueArray;
+import org.lealone.value.ValueLong;
+import org.lealone.value.ValueNull;
+
+/**
+ * A hash table over the rows of a joined table, keyed by the columns of the
+ * equality join conditions. It is built from a single scan of the table the
+ * first time it is used in a query, and then looked up once for each row of
+ * the outer tables instead of scanning the table again. If the table has more
+ * rows than MAX_MEMORY_ROWS, the rows are moved to a temporary table that is
+ * sorted by the key.
+ */
+class HashJoin implements JoinStrategy {
+
+    private final TableFilter filter;
+    private final IndexCondition[] conditions;
+
+    private HashMap<Value, ArrayList<Row>> rows;
+    private int rowCount;
+    private ResultTempTable buffer;
+    private boolean built;
+
+    private Value[] key;
+    private ArrayList<Row> matches;
+    private int matchIndex;
+    private Row current;
+
+    HashJoin(TableFilter filter, ArrayList<IndexCondition> conditions) {
+        this.filter = filter;
+        this.conditions = conditions.toArray(new IndexCondition[conditions.size()]);
+    }
+
+    /**
+     * Check if values of the given type can be used as a hash key. Only types
+     * where equal values also have the same hash code qualify.
+     *
+     * @param type the value type
+     * @return true if they can
+     */
+    static boolean isKeyType(int type) {
+        switch (type) {
+        case Value.BOOLEAN:
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.STRING:
+        case Value.STRING_IGNORECASE:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIMESTAMP:
+        case Value.UUID:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Look up the rows that match the current rows of the outer tables. The
+     * hash table is built first if required.
+     *
+     * @param session the session
+     */
+    @Override
+    public void find(Session session) {
+        if (!built) {
+            build(session);
+        }
+        matches = null;
+        matchIndex = 0;
+        current = null;
+        key = new Value[conditions.length];
+        for (int i = 0; i < conditions.length; i++) {
+            Value v = conditions[i].getCurrentValue(session);
+            if (v == ValueNull.INSTANCE) {
+                key = null;
+                return;
+            }
+            key[i] = v;
+        }
+        if (buffer != null) {
+            buffer.reset(key);
+        } else {
+            matches = rows.get(getHashKey(key));
+        }
+    }
+
+    @Override
+    public boolean next() {
+        if (key == null) {
+            return false;
+        }
+        if (buffer != null) {
+            current = readRow(buffer.next());
+            if (current == null) {
+                key = null;
+                return false;
+            }
+            return true;
+        }
+        if (matches == null || matchIndex >= matches.size()) {
+            return false;
+        }
+        current = matches.get(matchIndex++);
+        return true;
+    }
+
+    @Override
+    public Row get() {
+        return current;
+    }
+
+    /**
+     * Release the hash table. It is built again when it is used the next
+     * time.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            buffer.close();
+            buffer = null;
+        }
+        rows = null;
+        rowCount = 0;
+        built = false;
+        key = null;
+        matches = null;
+        current = null;
+    }
+
+    @Override
+    public String getPlanSQL() {
+        StatementBuilder buff = new StatementBuilder("HASH JOIN ON ");
+        for (IndexCondition condition : conditions) {
+            buff.appendExceptFirst("\n    AND ");
+            buff.append(condition.getSQL());
+        }
+        return buff.toString();
+    }
+
+    private void build(Session session) {
+        Database db = session.getDatabase();
+        int maxMemoryRows = Integer.MAX_VALUE;
+        if (db.isPersistent() && !db.isReadOnly()) {
+            maxMemoryRows = db.getMaxMemoryRows();
+        }
+        rows = New.hashMap();
+        ArrayList<Value[]> batch = New.arrayList();
+        Cursor cursor = filter.getIndex().find(session, null, null);
+        int scanCount = 0;
+        while (cursor.next()) {
+            if ((++scanCount & 4095) == 0) {
+                session.checkCanceled();
+            }
+            Row row = cursor.get();
+            Value[] k = getKey(row);
+            if (k == null) {
+                // NULL is never equal to anything
+                continue;
+            }
+            if (buffer != null) {
+                batch.add(getBufferRow(k, row));
+                if (batch.size() >= maxMemoryRows) {
+                    buffer.addRows(batch);
+                    batch.clear();
+                }
+                continue;
+            }
+            Value hashKey = getHashKey(k);
+            ArrayList<Row> list = rows.get(hashKey);
+            if (list == null) {
+                list = new ArrayList<Row>(1);
+                rows.put(hashKey, list);
+            }
+            list.add(row);
+            if (++rowCount > maxMemoryRows) {
+                spill(session);
+            }
+        }
+        if (batch.size() > 0) {
+            buffer.addRows(batch);
+        }
+        built = true;
+    }
+
+    private void spill(Session session) {
+        ArrayList<Value[]> batch = New.arrayList();
+        for (ArrayList<Row> list : rows.values()) {
+            for (Row row : list) {
+                batch.add(getBufferRow(getKey(row), row));
+            }
+        }
+        rows = null;
+        buffer = new ResultTempTable(session, null);
+        buffer.addRows(batch);
+    }
+
+    private Value[] getKey(Row row) {
+        Value[] k = new Value[conditions.length];
+        for (int i = 0; i < conditions.length; i++) {
+            Value v = row.getValue(conditions[i].getColumn().getColumnId());
+            if (v == null || v == ValueNull.INSTANCE) {
+                return null;
+            }
+            k[i] = v;
+        }
+        return k;
+    }
+
+    private static Value getHashKey(Value[] k) {
+        return k.length == 1 ? k[0] : ValueArray.get(k);
+    }
+
+    /**
+     * Convert a row to the values stored in the temporary table: the key, the
+     * row key, and then the column values.
+     */
+    private static Value[] getBufferRow(Value[] k, Row row) {
+        int columnCount = row.getColumnCount();
+        Value[] values = new Value[k.length + 1 + columnCount];
+        System.arraycopy(k, 0, values, 0, k.length);
+        values[k.length] = ValueLong.get(row.getKey());
+        for (int i = 0; i < columnCount; i++) {
+            Value v = row.getValue(i);
+            values[k.length + 1 + i] = v == null ? ValueNull.INSTANCE : v;
+        }
+        return values;
+    }
+
+    private Row readRow(Value[] values) {
+        if (values == null) {
+            return null;
+        }
+        Database db = filter.getSession().getDatabase();
+        for (int i = 0; i < key.length; i++) {
+            if (!db.areEqual(values[i], key[i])) {
+                return null;
+            }
+        }
+        Value[] data = new Value[values.length - key.length - 1];
+        System.arraycopy(values, key.length + 1, data, 0, data.length);
+        Row row = new Row(data, Row.MEMORY_CALCULATE);
+        row.setKey(values[key.length].getLong());
+        return row;
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.table;
+
+import org.lealone.engine.Session;
+import org.lealone.result.Row;
+
+/**
+ * A way to read the rows of a joined table that match the current rows of
+ * the outer tables, used by a table filter instead of its index cursor.
+ */
+interface JoinStrategy {
+
+    /**
+     * Find the rows that match the current rows of the outer tables.
+     *
+     * @param session the session
+     */
+    void find(Session session);
+
+    /**
+     * Go to the next matching row.
+     *
+     * @return true if there is one
+     */
+    boolean next();
+
+    /**
+     * Get the current row.
+     *
+     * @return the row
+     */
+    Row get();
+
+    /**
+     * Release the resources kept between rows. This is called when a query
+     * starts and when it ends.
+     */
+    void close();
+
+    /**
+     * Get the plan text of this join, for EXPLAIN.
+     *
+     * @return the plan text
+     */
+    String getPlanSQL();
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.table;
+
+import java.util.ArrayList;
+
+import org.lealone.dbobject.index.Cursor;
+import org.lealone.dbobject.index.Index;
+import org.lealone.dbobject.index.IndexCondition;
+import org.lealone.engine.Database;
+import org.lealone.engine.Session;
+import org.lealone.result.Row;
+import org.lealone.result.SearchRow;
+import org.lealone.util.New;
+import org.lealone.value.Value;
+import org.lealone.value.ValueNull;
+
+/**
+ * A merge join over an ordered index of a joined table. The outer table is
+ * read in the order of the join column, so instead of a lookup for each outer
+ * row, one index cursor is kept open and only moves forward. If the next key
+ * is smaller than the last one, or far ahead, the cursor is positioned with a
+ * new lookup. The rows of the last key are kept, so that outer rows with the
+ * same key do not read them again.
+ */
+class MergeJoin implements JoinStrategy {
+
+    /**
+     * The number of rows that are skipped before a new lookup is used to get
+     * to the next key.
+     */
+    private static final int MAX_SKIP = 64;
+
+    private final TableFilter filter;
+    private final IndexCondition condition;
+    private final Column column;
+    private final Index index;
+
+    private Database database;
+    private Cursor cursor;
+
+    /**
+     * Whether the cursor is on a row that was not returned yet.
+     */
+    private boolean pending;
+
+    private Value key;
+    private boolean found;
+    private ArrayList<Row> group;
+    private int groupIndex;
+    private boolean groupComplete;
+    private Row current;
+
+    MergeJoin(TableFilter filter, IndexCondition condition) {
+        this.filter = filter;
+        this.condition = condition;
+        this.column = condition.getColumn();
+        this.index = filter.getIndex();
+    }
+
+    @Override
+    public void find(Session session) {
+        database = session.getDatabase();
+        current = null;
+        Value v = condition.getCurrentValue(session);
+        if (v == ValueNull.INSTANCE) {
+            found = false;
+            return;
+        }
+        found = true;
+        v = column.convert(v);
+        if (key != null) {
+            int comp = database.compare(v, key);
+            if (comp == 0) {
+                if (groupComplete) {
+                    groupIndex = 0;
+                } else {
+                    // too many rows to keep, read them again
+                    seek(v);
+                }
+                return;
+            } else if (comp < 0) {
+                seek(v);
+                return;
+            }
+        } else if (cursor == null) {
+            seek(v);
+            return;
+        }
+        key = v;
+        startGroup();
+        int skipped = 0;
+        while (advance()) {
+            if (database.compare(getCurrentKey(), v) >= 0) {
+                return;
+            }
+            pending = false;
+            if (++skipped > MAX_SKIP) {
+                seek(v);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean next() {
+        if (!found) {
+            return false;
+        }
+        if (groupComplete) {
+            if (groupIndex < group.size()) {
+                current = group.get(groupIndex++);
+                return true;
+            }
+            return false;
+        }
+        if (advance() && database.compare(getCurrentKey(), key) == 0) {
+            pending = false;
+            current = cursor.get();
+            if (group != null) {
+                if (group.size() < database.getMaxMemoryRows()) {
+                    group.add(current);
+                } else {
+                    group = null;
+                }
+            }
+            return true;
+        }
+        if (group != null) {
+            groupComplete = true;
+            groupIndex = group.size();
+        }
+        return false;
+    }
+
+    @Override
+    public Row get() {
+        return current;
+    }
+
+    @Override
+    public void close() {
+        cursor = null;
+        pending = false;
+        key = null;
+        group = null;
+        groupComplete = false;
+        current = null;
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return "MERGE JOIN ON " + condition.getSQL();
+    }
+
+    private void seek(Value v) {
+        SearchRow first = filter.getTable().getTemplateRow();
+        first.setValue(column.getColumnId(), v, column);
+        cursor = index.find(filter, first, null);
+        pending = false;
+        key = v;
+        startGroup();
+    }
+
+    private void startGroup() {
+        group = New.arrayList();
+        groupIndex = 0;
+        groupComplete = false;
+    }
+
+    /**
+     * Move the cursor to the next row, unless the current row was not
+     * returned yet.
+     *
+     * @return false if there are no more rows
+     */
+    private boolean advance() {
+        if (!pending) {
+            if (!cursor.next()) {
+                return false;
+            }
+            pending = true;
+        }
+        return true;
+    }
+
+    private Value getCurrentKey() {
+        SearchRow row = cursor.getSearchRow();
+        Value v = row.getValue(column.getColumnId());
+        if (v == null) {
+            v = cursor.get().getValue(column.getColumnId());
+        }
+        return v;
+    }
+
+}
@@ -19,6 +19,8 @@ import java.util.HashMap;
 import java.util.Locale;
 
 import org.lealone.command.Command;
+import org.lealone.command.dml.Select;
+import org.lealone.command.router.CommandParallel;
 import org.lealone.dbobject.Constant;
 import org.lealone.dbobject.DbObject;
 import org.lealone.dbobject.FunctionAlias;
@@ -46,6 +48,7 @@ import org.lealone.engine.InDoubtTransaction;
 import org.lealone.engine.Session;
 import org.lealone.expression.ValueExpression;
 import org.lealone.message.DbException;
+import org.lealone.result.ResultCache;
 import org.lealone.result.Row;
 import org.lealone.result.SearchRow;
 import org.lealone.result.SortOrder;
@@ -636,6 +639,17 @@ public class MetaTable extends Table {
             add(rows, "MVCC", database.isMultiVersion() ? "TRUE" : "FALSE");
             add(rows, "QUERY_TIMEOUT", "" + session.getQueryTimeout());
             add(rows, "LOG", "" + database.getLogMode());
+            ResultCache resultCache = database.getResultCache();
+            if (resultCache != null) {
+                add(rows, "info.RESULT_CACHE_HITS", "" + resultCache.getHits());
+                add(rows, "info.RESULT_CACHE_MISSES", "" + resultCache.getMisses());
+                add(rows, "info.RESULT_CACHE_ROWS", "" + resultCache.getRowCount());
+            }
+            add(rows, "info.COMMAND_PARALLEL_ACTIVE_TASKS", "" + CommandParallel.getActiveTaskCount());
+            add(rows, "info.COMMAND_PARALLEL_PENDING_TASKS", "" + CommandParallel.getPendingTaskCount());
+            add(rows, "info.COMMAND_PARALLEL_COMPLETED_TASKS", "" + CommandParallel.getCompletedTaskCount());
+            add(rows, "info.COMMAND_PARALLEL_REJECTED_TASKS", "" + CommandParallel.getRejectedTaskCount());
+            add(rows, "info.PARALLEL_QUERIES", "" + Select.getParallelQueryCount());
             // database settings
             ArrayList<String> settingNames = New.arrayList();
             HashMap<String, String> s = database.getSettings().getSettings();
@@ -23,6 +23,19 @@ public class PlanItem {
     private PlanItem joinPlan;
     private PlanItem nestedJoinPlan;
 
+    /**
+     * The cost of a hash join lookup per row of the outer tables, or 0 if a
+     * hash join is not possible.
+     */
+    double hashJoinCost;
+
+    /**
+     * The cost of building the hash table, paid once per query.
+     */
+    double hashJoinBuildCost;
+
+    private boolean hashJoin;
+
     void setIndex(Index index) {
         this.index = index;
     }
@@ -47,4 +60,28 @@ public class PlanItem {
         this.nestedJoinPlan = nestedJoinPlan;
     }
 
+    public boolean isHashJoin() {
+        return hashJoin;
+    }
+
+    /**
+     * Get the cost of reading this table once for each row of the outer
+     * tables. A hash join is used instead of the index if that is cheaper.
+     *
+     * @param outerCost the cost of the outer tables
+     * @return the cost of the join
+     */
+    double getJoinCost(double outerCost) {
+        double joinCost = outerCost * cost;
+        hashJoin = false;
+        if (hashJoinCost > 0) {
+            double hashCost = outerCost * hashJoinCost + hashJoinBuildCost;
+            if (hashCost < joinCost) {
+                hashJoin = true;
+                return hashCost;
+            }
+        }
+        return joinCost;
+    }
+
 }
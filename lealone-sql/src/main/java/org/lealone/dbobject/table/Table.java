@@ -171,6 +171,29 @@ public abstract class Table extends SchemaObjectBase {
     public abstract Index addIndex(Session session, String indexName, int indexId, IndexColumn[] cols,
             IndexType indexType, boolean create, String indexComment);
 
+    /**
+     * Create an index for this table that also stores the values of some
+     * additional (non-key) columns, so that queries only using the index
+     * columns and the included columns don't need to read the table rows.
+     *
+     * @param session the session
+     * @param indexName the name of the index
+     * @param indexId the id
+     * @param cols the index columns
+     * @param includeColumns the included columns, or null
+     * @param indexType the index type
+     * @param create whether this is a new index
+     * @param indexComment the comment
+     * @return the index
+     */
+    public Index addIndex(Session session, String indexName, int indexId, IndexColumn[] cols,
+            Column[] includeColumns, IndexType indexType, boolean create, String indexComment) {
+        if (includeColumns != null && includeColumns.length > 0) {
+            throw DbException.getUnsupportedException("INCLUDE columns for table type " + getTableType());
+        }
+        return addIndex(session, indexName, indexId, cols, indexType, create, indexComment);
+    }
+
     /**
      * Remove a row from the table and all indexes.
      *
@@ -249,6 +272,14 @@ public abstract class Table extends SchemaObjectBase {
      */
     public abstract long getMaxDataModificationId();
 
+    /**
+     * Tell the table that a transaction that changed it was committed or
+     * rolled back, so that the data modification id is incremented.
+     */
+    public void commit() {
+        // nothing to do
+    }
+
     /**
      * Check if the table is deterministic.
      *
@@ -507,13 +538,13 @@ public abstract class Table extends SchemaObjectBase {
 
     /**
      * Check that this column is not referenced by a multi-column constraint or
-     * multi-column index. If it is, an exception is thrown. Single-column
-     * references and indexes are dropped.
+     * multi-column index, or included in an index. If it is, an exception is
+     * thrown. Single-column references and indexes are dropped.
      *
      * @param session the session
      * @param col the column
      * @throws DbException if the column is referenced by multi-column
-     *             constraints or indexes
+     *             constraints or indexes, or included in an index
      */
     public void dropSingleColumnConstraintsAndIndexes(Session session, Column col) {
         ArrayList<Constraint> constraintsToDrop = New.arrayList();
@@ -534,12 +565,18 @@ public abstract class Table extends SchemaObjectBase {
         ArrayList<Index> indexesToDrop = New.arrayList();
         ArrayList<Index> indexes = getIndexes();
         if (indexes != null) {
+            HashSet<Column> columns = New.hashSet();
+            columns.add(col);
             for (int i = 0, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
                 if (index.getCreateSQL() == null) {
                     continue;
                 }
                 if (index.getColumnIndex(col) < 0) {
+                    // the index would have to be rebuilt without the included column
+                    if (index.isCovering(columns)) {
+                        throw DbException.get(ErrorCode.COLUMN_IS_REFERENCED_1, index.getSQL());
+                    }
                     continue;
                 }
                 if (index.getColumns().length == 1) {
@@ -641,14 +678,28 @@ public abstract class Table extends SchemaObjectBase {
      * @return the plan item
      */
     public PlanItem getBestPlanItem(Session session, int[] masks, SortOrder sortOrder) {
+        return getBestPlanItem(session, masks, null, sortOrder);
+    }
+
+    /**
+     * Get the best plan for the given search mask.
+     *
+     * @param session the session
+     * @param masks per-column comparison bit masks, null means 'always false',
+     *              see constants in IndexCondition
+     * @param filter the table filter, or null if the conditions are not known
+     * @param sortOrder the sort order
+     * @return the plan item
+     */
+    public PlanItem getBestPlanItem(Session session, int[] masks, TableFilter filter, SortOrder sortOrder) {
         PlanItem item = new PlanItem();
         item.setIndex(getScanIndex(session));
-        item.cost = item.getIndex().getCost(session, null, null);
+        item.cost = item.getIndex().getCost(session, null, filter, null);
         ArrayList<Index> indexes = getIndexes();
         if (indexes != null && masks != null) {
             for (int i = 1, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
-                double cost = index.getCost(session, masks, sortOrder);
+                double cost = index.getCost(session, masks, filter, sortOrder);
                 if (cost < item.cost) {
                     item.cost = cost;
                     item.setIndex(index);
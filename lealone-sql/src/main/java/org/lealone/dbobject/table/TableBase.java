@@ -109,7 +109,7 @@ public abstract class TableBase extends Table {
         buff.append("(\n    ");
         for (Column column : columns) {
             buff.appendExceptFirst(",\n    ");
-            buff.append(column.getCreateSQL());
+            buff.append(column.getCreateSQL(false, true));
         }
         buff.append("\n)");
         if (storageEngine != null) {
@@ -7,6 +7,7 @@
 package org.lealone.dbobject.table;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import org.lealone.command.Parser;
 import org.lealone.command.Prepared;
@@ -21,6 +22,7 @@ import org.lealone.expression.Comparison;
 import org.lealone.expression.ConditionAndOr;
 import org.lealone.expression.Expression;
 import org.lealone.expression.ExpressionColumn;
+import org.lealone.expression.ExpressionVisitor;
 import org.lealone.message.DbException;
 import org.lealone.result.Row;
 import org.lealone.result.SearchRow;
@@ -28,6 +30,7 @@ import org.lealone.result.SortOrder;
 import org.lealone.util.New;
 import org.lealone.util.StatementBuilder;
 import org.lealone.util.StringUtils;
+import org.lealone.value.CompareMode;
 import org.lealone.value.Value;
 import org.lealone.value.ValueLong;
 import org.lealone.value.ValueNull;
@@ -65,6 +68,12 @@ public class TableFilter implements ColumnResolver {
      */
     private final IndexCursor cursor;
 
+    /**
+     * The hash table that is used instead of the cursor for a hash join, or
+     * null.
+     */
+    private JoinStrategy joinStrategy;
+
     /**
      * The index conditions used for direct index lookup (start or end).
      */
@@ -82,6 +91,7 @@ public class TableFilter implements ColumnResolver {
     private Expression joinCondition;
 
     private SearchRow currentSearchRow;
+    private boolean searchRowSetBack;
     private Row current;
     private int state;
 
@@ -107,6 +117,11 @@ public class TableFilter implements ColumnResolver {
 
     private Prepared prepared;
 
+    /**
+     * The columns of this table that are read by the query, or null if unknown.
+     */
+    private HashSet<Column> usedColumns;
+
     /**
      * Create a new table filter object.
      *
@@ -164,7 +179,7 @@ public class TableFilter implements ColumnResolver {
         if (indexConditions.size() == 0) {
             item = new PlanItem();
             item.setIndex(table.getScanIndex(s));
-            item.cost = item.getIndex().getCost(s, null, null);
+            item.cost = item.getIndex().getCost(s, null, null, null);
         } else {
             int len = table.getColumns().length;
             int[] masks = new int[len];
@@ -184,11 +199,12 @@ public class TableFilter implements ColumnResolver {
             if (select != null) {
                 sortOrder = select.getSortOrder();
             }
-            item = table.getBestPlanItem(s, masks, sortOrder);
+            item = table.getBestPlanItem(s, masks, this, sortOrder);
             // The more index conditions, the earlier the table.
             // This is to ensure joins without indexes run quickly:
             // x (x.a=10); y (x.b=y.b) - see issue 113
             item.cost -= item.cost * indexConditions.size() / 100 / level;
+            setHashJoinCost(s, item);
         }
         if (nestedJoin != null) {
             setEvaluatable(nestedJoin);
@@ -202,11 +218,234 @@ public class TableFilter implements ColumnResolver {
             item.setJoinPlan(join.getBestPlanItem(s, level));
             // TODO optimizer: calculate cost of a join: should use separate
             // expected row number and lookup cost
-            item.cost += item.cost * item.getJoinPlan().cost;
+            double joinCost = item.getJoinPlan().getJoinCost(item.cost);
+            if (item.hashJoinCost > 0 && item.cost > 0) {
+                item.hashJoinCost += item.hashJoinCost * joinCost / item.cost;
+            }
+            item.cost += joinCost;
         }
         return item;
     }
 
+    /**
+     * Estimate the fraction of the rows that match the index conditions on the
+     * given column, using the statistics built by ANALYZE. Only conditions
+     * with constant values are used.
+     *
+     * @param column the column
+     * @return the fraction of the rows, or -1 if it can not be estimated
+     */
+    public double getConditionFraction(Column column) {
+        ColumnStatistics statistics = column.getStatistics();
+        if (statistics == null) {
+            return -1;
+        }
+        CompareMode compareMode = session.getDatabase().getCompareMode();
+        double equal = -1;
+        Value first = null, last = null;
+        for (IndexCondition condition : indexConditions) {
+            if (condition.getColumn() != column) {
+                continue;
+            }
+            switch (condition.getCompareType()) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE: {
+                Value v = getConstantValue(condition.getExpression(), column);
+                if (v != null) {
+                    double f = statistics.getEqualFraction(v, compareMode);
+                    equal = equal < 0 ? f : Math.min(equal, f);
+                }
+                break;
+            }
+            case Comparison.IN_LIST: {
+                double f = 0;
+                for (Expression e : condition.getExpressionList()) {
+                    Value v = getConstantValue(e, column);
+                    if (v == null) {
+                        f = -1;
+                        break;
+                    }
+                    f += statistics.getEqualFraction(v, compareMode);
+                }
+                if (f >= 0) {
+                    f = Math.min(f, 1);
+                    equal = equal < 0 ? f : Math.min(equal, f);
+                }
+                break;
+            }
+            case Comparison.BIGGER_EQUAL:
+            case Comparison.BIGGER: {
+                Value v = getConstantValue(condition.getExpression(), column);
+                if (v != null && (first == null || v.compareTo(first, compareMode) > 0)) {
+                    first = v;
+                }
+                break;
+            }
+            case Comparison.SMALLER_EQUAL:
+            case Comparison.SMALLER: {
+                Value v = getConstantValue(condition.getExpression(), column);
+                if (v != null && (last == null || v.compareTo(last, compareMode) < 0)) {
+                    last = v;
+                }
+                break;
+            }
+            default:
+            }
+        }
+        if (equal >= 0) {
+            return equal;
+        }
+        if (first != null || last != null) {
+            return statistics.getRangeFraction(first, last, compareMode);
+        }
+        return -1;
+    }
+
+    private Value getConstantValue(Expression expression, Column column) {
+        if (expression == null || !expression.isConstant()) {
+            return null;
+        }
+        try {
+            return column.convert(expression.getValue(session));
+        } catch (DbException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Estimate the cost of a hash join on this table, if one is possible. The
+     * costs are in the same units as the index costs: one lookup per row of
+     * the outer tables, and a table scan plus one insert per row to build the
+     * hash table.
+     */
+    private void setHashJoinCost(Session s, PlanItem item) {
+        ArrayList<IndexCondition> conditions = getHashJoinConditions(item.getIndex(), true);
+        if (conditions == null) {
+            return;
+        }
+        long rowCount = table.getRowCountApproximation();
+        int totalSelectivity = 0;
+        for (IndexCondition condition : conditions) {
+            int selectivity = condition.getColumn().getSelectivity();
+            totalSelectivity = 100 - ((100 - totalSelectivity) * (100 - selectivity) / 100);
+        }
+        long distinctRows = Math.max(rowCount * totalSelectivity / 100, 1);
+        long rows = Math.max(rowCount / distinctRows, 1);
+        item.hashJoinCost = 10 * (1 + rows);
+        item.hashJoinBuildCost = table.getScanIndex(s).getCost(s, null, null, null) + 10 * rowCount;
+    }
+
+    /**
+     * Get the equality conditions that can be used as the key of a hash join.
+     *
+     * @param index the index that would be used otherwise
+     * @param checkEvaluatable whether conditions that can not be evaluated yet
+     *            are skipped
+     * @return the conditions, or null if a hash join can not be used
+     */
+    private ArrayList<IndexCondition> getHashJoinConditions(Index index, boolean checkEvaluatable) {
+        if (nestedJoin != null || !Table.TABLE.equals(table.getTableType())
+                || !CompareMode.OFF.equals(session.getDatabase().getCompareMode().getName())) {
+            return null;
+        }
+        ArrayList<IndexCondition> conditions = null;
+        for (IndexCondition condition : indexConditions) {
+            if (condition.getCompareType() != Comparison.EQUAL) {
+                continue;
+            }
+            if (checkEvaluatable && !condition.isEvaluatable()) {
+                continue;
+            }
+            Column column = condition.getColumn();
+            if (column.getColumnId() < 0 || index.getColumnIndex(column) == 0) {
+                // the index is used to look up the rows
+                return null;
+            }
+            Expression expression = condition.getExpression();
+            int type = column.getType();
+            if (type != expression.getType() || !HashJoin.isKeyType(type)
+                    || !expression.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)) {
+                continue;
+            }
+            if (conditions == null) {
+                conditions = New.arrayList();
+            }
+            conditions.add(condition);
+        }
+        return conditions;
+    }
+
+    /**
+     * Get a merge join for the current index, if the index is used to look up
+     * a single key that comes from a column of an outer table, and the outer
+     * table is read in the order of that column.
+     *
+     * @return the merge join, or null if it can not be used
+     */
+    private MergeJoin getMergeJoin() {
+        if (nestedJoin != null || index == null || index.isRowIdIndex() || indexConditions.isEmpty()) {
+            return null;
+        }
+        IndexCondition condition = indexConditions.get(0);
+        Column column = condition.getColumn();
+        for (IndexCondition c : indexConditions) {
+            // the same condition may be added more than once
+            if (c.getColumn() != column || !c.getSQL().equals(condition.getSQL())) {
+                return null;
+            }
+        }
+        if (condition.getCompareType() != Comparison.EQUAL || !isOrderedBy(column)) {
+            return null;
+        }
+        Expression expression = condition.getExpression();
+        if (!(expression instanceof ExpressionColumn) || expression.getType() != column.getType()) {
+            return null;
+        }
+        ExpressionColumn outer = (ExpressionColumn) expression;
+        TableFilter outerFilter = outer.getTableFilter();
+        if (outerFilter == null || outerFilter == this || !outerFilter.isOrderedBy(outer.getColumn())) {
+            return null;
+        }
+        return new MergeJoin(this, condition);
+    }
+
+    /**
+     * Check if the rows of this table are read in ascending order of the given
+     * column.
+     *
+     * @param column the column
+     * @return true if they are
+     */
+    private boolean isOrderedBy(Column column) {
+        if (index == null || nestedJoin != null || joinStrategy instanceof HashJoin) {
+            return false;
+        }
+        if (index.isRowIdIndex()) {
+            Index pk = table.findPrimaryKey();
+            if (pk == null) {
+                return false;
+            }
+            IndexColumn[] cols = pk.getIndexColumns();
+            if (cols.length != 1 || cols[0].column != column
+                    || (cols[0].sortType & SortOrder.DESCENDING) != 0) {
+                return false;
+            }
+            switch (column.getType()) {
+            case Value.BYTE:
+            case Value.SHORT:
+            case Value.INT:
+            case Value.LONG:
+                return true;
+            default:
+                return false;
+            }
+        }
+        if (index.getIndexType().isHash() || index.getColumnIndex(column) != 0) {
+            return false;
+        }
+        return (index.getIndexColumns()[0].sortType & SortOrder.DESCENDING) == 0;
+    }
+
     private void setEvaluatable(TableFilter join) {
         if (session.getDatabase().getSettings().nestedJoins) {
             setEvaluatable(true);
@@ -238,6 +477,19 @@ public class TableFilter implements ColumnResolver {
             return;
         }
         setIndex(item.getIndex());
+        joinStrategy = null;
+        if (item.isHashJoin()) {
+            ArrayList<IndexCondition> conditions = getHashJoinConditions(item.getIndex(), false);
+            if (conditions != null) {
+                // the table is read once to build the hash table,
+                // the join and filter conditions are still checked for each row
+                joinStrategy = new HashJoin(this, conditions);
+                indexConditions.clear();
+                setIndex(table.getScanIndex(session));
+            }
+        } else {
+            joinStrategy = getMergeJoin();
+        }
         if (nestedJoin != null) {
             if (item.getNestedJoinPlan() != null) {
                 nestedJoin.setPlanItem(item.getNestedJoinPlan());
@@ -297,6 +549,9 @@ public class TableFilter implements ColumnResolver {
     public void startQuery(Session s) {
         this.session = s;
         scanCount = 0;
+        if (joinStrategy != null) {
+            joinStrategy.close();
+        }
         if (nestedJoin != null) {
             nestedJoin.startQuery(s);
         }
@@ -305,6 +560,22 @@ public class TableFilter implements ColumnResolver {
         }
     }
 
+    /**
+     * End the query. This will release the hash tables of hash joins and the
+     * cursors of merge joins.
+     */
+    public void endQuery() {
+        if (joinStrategy != null) {
+            joinStrategy.close();
+        }
+        if (nestedJoin != null) {
+            nestedJoin.endQuery();
+        }
+        if (join != null) {
+            join.endQuery();
+        }
+    }
+
     /**
      * Reset to the current position.
      */
@@ -328,7 +599,11 @@ public class TableFilter implements ColumnResolver {
         if (state == AFTER_LAST) {
             return false;
         } else if (state == BEFORE_FIRST) {
-            cursor.find(session, indexConditions);
+            if (joinStrategy != null) {
+                joinStrategy.find(session);
+            } else {
+                cursor.find(session, indexConditions);
+            }
             if (!cursor.isAlwaysFalse()) {
                 if (nestedJoin != null) {
                     nestedJoin.reset();
@@ -359,8 +634,18 @@ public class TableFilter implements ColumnResolver {
                 if ((++scanCount & 4095) == 0) {
                     checkTimeout();
                 }
-                if (cursor.next()) {
+                if (joinStrategy != null) {
+                    if (joinStrategy.next()) {
+                        current = joinStrategy.get();
+                        currentSearchRow = current;
+                        searchRowSetBack = false;
+                        state = FOUND;
+                    } else {
+                        state = AFTER_LAST;
+                    }
+                } else if (cursor.next()) {
                     currentSearchRow = cursor.getSearchRow();
+                    searchRowSetBack = false;
                     current = null;
                     state = FOUND;
                 } else {
@@ -418,6 +703,7 @@ public class TableFilter implements ColumnResolver {
         state = NULL_ROW;
         current = table.getNullRow();
         currentSearchRow = current;
+        searchRowSetBack = false;
         if (nestedJoin != null) {
             nestedJoin.visit(new TableFilterVisitor() {
                 @Override
@@ -448,7 +734,7 @@ public class TableFilter implements ColumnResolver {
      */
     public Row get() {
         if (current == null && currentSearchRow != null) {
-            current = cursor.get();
+            current = getCurrentRow();
         }
         return current;
     }
@@ -463,6 +749,39 @@ public class TableFilter implements ColumnResolver {
         // the current (new) row
         this.current = current;
         this.currentSearchRow = current;
+        this.searchRowSetBack = false;
+    }
+
+    /**
+     * Get the current search row. It may only contain the values of some
+     * columns.
+     *
+     * @return the search row
+     */
+    public SearchRow getCurrentSearchRow() {
+        return currentSearchRow;
+    }
+
+    /**
+     * Set the current search row. This is used to go back to a row that was
+     * read before. If the row does not contain the value of a column, the
+     * whole row is read again by its key.
+     *
+     * @param row the row
+     */
+    public void setCurrentSearchRow(SearchRow row) {
+        // the row may come from an index that does not contain all columns
+        this.current = null;
+        this.currentSearchRow = row;
+        this.searchRowSetBack = true;
+    }
+
+    private Row getCurrentRow() {
+        if (searchRowSetBack) {
+            // the cursor is not positioned on this row any more
+            return table.getScanIndex(session).getRow(session, currentSearchRow.getKey());
+        }
+        return cursor.get();
     }
 
     /**
@@ -488,6 +807,15 @@ public class TableFilter implements ColumnResolver {
         indexConditions.add(condition);
     }
 
+    /**
+     * Get the index conditions.
+     *
+     * @return the index conditions
+     */
+    public ArrayList<IndexCondition> getIndexConditions() {
+        return indexConditions;
+    }
+
     /**
      * Add a filter condition.
      *
@@ -678,7 +1006,9 @@ public class TableFilter implements ColumnResolver {
             buff.append('\n');
             StatementBuilder planBuff = new StatementBuilder();
             planBuff.append(index.getPlanSQL());
-            if (indexConditions.size() > 0) {
+            if (joinStrategy != null) {
+                planBuff.append(": ").append(joinStrategy.getPlanSQL());
+            } else if (indexConditions.size() > 0) {
                 planBuff.append(": ");
                 for (IndexCondition condition : indexConditions) {
                     planBuff.appendExceptFirst("\n    AND ");
@@ -735,6 +1065,30 @@ public class TableFilter implements ColumnResolver {
         cursor.setIndex(index);
     }
 
+    /**
+     * Read the rows from the given index instead of the index chosen by the
+     * optimizer. The index is always read in full, so the index conditions
+     * are no longer used. A hash join is built over the rows of the index if
+     * the join conditions allow it, otherwise the join conditions are checked
+     * for each row.
+     *
+     * @param index the index
+     */
+    public void setScanIndex(Index index) {
+        setIndex(index);
+        if (joinStrategy instanceof HashJoin) {
+            // the hash table is built again from the new index
+            joinStrategy.close();
+        } else {
+            joinStrategy = null;
+            ArrayList<IndexCondition> conditions = getHashJoinConditions(index, false);
+            if (conditions != null) {
+                joinStrategy = new HashJoin(this, conditions);
+            }
+        }
+        indexConditions.clear();
+    }
+
     public void setUsed(boolean used) {
         this.used = used;
     }
@@ -748,7 +1102,7 @@ public class TableFilter implements ColumnResolver {
      *
      * @param session the new session
      */
-    void setSession(Session session) {
+    public void setSession(Session session) {
         this.session = session;
     }
 
@@ -898,7 +1252,7 @@ public class TableFilter implements ColumnResolver {
             if (v != null) {
                 return v;
             }
-            current = cursor.get();
+            current = getCurrentRow();
             if (current == null) {
                 return ValueNull.INSTANCE;
             }
@@ -919,7 +1273,7 @@ public class TableFilter implements ColumnResolver {
             if (v != null) {
                 return v;
             }
-            current = cursor.get();
+            current = getCurrentRow();
             if (current == null) {
                 return ValueNull.INSTANCE;
             }
@@ -1076,6 +1430,25 @@ public class TableFilter implements ColumnResolver {
         return cursor.getEndSearchRow();
     }
 
+    /**
+     * Set the columns of this table that are read by the query. This allows to
+     * prefer indexes that contain all of them.
+     *
+     * @param usedColumns the columns
+     */
+    public void setUsedColumns(HashSet<Column> usedColumns) {
+        this.usedColumns = usedColumns;
+    }
+
+    /**
+     * Get the columns read by the query, see {@link #setUsedColumns(HashSet)}.
+     *
+     * @return the columns, or null if unknown
+     */
+    public HashSet<Column> getUsedColumns() {
+        return usedColumns;
+    }
+
     public Prepared getPrepared() {
         return prepared;
     }
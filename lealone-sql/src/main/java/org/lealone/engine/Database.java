@@ -13,11 +13,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.lealone.api.DatabaseEventListener;
 import org.lealone.api.ErrorCode;
+import org.lealone.command.PlanCache;
 import org.lealone.command.ddl.CreateTableData;
 import org.lealone.dbobject.Comment;
 import org.lealone.dbobject.DbObject;
@@ -46,6 +49,7 @@ import org.lealone.jdbc.JdbcConnection;
 import org.lealone.message.DbException;
 import org.lealone.message.Trace;
 import org.lealone.message.TraceSystem;
+import org.lealone.result.ResultCache;
 import org.lealone.result.Row;
 import org.lealone.result.SearchRow;
 import org.lealone.storage.FileStore;
@@ -93,6 +97,11 @@ public class Database implements DataHandler {
      */
     private static final String SYSTEM_USER_NAME = "DBA";
 
+    /**
+     * The minimum number of meta records per thread when they are parsed in parallel.
+     */
+    private static final int META_RECORDS_PER_THREAD = 256;
+
     protected boolean persistent;
     protected String databaseName;
     private String databaseShortName;
@@ -164,6 +173,8 @@ public class Database implements DataHandler {
     private int pageSize;
     private int defaultTableType = Table.TYPE_CACHED;
     private DbSettings dbSettings;
+    private PlanCache planCache;
+    private ResultCache resultCache;
     private int logMode;
     private boolean initialized = false;
 
@@ -190,6 +201,10 @@ public class Database implements DataHandler {
         if (initialized)
             return;
         this.dbSettings = ci.getDbSettings();
+        this.planCache = new PlanCache(dbSettings.planCacheSize);
+        if (dbSettings.resultCacheSize > 0) {
+            this.resultCache = new ResultCache(dbSettings.resultCacheSize);
+        }
         this.compareMode = CompareMode.getInstance(null, 0, false);
         this.filePasswordHash = ci.getFilePasswordHash();
         this.fileEncryptionKey = ci.getFileEncryptionKey();
@@ -373,10 +388,15 @@ public class Database implements DataHandler {
         data.create = create;
         data.isHidden = true;
         data.session = systemSession;
+        long start = System.currentTimeMillis();
+        // the meta table has to be opened the same way as it was created,
+        // otherwise the row id index would be rebuilt as a secondary index
+        starting = true;
         meta = mainSchema.createTable(data);
         IndexColumn[] pkCols = IndexColumn.wrap(new Column[] { columnId });
         metaIdIndex = meta.addIndex(systemSession, "SYS_ID", 0, pkCols, IndexType.createPrimaryKey(false, false), true,
                 null);
+        long opened = System.currentTimeMillis();
 
         Cursor cursor = metaIdIndex.find(systemSession, null, null);
 
@@ -386,18 +406,93 @@ public class Database implements DataHandler {
             objectIds.set(rec.getId());
             records.add(rec);
         }
+        long read = System.currentTimeMillis();
 
         objectIds.set(0);
-        starting = true;
 
         Collections.sort(records);
-        for (MetaRecord rec : records) {
-            objectIds.set(rec.getId());
-            rec.execute(this, systemSession, eventListener);
-        }
+        executeMetaRecords(records);
+        long executed = System.currentTimeMillis();
 
         recompileInvalidViews(systemSession);
         starting = false;
+        trace.info("opened meta table in {0} ms, read {1} records in {2} ms, " //
+                + "created objects in {3} ms, recompiled views in {4} ms", opened - start, records.size(), read
+                - opened, executed - read, System.currentTimeMillis() - executed);
+    }
+
+    /**
+     * Create the objects of the given meta records, in create order. The
+     * statements of the tables and indexes, usually most of the records, are
+     * parsed in parallel before they are executed.
+     *
+     * @param records the sorted records
+     */
+    private void executeMetaRecords(ArrayList<MetaRecord> records) {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), records.size()
+                / META_RECORDS_PER_THREAD);
+        for (int i = 0, size = records.size(); i < size;) {
+            int type = records.get(i).getObjectType();
+            int end = i + 1;
+            while (end < size && records.get(end).getObjectType() == type) {
+                end++;
+            }
+            if (threads > 1 && MetaRecord.canPrepare(type) && end - i >= META_RECORDS_PER_THREAD) {
+                prepareMetaRecords(records.subList(i, end), threads);
+            }
+            for (; i < end; i++) {
+                MetaRecord rec = records.get(i);
+                objectIds.set(rec.getId());
+                rec.execute(this, systemSession, eventListener);
+            }
+        }
+    }
+
+    private void prepareMetaRecords(final List<MetaRecord> records, int threads) {
+        final AtomicInteger next = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        Session[] sessions = new Session[threads];
+        try {
+            for (int i = 0; i < threads; i++) {
+                final Session session = createSystemSession(systemUser, ++nextSessionId);
+                sessions[i] = session;
+                workers[i] = new Thread(databaseShortName + " meta record parser " + i) {
+                    @Override
+                    public void run() {
+                        for (int j; (j = next.getAndIncrement()) < records.size();) {
+                            records.get(j).prepare(session);
+                        }
+                    }
+                };
+                workers[i].start();
+            }
+            for (Thread t : workers) {
+                t.join();
+            }
+        } catch (InterruptedException e) {
+            throw DbException.convert(e);
+        } finally {
+            // the records that are not parsed yet are parsed when they are executed
+            next.set(records.size());
+            boolean interrupted = false;
+            for (Thread t : workers) {
+                while (t != null && t.isAlive()) {
+                    try {
+                        t.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            for (Session session : sessions) {
+                if (session != null) {
+                    session.close();
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     protected void recompileInvalidViews(Session session) {
@@ -521,7 +616,7 @@ public class Database implements DataHandler {
                 TraceSystem.traceThrowable(e);
             }
         }
-        getDatabaseEngine().closeDatabase(databaseName);
+        getDatabaseEngine().closeDatabase(databaseShortName);
         throw DbException.get(ErrorCode.DATABASE_IS_CLOSED);
     }
 
@@ -876,6 +971,17 @@ public class Database implements DataHandler {
         return session;
     }
 
+    /**
+     * Create a session that is not a user session, for example for a part of
+     * a parallel query. Closing it does not close the database.
+     *
+     * @param user the user
+     * @return the session
+     */
+    public synchronized Session createInternalSession(User user) {
+        return createSystemSession(user, ++nextSessionId);
+    }
+
     /**
      * Remove a session. This method is called after the user has disconnected.
      *
@@ -886,7 +992,10 @@ public class Database implements DataHandler {
             if (exclusiveSession == session) {
                 exclusiveSession = null;
             }
-            userSessions.remove(session);
+            if (!userSessions.remove(session) && session != systemSession) {
+                // an internal session, for example one that parsed meta records
+                return;
+            }
             if (session != systemSession) {
                 trace.info("disconnecting session #{0}", session.getId());
             }
@@ -1021,7 +1130,7 @@ public class Database implements DataHandler {
             }
             closeOnExit = null;
         }
-        getDatabaseEngine().closeDatabase(databaseName);
+        getDatabaseEngine().closeDatabase(databaseShortName);
 
         getStorageEngine().close(this);
     }
@@ -1998,6 +2107,24 @@ public class Database implements DataHandler {
         return dbSettings;
     }
 
+    /**
+     * Get the plan cache that is shared by all sessions.
+     *
+     * @return the plan cache
+     */
+    public PlanCache getPlanCache() {
+        return planCache;
+    }
+
+    /**
+     * Get the result cache that is shared by all sessions.
+     *
+     * @return the result cache, or null if it is disabled
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
     /**
      * Create a new hash map. Depending on the configuration, the key is case
      * sensitive or case insensitive.
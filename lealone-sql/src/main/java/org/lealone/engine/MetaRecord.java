@@ -10,6 +10,8 @@ import java.sql.SQLException;
 
 import org.lealone.api.DatabaseEventListener;
 import org.lealone.command.Prepared;
+import org.lealone.command.ddl.CreateIndex;
+import org.lealone.command.ddl.CreateTable;
 import org.lealone.dbobject.DbObject;
 import org.lealone.message.DbException;
 import org.lealone.message.Trace;
@@ -26,6 +28,7 @@ public class MetaRecord implements Comparable<MetaRecord> {
     private final int id;
     private final int objectType;
     private final String sql;
+    private Prepared prepared;
 
     public MetaRecord(SearchRow r) {
         id = r.getValue(0).getInt();
@@ -46,6 +49,36 @@ public class MetaRecord implements Comparable<MetaRecord> {
         r.setValue(3, ValueString.get(sql));
     }
 
+    /**
+     * Whether the statements of this object type can be parsed before the
+     * statements of the same type are executed, and in another session.
+     *
+     * @param objectType the object type
+     * @return true if they can be parsed in advance
+     */
+    static boolean canPrepare(int objectType) {
+        return objectType == DbObject.TABLE_OR_VIEW || objectType == DbObject.INDEX;
+    }
+
+    /**
+     * Parse the meta data statement in advance, so that it is only executed
+     * later on. If it can not be parsed now (for example because it depends on
+     * an object that is not created yet), it is parsed again when executed.
+     *
+     * @param session the session to parse the statement
+     */
+    void prepare(Session session) {
+        try {
+            Prepared command = session.prepare(sql);
+            // views are compiled with the session that parsed them
+            if (command instanceof CreateTable || command instanceof CreateIndex) {
+                prepared = command;
+            }
+        } catch (RuntimeException e) {
+            // parsed again in execute
+        }
+    }
+
     /**
      * Execute the meta data statement.
      *
@@ -55,7 +88,13 @@ public class MetaRecord implements Comparable<MetaRecord> {
      */
     public void execute(Database db, Session systemSession, DatabaseEventListener listener) {
         try {
-            Prepared command = systemSession.prepare(sql);
+            Prepared command = prepared;
+            prepared = null;
+            if (command == null) {
+                command = systemSession.prepare(sql);
+            } else {
+                command.setSession(systemSession);
+            }
             //System.out.println("execute id: " + id + ", sql=" + sql);
             command.setObjectId(id);
             command.setLocal(true);
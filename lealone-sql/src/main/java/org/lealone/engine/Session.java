@@ -10,6 +10,7 @@ import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
@@ -73,6 +74,7 @@ public class Session extends SessionWithState {
     private final User user;
     private final int id;
     private final ArrayList<Table> locks = New.arrayList();
+    private HashSet<Table> modifiedTables;
     private boolean autoCommit = true;
     private Random random;
     private int lockTimeout;
@@ -432,7 +434,7 @@ public class Session extends SessionWithState {
         if (closed) {
             throw DbException.get(ErrorCode.CONNECTION_BROKEN_1, "session closed");
         }
-        Command command;
+        Command command = null;
         if (queryCacheSize > 0) {
             if (queryCache == null) {
                 queryCache = SmallLRUCache.newInstance(queryCacheSize);
@@ -443,12 +445,26 @@ public class Session extends SessionWithState {
                     return command;
                 }
             }
+            // a command that another session has closed
+            command = database.getPlanCache().take(this, sql);
+        }
+        if (command == null) {
+            Parser parser = createParser();
+            command = parser.prepareCommand(sql);
         }
-        Parser parser = createParser();
-        command = parser.prepareCommand(sql);
         if (queryCache != null) {
             if (command.isCacheable()) {
-                queryCache.put(sql, command);
+                if (queryCache.size() >= queryCacheSize && !queryCache.containsKey(sql)) {
+                    // the least recently used command is given to the shared plan cache
+                    Iterator<Command> it = queryCache.values().iterator();
+                    Command eldest = it.next();
+                    it.remove();
+                    database.getPlanCache().add(this, eldest);
+                }
+                Command old = queryCache.put(sql, command);
+                if (old != null && old != command) {
+                    database.getPlanCache().add(this, old);
+                }
             }
         }
         setLocal(command.getPrepared());
@@ -485,17 +501,6 @@ public class Session extends SessionWithState {
         currentTransactionName = null;
         transactionStart = 0;
         if (transaction != null) {
-            // increment the data mod count, so that other sessions
-            // see the changes
-            // TODO should not rely on locking
-            //            if (locks.size() > 0) {
-            //                for (int i = 0, size = locks.size(); i < size; i++) {
-            //                    Table t = locks.get(i);
-            //                    if (t instanceof MVTable) {
-            //                        ((MVTable) t).commit();
-            //                    }
-            //                }
-            //            }
             //避免重复commit
             Transaction transaction = this.transaction;
             this.transaction = null;
@@ -506,6 +511,9 @@ public class Session extends SessionWithState {
 
             endTransaction();
         }
+        // increment the data modification ids, so that other sessions
+        // see the changes
+        endModifications();
         if (containsUncommitted()) {
             // need to commit even if rollback is not possible
             // (create/drop table and so on)
@@ -547,6 +555,36 @@ public class Session extends SessionWithState {
             setAutoCommit(true);
     }
 
+    private void endModifications() {
+        if (modifiedTables != null && !modifiedTables.isEmpty()) {
+            for (Table t : modifiedTables) {
+                t.commit();
+            }
+            modifiedTables.clear();
+        }
+    }
+
+    /**
+     * Remember that the current transaction changed the given table.
+     *
+     * @param table the table
+     */
+    public void addModifiedTable(Table table) {
+        if (modifiedTables == null) {
+            modifiedTables = New.hashSet();
+        }
+        modifiedTables.add(table);
+    }
+
+    /**
+     * Check if the current transaction changed a table.
+     *
+     * @return true if it did
+     */
+    public boolean hasModifiedTables() {
+        return modifiedTables != null && !modifiedTables.isEmpty();
+    }
+
     private void checkCommitRollback() {
         if (commitOrRollbackDisabled && locks.size() > 0) {
             throw DbException.get(ErrorCode.COMMIT_ROLLBACK_NOT_ALLOWED);
@@ -565,6 +603,7 @@ public class Session extends SessionWithState {
             transaction.rollback();
             endTransaction();
         }
+        endModifications();
         if (locks.size() > 0) {
             database.commit(this);
         }
@@ -631,6 +670,12 @@ public class Session extends SessionWithState {
         if (!closed) {
             try {
                 database.checkPowerOff();
+                if (queryCache != null) {
+                    for (Command command : queryCache.values()) {
+                        database.getPlanCache().add(this, command);
+                    }
+                    queryCache = null;
+                }
                 cleanTempTables(true);
                 database.removeSession(this);
             } finally {
@@ -974,9 +1019,21 @@ public class Session extends SessionWithState {
 
     public void setCurrentSchema(Schema schema) {
         modificationId++;
+        clearQueryCache();
         this.currentSchemaName = schema.getName();
     }
 
+    /**
+     * Remove the cached commands, because the names in the statements would
+     * now be resolved differently. The plan cache uses the schema settings as
+     * part of the key, so the cached commands must match them.
+     */
+    private void clearQueryCache() {
+        if (queryCache != null) {
+            queryCache.clear();
+        }
+    }
+
     public String getCurrentSchemaName() {
         return currentSchemaName;
     }
@@ -1084,6 +1141,7 @@ public class Session extends SessionWithState {
 
     public void setSchemaSearchPath(String[] schemas) {
         modificationId++;
+        clearQueryCache();
         this.schemaSearchPath = schemas;
     }
 
@@ -1334,6 +1392,28 @@ public class Session extends SessionWithState {
         this.isRoot = isRoot;
     }
 
+    private String shuffleId;
+    private String[] shuffleNodes;
+
+    /**
+     * Set the shuffle join the next query of this session is a part of.
+     *
+     * @param id the id of the shuffle join, or null
+     * @param nodes the host addresses of the nodes that take part
+     */
+    public void setShuffle(String id, String[] nodes) {
+        shuffleId = id;
+        shuffleNodes = nodes;
+    }
+
+    public String getShuffleId() {
+        return shuffleId;
+    }
+
+    public String[] getShuffleNodes() {
+        return shuffleNodes;
+    }
+
     private String hostAndPort;
 
     public String getHostAndPort() {
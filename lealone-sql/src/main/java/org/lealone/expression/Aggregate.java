@@ -13,6 +13,7 @@ import java.util.HashMap;
 
 import org.lealone.api.ErrorCode;
 import org.lealone.command.dml.Select;
+import org.lealone.command.dml.SelectGroup;
 import org.lealone.command.dml.SelectOrderBy;
 import org.lealone.dbobject.index.Cursor;
 import org.lealone.dbobject.index.Index;
@@ -22,6 +23,8 @@ import org.lealone.dbobject.table.Table;
 import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Session;
 import org.lealone.message.DbException;
+import org.lealone.result.ColumnVector;
+import org.lealone.result.RowBatch;
 import org.lealone.result.SearchRow;
 import org.lealone.result.SortOrder;
 import org.lealone.util.New;
@@ -117,6 +120,28 @@ public class Aggregate extends Expression {
      */
     static final int HISTOGRAM = 14;
 
+    /**
+     * The aggregate type for APPROX_COUNT_DISTINCT(expression).
+     */
+    static final int APPROX_COUNT_DISTINCT = 15;
+
+    /**
+     * The aggregate type for APPROX_PERCENTILE(expression, fraction).
+     */
+    public static final int APPROX_PERCENTILE = 16;
+
+    /**
+     * The aggregate type for APPROX_COUNT_DISTINCT_STATE(expression), the
+     * partial sketch of APPROX_COUNT_DISTINCT that is sent by each node.
+     */
+    static final int APPROX_COUNT_DISTINCT_STATE = 17;
+
+    /**
+     * The aggregate type for APPROX_PERCENTILE_STATE(expression), the partial
+     * sketch of APPROX_PERCENTILE that is sent by each node.
+     */
+    static final int APPROX_PERCENTILE_STATE = 18;
+
     private static final HashMap<String, Integer> AGGREGATES = New.hashMap();
 
     private final int type;
@@ -125,12 +150,14 @@ public class Aggregate extends Expression {
 
     private Expression on;
     private Expression separator;
+    private Expression fraction;
     private ArrayList<SelectOrderBy> orderList;
     private SortOrder sort;
     private int dataType, scale;
     private long precision;
     private int displaySize;
     private int lastGroupRowId;
+    private int groupSlot = -1;
 
     /**
      * Create a new aggregate object.
@@ -171,6 +198,10 @@ public class Aggregate extends Expression {
         addAggregate("EVERY", BOOL_AND);
         addAggregate("SELECTIVITY", SELECTIVITY);
         addAggregate("HISTOGRAM", HISTOGRAM);
+        addAggregate("APPROX_COUNT_DISTINCT", APPROX_COUNT_DISTINCT);
+        addAggregate("APPROX_PERCENTILE", APPROX_PERCENTILE);
+        addAggregate("APPROX_COUNT_DISTINCT_STATE", APPROX_COUNT_DISTINCT_STATE);
+        addAggregate("APPROX_PERCENTILE_STATE", APPROX_PERCENTILE_STATE);
     }
 
     private static void addAggregate(String name, int type) {
@@ -207,6 +238,24 @@ public class Aggregate extends Expression {
         this.separator = separator;
     }
 
+    /**
+     * Set the fraction for APPROX_PERCENTILE.
+     *
+     * @param fraction the fraction expression
+     */
+    public void setFraction(Expression fraction) {
+        this.fraction = fraction;
+    }
+
+    private double getFraction(Session session) {
+        Value v = fraction.getValue(session);
+        double f = v == ValueNull.INSTANCE ? -1 : v.getDouble();
+        if (!(f >= 0 && f <= 1)) {
+            throw DbException.getInvalidValueException("fraction", v.getString());
+        }
+        return f;
+    }
+
     private SortOrder initOrder(Session session) {
         int size = orderList.size();
         int[] index = new int[size];
@@ -220,12 +269,19 @@ public class Aggregate extends Expression {
         return new SortOrder(session.getDatabase(), index, sortType);
     }
 
+    private int getGroupSlot() {
+        if (groupSlot < 0) {
+            groupSlot = select.addGroupSlot();
+        }
+        return groupSlot;
+    }
+
     public void updateAggregate(Session session) {
         // TODO aggregates: check nested MIN(MAX(ID)) and so on
         // if(on != null) {
         // on.updateAggregate();
         // }
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        SelectGroup group = select.getCurrentGroup();
         if (group == null) {
             // this is a different level (the enclosing query)
             return;
@@ -238,10 +294,10 @@ public class Aggregate extends Expression {
         }
         lastGroupRowId = groupRowId;
 
-        AggregateData data = (AggregateData) group.get(this);
+        AggregateData data = (AggregateData) group.get(groupSlot);
         if (data == null) {
             data = new AggregateData(type, dataType);
-            group.put(this, data);
+            group.set(getGroupSlot(), data);
         }
         Value v = on == null ? null : on.getValue(session);
         if (type == GROUP_CONCAT) {
@@ -262,8 +318,76 @@ public class Aggregate extends Expression {
         data.add(session.getDatabase(), distinct, v);
     }
 
+    /**
+     * Check if this aggregate can be updated with a batch of rows at once.
+     *
+     * @return true if it can
+     */
+    public boolean isBatchSupported() {
+        return type != GROUP_CONCAT;
+    }
+
+    /**
+     * Check if the partial results of this aggregate for several parts of a
+     * table can be merged into the result for the whole table.
+     *
+     * @return true if they can
+     */
+    public boolean isMergeSupported() {
+        if (distinct) {
+            return false;
+        }
+        switch (type) {
+        case COUNT_ALL:
+        case COUNT:
+        case SUM:
+        case MIN:
+        case MAX:
+        case AVG:
+        case APPROX_COUNT_DISTINCT:
+        case APPROX_PERCENTILE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Check if the partial results of this aggregate are sketches that need
+     * to be turned into the final value after they were merged.
+     *
+     * @return true if they are
+     */
+    public boolean isSketch() {
+        return type == APPROX_COUNT_DISTINCT || type == APPROX_PERCENTILE;
+    }
+
+    /**
+     * Update the aggregate of the current group with the selected rows of a
+     * batch.
+     *
+     * @param session the session
+     * @param batch the batch
+     * @param sel the positions of the selected rows
+     * @param selSize the number of selected rows
+     */
+    public void updateAggregate(Session session, RowBatch batch, int[] sel, int selSize) {
+        SelectGroup group = select.getCurrentGroup();
+        if (group == null) {
+            // this is a different level (the enclosing query)
+            return;
+        }
+        AggregateData data = (AggregateData) group.get(groupSlot);
+        if (data == null) {
+            data = new AggregateData(type, dataType);
+            group.set(getGroupSlot(), data);
+        }
+        ColumnVector v = on == null ? null : on.getValueVector(session, batch, sel, selSize);
+        data.add(session.getDatabase(), distinct, v, sel, selSize);
+    }
+
     public void mergeAggregate(Session session, Value v) {
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        SelectGroup group = select.getCurrentGroup();
         if (group == null) {
             // this is a different level (the enclosing query)
             return;
@@ -276,10 +400,10 @@ public class Aggregate extends Expression {
         }
         lastGroupRowId = groupRowId;
 
-        AggregateData data = (AggregateData) group.get(this);
+        AggregateData data = (AggregateData) group.get(groupSlot);
         if (data == null) {
             data = new AggregateData(type, dataType);
-            group.put(this, data);
+            group.set(getGroupSlot(), data);
         }
         if (type == GROUP_CONCAT) {
             if (v != ValueNull.INSTANCE) {
@@ -327,14 +451,17 @@ public class Aggregate extends Expression {
                 DbException.throwInternalError("type=" + type);
             }
         }
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        SelectGroup group = select.getCurrentGroup();
         if (group == null) {
             throw DbException.get(ErrorCode.INVALID_USE_OF_AGGREGATE_FUNCTION_1, getSQL());
         }
-        AggregateData data = (AggregateData) group.get(this);
+        AggregateData data = (AggregateData) group.get(groupSlot);
         if (data == null) {
             data = new AggregateData(type, dataType);
         }
+        if (type == APPROX_PERCENTILE) {
+            return data.getPercentile(getFraction(session));
+        }
         Value v = data.getValue(session.getDatabase(), distinct);
         if (type == GROUP_CONCAT) {
             ArrayList<Value> list = data.getList();
@@ -401,11 +528,11 @@ public class Aggregate extends Expression {
                 DbException.throwInternalError("type=" + type);
             }
         }
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        SelectGroup group = select.getCurrentGroup();
         if (group == null) {
             throw DbException.get(ErrorCode.INVALID_USE_OF_AGGREGATE_FUNCTION_1, getSQL());
         }
-        AggregateData data = (AggregateData) group.get(this);
+        AggregateData data = (AggregateData) group.get(groupSlot);
         if (data == null) {
             data = new AggregateData(type, dataType);
         }
@@ -460,8 +587,10 @@ public class Aggregate extends Expression {
 
         case Aggregate.AVG: {
             int i = calculator.getIndex();
-            double avg = calculator.getValue(i + 1).getDouble() / calculator.getValue(i).getDouble();
-            calculator.addResultValue(ValueDouble.get(avg));
+            long count = calculator.getValue(i).getLong();
+            Value sum = calculator.getValue(i + 1);
+            // divide the same way as when the rows are aggregated directly
+            calculator.addResultValue(sum == ValueNull.INSTANCE ? sum : AggregateData.divide(sum, count));
             calculator.addIndex(2);
             break;
         }
@@ -505,9 +634,23 @@ public class Aggregate extends Expression {
             calculator.addIndex(3);
             break;
         }
+        case Aggregate.APPROX_COUNT_DISTINCT: {
+            int i = calculator.getIndex();
+            calculator.addResultValue(AggregateData.getCountDistinct(calculator.getValue(i)));
+            calculator.addIndex();
+            break;
+        }
+        case Aggregate.APPROX_PERCENTILE: {
+            int i = calculator.getIndex();
+            calculator.addResultValue(AggregateData.getPercentile(calculator.getValue(i), getFraction(select.getSession())));
+            calculator.addIndex();
+            break;
+        }
         case Aggregate.HISTOGRAM:
         case Aggregate.SELECTIVITY:
         case Aggregate.GROUP_CONCAT:
+        case Aggregate.APPROX_COUNT_DISTINCT_STATE:
+        case Aggregate.APPROX_PERCENTILE_STATE:
             break;
         default:
             DbException.throwInternalError("type=" + type);
@@ -530,6 +673,9 @@ public class Aggregate extends Expression {
         if (separator != null) {
             separator.mapColumns(resolver, level);
         }
+        if (fraction != null) {
+            fraction.mapColumns(resolver, level);
+        }
     }
 
     public Expression optimize(Session session) {
@@ -549,6 +695,12 @@ public class Aggregate extends Expression {
         if (separator != null) {
             separator = separator.optimize(session);
         }
+        if (fraction != null) {
+            fraction = fraction.optimize(session);
+            if (!fraction.isConstant()) {
+                throw DbException.getInvalidValueException("fraction", fraction.getSQL());
+            }
+        }
         switch (type) {
         case GROUP_CONCAT:
             dataType = Value.STRING;
@@ -607,6 +759,27 @@ public class Aggregate extends Expression {
             displaySize = ValueBoolean.DISPLAY_SIZE;
             scale = 0;
             break;
+        case APPROX_COUNT_DISTINCT:
+            dataType = Value.LONG;
+            scale = 0;
+            precision = ValueLong.PRECISION;
+            displaySize = ValueLong.DISPLAY_SIZE;
+            break;
+        case APPROX_PERCENTILE:
+            if (!DataType.supportsAdd(dataType)) {
+                throw DbException.get(ErrorCode.SUM_OR_AVG_ON_WRONG_DATATYPE_1, getSQL());
+            }
+            dataType = Value.DOUBLE;
+            precision = ValueDouble.PRECISION;
+            displaySize = ValueDouble.DISPLAY_SIZE;
+            scale = 0;
+            break;
+        case APPROX_COUNT_DISTINCT_STATE:
+        case APPROX_PERCENTILE_STATE:
+            dataType = Value.BYTES;
+            scale = 0;
+            precision = displaySize = Integer.MAX_VALUE;
+            break;
         default:
             DbException.throwInternalError("type=" + type);
         }
@@ -625,6 +798,9 @@ public class Aggregate extends Expression {
         if (separator != null) {
             separator.setEvaluatable(tableFilter, b);
         }
+        if (fraction != null) {
+            fraction.setEvaluatable(tableFilter, b);
+        }
     }
 
     public int getScale() {
@@ -723,6 +899,23 @@ public class Aggregate extends Expression {
         case BOOL_OR:
             text = "BOOL_OR";
             break;
+        case APPROX_COUNT_DISTINCT:
+            if (isDistributed) {
+                return "APPROX_COUNT_DISTINCT_STATE(" + on.getSQL(isDistributed) + ")";
+            }
+            text = "APPROX_COUNT_DISTINCT";
+            break;
+        case APPROX_PERCENTILE:
+            if (isDistributed) {
+                return "APPROX_PERCENTILE_STATE(" + on.getSQL(isDistributed) + ")";
+            }
+            return "APPROX_PERCENTILE(" + on.getSQL(isDistributed) + ", " + fraction.getSQL(isDistributed) + ")";
+        case APPROX_COUNT_DISTINCT_STATE:
+            text = "APPROX_COUNT_DISTINCT_STATE";
+            break;
+        case APPROX_PERCENTILE_STATE:
+            text = "APPROX_PERCENTILE_STATE";
+            break;
         default:
             throw DbException.throwInternalError("type=" + type);
         }
@@ -780,6 +973,9 @@ public class Aggregate extends Expression {
         if (separator != null && !separator.isEverything(visitor)) {
             return false;
         }
+        if (fraction != null && !fraction.isEverything(visitor)) {
+            return false;
+        }
         if (orderList != null) {
             for (int i = 0, size = orderList.size(); i < size; i++) {
                 SelectOrderBy o = orderList.get(i);
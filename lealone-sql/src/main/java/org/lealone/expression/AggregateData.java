@@ -13,14 +13,18 @@ import java.util.Comparator;
 import org.lealone.engine.Constants;
 import org.lealone.engine.Database;
 import org.lealone.message.DbException;
+import org.lealone.result.ColumnVector;
+import org.lealone.util.HyperLogLog;
 import org.lealone.util.IntIntHashMap;
 import org.lealone.util.New;
+import org.lealone.util.TDigest;
 import org.lealone.util.ValueHashMap;
 import org.lealone.value.CompareMode;
 import org.lealone.value.DataType;
 import org.lealone.value.Value;
 import org.lealone.value.ValueArray;
 import org.lealone.value.ValueBoolean;
+import org.lealone.value.ValueBytes;
 import org.lealone.value.ValueDouble;
 import org.lealone.value.ValueInt;
 import org.lealone.value.ValueLong;
@@ -38,6 +42,8 @@ class AggregateData {
     private Value value;
     private double m2, mean;
     private ArrayList<Value> list;
+    private HyperLogLog hyperLogLog;
+    private TDigest digest;
 
     AggregateData(int aggregateType, int dataType) {
         this.aggregateType = aggregateType;
@@ -88,6 +94,9 @@ class AggregateData {
         if (v == ValueNull.INSTANCE) {
             return;
         }
+        if (addToSketch(v)) {
+            return;
+        }
         count++;
         if (distinct) {
             if (distinctValues == null) {
@@ -172,6 +181,136 @@ class AggregateData {
         }
     }
 
+    private boolean addToSketch(Value v) {
+        switch (aggregateType) {
+        case Aggregate.APPROX_COUNT_DISTINCT:
+        case Aggregate.APPROX_COUNT_DISTINCT_STATE:
+            if (hyperLogLog == null) {
+                hyperLogLog = new HyperLogLog();
+            }
+            hyperLogLog.add(hash(v));
+            return true;
+        case Aggregate.APPROX_PERCENTILE:
+        case Aggregate.APPROX_PERCENTILE_STATE:
+            if (digest == null) {
+                digest = new TDigest();
+            }
+            digest.add(v.getDouble());
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Get a 64 bit hash of a value for the distinct count sketch. Equal
+     * numbers of the same type and equal strings get the same hash.
+     *
+     * @param v the value
+     * @return the hash
+     */
+    private static long hash(Value v) {
+        long h;
+        switch (v.getType()) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            h = v.getLong();
+            break;
+        case Value.DOUBLE:
+        case Value.FLOAT:
+            h = Double.doubleToLongBits(v.getDouble());
+            break;
+        case Value.STRING:
+        case Value.STRING_IGNORECASE:
+        case Value.STRING_FIXED: {
+            String s = v.getString();
+            if (v.getType() == Value.STRING_IGNORECASE) {
+                s = s.toUpperCase();
+            }
+            h = s.length();
+            for (int i = 0, len = s.length(); i < len; i++) {
+                h = 31 * h + s.charAt(i);
+            }
+            break;
+        }
+        default:
+            h = v.hashCode();
+        }
+        return HyperLogLog.hash(h);
+    }
+
+    /**
+     * Merge a partial sketch that was sent by a node.
+     *
+     * @param v the serialized sketch
+     */
+    private void mergeSketch(Value v) {
+        byte[] bytes = v.getBytesNoCopy();
+        if (aggregateType == Aggregate.APPROX_COUNT_DISTINCT_STATE) {
+            if (hyperLogLog == null) {
+                hyperLogLog = HyperLogLog.fromBytes(bytes);
+            } else {
+                hyperLogLog.merge(HyperLogLog.fromBytes(bytes));
+            }
+        } else {
+            if (digest == null) {
+                digest = TDigest.fromBytes(bytes);
+            } else {
+                digest.merge(TDigest.fromBytes(bytes));
+            }
+        }
+    }
+
+    private Value getSketch() {
+        if (aggregateType == Aggregate.APPROX_COUNT_DISTINCT_STATE) {
+            return ValueBytes.getNoCopy((hyperLogLog == null ? new HyperLogLog() : hyperLogLog).toBytes());
+        }
+        return ValueBytes.getNoCopy((digest == null ? new TDigest() : digest).toBytes());
+    }
+
+    /**
+     * Get the estimated percentile of the added values.
+     *
+     * @param fraction the fraction, between 0 and 1
+     * @return the value, or NULL if no values were added
+     */
+    Value getPercentile(double fraction) {
+        if (digest == null) {
+            return ValueNull.INSTANCE;
+        }
+        return ValueDouble.get(digest.quantile(fraction));
+    }
+
+    /**
+     * Get the estimated number of distinct values from a merged sketch.
+     *
+     * @param sketch the serialized sketch
+     * @return the estimate
+     */
+    static Value getCountDistinct(Value sketch) {
+        if (sketch == ValueNull.INSTANCE) {
+            return ValueLong.get(0);
+        }
+        return ValueLong.get(HyperLogLog.fromBytes(sketch.getBytesNoCopy()).estimate());
+    }
+
+    /**
+     * Get the estimated percentile from a merged sketch.
+     *
+     * @param sketch the serialized sketch
+     * @param fraction the fraction, between 0 and 1
+     * @return the value, or NULL if no values were added
+     */
+    static Value getPercentile(Value sketch, double fraction) {
+        if (sketch == ValueNull.INSTANCE) {
+            return ValueNull.INSTANCE;
+        }
+        TDigest d = TDigest.fromBytes(sketch.getBytesNoCopy());
+        return d.getCount() == 0 ? ValueNull.INSTANCE : ValueDouble.get(d.quantile(fraction));
+    }
+
     void merge(Database database, boolean distinct, Value v) {
         if (aggregateType == Aggregate.COUNT || aggregateType == Aggregate.COUNT_ALL) {
             count += v.getLong();
@@ -195,6 +334,19 @@ class AggregateData {
         if (v == ValueNull.INSTANCE) {
             return;
         }
+        switch (aggregateType) {
+        case Aggregate.APPROX_COUNT_DISTINCT_STATE:
+        case Aggregate.APPROX_PERCENTILE_STATE:
+            mergeSketch(v);
+            return;
+        case Aggregate.APPROX_COUNT_DISTINCT:
+        case Aggregate.APPROX_PERCENTILE:
+            // the sketches were already merged and calculated,
+            // there is only one value per group
+            value = v;
+            return;
+        default:
+        }
         count++;
         if (distinct) {
             if (distinctValues == null) {
@@ -279,6 +431,130 @@ class AggregateData {
         return list;
     }
 
+    /**
+     * Add the values of the selected rows of a batch to this aggregate. Sums,
+     * averages, minimum and maximum of numbers are calculated without
+     * creating a value for each row.
+     *
+     * @param database the database
+     * @param distinct if the calculation should be distinct
+     * @param vector the values, or null for COUNT(*)
+     * @param sel the positions of the selected rows
+     * @param selSize the number of selected rows
+     */
+    void add(Database database, boolean distinct, ColumnVector vector, int[] sel, int selSize) {
+        if (aggregateType == Aggregate.COUNT_ALL) {
+            count += selSize;
+            return;
+        }
+        int storage = vector.getStorage();
+        if (distinct || storage == ColumnVector.OBJECTS) {
+            addValues(database, distinct, vector, sel, 0, selSize);
+            return;
+        }
+        switch (aggregateType) {
+        case Aggregate.COUNT:
+            for (int i = 0; i < selSize; i++) {
+                if (!vector.isNull(sel[i])) {
+                    count++;
+                }
+            }
+            return;
+        case Aggregate.SUM:
+        case Aggregate.AVG: {
+            int type = aggregateType == Aggregate.SUM ? dataType : DataType.getAddProofType(dataType);
+            if (type == Value.LONG && storage == ColumnVector.LONGS) {
+                addLongs(database, vector, sel, selSize);
+                return;
+            } else if (type == Value.DOUBLE && storage == ColumnVector.DOUBLES) {
+                boolean found = value != null;
+                double sum = found ? value.getDouble() : 0;
+                for (int i = 0; i < selSize; i++) {
+                    int row = sel[i];
+                    if (!vector.isNull(row)) {
+                        // add in the same order as one value at a time
+                        sum = found ? sum + vector.getDouble(row) : vector.getDouble(row);
+                        count++;
+                        found = true;
+                    }
+                }
+                if (found) {
+                    value = ValueDouble.get(sum);
+                }
+                return;
+            }
+            break;
+        }
+        case Aggregate.MIN:
+        case Aggregate.MAX: {
+            boolean min = aggregateType == Aggregate.MIN;
+            int best = -1;
+            for (int i = 0; i < selSize; i++) {
+                int row = sel[i];
+                if (vector.isNull(row)) {
+                    continue;
+                }
+                count++;
+                if (best < 0) {
+                    best = row;
+                } else if (storage == ColumnVector.LONGS) {
+                    long x = vector.getLong(row), b = vector.getLong(best);
+                    if (min ? x < b : x > b) {
+                        best = row;
+                    }
+                } else {
+                    int c = Double.compare(vector.getDouble(row), vector.getDouble(best));
+                    if (min ? c < 0 : c > 0) {
+                        best = row;
+                    }
+                }
+            }
+            if (best >= 0) {
+                Value v = vector.getValue(best);
+                int c = value == null ? 0 : database.compare(v, value);
+                if (value == null || (min ? c < 0 : c > 0)) {
+                    value = v;
+                }
+            }
+            return;
+        }
+        default:
+        }
+        addValues(database, distinct, vector, sel, 0, selSize);
+    }
+
+    private void addLongs(Database database, ColumnVector vector, int[] sel, int selSize) {
+        boolean found = value != null;
+        long sum = found ? value.getLong() : 0;
+        for (int i = 0; i < selSize; i++) {
+            int row = sel[i];
+            if (vector.isNull(row)) {
+                continue;
+            }
+            long x = vector.getLong(row);
+            long s = sum + x;
+            if (((sum ^ s) & (x ^ s)) < 0) {
+                // overflow, let the values report it
+                value = ValueLong.get(sum);
+                addValues(database, false, vector, sel, i, selSize);
+                return;
+            }
+            sum = s;
+            count++;
+            found = true;
+        }
+        if (found) {
+            value = ValueLong.get(sum);
+        }
+    }
+
+    private void addValues(Database database, boolean distinct, ColumnVector vector, int[] sel, int from,
+            int selSize) {
+        for (int i = from; i < selSize; i++) {
+            add(database, distinct, vector.getValue(sel[i]));
+        }
+    }
+
     /**
      * Get the aggregate result.
      *
@@ -324,6 +600,12 @@ class AggregateData {
             break;
         case Aggregate.GROUP_CONCAT:
             return null;
+        case Aggregate.APPROX_COUNT_DISTINCT:
+            v = ValueLong.get(hyperLogLog == null ? 0 : hyperLogLog.estimate());
+            break;
+        case Aggregate.APPROX_COUNT_DISTINCT_STATE:
+        case Aggregate.APPROX_PERCENTILE_STATE:
+            return getSketch();
         case Aggregate.STDDEV_POP: {
             if (count < 1) {
                 return ValueNull.INSTANCE;
@@ -399,7 +681,12 @@ class AggregateData {
         case Aggregate.STDDEV_SAMP:
         case Aggregate.VAR_POP:
         case Aggregate.VAR_SAMP:
+        case Aggregate.APPROX_COUNT_DISTINCT:
+        case Aggregate.APPROX_PERCENTILE:
             return value == null ? ValueNull.INSTANCE : value;
+        case Aggregate.APPROX_COUNT_DISTINCT_STATE:
+        case Aggregate.APPROX_PERCENTILE_STATE:
+            return getSketch();
 
         case Aggregate.SELECTIVITY:
 
@@ -434,7 +721,7 @@ class AggregateData {
         return v == null ? ValueNull.INSTANCE : v.convertTo(dataType);
     }
 
-    private static Value divide(Value a, long by) {
+    static Value divide(Value a, long by) {
         if (by == 0) {
             return ValueNull.INSTANCE;
         }
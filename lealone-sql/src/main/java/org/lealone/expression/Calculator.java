@@ -36,7 +36,7 @@ public class Calculator {
     public Calculator(Value[] currentRow, int index) {
         this.currentRow = currentRow;
         this.index = index;
-        this.result = new ArrayList<Value>(currentRow.length - 2);
+        this.result = new ArrayList<Value>(currentRow.length);
     }
 
     public int getIndex() {
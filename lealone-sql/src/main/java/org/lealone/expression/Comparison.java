@@ -15,6 +15,8 @@ import org.lealone.engine.Database;
 import org.lealone.engine.Session;
 import org.lealone.engine.SysProperties;
 import org.lealone.message.DbException;
+import org.lealone.result.ColumnVector;
+import org.lealone.result.RowBatch;
 import org.lealone.util.New;
 import org.lealone.value.Value;
 import org.lealone.value.ValueBoolean;
@@ -242,6 +244,134 @@ public class Comparison extends Condition {
         return ValueBoolean.get(result);
     }
 
+    public int filter(Session session, RowBatch batch, int[] sel, int selSize) {
+        if (right == null) {
+            ColumnVector l = left.getValueVector(session, batch, sel, selSize);
+            boolean isNull = compareType == IS_NULL;
+            int n = 0;
+            for (int i = 0; i < selSize; i++) {
+                int row = sel[i];
+                if (l.isNull(row) == isNull) {
+                    sel[n++] = row;
+                }
+            }
+            return n;
+        }
+        int dataType = Value.getHigherOrder(left.getType(), right.getType());
+        boolean scalar = right.isConstant() || right instanceof Parameter;
+        if ((compareType & NULL_SAFE) != 0 || !isVectorType(left.getType(), dataType)
+                || !scalar && !isVectorType(right.getType(), dataType)) {
+            return super.filter(session, batch, sel, selSize);
+        }
+        boolean smaller, equal, bigger;
+        switch (compareType) {
+        case EQUAL:
+            smaller = false;
+            equal = true;
+            bigger = false;
+            break;
+        case NOT_EQUAL:
+            smaller = true;
+            equal = false;
+            bigger = true;
+            break;
+        case BIGGER_EQUAL:
+            smaller = false;
+            equal = true;
+            bigger = true;
+            break;
+        case BIGGER:
+            smaller = false;
+            equal = false;
+            bigger = true;
+            break;
+        case SMALLER_EQUAL:
+            smaller = true;
+            equal = true;
+            bigger = false;
+            break;
+        case SMALLER:
+            smaller = true;
+            equal = false;
+            bigger = false;
+            break;
+        default:
+            throw DbException.throwInternalError("type=" + compareType);
+        }
+        boolean longs = ColumnVector.getStorage(dataType) == ColumnVector.LONGS;
+        ColumnVector l = left.getValueVector(session, batch, sel, selSize);
+        int n = 0;
+        if (scalar) {
+            Value v = right.getValue(session);
+            if (v == ValueNull.INSTANCE) {
+                return 0;
+            } else if (v.getType() != dataType && !isVectorType(v.getType(), dataType)) {
+                // the conversion may fail, but only if a row is not NULL
+                return super.filter(session, batch, sel, selSize);
+            }
+            if (longs) {
+                long r = ColumnVector.toLong(v, dataType);
+                for (int i = 0; i < selSize; i++) {
+                    int row = sel[i];
+                    if (!l.isNull(row)) {
+                        long x = l.getLong(row);
+                        if (x < r ? smaller : x == r ? equal : bigger) {
+                            sel[n++] = row;
+                        }
+                    }
+                }
+            } else {
+                double r = ColumnVector.toDouble(v, dataType);
+                for (int i = 0; i < selSize; i++) {
+                    int row = sel[i];
+                    if (!l.isNull(row)) {
+                        int c = Double.compare(l.getDouble(row), r);
+                        if (c < 0 ? smaller : c == 0 ? equal : bigger) {
+                            sel[n++] = row;
+                        }
+                    }
+                }
+            }
+            return n;
+        }
+        ColumnVector r = right.getValueVector(session, batch, sel, selSize);
+        for (int i = 0; i < selSize; i++) {
+            int row = sel[i];
+            if (!l.isNull(row) && !r.isNull(row)) {
+                int c;
+                if (longs) {
+                    long x = l.getLong(row), y = r.getLong(row);
+                    c = x < y ? -1 : x == y ? 0 : 1;
+                } else {
+                    c = Double.compare(l.getDouble(row), r.getDouble(row));
+                }
+                if (c < 0 ? smaller : c == 0 ? equal : bigger) {
+                    sel[n++] = row;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Check if values of the given type can be compared as longs or doubles
+     * after they are converted to the data type of the comparison.
+     *
+     * @param type the type of the values
+     * @param dataType the data type of the comparison
+     * @return true if they can
+     */
+    private static boolean isVectorType(int type, int dataType) {
+        int storage = ColumnVector.getStorage(type);
+        int target = ColumnVector.getStorage(dataType);
+        if (storage == ColumnVector.OBJECTS || target == ColumnVector.OBJECTS) {
+            return false;
+        } else if ((type == Value.DATE) != (dataType == Value.DATE)) {
+            return false;
+        }
+        return storage == target || target == ColumnVector.DOUBLES;
+    }
+
     /**
      * Compare two values, given the values are not NULL.
      *
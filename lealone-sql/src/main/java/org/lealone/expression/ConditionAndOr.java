@@ -11,6 +11,7 @@ import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Session;
 import org.lealone.engine.SysProperties;
 import org.lealone.message.DbException;
+import org.lealone.result.RowBatch;
 import org.lealone.value.Value;
 import org.lealone.value.ValueBoolean;
 import org.lealone.value.ValueNull;
@@ -120,6 +121,44 @@ public class ConditionAndOr extends Condition {
         }
     }
 
+    public int filter(Session session, RowBatch batch, int[] sel, int selSize) {
+        switch (andOrType) {
+        case AND:
+            selSize = left.filter(session, batch, sel, selSize);
+            return selSize == 0 ? 0 : right.filter(session, batch, sel, selSize);
+        case OR: {
+            // the right condition is only checked for the rows the left one
+            // removed, then both parts are merged in ascending order
+            int[] l = new int[selSize];
+            System.arraycopy(sel, 0, l, 0, selSize);
+            int lSize = left.filter(session, batch, l, selSize);
+            int[] r = new int[selSize - lSize];
+            int rSize = 0;
+            for (int i = 0, j = 0; i < selSize; i++) {
+                if (j < lSize && l[j] == sel[i]) {
+                    j++;
+                } else {
+                    r[rSize++] = sel[i];
+                }
+            }
+            if (rSize > 0) {
+                rSize = right.filter(session, batch, r, rSize);
+            }
+            int i = 0, j = 0, n = 0;
+            while (i < lSize || j < rSize) {
+                if (j >= rSize || i < lSize && l[i] < r[j]) {
+                    sel[n++] = l[i++];
+                } else {
+                    sel[n++] = r[j++];
+                }
+            }
+            return n;
+        }
+        default:
+            throw DbException.throwInternalError("type=" + andOrType);
+        }
+    }
+
     public Expression optimize(Session session) {
         // NULL handling: see wikipedia,
         // http://www-cs-students.stanford.edu/~wlam/compsci/sqlnulls
@@ -261,6 +300,15 @@ public class ConditionAndOr extends Condition {
         return left.getCost() + right.getCost();
     }
 
+    /**
+     * Get the type of this condition.
+     *
+     * @return AND or OR
+     */
+    public int getAndOrType() {
+        return andOrType;
+    }
+
     /**
      * Get the left or the right sub-expression of this condition.
      *
@@ -16,6 +16,8 @@ import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Database;
 import org.lealone.engine.Session;
 import org.lealone.message.DbException;
+import org.lealone.result.ColumnVector;
+import org.lealone.result.RowBatch;
 import org.lealone.util.StringUtils;
 import org.lealone.value.DataType;
 import org.lealone.value.Value;
@@ -27,6 +29,7 @@ import org.lealone.value.ValueArray;
 public abstract class Expression {
 
     private boolean addedToFilter;
+    private ColumnVector vector;
 
     /**
      * Return the resulting value for the current row.
@@ -185,6 +188,66 @@ public abstract class Expression {
         return getValue(session).getBoolean();
     }
 
+    /**
+     * Get the values of this expression for the selected rows of a batch. By
+     * default the expression is evaluated one row at a time.
+     *
+     * @param session the session
+     * @param batch the batch
+     * @param sel the positions of the selected rows
+     * @param selSize the number of selected rows
+     * @return the values, at the positions of the selected rows
+     */
+    public ColumnVector getValueVector(Session session, RowBatch batch, int[] sel, int selSize) {
+        ColumnVector vector = getVector(getType());
+        for (int i = 0; i < selSize; i++) {
+            int row = sel[i];
+            batch.setCurrentRow(row);
+            vector.setValue(row, getValue(session));
+        }
+        return vector;
+    }
+
+    /**
+     * Get the vector that receives the values of this expression for a batch.
+     * The same vector is returned for the next batches, so the values are only
+     * valid until this expression is evaluated again.
+     *
+     * @param type the value type
+     * @return the vector
+     */
+    protected ColumnVector getVector(int type) {
+        ColumnVector v = vector;
+        if (v == null || v.getType() != type) {
+            v = new ColumnVector(type, RowBatch.SIZE);
+            vector = v;
+        }
+        return v;
+    }
+
+    /**
+     * Remove the rows of a batch for which this condition is not true. By
+     * default the condition is evaluated one row at a time.
+     *
+     * @param session the session
+     * @param batch the batch
+     * @param sel the positions of the selected rows, in ascending order; the
+     *            remaining rows are moved to the start of the array
+     * @param selSize the number of selected rows
+     * @return the number of remaining rows
+     */
+    public int filter(Session session, RowBatch batch, int[] sel, int selSize) {
+        int n = 0;
+        for (int i = 0; i < selSize; i++) {
+            int row = sel[i];
+            batch.setCurrentRow(row);
+            if (Boolean.TRUE.equals(getBooleanValue(session))) {
+                sel[n++] = row;
+            }
+        }
+        return n;
+    }
+
     /**
      * Create index conditions if possible and attach them to the table filter.
      *
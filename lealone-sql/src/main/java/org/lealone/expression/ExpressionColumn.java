@@ -6,11 +6,10 @@
  */
 package org.lealone.expression;
 
-import java.util.HashMap;
-
 import org.lealone.api.ErrorCode;
 import org.lealone.command.Parser;
 import org.lealone.command.dml.Select;
+import org.lealone.command.dml.SelectGroup;
 import org.lealone.command.dml.SelectListColumnResolver;
 import org.lealone.dbobject.Constant;
 import org.lealone.dbobject.Schema;
@@ -22,6 +21,8 @@ import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Database;
 import org.lealone.engine.Session;
 import org.lealone.message.DbException;
+import org.lealone.result.ColumnVector;
+import org.lealone.result.RowBatch;
 import org.lealone.value.Value;
 import org.lealone.value.ValueBoolean;
 
@@ -39,6 +40,7 @@ public class ExpressionColumn extends Expression {
     private int queryLevel;
     private Column column;
     private boolean evaluatable;
+    private int groupSlot = -1;
 
     public ExpressionColumn(Database database, Column column) {
         this.database = database;
@@ -229,14 +231,17 @@ public class ExpressionColumn extends Expression {
         if (select == null) {
             throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, getSQL());
         }
-        HashMap<Expression, Object> values = select.getCurrentGroup();
+        SelectGroup values = select.getCurrentGroup();
         if (values == null) {
             // this is a different level (the enclosing query)
             return;
         }
-        Value v = (Value) values.get(this);
+        Value v = (Value) values.get(groupSlot);
         if (v == null) {
-            values.put(this, now);
+            if (groupSlot < 0) {
+                groupSlot = select.addGroupSlot();
+            }
+            values.set(groupSlot, now);
         } else {
             if (!database.areEqual(now, v)) {
                 throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, getSQL());
@@ -247,9 +252,9 @@ public class ExpressionColumn extends Expression {
     public Value getValue(Session session) {
         Select select = columnResolver.getSelect();
         if (select != null) {
-            HashMap<Expression, Object> values = select.getCurrentGroup();
+            SelectGroup values = select.getCurrentGroup();
             if (values != null) {
-                Value v = (Value) values.get(this);
+                Value v = (Value) values.get(groupSlot);
                 if (v != null) {
                     return v;
                 }
@@ -263,6 +268,17 @@ public class ExpressionColumn extends Expression {
         return value;
     }
 
+    public ColumnVector getValueVector(Session session, RowBatch batch, int[] sel, int selSize) {
+        if (columnResolver == batch.getFilter() && column.getColumnId() >= 0) {
+            Select select = columnResolver.getSelect();
+            SelectGroup values = select == null ? null : select.getCurrentGroup();
+            if (values == null || values.get(groupSlot) == null) {
+                return batch.getColumn(column);
+            }
+        }
+        return super.getValueVector(session, batch, sel, selSize);
+    }
+
     public int getType() {
         return column.getType();
     }
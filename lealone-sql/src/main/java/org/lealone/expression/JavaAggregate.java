@@ -8,12 +8,12 @@ package org.lealone.expression;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.HashMap;
 
 import org.lealone.api.AggregateFunction;
 import org.lealone.api.ErrorCode;
 import org.lealone.command.Parser;
 import org.lealone.command.dml.Select;
+import org.lealone.command.dml.SelectGroup;
 import org.lealone.dbobject.UserAggregate;
 import org.lealone.dbobject.table.ColumnResolver;
 import org.lealone.dbobject.table.TableFilter;
@@ -36,6 +36,7 @@ public class JavaAggregate extends Expression {
     private int dataType;
     private Connection userConnection;
     private int lastGroupRowId;
+    private int groupSlot = -1;
 
     public JavaAggregate(UserAggregate userAggregate, Expression[] args, Select select) {
         this.userAggregate = userAggregate;
@@ -138,12 +139,12 @@ public class JavaAggregate extends Expression {
     }
 
     public Value getValue(Session session) {
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        SelectGroup group = select.getCurrentGroup();
         if (group == null) {
             throw DbException.get(ErrorCode.INVALID_USE_OF_AGGREGATE_FUNCTION_1, getSQL());
         }
         try {
-            AggregateFunction agg = (AggregateFunction) group.get(this);
+            AggregateFunction agg = (AggregateFunction) group.get(groupSlot);
             if (agg == null) {
                 agg = getInstance();
             }
@@ -157,8 +158,15 @@ public class JavaAggregate extends Expression {
         }
     }
 
+    private int getGroupSlot() {
+        if (groupSlot < 0) {
+            groupSlot = select.addGroupSlot();
+        }
+        return groupSlot;
+    }
+
     public void updateAggregate(Session session) {
-        HashMap<Expression, Object> group = select.getCurrentGroup();
+        SelectGroup group = select.getCurrentGroup();
         if (group == null) {
             // this is a different level (the enclosing query)
             return;
@@ -171,11 +179,11 @@ public class JavaAggregate extends Expression {
         }
         lastGroupRowId = groupRowId;
 
-        AggregateFunction agg = (AggregateFunction) group.get(this);
+        AggregateFunction agg = (AggregateFunction) group.get(groupSlot);
         try {
             if (agg == null) {
                 agg = getInstance();
-                group.put(this, agg);
+                group.set(getGroupSlot(), agg);
             }
             Object[] argValues = new Object[args.length];
             Object arg = null;
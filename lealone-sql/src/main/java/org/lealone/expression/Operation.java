@@ -6,14 +6,19 @@
  */
 package org.lealone.expression;
 
+import java.math.BigDecimal;
+
 import org.lealone.dbobject.table.ColumnResolver;
 import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Mode;
 import org.lealone.engine.Session;
 import org.lealone.message.DbException;
+import org.lealone.result.ColumnVector;
+import org.lealone.result.RowBatch;
 import org.lealone.util.MathUtils;
 import org.lealone.value.DataType;
 import org.lealone.value.Value;
+import org.lealone.value.ValueDecimal;
 import org.lealone.value.ValueInt;
 import org.lealone.value.ValueNull;
 import org.lealone.value.ValueString;
@@ -115,6 +120,10 @@ public class Operation extends Expression {
                 r = r.convertTo(dataType);
             }
         }
+        return getValue(session, l, r);
+    }
+
+    private Value getValue(Session session, Value l, Value r) {
         switch (opType) {
         case NEGATE:
             return l == ValueNull.INSTANCE ? l : l.negate();
@@ -166,6 +175,108 @@ public class Operation extends Expression {
         }
     }
 
+    public ColumnVector getValueVector(Session session, RowBatch batch, int[] sel, int selSize) {
+        ColumnVector l = left.getValueVector(session, batch, sel, selSize);
+        ColumnVector r = right == null ? null : right.getValueVector(session, batch, sel, selSize);
+        ColumnVector result = getVector(dataType);
+        boolean longs = isLongType(l.getType()) && (r == null || isLongType(r.getType()));
+        for (int i = 0; i < selSize; i++) {
+            int row = sel[i];
+            if (longs && setLong(result, row, l, r)) {
+                continue;
+            }
+            Value lv = l.getValue(row).convertTo(dataType);
+            Value rv = null;
+            if (r != null) {
+                rv = r.getValue(row);
+                if (convertRight) {
+                    rv = rv.convertTo(dataType);
+                }
+            }
+            result.setValue(row, getValue(session, lv, rv));
+        }
+        return result;
+    }
+
+    /**
+     * Calculate the result for integer operands without creating values.
+     *
+     * @return false if the result has to be calculated with values, for
+     *         example because it overflows
+     */
+    private boolean setLong(ColumnVector result, int row, ColumnVector l, ColumnVector r) {
+        if (l.isNull(row) || r != null && r.isNull(row)) {
+            if (opType == CONCAT) {
+                return false;
+            }
+            result.setNull(row);
+            return true;
+        }
+        long x = l.getLong(row), z;
+        switch (opType) {
+        case NEGATE:
+            if (x == Long.MIN_VALUE) {
+                return false;
+            }
+            z = -x;
+            break;
+        case PLUS: {
+            long y = r.getLong(row);
+            z = x + y;
+            if (((x ^ z) & (y ^ z)) < 0) {
+                return false;
+            }
+            break;
+        }
+        case MINUS: {
+            long y = r.getLong(row);
+            z = x - y;
+            if (((x ^ y) & (x ^ z)) < 0) {
+                return false;
+            }
+            break;
+        }
+        case MULTIPLY: {
+            long y = r.getLong(row);
+            if (Math.abs(x) > Integer.MAX_VALUE || Math.abs(y) > Integer.MAX_VALUE) {
+                return false;
+            }
+            z = x * y;
+            break;
+        }
+        default:
+            return false;
+        }
+        switch (dataType) {
+        case Value.DECIMAL:
+            result.setValue(row, ValueDecimal.get(BigDecimal.valueOf(z)));
+            return true;
+        case Value.LONG:
+            result.setLong(row, z);
+            return true;
+        case Value.INT:
+            if (z < Integer.MIN_VALUE || z > Integer.MAX_VALUE) {
+                return false;
+            }
+            result.setLong(row, z);
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isLongType(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     public void mapColumns(ColumnResolver resolver, int level) {
         left.mapColumns(resolver, level);
         if (right != null) {
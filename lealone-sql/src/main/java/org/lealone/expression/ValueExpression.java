@@ -11,6 +11,8 @@ import org.lealone.dbobject.table.ColumnResolver;
 import org.lealone.dbobject.table.TableFilter;
 import org.lealone.engine.Session;
 import org.lealone.message.DbException;
+import org.lealone.result.ColumnVector;
+import org.lealone.result.RowBatch;
 import org.lealone.value.Value;
 import org.lealone.value.ValueArray;
 import org.lealone.value.ValueBoolean;
@@ -73,6 +75,14 @@ public class ValueExpression extends Expression {
         return value;
     }
 
+    public ColumnVector getValueVector(Session session, RowBatch batch, int[] sel, int selSize) {
+        ColumnVector vector = new ColumnVector(value.getType(), batch.getSize());
+        for (int i = 0; i < selSize; i++) {
+            vector.setValue(sel[i], value);
+        }
+        return vector;
+    }
+
     public int getType() {
         return value.getType();
     }
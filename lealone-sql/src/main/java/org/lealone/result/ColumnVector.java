@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.result;
+
+import org.lealone.value.Value;
+import org.lealone.value.ValueByte;
+import org.lealone.value.ValueDate;
+import org.lealone.value.ValueDouble;
+import org.lealone.value.ValueFloat;
+import org.lealone.value.ValueInt;
+import org.lealone.value.ValueLong;
+import org.lealone.value.ValueNull;
+import org.lealone.value.ValueShort;
+
+/**
+ * The values of a column or an expression for the rows of a {@link RowBatch}.
+ * Integer numbers and dates are kept in a long array, floating point numbers
+ * in a double array, and all other values as objects. The values are stored
+ * at the position of their row in the batch.
+ */
+public class ColumnVector {
+
+    /**
+     * The values are kept as objects.
+     */
+    public static final int OBJECTS = 0;
+
+    /**
+     * The values are kept in a long array.
+     */
+    public static final int LONGS = 1;
+
+    /**
+     * The values are kept in a double array.
+     */
+    public static final int DOUBLES = 2;
+
+    private final int type;
+    private final int storage;
+    private long[] longs;
+    private double[] doubles;
+    private Value[] values;
+    private boolean[] nulls;
+
+    public ColumnVector(int type, int size) {
+        this.type = type;
+        this.storage = getStorage(type);
+        switch (storage) {
+        case LONGS:
+            longs = new long[size];
+            nulls = new boolean[size];
+            break;
+        case DOUBLES:
+            doubles = new double[size];
+            nulls = new boolean[size];
+            break;
+        default:
+            values = new Value[size];
+        }
+    }
+
+    /**
+     * Get how values of the given type are kept in a vector.
+     *
+     * @param type the value type
+     * @return LONGS, DOUBLES or OBJECTS
+     */
+    public static int getStorage(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DATE:
+            return LONGS;
+        case Value.FLOAT:
+        case Value.DOUBLE:
+            return DOUBLES;
+        default:
+            return OBJECTS;
+        }
+    }
+
+    /**
+     * Convert a value that is not NULL to the long that is kept for it.
+     *
+     * @param v the value
+     * @param type the value type, the storage of which is LONGS
+     * @return the long
+     */
+    public static long toLong(Value v, int type) {
+        if (v.getType() != type) {
+            v = v.convertTo(type);
+        }
+        switch (type) {
+        case Value.BYTE:
+            return v.getByte();
+        case Value.SHORT:
+            return v.getShort();
+        case Value.INT:
+            return v.getInt();
+        case Value.DATE:
+            return ((ValueDate) v).getDateValue();
+        default:
+            return v.getLong();
+        }
+    }
+
+    /**
+     * Convert a value that is not NULL to the double that is kept for it.
+     *
+     * @param v the value
+     * @param type the value type, the storage of which is DOUBLES
+     * @return the double
+     */
+    public static double toDouble(Value v, int type) {
+        if (v.getType() != type) {
+            v = v.convertTo(type);
+        }
+        return type == Value.FLOAT ? v.getFloat() : v.getDouble();
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getStorage() {
+        return storage;
+    }
+
+    /**
+     * Check if the value at the given position is NULL.
+     *
+     * @param i the position
+     * @return true if it is NULL
+     */
+    public boolean isNull(int i) {
+        return storage == OBJECTS ? values[i] == ValueNull.INSTANCE : nulls[i];
+    }
+
+    /**
+     * Get the value at the given position as a long. The storage must be
+     * LONGS.
+     *
+     * @param i the position
+     * @return the value
+     */
+    public long getLong(int i) {
+        return longs[i];
+    }
+
+    /**
+     * Get the value at the given position as a double. The storage must be
+     * LONGS or DOUBLES.
+     *
+     * @param i the position
+     * @return the value
+     */
+    public double getDouble(int i) {
+        return storage == DOUBLES ? doubles[i] : longs[i];
+    }
+
+    /**
+     * Get the value at the given position.
+     *
+     * @param i the position
+     * @return the value
+     */
+    public Value getValue(int i) {
+        switch (storage) {
+        case LONGS:
+            if (nulls[i]) {
+                return ValueNull.INSTANCE;
+            }
+            long x = longs[i];
+            switch (type) {
+            case Value.BYTE:
+                return ValueByte.get((byte) x);
+            case Value.SHORT:
+                return ValueShort.get((short) x);
+            case Value.INT:
+                return ValueInt.get((int) x);
+            case Value.DATE:
+                return ValueDate.fromDateValue(x);
+            default:
+                return ValueLong.get(x);
+            }
+        case DOUBLES:
+            if (nulls[i]) {
+                return ValueNull.INSTANCE;
+            }
+            return type == Value.FLOAT ? ValueFloat.get((float) doubles[i]) : ValueDouble.get(doubles[i]);
+        default:
+            return values[i];
+        }
+    }
+
+    /**
+     * Set the value at the given position.
+     *
+     * @param i the position
+     * @param v the value
+     */
+    public void setValue(int i, Value v) {
+        switch (storage) {
+        case LONGS:
+            if (v == ValueNull.INSTANCE) {
+                nulls[i] = true;
+            } else {
+                nulls[i] = false;
+                longs[i] = toLong(v, type);
+            }
+            break;
+        case DOUBLES:
+            if (v == ValueNull.INSTANCE) {
+                nulls[i] = true;
+            } else {
+                nulls[i] = false;
+                doubles[i] = toDouble(v, type);
+            }
+            break;
+        default:
+            values[i] = v;
+        }
+    }
+
+    /**
+     * Set the value at the given position. The storage must be LONGS.
+     *
+     * @param i the position
+     * @param x the value
+     */
+    public void setLong(int i, long x) {
+        nulls[i] = false;
+        longs[i] = x;
+    }
+
+    /**
+     * Set the value at the given position. The storage must be DOUBLES.
+     *
+     * @param i the position
+     * @param x the value
+     */
+    public void setDouble(int i, double x) {
+        nulls[i] = false;
+        doubles[i] = x;
+    }
+
+    /**
+     * Set the value at the given position to NULL.
+     *
+     * @param i the position
+     */
+    public void setNull(int i) {
+        if (storage == OBJECTS) {
+            values[i] = ValueNull.INSTANCE;
+        } else {
+            nulls[i] = true;
+        }
+    }
+
+}
@@ -9,6 +9,8 @@ package org.lealone.result;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PriorityQueue;
 
 import org.lealone.engine.Database;
 import org.lealone.engine.Session;
@@ -46,6 +48,13 @@ public class LocalResult implements ResultInterface, ResultTarget {
     private boolean randomAccess;
     private boolean closed;
 
+    /**
+     * The first rows of a sorted result with a limit, with the last of them
+     * at the head, or null if all rows are kept.
+     */
+    private PriorityQueue<Value[]> topRows;
+    private int topRowCount;
+
     /**
      * Construct a local result object.
      */
@@ -265,6 +274,10 @@ public class LocalResult implements ResultInterface, ResultTarget {
             }
             return;
         }
+        if (topRows != null) {
+            addTopRow(values);
+            return;
+        }
         rows.add(values);
         rowCount++;
         if (rows.size() > maxMemoryRows && session.getDatabase().isPersistent()) {
@@ -282,6 +295,16 @@ public class LocalResult implements ResultInterface, ResultTarget {
         }
     }
 
+    private void addTopRow(Value[] values) {
+        if (topRows.size() < topRowCount) {
+            topRows.add(values);
+        } else if (sort.compare(values, topRows.peek()) < 0) {
+            topRows.poll();
+            topRows.add(values);
+        }
+        rowCount = topRows.size();
+    }
+
     private void addRowsToDisk() {
         rowCount = external.addRows(rows);
         rows.clear();
@@ -295,6 +318,10 @@ public class LocalResult implements ResultInterface, ResultTarget {
      * This method is called after all rows have been added.
      */
     public void done() {
+        if (topRows != null) {
+            rows = New.arrayList(topRows);
+            topRows = null;
+        }
         if (distinct) {
             if (distinctRows != null) {
                 rows = distinctRows.values();
@@ -354,12 +381,21 @@ public class LocalResult implements ResultInterface, ResultTarget {
     }
 
     /**
-     * Set the number of rows that this result will return at the maximum.
+     * Set the number of rows that this result will return at the maximum. If
+     * it is set before any row is added to a sorted result, only the first
+     * offset + limit rows are kept, so the offset needs to be set first.
      *
      * @param limit the limit (-1 means no limit, 0 means no rows)
      */
     public void setLimit(int limit) {
         this.limit = limit;
+        if (sort != null && limit > 0 && !distinct && !randomAccess && rowCount == 0 && external == null) {
+            long count = (long) limit + Math.max(offset, 0);
+            if (count <= maxMemoryRows) {
+                topRowCount = (int) count;
+                topRows = new PriorityQueue<Value[]>(topRowCount, Collections.reverseOrder(sort));
+            }
+        }
     }
 
     private void applyLimit() {
@@ -476,6 +512,15 @@ public class LocalResult implements ResultInterface, ResultTarget {
         return closed;
     }
 
+    /**
+     * Check if all rows of this result set are kept in memory.
+     *
+     * @return true if there is no temporary table or file
+     */
+    public boolean isInMemory() {
+        return external == null && rows != null && rows.size() >= rowCount;
+    }
+
     public int getFetchSize() {
         return 0;
     }
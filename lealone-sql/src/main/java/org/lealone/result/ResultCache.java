@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.result;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.lealone.command.dml.Query;
+import org.lealone.engine.Database;
+import org.lealone.engine.Session;
+
+/**
+ * The result cache that is shared by all sessions of a database. It keeps the
+ * rows of queries that only read tables, keyed by the plan, the parameter
+ * values and the limit.
+ *
+ * An entry is only used as long as none of the tables the query depends on was
+ * changed since the result was computed (see the data modification id of a
+ * table, which is also incremented when a transaction that changed the table
+ * ends). All entries are removed when the schema was changed.
+ *
+ * The size is limited by the total number of rows. A single result may use at
+ * most a quarter of it, and the least recently used results are removed first.
+ */
+public class ResultCache {
+
+    private final int maxRows;
+    private final LinkedHashMap<String, Entry> entries;
+    private int rows;
+    private long metaId;
+    private long hits;
+    private long misses;
+
+    public ResultCache(int maxRows) {
+        this.maxRows = maxRows;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    /**
+     * Get a copy of the cached result of the given query.
+     *
+     * @param session the session that runs the query
+     * @param query the query
+     * @param key the key (see Query.getResultCacheKey)
+     * @return the result, or null if there is none or if it is outdated
+     */
+    public synchronized LocalResult get(Session session, Query query, String key) {
+        checkMetaId(session.getDatabase());
+        Entry e = entries.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        if (query.getMaxDataModificationId() > e.evaluated) {
+            remove(key, e);
+            misses++;
+            return null;
+        }
+        LocalResult copy = e.result.createShallowCopy(session);
+        if (copy == null) {
+            remove(key, e);
+            misses++;
+            return null;
+        }
+        hits++;
+        copy.reset();
+        return copy;
+    }
+
+    /**
+     * Add the result of a query. Results that are too large or that are not
+     * kept in memory are ignored.
+     *
+     * @param session the session that ran the query
+     * @param key the key
+     * @param result the result
+     * @param evaluated the data modification id of the database before the
+     *            query was run
+     */
+    public synchronized void put(Session session, String key, LocalResult result, long evaluated) {
+        int rowCount = result.getRowCount();
+        if (rowCount > maxRows / 4 || !result.isInMemory()) {
+            return;
+        }
+        checkMetaId(session.getDatabase());
+        LocalResult copy = result.createShallowCopy(session);
+        if (copy == null) {
+            return;
+        }
+        Entry old = entries.remove(key);
+        if (old != null) {
+            rows -= old.rowCount;
+        }
+        rows += rowCount;
+        for (Iterator<Entry> it = entries.values().iterator(); rows > maxRows && it.hasNext();) {
+            rows -= it.next().rowCount;
+            it.remove();
+        }
+        entries.put(key, new Entry(copy, rowCount, evaluated));
+    }
+
+    /**
+     * Remove all results.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        rows = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of rows that are kept in the cache.
+     *
+     * @return the number of rows
+     */
+    public synchronized int getRowCount() {
+        return rows;
+    }
+
+    private void remove(String key, Entry e) {
+        entries.remove(key);
+        rows -= e.rowCount;
+    }
+
+    private void checkMetaId(Database db) {
+        long id = db.getModificationMetaId();
+        if (id != metaId) {
+            clear();
+            metaId = id;
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    private static class Entry {
+
+        /**
+         * The result, which is only used to create shallow copies.
+         */
+        final LocalResult result;
+
+        /**
+         * The number of rows.
+         */
+        final int rowCount;
+
+        /**
+         * The data modification id of the database before the query was run.
+         */
+        final long evaluated;
+
+        Entry(LocalResult result, int rowCount, long evaluated) {
+            this.result = result;
+            this.rowCount = rowCount;
+            this.evaluated = evaluated;
+        }
+    }
+
+}
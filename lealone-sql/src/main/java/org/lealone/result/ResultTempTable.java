@@ -38,7 +38,14 @@ public class ResultTempTable implements ResultExternal {
     private boolean closed;
     private int childCount;
 
-    ResultTempTable(Session session, SortOrder sort) {
+    /**
+     * Create a temporary table that keeps rows sorted by their values. Rows
+     * that are equal to an existing row are not added.
+     *
+     * @param session the session
+     * @param sort the sort order used when adding rows, or null
+     */
+    public ResultTempTable(Session session, SortOrder sort) {
         this.session = session;
         this.sort = sort;
         Database db = session.getDatabase();
@@ -62,9 +69,8 @@ public class ResultTempTable implements ResultExternal {
         IndexType indexType;
         indexType = IndexType.createPrimaryKey(true, false);
         IndexColumn[] indexCols = { indexColumn };
-        index = db.createIndex(table, indexId, data.tableName, indexCols, indexType, true, session);
+        index = table.addIndex(session, data.tableName, indexId, indexCols, indexType, true, null);
         index.setTemporary(true);
-        table.getIndexes().add(index);
         parent = null;
     }
 
@@ -108,11 +114,7 @@ public class ResultTempTable implements ResultExternal {
 
     @Override
     public int addRow(Value[] values) {
-        Row row = convertToRow(values);
-        Cursor cursor = find(row);
-        if (cursor == null) {
-            table.addRow(session, row);
-        }
+        addRowIfAbsent(values);
         return (int) table.getRowCount(session);
     }
 
@@ -122,11 +124,20 @@ public class ResultTempTable implements ResultExternal {
             sort.sort(rows);
         }
         for (Value[] values : rows) {
-            addRow(values);
+            // counting the rows is not cheap, so only count them once
+            addRowIfAbsent(values);
         }
         return (int) table.getRowCount(session);
     }
 
+    private void addRowIfAbsent(Value[] values) {
+        Row row = convertToRow(values);
+        Cursor cursor = find(row);
+        if (cursor == null) {
+            table.addRow(session, row);
+        }
+    }
+
     private synchronized void closeChild() {
         if (--childCount == 0 && closed) {
             dropTable();
@@ -165,7 +176,8 @@ public class ResultTempTable implements ResultExternal {
                     // is opened the next time
                     // (the table is truncated, so this is just one record)
                     synchronized (sysSession) {
-                        index.removeChildrenAndResources(sysSession);
+                        // the index was added as a local temporary index of the session
+                        session.removeLocalTempTableIndex(index);
                         table.removeChildrenAndResources(sysSession);
                         // the transaction must be committed immediately
                         sysSession.commit(false);
@@ -197,6 +209,17 @@ public class ResultTempTable implements ResultExternal {
         resultCursor = index.find(session, null, null);
     }
 
+    /**
+     * Continue reading at the first row that is not smaller than the given
+     * values. Rows are compared value by value, so the rows that start with
+     * the given values come next.
+     *
+     * @param values the first values of the rows to read
+     */
+    public void reset(Value[] values) {
+        resultCursor = index.find(session, convertToRow(values), null);
+    }
+
     private static Row convertToRow(Value[] values) {
         ValueArray data = ValueArray.get(values);
         return new Row(new Value[] { data }, Row.MEMORY_CALCULATE);
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.result;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.lealone.dbobject.table.Column;
+import org.lealone.dbobject.table.Table;
+import org.lealone.dbobject.table.TableFilter;
+import org.lealone.engine.Session;
+import org.lealone.expression.Expression;
+import org.lealone.value.Value;
+import org.lealone.value.ValueNull;
+
+/**
+ * A batch of rows read from a table filter. Expressions are evaluated for all
+ * rows of a batch at once, see {@link Expression#getValueVector}. The column
+ * vectors are filled when they are first used, and reused for the next batch.
+ * Which rows are still selected is kept in a separate array of positions.
+ */
+public class RowBatch {
+
+    /**
+     * The maximum number of rows in a batch.
+     */
+    public static final int SIZE = 1024;
+
+    private final TableFilter filter;
+    private final SearchRow[] rows = new SearchRow[SIZE];
+    private final ColumnVector[] columns;
+    private final boolean[] filled;
+    private int size;
+
+    /**
+     * The ids of the used columns of the table, or null if not known yet.
+     */
+    private int[] usedColumnIds;
+
+    public RowBatch(TableFilter filter) {
+        this.filter = filter;
+        int columnCount = filter.getTable().getColumns().length;
+        columns = new ColumnVector[columnCount];
+        filled = new boolean[columnCount];
+    }
+
+    /**
+     * Read the next rows from the table filter.
+     *
+     * @return false if there are no more rows
+     */
+    public boolean next() {
+        size = 0;
+        Arrays.fill(filled, false);
+        while (size < SIZE && filter.next()) {
+            SearchRow row = filter.getCurrentSearchRow();
+            if (!containsUsedColumns(row)) {
+                // read the whole row while the cursor is still on it
+                row = filter.get();
+            }
+            rows[size++] = row;
+        }
+        return size > 0;
+    }
+
+    private boolean containsUsedColumns(SearchRow row) {
+        if (usedColumnIds == null) {
+            HashSet<Column> used = filter.getUsedColumns();
+            if (used == null) {
+                return false;
+            }
+            Table table = filter.getTable();
+            int[] ids = new int[used.size()];
+            int count = 0;
+            for (Column c : used) {
+                if (c.getTable() == table && c.getColumnId() >= 0) {
+                    ids[count++] = c.getColumnId();
+                }
+            }
+            usedColumnIds = Arrays.copyOf(ids, count);
+        }
+        for (int id : usedColumnIds) {
+            if (row.getValue(id) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Select the rows for which the condition is true.
+     *
+     * @param session the session
+     * @param condition the condition, or null to select all rows
+     * @param sel the array that receives the positions of the selected rows
+     * @return the number of selected rows
+     */
+    public int select(Session session, Expression condition, int[] sel) {
+        for (int i = 0; i < size; i++) {
+            sel[i] = i;
+        }
+        if (condition == null) {
+            return size;
+        }
+        return condition.filter(session, this, sel, size);
+    }
+
+    /**
+     * Get the values of a column of the table for all rows of the batch.
+     *
+     * @param column the column
+     * @return the column vector
+     */
+    public ColumnVector getColumn(Column column) {
+        int id = column.getColumnId();
+        ColumnVector vector = columns[id];
+        if (vector == null) {
+            vector = new ColumnVector(column.getType(), SIZE);
+            columns[id] = vector;
+        }
+        if (!filled[id]) {
+            for (int i = 0; i < size; i++) {
+                Value v = rows[i].getValue(id);
+                if (v == null) {
+                    // not a used column, so read the whole row
+                    setCurrentRow(i);
+                    Row row = filter.get();
+                    if (row == null) {
+                        v = ValueNull.INSTANCE;
+                    } else {
+                        rows[i] = row;
+                        v = row.getValue(id);
+                    }
+                }
+                vector.setValue(i, v);
+            }
+            filled[id] = true;
+        }
+        return vector;
+    }
+
+    /**
+     * Make the row at the given position the current row of the table filter,
+     * so that expressions can be evaluated for it one row at a time.
+     *
+     * @param i the position
+     */
+    public void setCurrentRow(int i) {
+        filter.setCurrentSearchRow(rows[i]);
+    }
+
+    public TableFilter getFilter() {
+        return filter;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+}
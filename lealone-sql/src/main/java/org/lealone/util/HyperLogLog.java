@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.util;
+
+import org.lealone.message.DbException;
+
+/**
+ * A HyperLogLog sketch that estimates the number of distinct values with a
+ * fixed amount of memory (one byte per register). Two sketches can be merged,
+ * so that the partial sketches of several nodes or parts of a table give the
+ * estimate for the whole table. The standard error is about 1.04 divided by
+ * the square root of the number of registers, that is about 1.6% for the
+ * default of 4096 registers.
+ */
+public class HyperLogLog {
+
+    /**
+     * The default number of bits of the hash that select the register.
+     */
+    public static final int DEFAULT_PRECISION = 12;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw DbException.getInvalidValueException("precision", precision);
+        }
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * Read a sketch that was written with toBytes.
+     *
+     * @param bytes the serialized sketch
+     * @return the sketch
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog hll = new HyperLogLog(bytes[0]);
+        if (bytes.length != hll.registers.length + 1) {
+            throw DbException.getInvalidValueException("sketch", bytes.length);
+        }
+        System.arraycopy(bytes, 1, hll.registers, 0, hll.registers.length);
+        return hll;
+    }
+
+    /**
+     * Add the hash of a value. The hash should use all 64 bits (see hash).
+     *
+     * @param hash the hash
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the position of the first 1 bit in the remaining bits
+        long rest = (hash << precision) | (1L << (precision - 1));
+        int rank = Long.numberOfLeadingZeros(rest) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Merge another sketch into this one.
+     *
+     * @param other the other sketch
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw DbException.getInvalidValueException("precision", other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Estimate the number of distinct values that were added.
+     *
+     * @return the estimate
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double e = alpha * m * m / sum;
+        if (e <= 2.5 * m && zeros > 0) {
+            // linear counting is more exact for small cardinalities
+            e = m * Math.log((double) m / zeros);
+        }
+        return Math.round(e);
+    }
+
+    /**
+     * Serialize the sketch: the precision, followed by the registers.
+     *
+     * @return the bytes
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[registers.length + 1];
+        bytes[0] = (byte) precision;
+        System.arraycopy(registers, 0, bytes, 1, registers.length);
+        return bytes;
+    }
+
+    /**
+     * Spread the bits of a 64 bit value (the finalization step of
+     * MurmurHash3), so that similar values get very different hashes.
+     *
+     * @param x the value
+     * @return the hash
+     */
+    public static long hash(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+}
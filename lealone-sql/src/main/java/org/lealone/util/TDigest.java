@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.lealone.message.DbException;
+
+/**
+ * A merging t-digest that estimates quantiles of a stream of numbers with a
+ * bounded number of centroids. Values are collected in a buffer, which is
+ * sorted and merged into the centroids when it is full. Centroids near the
+ * minimum and the maximum are kept small, so that the estimates of extreme
+ * quantiles are more exact than the ones of the median. Two digests can be
+ * merged, which makes the digest usable for distributed and parallel queries.
+ *
+ * See Dunning and Ertl, "Computing Extremely Accurate Quantiles Using
+ * t-Digests".
+ */
+public class TDigest {
+
+    /**
+     * The default compression: the digest keeps at most about this many
+     * centroids.
+     */
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int size;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private int bufferSize;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) + 10;
+        means = new double[capacity];
+        weights = new double[capacity];
+        bufferMeans = new double[capacity * 5];
+        bufferWeights = new double[capacity * 5];
+    }
+
+    /**
+     * Read a digest that was written with toBytes.
+     *
+     * @param bytes the serialized digest
+     * @return the digest
+     */
+    public static TDigest fromBytes(byte[] bytes) {
+        ByteBuffer buff = ByteBuffer.wrap(bytes);
+        TDigest d = new TDigest(buff.getDouble());
+        int size = buff.getInt();
+        if (size < 0 || buff.remaining() != 16 + size * 16) {
+            throw DbException.getInvalidValueException("digest", bytes.length);
+        }
+        d.min = buff.getDouble();
+        d.max = buff.getDouble();
+        for (int i = 0; i < size; i++) {
+            d.add(buff.getDouble(), buff.getDouble());
+        }
+        return d;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param x the value
+     */
+    public void add(double x) {
+        if (Double.isNaN(x)) {
+            return;
+        }
+        if (x < min) {
+            min = x;
+        }
+        if (x > max) {
+            max = x;
+        }
+        add(x, 1);
+    }
+
+    private void add(double mean, double weight) {
+        if (bufferSize == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferSize] = mean;
+        bufferWeights[bufferSize] = weight;
+        bufferSize++;
+        totalWeight += weight;
+    }
+
+    /**
+     * Merge another digest into this one.
+     *
+     * @param other the other digest
+     */
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.size; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Get the number of values that were added.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return (long) totalWeight;
+    }
+
+    /**
+     * Estimate the value at the given quantile.
+     *
+     * @param q the quantile, between 0 and 1
+     * @return the estimate, or NaN if no values were added
+     */
+    public double quantile(double q) {
+        compress();
+        if (size == 0) {
+            return Double.NaN;
+        }
+        if (size == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        if (index <= weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double center = weights[0] / 2;
+        for (int i = 0; i < size - 1; i++) {
+            double next = center + (weights[i] + weights[i + 1]) / 2;
+            if (index <= next) {
+                return means[i] + (means[i + 1] - means[i]) * (index - center) / (next - center);
+            }
+            center = next;
+        }
+        double last = weights[size - 1] / 2;
+        double rest = Math.min(index - center, last);
+        return means[size - 1] + (max - means[size - 1]) * rest / last;
+    }
+
+    /**
+     * Serialize the digest: the compression, the number of centroids, the
+     * minimum and the maximum, followed by the mean and weight of each
+     * centroid.
+     *
+     * @return the bytes
+     */
+    public byte[] toBytes() {
+        compress();
+        ByteBuffer buff = ByteBuffer.allocate(8 + 4 + 16 + size * 16);
+        buff.putDouble(compression).putInt(size).putDouble(min).putDouble(max);
+        for (int i = 0; i < size; i++) {
+            buff.putDouble(means[i]).putDouble(weights[i]);
+        }
+        return buff.array();
+    }
+
+    /**
+     * Sort the centroids and the buffered values by mean, and merge
+     * neighbours as long as the size limit of the scale function allows it.
+     */
+    private void compress() {
+        if (bufferSize == 0) {
+            return;
+        }
+        int n = size + bufferSize;
+        final double[] allMeans = new double[n];
+        double[] allWeights = new double[n];
+        System.arraycopy(means, 0, allMeans, 0, size);
+        System.arraycopy(weights, 0, allWeights, 0, size);
+        System.arraycopy(bufferMeans, 0, allMeans, size, bufferSize);
+        System.arraycopy(bufferWeights, 0, allWeights, size, bufferSize);
+        bufferSize = 0;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(allMeans[a], allMeans[b]);
+            }
+        });
+        size = 0;
+        double mean = allMeans[order[0]];
+        double weight = allWeights[order[0]];
+        double weightSoFar = 0;
+        double limit = totalWeight * getQuantile(getScale(0) + 1);
+        for (int i = 1; i < n; i++) {
+            int j = order[i];
+            if (weightSoFar + weight + allWeights[j] <= limit) {
+                weight += allWeights[j];
+                mean += (allMeans[j] - mean) * allWeights[j] / weight;
+            } else {
+                weightSoFar += weight;
+                addCentroid(mean, weight);
+                limit = totalWeight * getQuantile(getScale(weightSoFar / totalWeight) + 1);
+                mean = allMeans[j];
+                weight = allWeights[j];
+            }
+        }
+        addCentroid(mean, weight);
+    }
+
+    private void addCentroid(double mean, double weight) {
+        if (size == means.length) {
+            means = Arrays.copyOf(means, size * 2);
+            weights = Arrays.copyOf(weights, size * 2);
+        }
+        means[size] = mean;
+        weights[size] = weight;
+        size++;
+    }
+
+    private double getScale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    private double getQuantile(double k) {
+        if (k >= compression / 4) {
+            return 1;
+        }
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.storage;
+
+import org.lealone.command.ddl.CreateTableData;
+import org.lealone.dbobject.table.MVTable;
+import org.lealone.dbobject.table.Table;
+
+/**
+ * A storage engine for analytic tables. The rows are stored in the MVStore like
+ * the MVStorageEngine does, and in addition each column is stored in its own
+ * encoded segments, which are used to scan the table.
+ * <p>
+ * Usage: CREATE TABLE ... ENGINE COLUMN
+ */
+public class ColumnStorageEngine extends MVStorageEngine {
+    public static final String NAME = "COLUMN";
+
+    //见StorageEngineManager.StorageEngineService中的注释
+    public ColumnStorageEngine() {
+        StorageEngineManager.registerStorageEngine(this);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public synchronized Table createTable(CreateTableData data) {
+        MVTable table = (MVTable) super.createTable(data);
+        table.initColumnIndex(data.session);
+        return table;
+    }
+}
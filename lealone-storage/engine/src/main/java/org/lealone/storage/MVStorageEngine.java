@@ -27,6 +27,7 @@ import org.lealone.engine.Session;
 import org.lealone.fs.FileChannelInputStream;
 import org.lealone.fs.FileUtils;
 import org.lealone.message.DbException;
+import org.lealone.message.Trace;
 import org.lealone.mvstore.MVMap;
 import org.lealone.mvstore.MVStore;
 import org.lealone.mvstore.MVStoreTool;
@@ -72,7 +73,10 @@ public class MVStorageEngine extends StorageEngineBase implements TransactionSto
 
     @Override
     public synchronized void close(Database db) {
-        stores.remove(db.getName());
+        Store store = stores.remove(db.getName());
+        if (store != null) {
+            store.close(0);
+        }
     }
 
     @Override
@@ -191,7 +195,9 @@ public class MVStorageEngine extends StorageEngineBase implements TransactionSto
         private int temporaryMapId;
 
         public Store(StorageEngine storageEngine, Database db, MVStore.Builder builder) {
+            long start = System.currentTimeMillis();
             store = builder.open();
+            long opened = System.currentTimeMillis();
 
             stores.put(db.getName(), this);
 
@@ -201,6 +207,8 @@ public class MVStorageEngine extends StorageEngineBase implements TransactionSto
 
             transactionEngine.init(store.getMapNames());
             initTransactions();
+            db.getTrace(Trace.DATABASE).info("opened store in {0} ms, initialized transactions in {1} ms",
+                    opened - start, System.currentTimeMillis() - opened);
 
             db.setTransactionEngine(transactionEngine);
             db.setStorageEngine(storageEngine);
@@ -253,6 +261,9 @@ public class MVStorageEngine extends StorageEngineBase implements TransactionSto
          */
         public void initTransactions() {
             List<Transaction> list = transactionEngine.getOpenTransactions();
+            if (list.isEmpty()) {
+                return;
+            }
             for (Transaction t : list) {
                 if (t.getStatus() == Transaction.STATUS_COMMITTING) {
                     t.commit();
@@ -260,6 +271,14 @@ public class MVStorageEngine extends StorageEngineBase implements TransactionSto
                     t.rollback();
                 }
             }
+            // the data maps were opened without the key and value types of their tables,
+            // close them so that the tables can open them with their own types
+            store.commit();
+            for (String mapName : store.getMapNames()) {
+                if (mapName.startsWith("table.") || mapName.startsWith("index.") || mapName.startsWith("column.")) {
+                    store.closeMap(mapName);
+                }
+            }
         }
 
         /**
@@ -272,8 +291,14 @@ public class MVStorageEngine extends StorageEngineBase implements TransactionSto
                 if (mapName.startsWith("temp.")) {
                     MVMap<?, ?> map = store.openMap(mapName);
                     store.removeMap(map);
-                } else if (mapName.startsWith("table.") || mapName.startsWith("index.")) {
-                    int id = Integer.parseInt(mapName.substring(1 + mapName.indexOf(".")));
+                } else if (mapName.startsWith("table.") || mapName.startsWith("index.")
+                        || mapName.startsWith("column.")) {
+                    String idString = mapName.substring(1 + mapName.indexOf("."));
+                    if (mapName.startsWith("column.")) {
+                        // column.<tableId>.<columnId>
+                        idString = idString.substring(0, idString.indexOf("."));
+                    }
+                    int id = Integer.parseInt(idString);
                     if (!objectIds.get(id)) {
                         ValueDataType keyType = new ValueDataType(null, null, null);
                         ValueDataType valueType = new ValueDataType(null, null, null);
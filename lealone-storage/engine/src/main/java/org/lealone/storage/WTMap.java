@@ -360,6 +360,11 @@ public class WTMap<K, V> implements StorageMap<K, V> {
     public void setVolatile(boolean isVolatile) {
     }
 
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
     @Override
     public boolean areValuesEqual(Object a, Object b) {
         return areEqual(a, b, valueType);
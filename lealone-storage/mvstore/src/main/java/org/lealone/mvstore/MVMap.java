@@ -17,6 +17,7 @@ import java.util.concurrent.ConcurrentMap;
 
 import org.lealone.storage.StorageMap;
 import org.lealone.type.DataType;
+import org.lealone.type.LongKeyType;
 import org.lealone.type.ObjectDataType;
 import org.lealone.util.DataUtils;
 import org.lealone.util.New;
@@ -58,6 +59,11 @@ public class MVMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V
     private final DataType keyType;
     private final DataType valueType;
 
+    /**
+     * The key type if the keys are kept in long arrays, or null.
+     */
+    final LongKeyType longKeyType;
+
     private final ConcurrentArrayList<Page> oldRoots = new ConcurrentArrayList<Page>();
 
     private boolean closed;
@@ -67,6 +73,8 @@ public class MVMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V
     protected MVMap(DataType keyType, DataType valueType) {
         this.keyType = keyType;
         this.valueType = valueType;
+        this.longKeyType = keyType instanceof LongKeyType && ((LongKeyType) keyType).isLongKey() ? (LongKeyType) keyType
+                : null;
         this.root = Page.createEmpty(this, -1);
     }
 
@@ -1091,6 +1099,11 @@ public class MVMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V
         return root.isLeaf() && root.getKeyCount() == 0;
     }
 
+    @Override
+    public long getDiskSpaceUsed() {
+        return root.getDiskSpaceUsed();
+    }
+
     public long getCreateVersion() {
         return createVersion;
     }
@@ -801,6 +801,8 @@ public class MVStore {
         // could result in a deadlock
         stopBackgroundThread();
         closed = true;
+        // the file can be opened again by a new store
+        MVStoreCache.removeMVStore(this);
         if (fileStore == null) {
             return;
         }
@@ -2268,6 +2270,24 @@ public class MVStore {
         meta.put("name." + newName, x);
     }
 
+    /**
+     * Close the map with the given name if it is open, so that it is opened
+     * again with the data types given then. The changes of the map must have
+     * been stored before.
+     *
+     * @param name the map name
+     */
+    public synchronized void closeMap(String name) {
+        checkOpen();
+        String x = meta.get("name." + name);
+        if (x != null) {
+            MVMap<?, ?> map = maps.remove(DataUtils.parseHexInt(x));
+            if (map != null) {
+                map.close();
+            }
+        }
+    }
+
     /**
      * Remove a map. Please note rolling back this operation does not restore
      * the data; if you need this ability, use Map.clear().
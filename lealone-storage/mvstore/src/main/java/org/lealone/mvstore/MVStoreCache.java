@@ -29,4 +29,8 @@ public class MVStoreCache {
     public static MVStore putMVStore(String name, MVStore store) {
         return stores.put(name, store);
     }
+
+    public static void removeMVStore(MVStore store) {
+        stores.values().remove(store);
+    }
 }
@@ -11,6 +11,7 @@ import java.util.Set;
 
 import org.lealone.compress.Compressor;
 import org.lealone.type.DataType;
+import org.lealone.type.LongKeyType;
 import org.lealone.type.WriteBuffer;
 import org.lealone.util.DataUtils;
 import org.lealone.util.New;
@@ -26,9 +27,9 @@ import org.lealone.util.New;
  * check value: short
  * map id: varInt
  * number of keys: varInt
- * type: byte (0: leaf, 1: node; +2: compressed)
+ * type: byte (0: leaf, 1: node; +2: compressed; +8: long keys)
  * compressed: bytes saved (varInt)
- * keys
+ * keys (long keys: the first key, then the differences, as varLong)
  * leaf: values (one for each key)
  * node: children (1 more than keys)
  */
@@ -39,6 +40,11 @@ public class Page {
      */
     public static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
 
+    /**
+     * The estimated memory used by a long key.
+     */
+    private static final int LONG_KEY_MEMORY = 8;
+
     private final MVMap<?, ?> map;
     private long version;
     private long pos;
@@ -65,6 +71,11 @@ public class Page {
      */
     private Object[] keys;
 
+    /**
+     * The keys if the map has a long key type, in which case keys is null.
+     */
+    private long[] longKeys;
+
     /**
      * The values.
      * <p>
@@ -117,9 +128,22 @@ public class Page {
      */
     public static Page create(MVMap<?, ?> map, long version, Object[] keys, Object[] values, PageReference[] children,
             long totalCount, int memory) {
+        if (map.longKeyType != null) {
+            long[] longKeys = new long[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                longKeys[i] = map.longKeyType.getLong(keys[i]);
+            }
+            return create(map, version, null, longKeys, values, children, totalCount, memory);
+        }
+        return create(map, version, keys, null, values, children, totalCount, memory);
+    }
+
+    private static Page create(MVMap<?, ?> map, long version, Object[] keys, long[] longKeys, Object[] values,
+            PageReference[] children, long totalCount, int memory) {
         Page p = new Page(map, version);
         // the position is 0
         p.keys = keys;
+        p.longKeys = longKeys;
         p.values = values;
         p.children = children;
         p.totalCount = totalCount;
@@ -147,6 +171,7 @@ public class Page {
         Page p = new Page(map, version);
         // the position is 0
         p.keys = source.keys;
+        p.longKeys = source.longKeys;
         p.values = source.values;
         p.children = source.children;
         p.totalCount = source.totalCount;
@@ -198,6 +223,9 @@ public class Page {
      * @return the key
      */
     public Object getKey(int index) {
+        if (longKeys != null) {
+            return map.longKeyType.getKey(longKeys[index]);
+        }
         return keys[index];
     }
 
@@ -238,7 +266,7 @@ public class Page {
      * @return the number of keys
      */
     public int getKeyCount() {
-        return keys.length;
+        return longKeys != null ? longKeys.length : keys.length;
     }
 
     /**
@@ -269,15 +297,16 @@ public class Page {
             int chunkId = DataUtils.getPageChunkId(pos);
             buff.append("chunk: ").append(Long.toHexString(chunkId)).append("\n");
         }
-        for (int i = 0; i <= keys.length; i++) {
+        int len = getKeyCount();
+        for (int i = 0; i <= len; i++) {
             if (i > 0) {
                 buff.append(" ");
             }
             if (children != null) {
                 buff.append("[" + Long.toHexString(children[i].pos) + "] ");
             }
-            if (i < keys.length) {
-                buff.append(keys[i]);
+            if (i < len) {
+                buff.append(getKey(i));
                 if (values != null) {
                     buff.append(':');
                     buff.append(values[i]);
@@ -294,7 +323,7 @@ public class Page {
      * @return a page with the given version
      */
     public Page copy(long version) {
-        Page newPage = create(map, version, keys, values, children, totalCount, getMemory());
+        Page newPage = create(map, version, keys, longKeys, values, children, totalCount, getMemory());
         // mark the old as deleted
         removePage();
         newPage.cachedCompare = cachedCompare;
@@ -313,6 +342,10 @@ public class Page {
      * @return the value or null
      */
     public int binarySearch(Object key) {
+        if (longKeys != null) {
+            // null is smaller than all keys
+            return key == null ? -1 : binarySearch(map.longKeyType.getLong(key));
+        }
         int low = 0, high = keys.length - 1;
         // the cached index minus one, so that
         // for the first time (when cachedCompare is 0),
@@ -353,6 +386,29 @@ public class Page {
         // return -(low + 1);
     }
 
+    private int binarySearch(long key) {
+        int low = 0, high = longKeys.length - 1;
+        int x = cachedCompare - 1;
+        if (x < 0 || x > high) {
+            x = high >>> 1;
+        }
+        long[] k = longKeys;
+        while (low <= high) {
+            long v = k[x];
+            if (key > v) {
+                low = x + 1;
+            } else if (key < v) {
+                high = x - 1;
+            } else {
+                cachedCompare = x + 1;
+                return x;
+            }
+            x = (low + high) >>> 1;
+        }
+        cachedCompare = low;
+        return -(low + 1);
+    }
+
     /**
      * Split the page. This modifies the current page.
      *
@@ -364,12 +420,22 @@ public class Page {
     }
 
     private Page splitLeaf(int at) {
-        int a = at, b = keys.length - a;
-        Object[] aKeys = new Object[a];
-        Object[] bKeys = new Object[b];
-        System.arraycopy(keys, 0, aKeys, 0, a);
-        System.arraycopy(keys, a, bKeys, 0, b);
-        keys = aKeys;
+        int a = at, b = getKeyCount() - a;
+        Object[] bKeys = null;
+        long[] bLongKeys = null;
+        if (longKeys != null) {
+            long[] aLongKeys = new long[a];
+            bLongKeys = new long[b];
+            System.arraycopy(longKeys, 0, aLongKeys, 0, a);
+            System.arraycopy(longKeys, a, bLongKeys, 0, b);
+            longKeys = aLongKeys;
+        } else {
+            Object[] aKeys = new Object[a];
+            bKeys = new Object[b];
+            System.arraycopy(keys, 0, aKeys, 0, a);
+            System.arraycopy(keys, a, bKeys, 0, b);
+            keys = aKeys;
+        }
         Object[] aValues = new Object[a];
         Object[] bValues = new Object[b];
         bValues = new Object[b];
@@ -377,19 +443,29 @@ public class Page {
         System.arraycopy(values, a, bValues, 0, b);
         values = aValues;
         totalCount = a;
-        Page newPage = create(map, version, bKeys, bValues, null, bKeys.length, 0);
+        Page newPage = create(map, version, bKeys, bLongKeys, bValues, null, b, 0);
         recalculateMemory();
         return newPage;
     }
 
     private Page splitNode(int at) {
-        int a = at, b = keys.length - a;
-
-        Object[] aKeys = new Object[a];
-        Object[] bKeys = new Object[b - 1];
-        System.arraycopy(keys, 0, aKeys, 0, a);
-        System.arraycopy(keys, a + 1, bKeys, 0, b - 1);
-        keys = aKeys;
+        int a = at, b = getKeyCount() - a;
+
+        Object[] bKeys = null;
+        long[] bLongKeys = null;
+        if (longKeys != null) {
+            long[] aLongKeys = new long[a];
+            bLongKeys = new long[b - 1];
+            System.arraycopy(longKeys, 0, aLongKeys, 0, a);
+            System.arraycopy(longKeys, a + 1, bLongKeys, 0, b - 1);
+            longKeys = aLongKeys;
+        } else {
+            Object[] aKeys = new Object[a];
+            bKeys = new Object[b - 1];
+            System.arraycopy(keys, 0, aKeys, 0, a);
+            System.arraycopy(keys, a + 1, bKeys, 0, b - 1);
+            keys = aKeys;
+        }
 
         PageReference[] aChildren = new PageReference[a + 1];
         PageReference[] bChildren = new PageReference[b];
@@ -406,7 +482,7 @@ public class Page {
         for (PageReference x : bChildren) {
             t += x.count;
         }
-        Page newPage = create(map, version, bKeys, null, bChildren, t, 0);
+        Page newPage = create(map, version, bKeys, bLongKeys, null, bChildren, t, 0);
         recalculateMemory();
         return newPage;
     }
@@ -420,7 +496,7 @@ public class Page {
         if (MVStore.ASSERT) {
             long check = 0;
             if (isLeaf()) {
-                check = keys.length;
+                check = getKeyCount();
             } else {
                 for (PageReference x : children) {
                     check += x.count;
@@ -477,6 +553,11 @@ public class Page {
      * @param key the new key
      */
     public void setKey(int index, Object key) {
+        if (longKeys != null) {
+            longKeys = longKeys.clone();
+            longKeys[index] = map.longKeyType.getLong(key);
+            return;
+        }
         // this is slightly slower:
         // keys = Arrays.copyOf(keys, keys.length);
         keys = keys.clone();
@@ -508,6 +589,34 @@ public class Page {
         return old;
     }
 
+    /**
+     * Get the disk space used by this page and all child pages. The pages
+     * that were not stored yet are not counted.
+     *
+     * @return the maximum number of bytes
+     */
+    public long getDiskSpaceUsed() {
+        long r = 0;
+        if (pos != 0) {
+            r += DataUtils.getPageMaxLength(pos);
+            if (!isLeaf()) {
+                for (int i = 0, size = map.getChildPageCount(this); i < size; i++) {
+                    long c = children[i].pos;
+                    if (c == 0) {
+                        continue;
+                    }
+                    if (DataUtils.getPageType(c) == DataUtils.PAGE_TYPE_LEAF) {
+                        // no need to read a leaf
+                        r += DataUtils.getPageMaxLength(c);
+                    } else {
+                        r += getChildPage(i).getDiskSpaceUsed();
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
     /**
      * Remove this page and all child pages.
      */
@@ -540,17 +649,29 @@ public class Page {
      * @param value the value
      */
     public void insertLeaf(int index, Object key, Object value) {
-        int len = keys.length + 1;
-        Object[] newKeys = new Object[len];
-        DataUtils.copyWithGap(keys, newKeys, len - 1, index);
-        keys = newKeys;
+        int len = getKeyCount() + 1;
+        int keyMemory = insertKey(index, key);
         Object[] newValues = new Object[len];
         DataUtils.copyWithGap(values, newValues, len - 1, index);
         values = newValues;
-        keys[index] = key;
         values[index] = value;
         totalCount++;
-        addMemory(map.getKeyType().getMemory(key) + map.getValueType().getMemory(value));
+        addMemory(keyMemory + map.getValueType().getMemory(value));
+    }
+
+    private int insertKey(int index, Object key) {
+        if (longKeys != null) {
+            long[] newKeys = new long[longKeys.length + 1];
+            DataUtils.copyWithGap(longKeys, newKeys, longKeys.length, index);
+            newKeys[index] = map.longKeyType.getLong(key);
+            longKeys = newKeys;
+            return LONG_KEY_MEMORY;
+        }
+        Object[] newKeys = new Object[keys.length + 1];
+        DataUtils.copyWithGap(keys, newKeys, keys.length, index);
+        newKeys[index] = key;
+        keys = newKeys;
+        return map.getKeyType().getMemory(key);
     }
 
     /**
@@ -561,11 +682,7 @@ public class Page {
      * @param childPage the child page
      */
     public void insertNode(int index, Object key, Page childPage) {
-
-        Object[] newKeys = new Object[keys.length + 1];
-        DataUtils.copyWithGap(keys, newKeys, keys.length, index);
-        newKeys[index] = key;
-        keys = newKeys;
+        int keyMemory = insertKey(index, key);
 
         int childCount = children.length;
         PageReference[] newChildren = new PageReference[childCount + 1];
@@ -574,7 +691,7 @@ public class Page {
         children = newChildren;
 
         totalCount += childPage.totalCount;
-        addMemory(map.getKeyType().getMemory(key) + DataUtils.PAGE_MEMORY_CHILD);
+        addMemory(keyMemory + DataUtils.PAGE_MEMORY_CHILD);
     }
 
     /**
@@ -583,13 +700,21 @@ public class Page {
      * @param index the index
      */
     public void remove(int index) {
-        int keyLength = keys.length;
+        int keyLength = getKeyCount();
         int keyIndex = index >= keyLength ? index - 1 : index;
-        Object old = keys[keyIndex];
-        addMemory(-map.getKeyType().getMemory(old));
-        Object[] newKeys = new Object[keyLength - 1];
-        DataUtils.copyExcept(keys, newKeys, keyLength, keyIndex);
-        keys = newKeys;
+        Object old;
+        if (longKeys != null) {
+            addMemory(-LONG_KEY_MEMORY);
+            long[] newKeys = new long[keyLength - 1];
+            DataUtils.copyExcept(longKeys, newKeys, keyLength, keyIndex);
+            longKeys = newKeys;
+        } else {
+            old = keys[keyIndex];
+            addMemory(-map.getKeyType().getMemory(old));
+            Object[] newKeys = new Object[keyLength - 1];
+            DataUtils.copyExcept(keys, newKeys, keyLength, keyIndex);
+            keys = newKeys;
+        }
 
         if (values != null) {
             old = values[index];
@@ -643,7 +768,6 @@ public class Page {
                     "File corrupted in chunk {0}, expected check value {1}, got {2}", chunkId, checkTest, check);
         }
         int len = DataUtils.readVarInt(buff);
-        keys = new Object[len];
         int type = buff.get();
         boolean node = (type & 1) == DataUtils.PAGE_TYPE_NODE;
         if (node) {
@@ -676,7 +800,42 @@ public class Page {
             buff = ByteBuffer.allocate(l);
             compressor.expand(comp, 0, compLen, buff.array(), buff.arrayOffset(), l);
         }
-        map.getKeyType().read(buff, keys, len, true);
+        if ((type & DataUtils.PAGE_LONG_KEYS) != 0) {
+            longKeys = new long[len];
+            if (len > 0) {
+                long k = DataUtils.readVarLong(buff);
+                longKeys[0] = k;
+                for (int i = 1; i < len; i++) {
+                    k += DataUtils.readVarLong(buff);
+                    longKeys[i] = k;
+                }
+            }
+            if (map.longKeyType == null) {
+                // opened with a key type that keeps key objects
+                DataType keyType = map.getKeyType();
+                if (!(keyType instanceof LongKeyType)) {
+                    throw DataUtils.newIllegalStateException(DataUtils.ERROR_FILE_CORRUPT,
+                            "Map {0} has long keys, but the key type {1} can not convert them", map.getId(),
+                            keyType.getClass().getName());
+                }
+                keys = new Object[len];
+                for (int i = 0; i < len; i++) {
+                    keys[i] = ((LongKeyType) keyType).getKey(longKeys[i]);
+                }
+                longKeys = null;
+            }
+        } else {
+            keys = new Object[len];
+            map.getKeyType().read(buff, keys, len, true);
+            if (map.longKeyType != null) {
+                // written before the keys were kept in long arrays
+                longKeys = new long[len];
+                for (int i = 0; i < len; i++) {
+                    longKeys[i] = map.longKeyType.getLong(keys[i]);
+                }
+                keys = null;
+            }
+        }
         if (!node) {
             values = new Object[len];
             map.getValueType().read(buff, values, len, false);
@@ -694,11 +853,12 @@ public class Page {
      */
     private int write(Chunk chunk, WriteBuffer buff) {
         int start = buff.position();
-        int len = keys.length;
+        int len = getKeyCount();
         int type = children != null ? DataUtils.PAGE_TYPE_NODE : DataUtils.PAGE_TYPE_LEAF;
+        int flags = longKeys != null ? DataUtils.PAGE_LONG_KEYS : 0;
         buff.putInt(0).putShort((byte) 0).putVarInt(map.getId()).putVarInt(len);
         int typePos = buff.position();
-        buff.put((byte) type);
+        buff.put((byte) (type | flags));
         if (type == DataUtils.PAGE_TYPE_NODE) {
             writeChildren(buff);
             for (int i = 0; i <= len; i++) {
@@ -706,7 +866,18 @@ public class Page {
             }
         }
         int compressStart = buff.position();
-        map.getKeyType().write(buff, keys, len, true);
+        if (longKeys != null) {
+            if (len > 0) {
+                long last = longKeys[0];
+                buff.putVarLong(last);
+                for (int i = 1; i < len; i++) {
+                    buff.putVarLong(longKeys[i] - last);
+                    last = longKeys[i];
+                }
+            }
+        } else {
+            map.getKeyType().write(buff, keys, len, true);
+        }
         if (type == DataUtils.PAGE_TYPE_LEAF) {
             map.getValueType().write(buff, values, len, false);
         }
@@ -730,7 +901,7 @@ public class Page {
                 int compLen = compressor.compress(exp, expLen, comp, 0);
                 int plus = DataUtils.getVarIntLen(compLen - expLen);
                 if (compLen + plus < expLen) {
-                    buff.position(typePos).put((byte) (type + compressType));
+                    buff.position(typePos).put((byte) (type + compressType | flags));
                     buff.position(compressStart).putVarInt(expLen - compLen).put(comp, 0, compLen);
                 }
             }
@@ -765,7 +936,7 @@ public class Page {
     }
 
     private void writeChildren(WriteBuffer buff) {
-        int len = keys.length;
+        int len = getKeyCount();
         for (int i = 0; i <= len; i++) {
             buff.putLong(children[i].pos);
         }
@@ -864,13 +1035,18 @@ public class Page {
 
     private void recalculateMemory() {
         int mem = DataUtils.PAGE_MEMORY;
-        DataType keyType = map.getKeyType();
-        for (int i = 0; i < keys.length; i++) {
-            mem += keyType.getMemory(keys[i]);
+        int len = getKeyCount();
+        if (longKeys != null) {
+            mem += len * LONG_KEY_MEMORY;
+        } else {
+            DataType keyType = map.getKeyType();
+            for (int i = 0; i < len; i++) {
+                mem += keyType.getMemory(keys[i]);
+            }
         }
         if (this.isLeaf()) {
             DataType valueType = map.getValueType();
-            for (int i = 0; i < keys.length; i++) {
+            for (int i = 0; i < len; i++) {
                 mem += valueType.getMemory(values[i]);
             }
         } else {
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.cluster.router;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lealone.cluster.dht.Token;
+import org.lealone.cluster.locator.TokenMetaData;
+import org.lealone.cluster.service.StorageService;
+import org.lealone.command.dml.Select;
+import org.lealone.dbobject.table.TableFilter;
+import org.lealone.engine.Session;
+import org.lealone.jdbc.JdbcConnection;
+import org.lealone.test.sql.SqlTestBase;
+import org.lealone.value.ValueInt;
+
+// the nodes a query is sent to, on a ring of three nodes that own the keys up to 100, 200 and 300
+public class P2PRouterTest extends SqlTestBase {
+    private static final InetAddress LOCAL = getAddress("127.0.0.1");
+    private static final InetAddress A = getAddress("127.0.0.11");
+    private static final InetAddress B = getAddress("127.0.0.12");
+    private static final InetAddress C = getAddress("127.0.0.13");
+
+    private static Session session;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        ClusterTestConfig.load();
+        TokenMetaData tokenMetaData = StorageService.instance.getTokenMetaData();
+        tokenMetaData.updateNormalToken(getToken(100), A);
+        tokenMetaData.updateNormalToken(getToken(200), B);
+        tokenMetaData.updateNormalToken(getToken(300), C);
+
+        setEmbedded(true);
+        setInMemory(true);
+        try {
+            conn = getConnection();
+        } finally {
+            reset();
+        }
+        stmt = conn.createStatement();
+        session = (Session) ((JdbcConnection) conn).getSession();
+        stmt.executeUpdate("DROP TABLE IF EXISTS P2PRouterTest");
+        stmt.executeUpdate("CREATE TABLE P2PRouterTest(pk int NOT NULL PRIMARY KEY, f1 int)");
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        StorageService.instance.getTokenMetaData().clearUnsafe();
+        SqlTestBase.tearDownAfterClass();
+    }
+
+    @Test
+    public void testInList() {
+        assertEquals(set(A, B, C), P2PRouter.getTargetEndpointsIfInList(getTableFilter("pk IN(50, 150, 250)")));
+        assertEquals(set(B), P2PRouter.getTargetEndpointsIfInList(getTableFilter("pk IN(150, 160, 200)")));
+        // the keys after the last token belong to the first node
+        assertEquals(set(A, C), P2PRouter.getTargetEndpointsIfInList(getTableFilter("pk IN(250, 350)")));
+        // NULL matches no row
+        assertEquals(set(B), P2PRouter.getTargetEndpointsIfInList(getTableFilter("pk IN(NULL, 150)")));
+        assertNull(P2PRouter.getTargetEndpointsIfInList(getTableFilter("f1 IN(50, 150)")));
+        assertNull(P2PRouter.getTargetEndpointsIfInList(getTableFilter("pk = 50")));
+    }
+
+    @Test
+    public void testRange() {
+        assertEquals(set(B), P2PRouter.getTargetEndpointsIfRange(getTableFilter("pk BETWEEN 120 AND 180")));
+        assertEquals(set(A, B), P2PRouter.getTargetEndpointsIfRange(getTableFilter("pk BETWEEN 50 AND 150")));
+        assertEquals(set(A, B, C), P2PRouter.getTargetEndpointsIfRange(getTableFilter("pk BETWEEN 50 AND 300")));
+
+        // the ranges that wrap the ring
+        assertEquals(set(C, A), P2PRouter.getTargetEndpointsIfRange(getTableFilter("pk BETWEEN 250 AND 350")));
+        assertEquals(set(A), P2PRouter.getTargetEndpointsIfRange(getTableFilter("pk BETWEEN 350 AND 400")));
+
+        // the ranges that are open at the end go up to the largest key
+        assertEquals(set(C, A), P2PRouter.getTargetEndpointsIfRange(getTableFilter("pk >= 250")));
+        assertEquals(set(A), P2PRouter.getTargetEndpointsIfRange(getTableFilter("pk > 350")));
+
+        // the ranges that are open at the start, or have negative keys, may be anywhere
+        assertNull(P2PRouter.getTargetEndpointsIfRange(getTableFilter("pk <= 150")));
+        assertNull(P2PRouter.getTargetEndpointsIfRange(getTableFilter("pk BETWEEN -10 AND 50")));
+        assertNull(P2PRouter.getTargetEndpointsIfRange(getTableFilter("f1 BETWEEN 50 AND 150")));
+    }
+
+    @Test
+    public void testLiveOwners() {
+        // C is down
+        Set<InetAddress> live = set(LOCAL, A, B);
+        assertEquals(set(A, B), P2PRouter.getLiveOwners(getTableFilter("pk IN(50, 150, 250)"), set(live)));
+        assertEquals(set(B), P2PRouter.getLiveOwners(getTableFilter("pk BETWEEN 120 AND 250"), set(live)));
+        // no live node has the rows, the local node returns the empty result
+        assertEquals(set(LOCAL), P2PRouter.getLiveOwners(getTableFilter("pk IN(250)"), set(live)));
+        assertEquals(set(LOCAL), P2PRouter.getLiveOwners(getTableFilter("pk BETWEEN 220 AND 280"), set(live)));
+        // the rows may be on any node
+        assertEquals(live, P2PRouter.getLiveOwners(getTableFilter("pk <= 150"), set(live)));
+        assertEquals(live, P2PRouter.getLiveOwners(getTableFilter("f1 = 150"), set(live)));
+    }
+
+    private static TableFilter getTableFilter(String condition) {
+        Select select = (Select) session.prepare("SELECT * FROM P2PRouterTest WHERE " + condition, true);
+        return select.getTopTableFilter();
+    }
+
+    private static Token getToken(int key) {
+        return StorageService.getPartitioner().getToken(ByteBuffer.wrap(ValueInt.get(key).getBytesNoCopy()));
+    }
+
+    private static Set<InetAddress> set(InetAddress... addresses) {
+        return new HashSet<>(Arrays.asList(addresses));
+    }
+
+    private static Set<InetAddress> set(Set<InetAddress> addresses) {
+        return new HashSet<>(addresses);
+    }
+
+    private static InetAddress getAddress(String host) {
+        try {
+            return InetAddress.getByName(host);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
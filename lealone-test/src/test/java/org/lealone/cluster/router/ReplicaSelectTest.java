@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.cluster.router;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lealone.api.ErrorCode;
+import org.lealone.cluster.config.DatabaseDescriptor;
+import org.lealone.cluster.locator.DynamicEndpointSnitch;
+import org.lealone.message.DbException;
+import org.lealone.result.LocalResult;
+import org.lealone.result.ResultInterface;
+import org.lealone.test.UnitTestBase;
+
+// the replicas are answered by queries that wait and then return a result or fail
+public class ReplicaSelectTest extends UnitTestBase {
+    private static final long SLOW = 3000;
+
+    private static DynamicEndpointSnitch snitch;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        ClusterTestConfig.load();
+        assertTrue(DatabaseDescriptor.isSpeculativeReadRetry());
+        snitch = (DynamicEndpointSnitch) DatabaseDescriptor.getEndpointSnitch();
+    }
+
+    // the second replica is asked when the first one takes longer than its p99 latency
+    @Test
+    public void testSlowReplica() throws Exception {
+        InetAddress a = getAddress(21), b = getAddress(22), c = getAddress(23);
+        for (int i = 0; i < 100; i++) {
+            snitch.receiveTiming(a, 50);
+        }
+        assertEquals(50, (long) Math.ceil(snitch.getLatency(a, 0.99)));
+
+        TestSelect select = new TestSelect();
+        select.answer(a, SLOW);
+        ResultInterface result = select.answer(b, 0);
+        select.answer(c, 0);
+        long start = System.currentTimeMillis();
+        assertSame(result, select.execute(Arrays.asList(a, b, c)));
+        assertTrue(System.currentTimeMillis() - start < SLOW);
+        assertTrue(select.getStartTime(b) - select.getStartTime(a) >= 40);
+        // at most two replicas are asked at the same time
+        assertFalse(select.isStarted(c));
+
+        // the delay is that of the first replica, the second one failing does not stop the third one
+        select = new TestSelect();
+        select.answer(a, SLOW);
+        select.fail(b, 0);
+        result = select.answer(c, 0);
+        assertSame(result, select.execute(Arrays.asList(a, b, c)));
+    }
+
+    // without a latency, a replica is only asked if the one before failed
+    @Test
+    public void testNoLatency() throws Exception {
+        InetAddress a = getAddress(31), b = getAddress(32);
+        TestSelect select = new TestSelect();
+        ResultInterface result = select.answer(a, 200);
+        select.answer(b, 0);
+        assertSame(result, select.execute(Arrays.asList(a, b)));
+        assertFalse(select.isStarted(b));
+    }
+
+    @Test
+    public void testFailingReplica() throws Exception {
+        InetAddress a = getAddress(41), b = getAddress(42), c = getAddress(43);
+        TestSelect select = new TestSelect();
+        select.fail(a, 0);
+        select.fail(b, 100);
+        ResultInterface result = select.answer(c, 0);
+        assertSame(result, select.execute(Arrays.asList(a, b, c)));
+        assertTrue(select.getStartTime(c) >= select.getStartTime(b));
+
+        // the error of the last replica
+        select = new TestSelect();
+        select.fail(a, 0);
+        select.fail(b, 0);
+        try {
+            select.execute(Arrays.asList(a, b));
+            fail();
+        } catch (DbException e) {
+            assertEquals(ErrorCode.CONNECTION_BROKEN_1, e.getErrorCode());
+            assertTrue(e.getMessage().contains(b.getHostAddress()));
+        }
+    }
+
+    private static InetAddress getAddress(int i) throws Exception {
+        return InetAddress.getByName("127.0.0." + i);
+    }
+
+    private static class TestSelect extends ReplicaSelect {
+        private final Map<InetAddress, Callable<ResultInterface>> queries = new HashMap<>();
+        private final Map<InetAddress, Long> startTimes = new ConcurrentHashMap<>();
+
+        TestSelect() {
+            super(null, 0, false);
+        }
+
+        ResultInterface answer(InetAddress endpoint, final long delay) {
+            final ResultInterface result = new LocalResult();
+            queries.put(endpoint, new Callable<ResultInterface>() {
+                @Override
+                public ResultInterface call() throws Exception {
+                    Thread.sleep(delay);
+                    return result;
+                }
+            });
+            return result;
+        }
+
+        void fail(final InetAddress endpoint, final long delay) {
+            queries.put(endpoint, new Callable<ResultInterface>() {
+                @Override
+                public ResultInterface call() throws Exception {
+                    Thread.sleep(delay);
+                    throw DbException.get(ErrorCode.CONNECTION_BROKEN_1, endpoint.getHostAddress());
+                }
+            });
+        }
+
+        boolean isStarted(InetAddress endpoint) {
+            return startTimes.containsKey(endpoint);
+        }
+
+        long getStartTime(InetAddress endpoint) {
+            return startTimes.get(endpoint);
+        }
+
+        @Override
+        Callable<ResultInterface> createQuery(InetAddress endpoint) {
+            startTimes.put(endpoint, System.currentTimeMillis());
+            return queries.get(endpoint);
+        }
+    }
+}
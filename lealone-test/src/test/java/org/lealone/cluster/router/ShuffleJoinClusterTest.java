@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.cluster.router;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lealone.engine.Constants;
+import org.lealone.test.sql.SqlTestBase;
+
+// a shuffle join on the nodes started by OneDCNode1 to OneDCNode3, it is skipped if they are not running.
+// with a replication_factor greater than 1 in lealone-onedc.yaml, each row must still be joined once.
+public class ShuffleJoinClusterTest extends SqlTestBase {
+    private static final int ROWS = 100;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        Assume.assumeTrue(isRunning("127.0.0.2") && isRunning("127.0.0.3"));
+        setHost("127.0.0.1");
+        SqlTestBase.setUpBeforeClass();
+    }
+
+    private static boolean isRunning(String host) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, Constants.DEFAULT_TCP_PORT), 1000);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS ShuffleJoinClusterTest1");
+        executeUpdate("DROP TABLE IF EXISTS ShuffleJoinClusterTest2");
+        executeUpdate("CREATE TABLE ShuffleJoinClusterTest1(pk int NOT NULL PRIMARY KEY, id int, name varchar)");
+        executeUpdate("CREATE TABLE ShuffleJoinClusterTest2(pk int NOT NULL PRIMARY KEY, id2 int, name2 varchar)");
+        for (int i = 1; i <= ROWS; i++) {
+            executeUpdate("INSERT INTO ShuffleJoinClusterTest1 VALUES(" + i + ", " + i % 10 + ", 'a" + i + "')");
+            executeUpdate("INSERT INTO ShuffleJoinClusterTest2 VALUES(" + i + ", " + i % 20 + ", 'b" + i + "')");
+        }
+
+        testJoin();
+        testGroupBy();
+        testCondition();
+    }
+
+    // every pair of rows with the same key, once; most of them are on different nodes
+    void testJoin() throws Exception {
+        sql = "SELECT t1.pk, t2.pk FROM ShuffleJoinClusterTest1 t1 JOIN ShuffleJoinClusterTest2 t2 ON t1.id = t2.id2";
+        ArrayList<String> rows = new ArrayList<>();
+        for (int pk1 = 1; pk1 <= ROWS; pk1++) {
+            for (int pk2 = 1; pk2 <= ROWS; pk2++) {
+                if (pk1 % 10 == pk2 % 20) {
+                    rows.add(pk1 + " " + pk2 + " ");
+                }
+            }
+        }
+        assertEquals(500, rows.size());
+        assertEquals(toString(rows), getAll(true));
+    }
+
+    // the groups of the nodes are merged by the coordinator
+    void testGroupBy() throws Exception {
+        sql = "SELECT t1.id, count(*) FROM ShuffleJoinClusterTest1 t1 JOIN ShuffleJoinClusterTest2 t2"
+                + " ON t1.id = t2.id2 GROUP BY t1.id";
+        ArrayList<String> rows = new ArrayList<>();
+        for (int id = 0; id < 10; id++) {
+            rows.add(id + " 50 ");
+        }
+        assertEquals(toString(rows), getAll(true));
+    }
+
+    // the conditions on one table are evaluated before the rows are sent
+    void testCondition() throws Exception {
+        sql = "SELECT count(*) FROM ShuffleJoinClusterTest1 t1 JOIN ShuffleJoinClusterTest2 t2"
+                + " ON t1.id = t2.id2 WHERE t1.pk <= 10 AND t2.name2 <> 'b1'";
+        int count = 0;
+        for (int pk1 = 1; pk1 <= 10; pk1++) {
+            for (int pk2 = 2; pk2 <= ROWS; pk2++) { // pk 1 is the row of 'b1'
+                if (pk1 % 10 == pk2 % 20) {
+                    count++;
+                }
+            }
+        }
+        assertEquals(count, getIntValue(1, true));
+    }
+
+    private static String toString(ArrayList<String> rows) {
+        Collections.sort(rows);
+        StringBuilder buff = new StringBuilder();
+        for (String row : rows) {
+            buff.append(row).append('\n');
+        }
+        return buff.toString();
+    }
+}
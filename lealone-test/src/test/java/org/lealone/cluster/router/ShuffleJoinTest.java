@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.cluster.router;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.util.ArrayList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lealone.cluster.io.DataOutputStreamPlus;
+import org.lealone.command.dml.Select;
+import org.lealone.dbobject.index.Cursor;
+import org.lealone.dbobject.index.Index;
+import org.lealone.dbobject.table.Table;
+import org.lealone.dbobject.table.TableFilter;
+import org.lealone.engine.Session;
+import org.lealone.jdbc.JdbcConnection;
+import org.lealone.result.ResultInterface;
+import org.lealone.test.sql.SqlTestBase;
+import org.lealone.value.Value;
+import org.lealone.value.ValueInt;
+import org.lealone.value.ValueNull;
+import org.lealone.value.ValueString;
+
+// the parts of a shuffle join that do not need a cluster
+public class ShuffleJoinTest extends SqlTestBase {
+
+    private static Session session;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        setEmbedded(true);
+        setInMemory(true);
+        try {
+            conn = getConnection();
+        } finally {
+            reset();
+        }
+        stmt = conn.createStatement();
+        session = (Session) ((JdbcConnection) conn).getSession();
+    }
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS ShuffleJoinTest1");
+        executeUpdate("DROP TABLE IF EXISTS ShuffleJoinTest2");
+        executeUpdate("CREATE TABLE ShuffleJoinTest1(pk int NOT NULL PRIMARY KEY, id int, name varchar)");
+        executeUpdate("CREATE TABLE ShuffleJoinTest2(pk int NOT NULL PRIMARY KEY, id2 int, name2 varchar)");
+        executeUpdate("INSERT INTO ShuffleJoinTest1 SELECT x, MOD(x, 10), 'a' || x FROM SYSTEM_RANGE(1, 100)");
+        executeUpdate("INSERT INTO ShuffleJoinTest2 SELECT x, MOD(x, 20), 'b' || x FROM SYSTEM_RANGE(1, 100)");
+
+        testShuffleIndex();
+        testShuffleRows();
+        testScanIndex();
+    }
+
+    void testShuffleIndex() throws Exception {
+        Table table = session.getDatabase().getSchema("PUBLIC").getTableOrView(session, "SHUFFLEJOINTEST1");
+        ArrayList<Value[]> rows = getRows(1, 4, 0);
+        Index index = new ShuffleIndex(rows, table);
+        assertEquals(3, index.getRowCount(session));
+        assertEquals(3, index.getRowCountApproximation());
+
+        // the rows are always read in full, in the order they arrived
+        Cursor cursor = index.find(session, null, null);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(cursor.next());
+            assertEquals(i, cursor.get().getValue(0).getInt());
+            assertEquals("n" + i, cursor.getSearchRow().getValue(2).getString());
+        }
+        assertFalse(cursor.next());
+        assertFalse(cursor.previous());
+    }
+
+    void testShuffleRows() throws Exception {
+        ArrayList<Value[]> rows = getRows(1, 2500, 0);
+        rows.add(new Value[] { ValueInt.get(0), ValueNull.INSTANCE, ValueNull.INSTANCE });
+        ShuffleRows shuffleRows = new ShuffleRows("shuffle-1", 1, 3, rows);
+
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        ShuffleRows.serializer.serialize(shuffleRows, new DataOutputStreamPlus(buff), 0);
+        byte[] bytes = buff.toByteArray();
+        assertEquals(bytes.length, ShuffleRows.serializer.serializedSize(shuffleRows, 0));
+
+        ShuffleRows copy = ShuffleRows.serializer.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)), 0);
+        assertEquals("shuffle-1", copy.shuffleId);
+        assertEquals(1, copy.side);
+        assertEquals(3, copy.batchCount);
+        assertEquals(rows.size(), copy.rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Value[] expected = rows.get(i), row = copy.rows.get(i);
+            assertEquals(expected.length, row.length);
+            for (int j = 0; j < row.length; j++) {
+                assertEquals(expected[j], row[j]);
+            }
+        }
+
+        // an empty last batch
+        shuffleRows = new ShuffleRows("shuffle-2", 0, 1, new ArrayList<Value[]>());
+        buff.reset();
+        ShuffleRows.serializer.serialize(shuffleRows, new DataOutputStreamPlus(buff), 0);
+        copy = ShuffleRows.serializer.deserialize(new DataInputStream(new ByteArrayInputStream(buff.toByteArray())),
+                0);
+        assertEquals(0, copy.rows.size());
+        assertEquals(1, copy.batchCount);
+    }
+
+    // the rows of a partition are joined with a hash join
+    void testScanIndex() throws Exception {
+        String query = "SELECT count(*) FROM ShuffleJoinTest1 t1 JOIN ShuffleJoinTest2 t2 ON t1.id = t2.id2";
+        assertTrue(explain(query).contains("HASH JOIN"));
+        Select select = (Select) session.prepare(query, true);
+        select.setLocal(true);
+        TableFilter[] filters = { select.getTopTableFilter(), select.getTopTableFilter().getJoin() };
+
+        // id 0 to 4, once each; id2 0 to 9, once each, and 10 to 19
+        assertEquals(5, count(select, filters, getRows(0, 5, 0), getRows(0, 20, 0)));
+
+        // the hash table is built again from the new rows: id 0 to 9 twice
+        ArrayList<Value[]> rows = getRows(0, 10, 0);
+        rows.addAll(getRows(0, 10, 100));
+        assertEquals(20, count(select, filters, rows, getRows(0, 20, 0)));
+        assertEquals(0, count(select, filters, rows, new ArrayList<Value[]>()));
+    }
+
+    private static int count(Select select, TableFilter[] filters, ArrayList<Value[]> rows1,
+            ArrayList<Value[]> rows2) {
+        ArrayList<ArrayList<Value[]>> rows = new ArrayList<>();
+        rows.add(rows1);
+        rows.add(rows2);
+        Index[] indexes = new Index[2];
+        for (int i = 0; i < 2; i++) {
+            TableFilter f = filters[i];
+            // the rows of the join column are in the second column of both tables
+            indexes[i] = new ShuffleIndex(rows.get(f.getTable().getName().endsWith("1") ? 0 : 1), f.getTable());
+        }
+        select.setScanIndexes(filters, indexes);
+        ResultInterface result = select.queryLocal(0);
+        assertTrue(result.next());
+        int count = result.currentRow()[0].getInt();
+        result.close();
+        return count;
+    }
+
+    private String explain(String query) throws Exception {
+        sql = "EXPLAIN " + query;
+        return getStringValue(1, true);
+    }
+
+    // rows with the given join keys, and primary keys that start at the given offset
+    private static ArrayList<Value[]> getRows(int from, int to, int offset) {
+        ArrayList<Value[]> rows = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            rows.add(new Value[] { ValueInt.get(offset + i), ValueInt.get(i), ValueString.get("n" + i) });
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.command.router;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lealone.command.Prepared;
+import org.lealone.command.dml.Select;
+import org.lealone.engine.Session;
+import org.lealone.jdbc.JdbcConnection;
+import org.lealone.result.ResultInterface;
+import org.lealone.test.sql.SqlTestBase;
+import org.lealone.value.Value;
+
+// the sorted results of the nodes are the rows of one node each, as the nodes return them:
+// sorted, without the offset, and with at most offset + limit rows
+public class SortedResultTest extends SqlTestBase {
+    private static final int NODES = 3;
+
+    private static Session session;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        setEmbedded(true);
+        setInMemory(true);
+        try {
+            conn = getConnection();
+        } finally {
+            reset();
+        }
+        stmt = conn.createStatement();
+        session = (Session) ((JdbcConnection) conn).getSession();
+    }
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS SortedResultTest");
+        executeUpdate("CREATE TABLE SortedResultTest(pk int NOT NULL PRIMARY KEY, name varchar, node int)");
+        // node 2 has no rows, "b" and "c" are on several nodes
+        executeUpdate("INSERT INTO SortedResultTest VALUES(1, 'a', 0), (2, 'b', 0), (3, 'b', 0), (4, 'd', 0),"
+                + " (5, 'b', 1), (6, 'c', 1), (7, 'c', 1), (8, NULL, 1), (9, 'c', 0)");
+
+        testLimitAndOffset();
+        testEmptyNodes();
+    }
+
+    void testLimitAndOffset() throws Exception {
+        String select = "SELECT name, node FROM SortedResultTest";
+        assertSortedResult(select, "ORDER BY name", 0);
+        assertSortedResult(select, "ORDER BY name DESC", 0);
+        assertSortedResult(select, "ORDER BY name LIMIT 3", 0);
+        // the offset ends within the rows of "b", which are on two nodes
+        assertSortedResult(select, "ORDER BY name LIMIT 3 OFFSET 2", 0);
+        assertSortedResult(select, "ORDER BY name LIMIT 2 OFFSET 4", 0);
+        assertSortedResult(select, "ORDER BY name DESC LIMIT 4 OFFSET 1", 0);
+        assertSortedResult(select, "ORDER BY name LIMIT NULL OFFSET 7", 0);
+        assertSortedResult(select, "ORDER BY name LIMIT 5 OFFSET 20", 0);
+        assertSortedResult(select, "ORDER BY name LIMIT 0", 0);
+        // the maximum number of rows of the statement is a limit too
+        assertSortedResult(select, "ORDER BY name LIMIT 5 OFFSET 1", 2);
+        assertSortedResult(select, "ORDER BY name", 4);
+    }
+
+    void testEmptyNodes() throws Exception {
+        String select = "SELECT name, node FROM SortedResultTest WHERE pk > 100";
+        assertSortedResult(select, "ORDER BY name", 0);
+        assertSortedResult(select, "ORDER BY name LIMIT 3 OFFSET 1", 0);
+    }
+
+    // rows that are equal are returned in the order of the nodes, the same
+    // as when the rows of all nodes are sorted by the node too
+    private void assertSortedResult(String select, String orderBy, int maxRows) throws Exception {
+        String where = select.contains(" WHERE ") ? " AND " : " WHERE ";
+        String[] sort = orderBy.split(" LIMIT | OFFSET ", 2);
+        String expected = select + " " + sort[0] + ", node"
+                + (sort.length > 1 ? orderBy.substring(sort[0].length()) : "");
+        stmt.setMaxRows(maxRows);
+        List<String> expectedRows = getRows(stmt.executeQuery(expected));
+        stmt.setMaxRows(0);
+
+        Select s = (Select) session.prepare(select + " " + orderBy, true);
+        int nodeLimit = SortedResult.getNodeLimit(maxRows, session, s);
+        List<Future<ResultInterface>> futures = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            // the nodes do not skip the offset
+            Prepared p = session.prepare(select + where + "node = " + i + " " + sort[0]
+                    + (nodeLimit >= 0 ? " LIMIT " + nodeLimit : ""), true);
+            futures.add(getFuture(p.query(0)));
+        }
+        SortedResult result = new SortedResult(maxRows, session, s, futures);
+        assertEquals(2, result.getVisibleColumnCount());
+        assertEquals(expectedRows.size(), result.getRowCount());
+        ArrayList<String> rows = new ArrayList<>();
+        while (result.next()) {
+            assertEquals(rows.size(), result.getRowId());
+            Value[] row = result.currentRow();
+            rows.add(row[0].getString() + " " + row[1].getInt());
+        }
+        assertEquals(orderBy + " " + maxRows, expectedRows, rows);
+        result.close();
+    }
+
+    private static List<String> getRows(ResultSet rs) throws Exception {
+        ArrayList<String> rows = new ArrayList<>();
+        while (rs.next()) {
+            rows.add(rs.getString(1) + " " + rs.getInt(2));
+        }
+        rs.close();
+        return rows;
+    }
+
+    private static Future<ResultInterface> getFuture(final ResultInterface result) {
+        FutureTask<ResultInterface> future = new FutureTask<>(new Callable<ResultInterface>() {
+            @Override
+            public ResultInterface call() {
+                return result;
+            }
+        });
+        future.run();
+        return future;
+    }
+}
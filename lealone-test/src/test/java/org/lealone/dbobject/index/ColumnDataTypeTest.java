@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.dbobject.index;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.lealone.test.UnitTestBase;
+import org.lealone.type.WriteBuffer;
+import org.lealone.value.CompareMode;
+import org.lealone.value.Value;
+import org.lealone.value.ValueStringIgnoreCase;
+
+public class ColumnDataTypeTest extends UnitTestBase {
+
+    private final ColumnDataType dataType = new ColumnDataType(CompareMode.getInstance(null, 0, false), null, false);
+
+    @Test
+    public void run() {
+        testRunLength();
+        testDictionary();
+    }
+
+    // 'Abc' and 'ABC' are equal, but they are not one run
+    void testRunLength() {
+        Value[] values = new Value[300];
+        String[] strings = { "Abc", "ABC", "abc" };
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ValueStringIgnoreCase.get(strings[i / 100]);
+        }
+        assertSameStrings(values, roundTrip(values));
+    }
+
+    // the spellings are different dictionary entries
+    void testDictionary() {
+        Value[] values = new Value[300];
+        String[] strings = { "Abc", "ABC", "abc", "aBc" };
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ValueStringIgnoreCase.get(strings[i % strings.length]);
+        }
+        assertSameStrings(values, roundTrip(values));
+    }
+
+    private Object[] roundTrip(Value[] values) {
+        WriteBuffer buff = new WriteBuffer();
+        dataType.write(buff, values, values.length, false);
+        ByteBuffer bytes = buff.getBuffer();
+        bytes.flip();
+        Object[] copy = new Object[values.length];
+        dataType.read(bytes, copy, copy.length, false);
+        return copy;
+    }
+
+    private static void assertSameStrings(Value[] expected, Object[] values) {
+        for (int i = 0; i < expected.length; i++) {
+            Value v = (Value) values[i];
+            assertEquals(Value.STRING_IGNORECASE, v.getType());
+            assertEquals(expected[i].getString(), v.getString());
+        }
+    }
+}
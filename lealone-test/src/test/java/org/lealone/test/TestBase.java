@@ -100,6 +100,10 @@ public class TestBase extends Assert {
     }
 
     public static String getURL() {
+        return getURL(DB_NAME);
+    }
+
+    public static String getURL(String dbName) {
         //addConnectionParameter("DATABASE_TO_UPPER", "false");
         //addConnectionParameter("ALIAS_COLUMN_NAME", "true");
 
@@ -127,7 +131,7 @@ public class TestBase extends Assert {
             separatorChar = '&';
         }
 
-        url.append(DB_NAME).append(firstSeparatorChar).append("default_storage_engine=").append(storageEngineName);
+        url.append(dbName).append(firstSeparatorChar).append("default_storage_engine=").append(storageEngineName);
 
         for (Map.Entry<String, String> e : connectionParameters.entrySet())
             url.append(separatorChar).append(e.getKey()).append('=').append(e.getValue());
@@ -139,4 +143,8 @@ public class TestBase extends Assert {
         return DriverManager.getConnection(getURL(), "sa", "");
     }
 
+    public static Connection getConnection(String dbName) throws Exception {
+        return DriverManager.getConnection(getURL(dbName), "sa", "");
+    }
+
 }
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.engine;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Test;
+import org.lealone.api.ErrorCode;
+import org.lealone.engine.Constants;
+import org.lealone.fs.FileUtils;
+import org.lealone.test.UnitTestBase;
+
+public class DatabaseOpenTest extends UnitTestBase {
+    private static final String DIR = TEST_DIR + "/DatabaseOpenTest";
+    private static final String URL = Constants.URL_PREFIX + Constants.URL_EMBED + DIR + "/DatabaseOpenTest"
+            + ";default_storage_engine=" + DEFAULT_STORAGE_ENGINE_NAME + ";DB_CLOSE_DELAY=0";
+
+    private static final int TABLES = 300;
+    private static final int ROWS = 100;
+
+    // the tables and indexes are opened lazily when the database is opened again
+    @Test
+    public void run() throws Exception {
+        FileUtils.deleteRecursive(DIR, false);
+        try {
+            Connection conn = DriverManager.getConnection(URL, "sa", "");
+            Statement stmt = conn.createStatement();
+            for (int i = 0; i < TABLES; i++) {
+                stmt.executeUpdate("CREATE TABLE DatabaseOpenTest" + i + "(f1 int PRIMARY KEY, f2 int, f3 int)");
+                stmt.executeUpdate("CREATE UNIQUE INDEX DatabaseOpenTest" + i + "_f2 ON DatabaseOpenTest" + i + "(f2)");
+                stmt.executeUpdate("INSERT INTO DatabaseOpenTest" + i + " SELECT X, X * 10, MOD(X, 7)"
+                        + " FROM SYSTEM_RANGE(1, " + ROWS + ")");
+            }
+            conn.close();
+
+            conn = DriverManager.getConnection(URL, "sa", "");
+            stmt = conn.createStatement();
+            for (int i = 0; i < TABLES; i += 37) {
+                String table = "DatabaseOpenTest" + i;
+                assertEquals(ROWS, getInt(stmt, "SELECT count(*) FROM " + table));
+                assertEquals(5, getInt(stmt, "SELECT f1 FROM " + table + " WHERE f2 = 50"));
+                assertEquals(30, getInt(stmt, "SELECT f2 FROM " + table + " WHERE f1 = 3"));
+                try {
+                    stmt.executeUpdate("INSERT INTO " + table + " VALUES(" + (ROWS + 1) + ", 10, 0)");
+                    fail();
+                } catch (SQLException e) {
+                    assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getErrorCode());
+                }
+                stmt.executeUpdate("INSERT INTO " + table + "(f1, f2) VALUES(" + (ROWS + 1) + ", 0)");
+                assertEquals(ROWS + 1, getInt(stmt, "SELECT count(*) FROM " + table));
+            }
+            conn.close();
+
+            // the threads that parsed the meta records are gone
+            for (Thread t : Thread.getAllStackTraces().keySet()) {
+                assertFalse(t.getName(), t.getName().contains("meta record parser"));
+            }
+        } finally {
+            FileUtils.deleteRecursive(DIR, false);
+        }
+    }
+
+    private static int getInt(Statement stmt, String sql) throws SQLException {
+        ResultSet rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        int value = rs.getInt(1);
+        rs.close();
+        return value;
+    }
+}
@@ -21,9 +21,12 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.lealone.engine.Constants;
 import org.lealone.test.TestBase;
 
 public class SqlTestBase extends TestBase {
@@ -148,6 +151,37 @@ public class SqlTestBase extends TestBase {
         rs.next();
     }
 
+    // all rows of the query, one per line; they are sorted if the order of the result does not matter
+    public String getAll(boolean sort) throws Exception {
+        ArrayList<String> rows = new ArrayList<>();
+        rs = stmt.executeQuery(sql);
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            StringBuilder buff = new StringBuilder();
+            for (int i = 1; i <= columnCount; i++) {
+                buff.append(rs.getString(i)).append(' ');
+            }
+            rows.add(buff.toString());
+        }
+        closeResultSet();
+        if (sort)
+            Collections.sort(rows);
+        StringBuilder buff = new StringBuilder();
+        for (String row : rows)
+            buff.append(row).append('\n');
+        return buff.toString();
+    }
+
+    // a test that changes MAX_MEMORY_ROWS sets it back to this value
+    public int getMaxMemoryRows() throws Exception {
+        rs = stmt.executeQuery("SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'MAX_MEMORY_ROWS'");
+        try {
+            return rs.next() ? Integer.parseInt(rs.getString(1)) : Constants.DEFAULT_MAX_MEMORY_ROWS;
+        } finally {
+            closeResultSet();
+        }
+    }
+
     public void closeResultSet() throws Exception {
         rs.close();
         rs = null;
@@ -17,15 +17,24 @@
  */
 package org.lealone.test.sql.dml;
 
+import java.util.ArrayList;
+
 import org.junit.Test;
+import org.lealone.command.FrontendCommand;
+import org.lealone.engine.FrontendSession;
+import org.lealone.jdbc.JdbcConnection;
 import org.lealone.test.sql.SqlTestBase;
+import org.lealone.value.Value;
+import org.lealone.value.ValueInt;
+import org.lealone.value.ValueString;
 
 public class InsertTest extends SqlTestBase {
     @Test
-    public void run() {
+    public void run() throws Exception {
         createTable("InsertTest");
         createTable("InsertTest2");
         testInsert();
+        testInsertRows();
     }
 
     void testInsert() {
@@ -76,4 +85,38 @@ public class InsertTest extends SqlTestBase {
         sql = "INSERT INTO InsertTest(pk, f1, f2, f3) " + "DIRECT SELECT pk, f1, f2, f3 FROM InsertTest2";
         assertEquals(12, executeUpdate(sql));
     }
+
+    //行以值的形式发给服务器，不再生成SQL
+    void testInsertRows() throws Exception {
+        executeUpdate("DELETE FROM InsertTest");
+        FrontendSession session = (FrontendSession) ((JdbcConnection) conn).getSession();
+        sql = "INSERT INTO InsertTest(pk, f1, f2, f3) VALUES(?, ?, ?, ?)";
+        FrontendCommand c = session.getCachedCommand(sql);
+        assertTrue(c == session.getCachedCommand(sql));
+
+        ArrayList<Value[]> rows = new ArrayList<>();
+        for (int i = 10; i < 20; i++) {
+            rows.add(new Value[] { ValueString.get("" + i), ValueString.get("a1"), ValueString.get("b"),
+                    ValueInt.get(i) });
+        }
+        assertEquals(10, c.executeUpdate(rows));
+
+        sql = "SELECT count(*), sum(f3) FROM InsertTest";
+        executeQuery();
+        assertEquals(10, getIntValue(1));
+        assertEquals(145, getIntValue(2, true));
+
+        c = session.getCachedCommand("MERGE INTO InsertTest(pk, f1, f2, f3) KEY(pk) VALUES(?, ?, ?, ?)");
+        rows.clear();
+        rows.add(new Value[] { ValueString.get("10"), ValueString.get("a2"), ValueString.get("b"), ValueInt.get(100) });
+        rows.add(new Value[] { ValueString.get("20"), ValueString.get("a2"), ValueString.get("b"), ValueInt.get(20) });
+        assertEquals(2, c.executeUpdate(rows));
+
+        sql = "SELECT count(*), sum(f3) FROM InsertTest";
+        executeQuery();
+        assertEquals(11, getIntValue(1));
+        assertEquals(255, getIntValue(2, true));
+
+        executeUpdate("DELETE FROM InsertTest");
+    }
 }
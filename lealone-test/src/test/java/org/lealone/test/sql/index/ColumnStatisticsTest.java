@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.index;
+
+import java.sql.SQLException;
+
+import org.junit.Test;
+import org.lealone.api.ErrorCode;
+import org.lealone.test.sql.SqlTestBase;
+
+public class ColumnStatisticsTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("DROP TABLE IF EXISTS ColumnStatisticsTest");
+        stmt.executeUpdate("CREATE TABLE ColumnStatisticsTest (id int PRIMARY KEY, a int, b int, c varchar)");
+        stmt.executeUpdate("CREATE INDEX ColumnStatisticsTest_a ON ColumnStatisticsTest(a)");
+        stmt.executeUpdate("CREATE INDEX ColumnStatisticsTest_b ON ColumnStatisticsTest(b)");
+        // a is 1 in most rows, b has 100 values that are equally common
+        stmt.executeUpdate("INSERT INTO ColumnStatisticsTest SELECT x, CASEWHEN(x < 1900, 1, x), MOD(x, 100), "
+                + "CASEWHEN(MOD(x, 10) = 0, NULL, 'c' || MOD(x, 3)) FROM SYSTEM_RANGE(0, 1999)");
+        stmt.executeUpdate("ANALYZE");
+
+        sql = "SELECT SQL FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'COLUMNSTATISTICSTEST'";
+        String createSQL = getStringValue(1, true);
+        assertTrue(createSQL.contains(" STATISTICS "));
+
+        // the common value matches most rows, so the index on b is used
+        sql = "EXPLAIN SELECT * FROM ColumnStatisticsTest WHERE a = 1 AND b = 5";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTATISTICSTEST_B"));
+        sql = "EXPLAIN SELECT * FROM ColumnStatisticsTest WHERE a = 1950 AND b = 50";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTATISTICSTEST_A"));
+
+        // the histogram shows that few rows are in the range
+        sql = "EXPLAIN SELECT * FROM ColumnStatisticsTest WHERE a >= 1990 AND b = 95";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTATISTICSTEST_A"));
+        sql = "EXPLAIN SELECT * FROM ColumnStatisticsTest WHERE a <= 1 AND b = 95";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTATISTICSTEST_B"));
+
+        sql = "SELECT count(*) FROM ColumnStatisticsTest WHERE a >= 1990 AND b = 95";
+        assertEquals(1, getIntValue(1, true));
+        sql = "SELECT count(*) FROM ColumnStatisticsTest WHERE a = 1 AND b = 5";
+        assertEquals(19, getIntValue(1, true));
+
+        // the statistics are read back from the column definition
+        stmt.executeUpdate("DROP TABLE IF EXISTS ColumnStatisticsTest2");
+        stmt.executeUpdate(createSQL.replace("COLUMNSTATISTICSTEST", "COLUMNSTATISTICSTEST2"));
+        sql = "SELECT SQL FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'COLUMNSTATISTICSTEST2'";
+        assertEquals(createSQL.replace("COLUMNSTATISTICSTEST", "COLUMNSTATISTICSTEST2"), getStringValue(1, true));
+        stmt.executeUpdate("DROP TABLE ColumnStatisticsTest2");
+
+        // invalid statistics are an error
+        try {
+            stmt.executeUpdate("CREATE TABLE ColumnStatisticsTest2 (id int STATISTICS (1, 2))");
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.INVALID_VALUE_2, e.getErrorCode());
+        }
+
+        // the sample is taken from the whole table, the first rows all have
+        // distinct values in a
+        stmt.executeUpdate("DROP TABLE ColumnStatisticsTest");
+        stmt.executeUpdate("CREATE TABLE ColumnStatisticsTest (id int PRIMARY KEY, a int, b int)");
+        stmt.executeUpdate("CREATE INDEX ColumnStatisticsTest_a ON ColumnStatisticsTest(a)");
+        stmt.executeUpdate("CREATE INDEX ColumnStatisticsTest_b ON ColumnStatisticsTest(b)");
+        stmt.executeUpdate("INSERT INTO ColumnStatisticsTest SELECT x, CASEWHEN(x < 500, x, 1), MOD(x, 100)"
+                + " FROM SYSTEM_RANGE(0, 1999)");
+        stmt.executeUpdate("ANALYZE SAMPLE_SIZE 500");
+        sql = "EXPLAIN SELECT * FROM ColumnStatisticsTest WHERE a = 1 AND b = 5";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTATISTICSTEST_B"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.index;
+
+import java.sql.SQLException;
+
+import org.junit.Test;
+import org.lealone.api.ErrorCode;
+import org.lealone.test.sql.SqlTestBase;
+
+public class CoveringIndexTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("DROP TABLE IF EXISTS CoveringIndexTest");
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS CoveringIndexTest (f1 int NOT NULL, f2 int, f3 varchar, f4 int)");
+        // the same conditions cost the same for both indexes, unless the query only reads f2 and f3
+        stmt.executeUpdate("CREATE INDEX IF NOT EXISTS CoveringIndexTest_idx0 ON CoveringIndexTest(f2)");
+        stmt.executeUpdate("CREATE INDEX IF NOT EXISTS CoveringIndexTest_idx1 ON CoveringIndexTest(f2) INCLUDE(f3)");
+
+        stmt.executeUpdate("INSERT INTO CoveringIndexTest(f1, f2, f3, f4) VALUES(100, 10, 'a', 1)");
+        stmt.executeUpdate("INSERT INTO CoveringIndexTest(f1, f2, f3, f4) VALUES(200, 20, 'b', 2)");
+        stmt.executeUpdate("INSERT INTO CoveringIndexTest(f1, f2, f3, f4) VALUES(300, 30, 'c', 3)");
+
+        sql = "EXPLAIN SELECT f3 FROM CoveringIndexTest WHERE f2 >= 20";
+        assertTrue(getStringValue(1, true).contains("COVERINGINDEXTEST_IDX1"));
+        sql = "EXPLAIN SELECT f3, f4 FROM CoveringIndexTest WHERE f2 >= 20";
+        assertTrue(getStringValue(1, true).contains("COVERINGINDEXTEST_IDX0"));
+
+        sql = "SELECT count(*) FROM CoveringIndexTest WHERE f2 >= 20";
+        assertEquals(2, getIntValue(1, true));
+
+        sql = "SELECT f3 FROM CoveringIndexTest WHERE f2 = 20";
+        assertEquals("b", getStringValue(1, true));
+
+        // f4 is not included, it is read from the table row
+        sql = "SELECT f3, f4 FROM CoveringIndexTest WHERE f2 = 30";
+        assertEquals("c", getStringValue(1));
+        assertEquals(3, getIntValue(2, true));
+
+        // the included values must follow updates
+        stmt.executeUpdate("UPDATE CoveringIndexTest SET f3 = 'bb' WHERE f1 = 200");
+        sql = "SELECT f3 FROM CoveringIndexTest WHERE f2 = 20";
+        assertEquals("bb", getStringValue(1, true));
+
+        stmt.executeUpdate("DELETE FROM CoveringIndexTest WHERE f2 = 20");
+        sql = "SELECT count(*) FROM CoveringIndexTest WHERE f2 >= 20";
+        assertEquals(1, getIntValue(1, true));
+
+        testAlterColumn();
+    }
+
+    void testAlterColumn() throws Exception {
+        // the index is rebuilt with the new type
+        stmt.executeUpdate("ALTER TABLE CoveringIndexTest ALTER COLUMN f3 varchar(10)");
+        stmt.executeUpdate("ALTER TABLE CoveringIndexTest ALTER COLUMN f3 RENAME TO f5");
+        sql = "EXPLAIN SELECT f5 FROM CoveringIndexTest WHERE f2 >= 20";
+        assertTrue(getStringValue(1, true).contains("COVERINGINDEXTEST_IDX1"));
+        sql = "SELECT f5 FROM CoveringIndexTest WHERE f2 = 30";
+        assertEquals("c", getStringValue(1, true));
+
+        // an included column can only be dropped with its index
+        try {
+            stmt.executeUpdate("ALTER TABLE CoveringIndexTest DROP COLUMN f5");
+            fail();
+        } catch (SQLException e) {
+            assertEquals(ErrorCode.COLUMN_IS_REFERENCED_1, e.getErrorCode());
+        }
+        stmt.executeUpdate("DROP INDEX CoveringIndexTest_idx1");
+        stmt.executeUpdate("ALTER TABLE CoveringIndexTest DROP COLUMN f5");
+        sql = "SELECT count(*) FROM CoveringIndexTest WHERE f2 >= 20";
+        assertEquals(1, getIntValue(1, true));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.lealone.api.ErrorCode;
+import org.lealone.command.FrontendCommand;
+import org.lealone.engine.AsyncResult;
+import org.lealone.engine.FrontendSession;
+import org.lealone.jdbc.JdbcConnection;
+import org.lealone.message.DbException;
+import org.lealone.result.ResultInterface;
+import org.lealone.test.sql.SqlTestBase;
+
+public class AsyncRequestTest extends SqlTestBase {
+
+    private FrontendSession session;
+
+    @Test
+    public void run() throws Exception {
+        createTable("AsyncRequestTest");
+        session = (FrontendSession) ((JdbcConnection) conn).getSession();
+        testUpdates();
+        testQuery();
+        testError();
+        testTimeout();
+        testQueryError();
+    }
+
+    private FrontendCommand prepare(String sql) {
+        return (FrontendCommand) session.prepareCommand(sql, 10);
+    }
+
+    void testUpdates() throws Exception {
+        FrontendCommand c1 = prepare("INSERT INTO AsyncRequestTest(pk, f1, f2, f3) VALUES('01', 'a1', 'b', 1)");
+        FrontendCommand c2 = prepare("INSERT INTO AsyncRequestTest(pk, f1, f2, f3) VALUES('02', 'a1', 'b', 2)");
+        FrontendCommand c3 = prepare("UPDATE AsyncRequestTest SET f3 = f3 + 10");
+
+        AsyncResult<Integer> r1 = c1.executeUpdateAsync(null);
+        AsyncResult<Integer> r2 = c2.executeUpdateAsync(null);
+        AsyncResult<Integer> r3 = c3.executeUpdateAsync(null);
+        assertTrue(session.hasAsyncResults());
+
+        // the last response is waited for first, the others are read on the way
+        assertEquals(2, r3.get().intValue());
+        assertTrue(r1.isDone());
+        assertTrue(r2.isDone());
+        assertEquals(1, r1.get().intValue());
+        assertEquals(1, r2.get().intValue());
+        assertFalse(session.hasAsyncResults());
+    }
+
+    void testQuery() throws Exception {
+        FrontendCommand c1 = prepare("SELECT X FROM SYSTEM_RANGE(1, 100)");
+        FrontendCommand c2 = prepare("INSERT INTO AsyncRequestTest(pk, f1, f2, f3) VALUES('03', 'a1', 'b', 3)");
+
+        AsyncResult<ResultInterface> r1 = c1.executeQueryAsync(0, false);
+        c2.executeUpdateAsync(null);
+
+        // a synchronous request reads the responses of the pending requests first
+        sql = "SELECT count(*), sum(f3) FROM AsyncRequestTest";
+        executeQuery();
+        assertEquals(3, getIntValue(1));
+        assertEquals(26, getIntValue(2, true));
+        assertTrue(r1.isDone());
+
+        ResultInterface result = r1.get();
+        int count = 0;
+        long sum = 0;
+        while (result.next()) {
+            count++;
+            sum += result.currentRow()[0].getLong();
+        }
+        result.close();
+        assertEquals(100, count);
+        assertEquals(5050, sum);
+    }
+
+    void testError() throws Exception {
+        FrontendCommand c1 = prepare("INSERT INTO AsyncRequestTest(pk, f1, f2, f3) VALUES('01', 'a1', 'b', 1)");
+        FrontendCommand c2 = prepare("DELETE FROM AsyncRequestTest");
+
+        AsyncResult<Integer> r1 = c1.executeUpdateAsync(null);
+        AsyncResult<Integer> r2 = c2.executeUpdateAsync(null);
+        assertEquals(3, r2.get().intValue());
+        try {
+            r1.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, ((DbException) e.getCause()).getErrorCode());
+        }
+    }
+
+    void testTimeout() throws Exception {
+        executeUpdate("CREATE ALIAS IF NOT EXISTS AsyncRequestTest_SLEEP FOR \"java.lang.Thread.sleep\"");
+        FrontendCommand c1 = prepare("CALL AsyncRequestTest_SLEEP(500)");
+        FrontendCommand c2 = prepare("SELECT count(*) FROM AsyncRequestTest");
+
+        AsyncResult<ResultInterface> r1 = c1.executeQueryAsync(0, false);
+        AsyncResult<ResultInterface> r2 = c2.executeQueryAsync(0, false);
+        long start = System.currentTimeMillis();
+        try {
+            r2.get(50, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 500);
+        assertFalse(r1.isDone());
+
+        // the responses can still be read after the timeout
+        ResultInterface result = r2.get(10, TimeUnit.SECONDS);
+        assertTrue(r1.isDone());
+        assertTrue(result.next());
+        assertEquals(0, result.currentRow()[0].getInt());
+        result.close();
+        r1.get().close();
+        assertFalse(session.hasAsyncResults());
+    }
+
+    void testQueryError() throws Exception {
+        FrontendCommand c = prepare("SELECT 1 / (X - 1) FROM SYSTEM_RANGE(1, 2)");
+        try {
+            c.executeQuery(0, false);
+            fail();
+        } catch (DbException e) {
+            assertEquals(ErrorCode.DIVISION_BY_ZERO_1, e.getErrorCode());
+        }
+        // the session is still usable
+        sql = "SELECT count(*) FROM AsyncRequestTest";
+        assertEquals(0, getIntValue(1, true));
+    }
+}
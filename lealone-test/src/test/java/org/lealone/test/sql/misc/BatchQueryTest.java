@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class BatchQueryTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        init();
+        testAggregate();
+        testGroupBy();
+        testFlat();
+        testIndex();
+    }
+
+    void init() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BatchQueryTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BatchQueryTest"
+                + "(pk int NOT NULL PRIMARY KEY, a int, b bigint, c double, d date, s varchar)");
+        executeUpdate("INSERT INTO BatchQueryTest SELECT x, MOD(x, 100), x * 1000000, x / 7.0,"
+                + " DATEADD('DAY', MOD(x, 30), DATE '2020-01-01'), 's' || MOD(x, 10) FROM SYSTEM_RANGE(1, 10000)");
+        executeUpdate("INSERT INTO BatchQueryTest VALUES(10001, NULL, NULL, NULL, NULL, NULL)");
+    }
+
+    // RAND() is not deterministic, so conditions with it are evaluated one row at a time
+    private void assertSameResult(String select, String where) throws Exception {
+        assertSameResult(select, where, "");
+    }
+
+    private void assertSameResult(String select, String where, String groupBy) throws Exception {
+        sql = select + " WHERE " + where + groupBy;
+        String expected = getAll(true);
+        sql = select + " WHERE " + where + " AND RAND() < 2" + groupBy;
+        assertEquals(expected, getAll(true));
+    }
+
+    void testAggregate() throws Exception {
+        String select = "SELECT count(*), count(a), sum(a), avg(a), min(b), max(b), sum(c), min(d), max(d)"
+                + " FROM BatchQueryTest";
+        assertSameResult(select, "a < 50 OR c > 1000");
+        assertSameResult(select, "a + 1 > 50 AND d >= DATE '2020-01-15' AND s <> 's3'");
+        assertSameResult(select, "a IS NULL");
+        assertSameResult(select, "b BETWEEN 2000000 AND 3000000000 AND c <> 100");
+
+        sql = "SELECT count(*), sum(a) FROM BatchQueryTest WHERE a < 50";
+        assertEquals(5000, getIntValue(1));
+        assertEquals(100 * (49 * 50 / 2), getLongValue(2, true));
+    }
+
+    void testGroupBy() throws Exception {
+        assertSameResult("SELECT a, count(*), sum(c), max(s) FROM BatchQueryTest", //
+                "b > 5000000000", " GROUP BY a");
+    }
+
+    void testFlat() throws Exception {
+        assertSameResult("SELECT pk, a, -a, a * 2, s FROM BatchQueryTest", "a = 7 OR pk > 9990");
+        assertSameResult("SELECT pk FROM BatchQueryTest", "c < 3.5 AND a IS NOT NULL");
+    }
+
+    // the search rows of a secondary index only contain some of the columns
+    void testIndex() throws Exception {
+        executeUpdate("CREATE INDEX IF NOT EXISTS BatchQueryTest_a ON BatchQueryTest(a)");
+        assertSameResult("SELECT pk, a, s FROM BatchQueryTest", "a = 7 AND c > 100");
+        assertSameResult("SELECT count(*), sum(b), max(s) FROM BatchQueryTest", "a BETWEEN 10 AND 12");
+        assertSameResult("SELECT a, count(*) FROM BatchQueryTest", "a < 3", " GROUP BY a");
+    }
+}
@@ -17,9 +17,12 @@
  */
 package org.lealone.test.sql.misc;
 
+import java.sql.BatchUpdateException;
 import java.sql.PreparedStatement;
+import java.sql.Statement;
 
 import org.junit.Test;
+import org.lealone.api.ErrorCode;
 import org.lealone.test.sql.SqlTestBase;
 
 public class BatchTest extends SqlTestBase {
@@ -28,6 +31,11 @@ public class BatchTest extends SqlTestBase {
         init();
         testStatementBatch();
         testPreparedStatementBatch();
+        testMergeBatch();
+        testMultiRowBatch();
+        testBatchError();
+        testSequence();
+        testSequenceError();
     }
 
     void init() throws Exception {
@@ -72,5 +80,165 @@ public class BatchTest extends SqlTestBase {
         assertEquals(0, result.length);
 
         ps.close();
+
+        sql = "SELECT count(*), sum(f2) FROM BatchTest WHERE f1 >= 1 AND f1 <= 5";
+        assertEquals(10, getIntValue(1));
+        assertEquals(60, getIntValue(2, true));
+    }
+
+    void testMergeBatch() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BatchMergeTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BatchMergeTest(f1 int primary key, f2 int)");
+        PreparedStatement ps = conn.prepareStatement("MERGE INTO BatchMergeTest(f1, f2) KEY(f1) VALUES(?, ?)");
+        for (int i = 1; i <= 5; i++) {
+            ps.setInt(1, i % 3);
+            ps.setInt(2, i);
+            ps.addBatch();
+        }
+
+        int[] result = ps.executeBatch();
+        assertEquals(5, result.length);
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(1, result[i - 1]);
+        }
+        ps.close();
+
+        //后面的参数覆盖前面相同主键的行
+        sql = "SELECT count(*), sum(f2) FROM BatchMergeTest";
+        assertEquals(3, getIntValue(1));
+        assertEquals(3 + 4 + 5, getIntValue(2, true));
+    }
+
+    void testMultiRowBatch() throws Exception {
+        executeUpdate("DELETE FROM BatchTest");
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO BatchTest(f1, f2) VALUES(?, ?), (?, DEFAULT)");
+        for (int i = 1; i <= 3; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, i * 2);
+            ps.setInt(3, -i);
+            ps.addBatch();
+        }
+
+        int[] result = ps.executeBatch();
+        assertEquals(3, result.length);
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(2, result[i - 1]);
+        }
+        ps.close();
+
+        ps = conn.prepareStatement("INSERT INTO BatchTest(f1, f2) VALUES(?, ?), (?, ? + 1)");
+        for (int i = 1; i <= 3; i++) {
+            ps.setInt(1, i + 10);
+            ps.setInt(2, i);
+            ps.setInt(3, i + 20);
+            ps.setInt(4, i);
+            ps.addBatch();
+        }
+
+        result = ps.executeBatch();
+        assertEquals(3, result.length);
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(2, result[i - 1]);
+        }
+        ps.close();
+
+        sql = "SELECT count(*), sum(f2) FROM BatchTest";
+        assertEquals(12, getIntValue(1));
+        assertEquals(2 + 4 + 6 + 1 + 2 + 3 + 2 + 3 + 4, getIntValue(2, true));
+    }
+
+    void testBatchError() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BatchErrorTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BatchErrorTest(f1 int primary key, f2 int)");
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO BatchErrorTest(f1, f2) VALUES(?, ?)");
+        for (int i = 1; i <= 5; i++) {
+            // the third set uses the key of the first one
+            ps.setInt(1, i == 3 ? 1 : i);
+            ps.setInt(2, i);
+            ps.addBatch();
+        }
+        try {
+            ps.executeBatch();
+            fail();
+        } catch (BatchUpdateException e) {
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getErrorCode());
+            int[] result = e.getUpdateCounts();
+            assertEquals(5, result.length);
+            for (int i = 1; i <= 5; i++) {
+                assertEquals(i == 3 ? Statement.EXECUTE_FAILED : 1, result[i - 1]);
+            }
+        }
+        ps.close();
+
+        stmt.clearBatch();
+        stmt.addBatch("INSERT INTO BatchErrorTest(f1, f2) VALUES(10, 10)");
+        stmt.addBatch("INSERT INTO BatchErrorTest(f1, f2) VALUES(10, 11)");
+        stmt.addBatch("INSERT INTO BatchErrorTest(f1, f2) VALUES(11, 11)");
+        try {
+            stmt.executeBatch();
+            fail();
+        } catch (BatchUpdateException e) {
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getErrorCode());
+            int[] result = e.getUpdateCounts();
+            assertEquals(1, result[0]);
+            assertEquals(Statement.EXECUTE_FAILED, result[1]);
+            assertEquals(1, result[2]);
+        }
+        stmt.clearBatch();
+
+        sql = "SELECT count(*), sum(f2) FROM BatchErrorTest";
+        assertEquals(6, getIntValue(1));
+        assertEquals(1 + 2 + 4 + 5 + 10 + 11, getIntValue(2, true));
+    }
+
+    // no value of the sequence is used up before DEFAULT is found in the second row
+    void testSequence() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BatchSequenceTest");
+        executeUpdate("DROP SEQUENCE IF EXISTS BatchTestSeq");
+        executeUpdate("CREATE SEQUENCE BatchTestSeq");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BatchSequenceTest(f1 int, f2 int)");
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO BatchSequenceTest(f1, f2)"
+                + " VALUES(NEXT VALUE FOR BatchTestSeq, ?), (?, DEFAULT)");
+        for (int i = 1; i <= 2; i++) {
+            ps.setInt(1, i);
+            ps.setInt(2, 0);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        ps.close();
+
+        sql = "SELECT max(f1) FROM BatchSequenceTest WHERE f2 IS NOT NULL";
+        assertEquals(2, getIntValue(1, true));
+    }
+
+    // the sets are executed again with the values of the sequence they already got
+    void testSequenceError() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS BatchSequenceErrorTest");
+        executeUpdate("DROP SEQUENCE IF EXISTS BatchErrorTestSeq");
+        executeUpdate("CREATE SEQUENCE BatchErrorTestSeq");
+        executeUpdate("CREATE TABLE IF NOT EXISTS BatchSequenceErrorTest(f1 int primary key, f2 int)");
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO BatchSequenceErrorTest(f1, f2)"
+                + " VALUES(?, NEXT VALUE FOR BatchErrorTestSeq)");
+        for (int i = 1; i <= 4; i++) {
+            // the third set uses the key of the first one
+            ps.setInt(1, i == 3 ? 1 : i);
+            ps.addBatch();
+        }
+        try {
+            ps.executeBatch();
+            fail();
+        } catch (BatchUpdateException e) {
+            assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getErrorCode());
+            int[] result = e.getUpdateCounts();
+            for (int i = 1; i <= 4; i++) {
+                assertEquals(i == 3 ? Statement.EXECUTE_FAILED : 1, result[i - 1]);
+            }
+        }
+        ps.close();
+
+        sql = "SELECT sum(f2) FROM BatchSequenceErrorTest";
+        assertEquals(1 + 2 + 4, getIntValue(1, true));
+        sql = "SELECT CURRVAL('BatchErrorTestSeq')";
+        assertEquals(4, getIntValue(1, true));
     }
 }
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.lealone.command.router.CommandParallel;
+import org.lealone.engine.SysProperties;
+
+public class CommandParallelTest {
+
+    // more outer tasks than threads in the pool, each of them waits for its own inner tasks
+    @Test(timeout = 60000)
+    public void testNestedTasks() throws Exception {
+        final int threads = SysProperties.COMMAND_PARALLEL_MAX_THREADS / SysProperties.COMMAND_PARALLEL_FAN_OUT * 4;
+        final int outerTasks = SysProperties.COMMAND_PARALLEL_MAX_THREADS * 2;
+        final AtomicInteger count = new AtomicInteger();
+        Thread[] callers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            callers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    List<Callable<Integer>> outer = new ArrayList<>();
+                    for (int j = 0; j < outerTasks; j++) {
+                        outer.add(new Callable<Integer>() {
+                            @Override
+                            public Integer call() throws Exception {
+                                List<Callable<Integer>> inner = new ArrayList<>();
+                                for (int k = 0; k < 3; k++) {
+                                    inner.add(new Callable<Integer>() {
+                                        @Override
+                                        public Integer call() throws Exception {
+                                            Thread.sleep(5);
+                                            return 1;
+                                        }
+                                    });
+                                }
+                                return CommandParallel.executeUpdateCallable(inner);
+                            }
+                        });
+                    }
+                    count.addAndGet(CommandParallel.executeUpdateCallable(outer));
+                }
+            });
+            callers[i].start();
+        }
+        for (Thread t : callers) {
+            t.join();
+        }
+        Assert.assertEquals(threads * outerTasks * 3, count.get());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class GroupByTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        init();
+        testSpill();
+    }
+
+    void init() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS GroupByTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS GroupByTest(pk int NOT NULL PRIMARY KEY, a int, b int, s varchar)");
+        executeUpdate("INSERT INTO GroupByTest SELECT x, MOD(x, 500), MOD(x, 3), 's' || MOD(x, 7)"
+                + " FROM SYSTEM_RANGE(1, 3000)");
+        executeUpdate("INSERT INTO GroupByTest VALUES(3001, NULL, NULL, NULL)");
+        executeUpdate("INSERT INTO GroupByTest VALUES(3002, NULL, NULL, NULL)");
+    }
+
+    void testSpill() throws Exception {
+        String[] queries = {
+                "SELECT a, count(*), sum(pk), min(s), max(s) FROM GroupByTest GROUP BY a ORDER BY a",
+                "SELECT a, b, count(*), avg(pk) FROM GroupByTest WHERE pk > 100 GROUP BY a, b ORDER BY a, b",
+                "SELECT a + b, count(DISTINCT s) FROM GroupByTest GROUP BY a + b HAVING count(*) > 4 ORDER BY 1",
+                "SELECT s, a, group_concat(pk ORDER BY pk) FROM GroupByTest GROUP BY s, a ORDER BY s, a" };
+        ArrayList<String> expected = new ArrayList<>();
+        for (String q : queries) {
+            sql = q;
+            expected.add(getAll(false));
+        }
+        // most groups do not fit in memory, so their rows are written to a temporary table
+        int maxMemoryRows = getMaxMemoryRows();
+        executeUpdate("SET MAX_MEMORY_ROWS 10");
+        try {
+            for (int i = 0; i < queries.length; i++) {
+                sql = queries[i];
+                assertEquals(expected.get(i), getAll(false));
+            }
+            sql = "SELECT count(*) FROM (SELECT a, b FROM GroupByTest GROUP BY a, b)";
+            assertEquals(1501, getIntValue(1, true));
+        } finally {
+            executeUpdate("SET MAX_MEMORY_ROWS " + maxMemoryRows);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class HashJoinTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        init();
+        testHashJoin();
+        testOuterJoin();
+        testSpill();
+    }
+
+    void init() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS HashJoinTest1");
+        executeUpdate("DROP TABLE IF EXISTS HashJoinTest2");
+
+        executeUpdate("CREATE TABLE IF NOT EXISTS HashJoinTest1(pk int NOT NULL PRIMARY KEY, id int, name varchar)");
+        executeUpdate("CREATE TABLE IF NOT EXISTS HashJoinTest2(pk int NOT NULL PRIMARY KEY, id2 int, name2 varchar)");
+
+        // id: 0 to 49, 40 rows each; id2: 0 to 99, 30 rows each, and NULL
+        executeUpdate("INSERT INTO HashJoinTest1 SELECT x, MOD(x, 50), 'n' || MOD(x, 7) FROM SYSTEM_RANGE(1, 2000)");
+        executeUpdate("INSERT INTO HashJoinTest2 SELECT x, MOD(x, 100), 'n' || MOD(x, 5) FROM SYSTEM_RANGE(1, 3000)");
+        executeUpdate("INSERT INTO HashJoinTest2 VALUES(3001, NULL, 'n1')");
+    }
+
+    void testHashJoin() throws Exception {
+        sql = "EXPLAIN SELECT count(*) FROM HashJoinTest1 t1 JOIN HashJoinTest2 t2 ON t1.id = t2.id2";
+        assertTrue(getStringValue(1, true).contains("HASH JOIN"));
+
+        sql = "SELECT count(*) FROM HashJoinTest1 t1 JOIN HashJoinTest2 t2 ON t1.id = t2.id2";
+        assertEquals(50 * 40 * 30, getIntValue(1, true));
+
+        sql = "SELECT count(*) FROM HashJoinTest1 t1, HashJoinTest2 t2 WHERE t1.id = t2.id2 AND t1.name = t2.name2";
+        int count = getIntValue(1, true);
+        // the same join on views, which are read with nested loops
+        sql = "SELECT sum(c1 * c2) FROM (SELECT id, name, count(*) c1 FROM HashJoinTest1 GROUP BY id, name) v1" //
+                + " JOIN (SELECT id2, name2, count(*) c2 FROM HashJoinTest2 GROUP BY id2, name2) v2" //
+                + " ON v1.id = v2.id2 AND v1.name = v2.name2";
+        assertEquals(count, getIntValue(1, true));
+
+        // an index is used for the primary key instead of a hash join
+        sql = "EXPLAIN SELECT count(*) FROM HashJoinTest1 t1 JOIN HashJoinTest2 t2 ON t1.pk = t2.pk";
+        assertFalse(getStringValue(1, true).contains("HASH JOIN"));
+    }
+
+    void testOuterJoin() throws Exception {
+        sql = "SELECT count(*) FROM HashJoinTest1 t1 LEFT JOIN HashJoinTest2 t2 ON t1.id = t2.id2 AND t2.pk < 0";
+        assertEquals(2000, getIntValue(1, true));
+
+        sql = "SELECT count(*) FROM HashJoinTest2 t2 LEFT JOIN HashJoinTest1 t1 ON t1.id = t2.id2 WHERE t1.pk IS NULL";
+        assertEquals(50 * 30 + 1, getIntValue(1, true));
+    }
+
+    void testSpill() throws Exception {
+        executeUpdate("SET MAX_MEMORY_ROWS 100");
+        try {
+            sql = "SELECT count(*), sum(t1.pk + t2.pk) FROM HashJoinTest1 t1 JOIN HashJoinTest2 t2 ON t1.id = t2.id2";
+            assertEquals(50 * 40 * 30, getIntValue(1));
+            long sum = getLongValue(2, true);
+            executeUpdate("SET MAX_MEMORY_ROWS 100000");
+            assertEquals(sum, getLongValue(2, true));
+        } finally {
+            executeUpdate("SET MAX_MEMORY_ROWS 10000");
+        }
+    }
+}
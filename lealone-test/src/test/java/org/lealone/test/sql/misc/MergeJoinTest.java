@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class MergeJoinTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        init();
+        testMergeJoin();
+        testDuplicateKeys();
+        testOuterJoin();
+    }
+
+    void init() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS MergeJoinTest1");
+        executeUpdate("DROP TABLE IF EXISTS MergeJoinTest2");
+
+        executeUpdate("CREATE TABLE IF NOT EXISTS MergeJoinTest1(pk int NOT NULL PRIMARY KEY, id int, name varchar)");
+        executeUpdate("CREATE TABLE IF NOT EXISTS MergeJoinTest2(pk int NOT NULL PRIMARY KEY, id2 int, name2 varchar)");
+        executeUpdate("CREATE INDEX IF NOT EXISTS MergeJoinTest1_id ON MergeJoinTest1(id)");
+        executeUpdate("CREATE INDEX IF NOT EXISTS MergeJoinTest2_id2 ON MergeJoinTest2(id2)");
+
+        // id: 0 to 49, 40 rows each; id2: 0 to 99, 30 rows each, and NULL
+        executeUpdate("INSERT INTO MergeJoinTest1 SELECT x, MOD(x, 50), 'n' || MOD(x, 7) FROM SYSTEM_RANGE(1, 2000)");
+        executeUpdate("INSERT INTO MergeJoinTest2 SELECT x, MOD(x, 100), 'n' || MOD(x, 5) FROM SYSTEM_RANGE(1, 3000)");
+        executeUpdate("INSERT INTO MergeJoinTest2 VALUES(3001, NULL, 'n1')");
+    }
+
+    void testMergeJoin() throws Exception {
+        // the primary key is read in order and used to look up the other primary key
+        sql = "EXPLAIN SELECT count(*) FROM MergeJoinTest1 t1 JOIN MergeJoinTest2 t2 ON t1.pk = t2.pk";
+        assertTrue(getStringValue(1, true).contains("MERGE JOIN"));
+
+        sql = "SELECT count(*), sum(t2.id2) FROM MergeJoinTest1 t1 JOIN MergeJoinTest2 t2 ON t1.pk = t2.pk";
+        assertEquals(2000, getIntValue(1));
+        assertEquals(20 * 4950, getLongValue(2, true));
+
+        // only every second key of t2 is used
+        sql = "SELECT count(*) FROM MergeJoinTest1 t1 JOIN MergeJoinTest2 t2 ON t1.pk = t2.pk WHERE MOD(t1.pk, 2) = 0";
+        assertEquals(1000, getIntValue(1, true));
+    }
+
+    void testDuplicateKeys() throws Exception {
+        sql = "EXPLAIN SELECT count(*) FROM MergeJoinTest1 t1 JOIN MergeJoinTest2 t2 ON t1.id = t2.id2 WHERE t1.id < 10";
+        assertTrue(getStringValue(1, true).contains("MERGE JOIN"));
+
+        sql = "SELECT count(*) FROM MergeJoinTest1 t1 JOIN MergeJoinTest2 t2 ON t1.id = t2.id2 WHERE t1.id < 10";
+        assertEquals(10 * 40 * 30, getIntValue(1, true));
+
+        // more rows for each key than are kept in memory
+        executeUpdate("SET MAX_MEMORY_ROWS 10");
+        try {
+            assertEquals(10 * 40 * 30, getIntValue(1, true));
+        } finally {
+            executeUpdate("SET MAX_MEMORY_ROWS 10000");
+        }
+    }
+
+    void testOuterJoin() throws Exception {
+        sql = "SELECT count(*) FROM MergeJoinTest1 t1 LEFT JOIN MergeJoinTest2 t2 ON t1.pk = t2.pk + 1000";
+        assertEquals(2000, getIntValue(1, true));
+
+        sql = "SELECT count(*) FROM MergeJoinTest2 t2 LEFT JOIN MergeJoinTest1 t1 ON t1.pk = t2.pk WHERE t1.pk IS NULL";
+        assertEquals(1001, getIntValue(1, true));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class OrderByLimitTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        init();
+        testTopRows();
+        testTies();
+    }
+
+    void init() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS OrderByLimitTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS OrderByLimitTest(pk int NOT NULL PRIMARY KEY, a int, s varchar)");
+        executeUpdate("INSERT INTO OrderByLimitTest SELECT x, MOD(x * 37, 101), 's' || MOD(x, 13)"
+                + " FROM SYSTEM_RANGE(1, 5000)");
+        executeUpdate("INSERT INTO OrderByLimitTest VALUES(5001, NULL, NULL)");
+    }
+
+    // only the first offset + limit rows are kept while the rows are read,
+    // the result must be the same as when all rows are sorted
+    private void assertTopRows(String select, int limit, int offset) throws Exception {
+        sql = select;
+        List<String> all = getAll();
+        List<String> expected = all.subList(Math.min(offset, all.size()), Math.min(offset + limit, all.size()));
+        sql = select + " LIMIT " + limit + " OFFSET " + offset;
+        assertEquals(expected, getAll());
+    }
+
+    private ArrayList<String> getAll() throws Exception {
+        ArrayList<String> rows = new ArrayList<>();
+        rs = stmt.executeQuery(sql);
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            StringBuilder buff = new StringBuilder();
+            for (int i = 1; i <= columnCount; i++) {
+                buff.append(rs.getString(i)).append(' ');
+            }
+            rows.add(buff.toString());
+        }
+        rs.close();
+        rs = null;
+        return rows;
+    }
+
+    void testTopRows() throws Exception {
+        String select = "SELECT pk, a, s FROM OrderByLimitTest ORDER BY a, pk DESC";
+        assertTopRows(select, 10, 0);
+        assertTopRows(select, 7, 20);
+        assertTopRows(select, 100, 4950);
+        assertTopRows(select, 10, 6000);
+        assertTopRows("SELECT pk, a FROM OrderByLimitTest WHERE pk > 100 ORDER BY a DESC NULLS FIRST, pk", 5, 0);
+        assertTopRows("SELECT s, count(*), max(pk) FROM OrderByLimitTest GROUP BY s ORDER BY 3 DESC", 3, 2);
+    }
+
+    void testTies() throws Exception {
+        sql = "SELECT a FROM OrderByLimitTest ORDER BY a LIMIT 60";
+        ArrayList<String> rows = getAll();
+        assertEquals(60, rows.size());
+        // NULL sorts first, then the 49 rows with a = 0
+        assertEquals("0 ", rows.get(49));
+        assertEquals("1 ", rows.get(50));
+    }
+}
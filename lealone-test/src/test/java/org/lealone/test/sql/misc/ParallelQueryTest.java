@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import java.sql.PreparedStatement;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class ParallelQueryTest extends SqlTestBase {
+
+    // a database of its own, so that small tables are split as well; it is
+    // not in memory, so that groups can be written to temporary tables
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        setEmbedded(true);
+        addConnectionParameter("PARALLEL_QUERY_THREADS", "4");
+        addConnectionParameter("PARALLEL_QUERY_MIN_ROWS", "1000");
+        try {
+            conn = getConnection("ParallelQueryTest");
+        } finally {
+            reset();
+        }
+        stmt = conn.createStatement();
+    }
+
+    @Test
+    public void run() throws Exception {
+        init();
+        testAggregate();
+        testGroupBy();
+        testParameters();
+        testApproximate();
+        testUncommitted();
+        testSpill();
+    }
+
+    void init() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS ParallelQueryTest");
+        executeUpdate("CREATE TABLE IF NOT EXISTS ParallelQueryTest"
+                + "(pk int NOT NULL PRIMARY KEY, a int, b bigint, c double, s varchar)");
+        executeUpdate("INSERT INTO ParallelQueryTest SELECT x, MOD(x, 100), x * 1000000, x / 8.0, 's' || MOD(x, 10)"
+                + " FROM SYSTEM_RANGE(1, 10000)");
+        executeUpdate("INSERT INTO ParallelQueryTest VALUES(10001, NULL, NULL, NULL, NULL)");
+    }
+
+    // RAND() is not deterministic, so queries with it are not split
+    private void assertSameResult(String select, String where, String groupBy, boolean split) throws Exception {
+        sql = select + " WHERE " + where + groupBy;
+        long count = getParallelQueryCount();
+        String expected = getAll(true);
+        assertEquals(split ? count + 1 : count, getParallelQueryCount());
+        sql = select + " WHERE " + where + " AND RAND() < 2" + groupBy;
+        count = getParallelQueryCount();
+        assertEquals(expected, getAll(true));
+        assertEquals(count, getParallelQueryCount());
+    }
+
+    void testAggregate() throws Exception {
+        String select = "SELECT count(*), count(a), sum(a), avg(a), min(b), max(b), sum(c), avg(c), max(s)"
+                + " FROM ParallelQueryTest";
+        assertSameResult(select, "1 = 1", "", true);
+        assertSameResult(select, "a < 50 OR c > 1000", "", true);
+        assertSameResult(select, "a IS NULL", "", true);
+        assertSameResult(select, "pk > 5000", "", false);
+
+        sql = "SELECT count(*), sum(a) FROM ParallelQueryTest WHERE a < 50";
+        assertEquals(5000, getIntValue(1));
+        assertEquals(100 * (49 * 50 / 2), getLongValue(2, true));
+    }
+
+    void testGroupBy() throws Exception {
+        assertSameResult("SELECT a, count(*), sum(c), max(s) FROM ParallelQueryTest", //
+                "b > 5000000000", " GROUP BY a", true);
+        assertSameResult("SELECT s, avg(b), min(a) FROM ParallelQueryTest", //
+                "1 = 1", " GROUP BY s ORDER BY avg(b) DESC LIMIT 3 OFFSET 2", true);
+        assertSameResult("SELECT a, count(DISTINCT s) FROM ParallelQueryTest", //
+                "a < 10", " GROUP BY a", false);
+        assertSameResult("SELECT a, sum(b) FROM ParallelQueryTest", //
+                "1 = 1", " GROUP BY a HAVING sum(b) > 50000000000", false);
+    }
+
+    // the partial sketches of the parts are merged, so the distinct counts do
+    // not depend on whether the query was split
+    void testApproximate() throws Exception {
+        String select = "SELECT approx_count_distinct(a), approx_count_distinct(b), approx_count_distinct(s),"
+                + " approx_percentile(c, 0.5), approx_percentile(a, 0.9) FROM ParallelQueryTest";
+        sql = select + " WHERE RAND() < 2";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        long[] local = { rs.getLong(1), rs.getLong(2), rs.getLong(3) };
+        double[] localPercentiles = { rs.getDouble(4), rs.getDouble(5) };
+        rs.close();
+        rs = null;
+        assertEquals(100, local[0], 2);
+        assertEquals(10000, local[1], 10000 * 0.05);
+        assertEquals(10, local[2], 1);
+        assertEquals(625, localPercentiles[0], 625 * 0.02);
+        assertEquals(90, localPercentiles[1], 2);
+
+        sql = select;
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(local[0], rs.getLong(1));
+        assertEquals(local[1], rs.getLong(2));
+        assertEquals(local[2], rs.getLong(3));
+        assertEquals(625, rs.getDouble(4), 625 * 0.02);
+        assertEquals(90, rs.getDouble(5), 2);
+        rs.close();
+        rs = null;
+
+        assertSameResult("SELECT s, approx_count_distinct(a) FROM ParallelQueryTest", "1 = 1", " GROUP BY s", true);
+        sql = "SELECT approx_percentile(a, 0.5) FROM ParallelQueryTest WHERE a IS NULL";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        rs.getDouble(1);
+        assertTrue(rs.wasNull());
+        rs.close();
+        rs = null;
+    }
+
+    void testParameters() throws Exception {
+        PreparedStatement ps = conn.prepareStatement("SELECT a, count(*) FROM ParallelQueryTest"
+                + " WHERE a < ? GROUP BY a ORDER BY a");
+        // the statements that merge the parts are prepared once, and get the
+        // new parameter values when the query is run again
+        for (int count = 3; count <= 5; count++) {
+            ps.setInt(1, count);
+            rs = ps.executeQuery();
+            for (int i = 0; i < count; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                assertEquals(100, rs.getInt(2));
+            }
+            assertFalse(rs.next());
+            rs.close();
+            rs = null;
+        }
+        ps.close();
+    }
+
+    // the parts run in sessions of their own, so a query in a transaction is
+    // not split, and it sees the uncommitted rows of the transaction
+    void testUncommitted() throws Exception {
+        conn.setAutoCommit(false);
+        try {
+            executeUpdate("INSERT INTO ParallelQueryTest VALUES(20001, 1, 1, 1, 's1')");
+            sql = "SELECT count(*), sum(a) FROM ParallelQueryTest WHERE a = 1";
+            assertEquals(101, getIntValue(1));
+            assertEquals(101, getLongValue(2, true));
+            conn.rollback();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        sql = "SELECT count(*) FROM ParallelQueryTest";
+        assertEquals(10001, getIntValue(1, true));
+    }
+
+    // the parts and the merge keep all their groups in memory, so a query
+    // with more groups than MAX_MEMORY_ROWS is not split, and writes the
+    // groups that do not fit to a temporary table instead
+    void testSpill() throws Exception {
+        sql = "SELECT a, count(*), sum(b), max(s) FROM ParallelQueryTest GROUP BY a";
+        long count = getParallelQueryCount();
+        String expected = getAll(true);
+        assertEquals(count + 1, getParallelQueryCount());
+
+        int maxMemoryRows = getMaxMemoryRows();
+        executeUpdate("SET MAX_MEMORY_ROWS 10");
+        try {
+            assertEquals(expected, getAll(true));
+            assertEquals(count + 1, getParallelQueryCount());
+        } finally {
+            executeUpdate("SET MAX_MEMORY_ROWS " + maxMemoryRows);
+        }
+    }
+
+    private long getParallelQueryCount() throws Exception {
+        rs = stmt.executeQuery("SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'info.PARALLEL_QUERIES'");
+        assertTrue(rs.next());
+        long count = Long.parseLong(rs.getString(1));
+        closeResultSet();
+        return count;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lealone.command.Command;
+import org.lealone.command.dml.Select;
+import org.lealone.engine.Session;
+import org.lealone.jdbc.JdbcConnection;
+import org.lealone.test.sql.SqlTestBase;
+
+public class PlanCacheTest extends SqlTestBase {
+
+    private static Connection conn2;
+
+    // two sessions of the same embedded database
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        setEmbedded(true);
+        setInMemory(true);
+        try {
+            conn = getConnection();
+            conn2 = getConnection();
+        } finally {
+            reset();
+        }
+        stmt = conn.createStatement();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        conn2.close();
+    }
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS PlanCacheTest");
+        executeUpdate("CREATE TABLE PlanCacheTest(id int PRIMARY KEY, name varchar)");
+        executeUpdate("INSERT INTO PlanCacheTest VALUES(1, 'a'), (2, 'b')");
+
+        Session s1 = (Session) ((JdbcConnection) conn).getSession();
+        Session s2 = (Session) ((JdbcConnection) conn2).getSession();
+        String sql = "SELECT name FROM PlanCacheTest WHERE id = ?";
+
+        // the command drops out of the query cache of the first session,
+        // and the second session takes it from the shared plan cache
+        Command c1 = closeAndEvict(s1, sql);
+        Command c2 = s2.prepareCommand(sql);
+        assertTrue(c1 == c2);
+        c2.close();
+        assertEquals("b", query(conn2, sql, 2));
+
+        // it is not shared a second time while it is in use
+        c1 = closeAndEvict(s2, sql);
+        assertTrue(c1 == s1.prepareCommand(sql));
+        assertTrue(c1 != s2.prepareCommand(sql));
+
+        // the subqueries run in the session that took the command, and see its
+        // variables
+        c1.close();
+        String union = "SELECT name FROM PlanCacheTest WHERE id = ? OR id IN"
+                + " (SELECT id FROM PlanCacheTest WHERE id = @v UNION SELECT id FROM PlanCacheTest WHERE id = 3)";
+        String in = "SELECT name FROM PlanCacheTest WHERE id IN (SELECT id FROM PlanCacheTest WHERE id = @v OR id = ?)";
+        executeUpdate("SET @v = 0");
+        Statement stmt2 = conn2.createStatement();
+        stmt2.executeUpdate("SET @v = 2");
+        for (String q : new String[] { union, in }) {
+            c1 = closeAndEvict(s1, q);
+            c2 = s2.prepareCommand(q);
+            assertTrue(c1 == c2);
+            c2.close();
+            assertEquals(2, count(conn2, q, 1));
+        }
+
+        // so do the queries that merge the groups of a group query
+        String group = "SELECT name, count(*) FROM PlanCacheTest WHERE id > ? GROUP BY name";
+        c1 = closeAndEvict(s1, group);
+        Select select = (Select) c1.getPrepared();
+        select.getPartSelect();
+        select.getMergeSelect();
+        select.getFinalMergeSelect();
+        c2 = s2.prepareCommand(group);
+        assertTrue(c1 == c2);
+        c2.close();
+        assertTrue(select.getPartSelect().getSession() == s2);
+        assertTrue(select.getMergeSelect().getSession() == s2);
+        assertTrue(select.getFinalMergeSelect().getSession() == s2);
+        assertEquals(1, count(conn2, group, 1));
+
+        // outdated commands are not used after a DDL statement
+        c1 = closeAndEvict(s1, sql);
+        executeUpdate("ALTER TABLE PlanCacheTest ADD COLUMN x int");
+        assertTrue(c1 != s2.prepareCommand(sql));
+
+        // a session with another current schema does not take it
+        closeAndEvict(s1, sql);
+        stmt2.executeUpdate("CREATE SCHEMA IF NOT EXISTS PlanCacheTestSchema");
+        stmt2.executeUpdate("SET SCHEMA PlanCacheTestSchema");
+        stmt2.executeUpdate("CREATE TABLE IF NOT EXISTS PlanCacheTest(id int PRIMARY KEY, name varchar)");
+        stmt2.executeUpdate("MERGE INTO PlanCacheTest VALUES(2, 'x')");
+        assertEquals("x", query(conn2, sql, 2));
+        stmt2.executeUpdate("DROP TABLE PlanCacheTest");
+        stmt2.executeUpdate("SET SCHEMA PUBLIC");
+        stmt2.close();
+    }
+
+    private static Command closeAndEvict(Session session, String sql) {
+        Command command = session.prepareCommand(sql);
+        command.close();
+        for (int i = 0, size = session.getDatabase().getSettings().queryCacheSize; i < size; i++) {
+            session.prepareCommand("SELECT " + i).close();
+        }
+        return command;
+    }
+
+    private int count(Connection conn, String sql, int id) throws Exception {
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ps.setInt(1, id);
+        rs = ps.executeQuery();
+        int count = 0;
+        while (rs.next()) {
+            count++;
+        }
+        rs.close();
+        ps.close();
+        return count;
+    }
+
+    private String query(Connection conn, String sql, int id) throws Exception {
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ps.setInt(1, id);
+        rs = ps.executeQuery();
+        String name = rs.next() ? rs.getString(1) : null;
+        rs.close();
+        ps.close();
+        return name;
+    }
+}
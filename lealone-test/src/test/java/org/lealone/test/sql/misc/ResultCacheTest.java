@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class ResultCacheTest extends SqlTestBase {
+
+    private static Connection conn2;
+
+    // two sessions of an embedded database that has the result cache enabled
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        setEmbedded(true);
+        setInMemory(true);
+        addConnectionParameter("RESULT_CACHE_SIZE", "100");
+        try {
+            String url = getURL().replace(":" + DB_NAME + ";", ":ResultCacheTest;");
+            conn = DriverManager.getConnection(url, "sa", "");
+            conn2 = DriverManager.getConnection(url, "sa", "");
+        } finally {
+            reset();
+        }
+        stmt = conn.createStatement();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        conn2.close();
+    }
+
+    @Test
+    public void run() throws Exception {
+        executeUpdate("DROP TABLE IF EXISTS ResultCacheTest");
+        executeUpdate("CREATE TABLE ResultCacheTest(id int PRIMARY KEY, name varchar)");
+        executeUpdate("INSERT INTO ResultCacheTest VALUES(1, 'a'), (2, 'b'), (3, 'c')");
+        String sql = "SELECT count(*) FROM ResultCacheTest WHERE id > ?";
+
+        // the second session uses the result of the first one
+        long hits = getSetting("info.RESULT_CACHE_HITS");
+        assertEquals(2, query(conn, sql, 1));
+        assertEquals(2, query(conn2, sql, 1));
+        assertEquals(hits + 1, getSetting("info.RESULT_CACHE_HITS"));
+        assertEquals(1, query(conn2, sql, 2));
+        assertEquals(hits + 1, getSetting("info.RESULT_CACHE_HITS"));
+
+        // a session with uncommitted changes does not use the cache,
+        // and the result is outdated when the change is committed
+        conn2.setAutoCommit(false);
+        Statement stmt2 = conn2.createStatement();
+        stmt2.executeUpdate("INSERT INTO ResultCacheTest VALUES(4, 'd')");
+        assertEquals(3, query(conn2, sql, 1));
+        conn2.commit();
+        conn2.setAutoCommit(true);
+        stmt2.close();
+        assertEquals(3, query(conn, sql, 1));
+
+        // a result is removed when the table is changed
+        executeUpdate("DELETE FROM ResultCacheTest WHERE id = 4");
+        assertEquals(2, query(conn2, sql, 1));
+        assertTrue(getSetting("info.RESULT_CACHE_ROWS") > 0);
+
+        // and all results are removed when the schema is changed
+        executeUpdate("DROP TABLE ResultCacheTest");
+        executeUpdate("CREATE TABLE ResultCacheTest(id int PRIMARY KEY, name varchar)");
+        assertEquals(0, query(conn2, sql, 1));
+    }
+
+    private long getSetting(String name) throws Exception {
+        PreparedStatement ps = conn.prepareStatement("SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = ?");
+        ps.setString(1, name);
+        rs = ps.executeQuery();
+        assertTrue(rs.next());
+        long value = rs.getLong(1);
+        rs.close();
+        ps.close();
+        return value;
+    }
+
+    private int query(Connection conn, String sql, int id) throws Exception {
+        PreparedStatement ps = conn.prepareStatement(sql);
+        ps.setInt(1, id);
+        rs = ps.executeQuery();
+        assertTrue(rs.next());
+        int count = rs.getInt(1);
+        rs.close();
+        ps.close();
+        return count;
+    }
+}
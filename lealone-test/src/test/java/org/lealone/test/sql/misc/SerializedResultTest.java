@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.sql.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lealone.api.ParameterInterface;
+import org.lealone.command.CommandInterface;
+import org.lealone.command.Prepared;
+import org.lealone.command.dml.Select;
+import org.lealone.command.router.CommandParallel;
+import org.lealone.command.router.CommandWrapper;
+import org.lealone.command.router.SerializedResult;
+import org.lealone.engine.Session;
+import org.lealone.jdbc.JdbcConnection;
+import org.lealone.message.DbException;
+import org.lealone.result.ResultInterface;
+import org.lealone.test.sql.SqlTestBase;
+
+// the first command is the local node, the others stand in for the remote nodes of a cluster
+public class SerializedResultTest extends SqlTestBase {
+
+    private static Session session;
+    private static volatile Thread localThread;
+    private static volatile boolean remoteNotInPool;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        setEmbedded(true);
+        setInMemory(true);
+        try {
+            conn = getConnection();
+        } finally {
+            reset();
+        }
+        stmt = conn.createStatement();
+        session = (Session) ((JdbcConnection) conn).getSession();
+    }
+
+    @Test
+    public void run() throws Exception {
+        testAllRows();
+        testLimit();
+        testError();
+        testCloseFutures();
+    }
+
+    void testAllRows() throws Exception {
+        String sql = "SELECT x FROM SYSTEM_RANGE(1, 1000)";
+        ResultInterface r = new SerializedResult(getCommands(sql, sql, sql, sql), 0, false, getSelect(sql));
+        assertEquals("X", r.getColumnName(0));
+        long sum = 0;
+        int count = 0;
+        while (r.next()) {
+            sum += r.currentRow()[0].getLong();
+            count++;
+        }
+        r.close();
+        assertEquals(4000, count);
+        assertEquals(4 * 1000 * 1001 / 2, sum);
+        // the local node is queried by the caller, the remote nodes by the pool
+        assertEquals(Thread.currentThread(), localThread);
+        assertFalse(remoteNotInPool);
+        assertTrue(CommandParallel.getThreadPoolExecutor().getTaskCount() > 0);
+        assertEquals(0, CommandParallel.getRejectedTaskCount());
+    }
+
+    void testLimit() throws Exception {
+        String sql = "SELECT x FROM SYSTEM_RANGE(1, 100000)";
+        ResultInterface r = new SerializedResult(getCommands(sql, sql, sql), 0, false, getSelect(sql + " LIMIT 10"));
+        int count = 0;
+        while (r.next()) {
+            count++;
+        }
+        r.close();
+        assertEquals(10, count);
+    }
+
+    void testError() throws Exception {
+        String sql = "SELECT x FROM SYSTEM_RANGE(1, 1000)";
+        ResultInterface r = new SerializedResult(getCommands(sql, "SELECT 1 / (x - 500) FROM SYSTEM_RANGE(1, 1000)"),
+                0, false, getSelect(sql));
+        try {
+            while (r.next()) {
+                // the error of the second command is thrown here
+            }
+            fail();
+        } catch (DbException e) {
+            // expected
+        }
+        r.close();
+    }
+
+    // the nodes that were not read yet are not queried any more
+    void testCloseFutures() throws Exception {
+        final String sql = "SELECT x FROM SYSTEM_RANGE(1, 10)";
+        final AtomicBoolean queried = new AtomicBoolean();
+        FutureTask<ResultInterface> first = new FutureTask<>(new Callable<ResultInterface>() {
+            @Override
+            public ResultInterface call() throws Exception {
+                return session.prepare(sql).query(0);
+            }
+        });
+        FutureTask<ResultInterface> second = new FutureTask<>(new Callable<ResultInterface>() {
+            @Override
+            public ResultInterface call() throws Exception {
+                queried.set(true);
+                return session.prepare(sql).query(0);
+            }
+        });
+        first.run();
+        List<Future<ResultInterface>> results = new ArrayList<>();
+        results.add(first);
+        results.add(second);
+        ResultInterface r = new SerializedResult(results, getSelect(sql));
+        assertTrue(r.next());
+        r.close();
+        assertTrue(second.isCancelled());
+        second.run();
+        assertFalse(queried.get());
+    }
+
+    private static Select getSelect(String sql) {
+        return (Select) session.prepare(sql);
+    }
+
+    private static ArrayList<CommandInterface> getCommands(String... sqls) {
+        ArrayList<CommandInterface> commands = new ArrayList<>();
+        for (String sql : sqls) {
+            if (commands.isEmpty()) {
+                commands.add(new CommandWrapper(session.prepare(sql)) {
+                    @Override
+                    public ResultInterface executeQuery(int maxRows, boolean scrollable) {
+                        localThread = Thread.currentThread();
+                        return super.executeQuery(maxRows, scrollable);
+                    }
+                });
+            } else {
+                commands.add(new RemoteCommand(session.prepare(sql)));
+            }
+        }
+        return commands;
+    }
+
+    private static class RemoteCommand implements CommandInterface {
+        private final CommandWrapper command;
+
+        RemoteCommand(Prepared p) {
+            command = new CommandWrapper(p);
+        }
+
+        @Override
+        public int getCommandType() {
+            return command.getCommandType();
+        }
+
+        @Override
+        public boolean isQuery() {
+            return command.isQuery();
+        }
+
+        @Override
+        public ArrayList<? extends ParameterInterface> getParameters() {
+            return command.getParameters();
+        }
+
+        @Override
+        public ResultInterface executeQuery(int maxRows, boolean scrollable) {
+            if (!CommandParallel.isPoolThread()) {
+                remoteNotInPool = true;
+            }
+            return command.executeQuery(maxRows, scrollable);
+        }
+
+        @Override
+        public int executeUpdate() {
+            return command.executeUpdate();
+        }
+
+        @Override
+        public void close() {
+            command.close();
+        }
+
+        @Override
+        public void cancel() {
+            command.cancel();
+        }
+
+        @Override
+        public ResultInterface getMetaData() {
+            return command.getMetaData();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lealone.test.storage;
+
+import org.junit.Test;
+import org.lealone.test.sql.SqlTestBase;
+
+public class ColumnStorageEngineTest extends SqlTestBase {
+    @Test
+    public void run() throws Exception {
+        stmt.executeUpdate("DROP TABLE IF EXISTS ColumnStorageEngineTest");
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS ColumnStorageEngineTest "
+                + "(f1 int, f2 int, f3 varchar, f4 int) ENGINE COLUMN");
+
+        // more than one segment, f3 has few distinct values and f4 long runs
+        stmt.executeUpdate("INSERT INTO ColumnStorageEngineTest(f1, f2, f3, f4) "
+                + "SELECT X, MOD(X, 7), 'v' || MOD(X, 3), (X - MOD(X, 1000)) / 1000 FROM SYSTEM_RANGE(1, 3000)");
+
+        sql = "EXPLAIN SELECT sum(f2) FROM ColumnStorageEngineTest";
+        assertTrue(getStringValue(1, true).contains("columnScan"));
+
+        sql = "SELECT count(*), sum(f2) FROM ColumnStorageEngineTest";
+        assertEquals(3000, getIntValue(1));
+        assertEquals(8998, getIntValue(2, true));
+
+        // the zone maps of f1 skip all but one segment
+        sql = "SELECT count(*), min(f4) FROM ColumnStorageEngineTest WHERE f1 > 2990";
+        assertEquals(10, getIntValue(1));
+        assertEquals(2, getIntValue(2, true));
+
+        sql = "SELECT count(*) FROM ColumnStorageEngineTest WHERE f3 = 'v1' AND f1 BETWEEN 1 AND 30";
+        assertEquals(10, getIntValue(1, true));
+
+        // f2 is not read from the column segments
+        sql = "SELECT f3, f4 FROM ColumnStorageEngineTest WHERE f1 = 1500";
+        assertEquals("v0", getStringValue(1));
+        assertEquals(1, getIntValue(2, true));
+
+        stmt.executeUpdate("UPDATE ColumnStorageEngineTest SET f2 = 100 WHERE f1 = 1500");
+        sql = "SELECT f2 FROM ColumnStorageEngineTest WHERE f1 = 1500";
+        assertEquals(100, getIntValue(1, true));
+
+        stmt.executeUpdate("DELETE FROM ColumnStorageEngineTest WHERE f1 <= 1000");
+        sql = "SELECT count(*) FROM ColumnStorageEngineTest WHERE f1 < 1600";
+        assertEquals(599, getIntValue(1, true));
+
+        sql = "SELECT * FROM ColumnStorageEngineTest WHERE f1 = 2000";
+        assertEquals(2000, getIntValue(1));
+        assertEquals("v2", getStringValue(3, true));
+
+        // a secondary index is built from the rows of the table,
+        // the column-oriented copy is not one of its indexes
+        stmt.executeUpdate("CREATE INDEX ColumnStorageEngineTest_f1 ON ColumnStorageEngineTest(f1)");
+        sql = "SELECT count(*) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'COLUMNSTORAGEENGINETEST'";
+        assertEquals(1, getIntValue(1, true));
+        sql = "EXPLAIN SELECT f3 FROM ColumnStorageEngineTest WHERE f1 = 2000";
+        assertTrue(getStringValue(1, true).contains("COLUMNSTORAGEENGINETEST_F1"));
+        sql = "SELECT f3 FROM ColumnStorageEngineTest WHERE f1 = 2000";
+        assertEquals("v2", getStringValue(1, true));
+
+        stmt.executeUpdate("TRUNCATE TABLE ColumnStorageEngineTest");
+        stmt.executeUpdate("INSERT INTO ColumnStorageEngineTest(f1, f2, f3, f4) VALUES(1, 2, 'v1', 3)");
+        sql = "SELECT count(*), sum(f2) FROM ColumnStorageEngineTest";
+        assertEquals(1, getIntValue(1));
+        assertEquals(2, getIntValue(2, true));
+
+        stmt.executeUpdate("DROP TABLE ColumnStorageEngineTest");
+    }
+}
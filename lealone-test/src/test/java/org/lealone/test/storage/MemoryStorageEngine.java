@@ -236,6 +236,11 @@ public class MemoryStorageEngine extends MVStorageEngine {
         public void setVolatile(boolean isVolatile) {
         }
 
+        @Override
+        public long getDiskSpaceUsed() {
+            return 0;
+        }
+
         @Override
         public boolean areValuesEqual(Object a, Object b) {
             return areEqual(a, b, valueType);
@@ -162,4 +162,9 @@ public class MemoryTransactionMap<K, V> implements TransactionMap<K, V> {
         return 0;
     }
 
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
 }
@@ -447,7 +447,7 @@ public class MVCCTransactionEngine implements TransactionEngine {
      */
     synchronized StorageMap<Object, VersionedValue> openMap(int mapId) {
         StorageMap<Object, VersionedValue> map = maps.get(mapId);
-        if (map != null) {
+        if (map != null && !map.isClosed()) {
             return map;
         }
         String mapName = mapBuilder.getMapName(mapId);
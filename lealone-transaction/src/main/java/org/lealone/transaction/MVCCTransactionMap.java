@@ -763,6 +763,11 @@ public class MVCCTransactionMap<K, V> implements TransactionMap<K, V> {
         map.setVolatile(isVolatile);
     }
 
+    @Override
+    public long getDiskSpaceUsed() {
+        return map.getDiskSpaceUsed();
+    }
+
     @Override
     public void removeMap() {
         map.remove();